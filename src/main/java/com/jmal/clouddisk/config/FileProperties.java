@@ -41,6 +41,40 @@ public class FileProperties {
      * 断点续传的临时文件目录名称 位于rootDir下,文件监控扫描忽略的目录
      */
     private String chunkFileDir = "chunkFileTemp";
+
+    /**
+     * 分片上传时是否按位置直接写入目标文件, 分片可以乱序、并行上传; 关闭后使用先保存分片再按顺序追加的方式
+     */
+    private Boolean positionalChunkWrite = true;
+
+    /**
+     * 秒传时是否可以使用其他用户的相同文件, 关闭时只在用户自己的文件中查找
+     * 风险: 只要知道文件的 SHA-256 和大小就能把其他用户的文件复制到自己的空间, 并可借此探测某个文件是否存在于服务器。
+     * 开启后使用其他用户的文件秒传时, 客户端必须回答服务端随机指定的数据范围的持有证明(contentProof), 但"文件是否存在"仍可被探测
+     */
+    private Boolean dedupAcrossUsers = false;
+
+    /**
+     * 秒传时文件系统不支持 reflink 是否使用硬链接, 硬链接的文件共享同一份数据, 原地修改其中一个会影响所有链接; 关闭时使用复制
+     */
+    private Boolean dedupHardLink = false;
+
+    /**
+     * 复制文件夹时并行复制文件的线程数
+     */
+    private Integer copyWorkers = 4;
+
+    /**
+     * 复制时文件系统不支持 reflink 是否使用硬链接, 只适用于复制出只读的快照, 原地修改副本会影响源文件; 关闭时使用复制
+     */
+    private Boolean copyHardLink = false;
+
+    /**
+     * 打包下载模式: STORE(不压缩的 ZIP64, 返回 Content-Length 并支持断点续传), DEFLATE(边压缩边输出, 不支持断点续传),
+     * AUTO(可压缩文件不超过总大小的 10% 时使用 STORE, 否则使用 DEFLATE)
+     */
+    private String packageDownloadMode = "AUTO";
+
     /**
      * 视频转码后的缓存目录, 位于 ${chunkFileDir}/${username}/${videoTranscodeCache}
      */
@@ -126,6 +160,41 @@ public class FileProperties {
      */
     private Integer ngramMaxSize = 6;
 
+    /**
+     * 文件夹ETag后台处理的并发线程数
+     */
+    private Integer etagWorkerThreads = 4;
+
+    /**
+     * 图片裁剪/webp转换结果的磁盘缓存上限(MB)
+     */
+    private Integer derivedImageCacheSizeMB = 1024;
+
+    /**
+     * OCR识别结果的磁盘缓存上限(MB)
+     */
+    private Integer ocrResultCacheSizeMB = 512;
+
+    /**
+     * 日志写入缓冲区容量
+     */
+    private Integer logBufferSize = 8192;
+
+    /**
+     * 日志批量写入的最大条数
+     */
+    private Integer logBatchSize = 500;
+
+    /**
+     * 日志批量写入的最长间隔(毫秒)
+     */
+    private Long logFlushIntervalMs = 1000L;
+
+    /**
+     * 日志缓冲区已满时的处理策略: BLOCK(等待一段时间, 仍然已满则丢弃), DROP_NEWEST(丢弃新日志), DROP_OLDEST(丢弃最旧的日志)
+     */
+    private String logDropPolicy = "BLOCK";
+
     /**
      * 是否重置管理员密码
      */
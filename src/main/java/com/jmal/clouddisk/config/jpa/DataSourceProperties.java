@@ -23,12 +23,34 @@ public class DataSourceProperties {
 
     private Boolean jpaEnabled = true;
 
+    /**
+     * SQLite 队列写入配置
+     */
+    private WriteQueue writeQueue = new WriteQueue();
+
     public String toString() {
         return "DataSourceProperties{" +
                 "type=" + type +
                 ", migration=" + migration +
                 ", jpaEnabled=" + jpaEnabled +
+                ", writeQueue=" + writeQueue +
                 '}';
     }
 
+    @Data
+    public static class WriteQueue {
+        /**
+         * 是否开启组提交: 消费者一次取出多个任务, 在同一个事务中执行
+         */
+        private Boolean groupCommit = true;
+        /**
+         * 每次组提交最多包含的任务数
+         */
+        private Integer batchSize = 256;
+        /**
+         * 凑批时最多等待的时间(毫秒)
+         */
+        private Long lingerMs = 5L;
+    }
+
 }
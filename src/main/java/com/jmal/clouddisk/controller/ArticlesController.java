@@ -8,6 +8,7 @@ import com.jmal.clouddisk.annotation.LogOperatingFun;
 import com.jmal.clouddisk.model.*;
 import com.jmal.clouddisk.service.IMarkdownService;
 import com.jmal.clouddisk.service.IUserService;
+import com.jmal.clouddisk.service.impl.ArticleRenderCache;
 import com.jmal.clouddisk.service.impl.CategoryService;
 import com.jmal.clouddisk.service.impl.LogService;
 import com.jmal.clouddisk.service.impl.SettingService;
@@ -49,6 +50,8 @@ public class ArticlesController {
 
     private final IUserService userService;
 
+    private final ArticleRenderCache articleRenderCache;
+
     private static final String X_PJAX = "X-PJAX";
     private static final String X_PJAX_TRUE = "true";
 
@@ -100,7 +103,7 @@ public class ArticlesController {
     @LogOperatingFun(value = "独立页面", logType = LogOperation.Type.ARTICLE)
     public String alonePage(HttpServletRequest request, @PathVariable String slug, Model map) {
         String url = "/articles/o/" + slug;
-        long visits = logService.getVisitsByUrl(url);
+        long visits = logService.recordVisit(url);
         map.addAttribute("visits", visits);
         map.addAttribute("url", url);
         return articlePage(request, slug, map);
@@ -110,7 +113,7 @@ public class ArticlesController {
     @LogOperatingFun(value = "文章", logType = LogOperation.Type.ARTICLE)
     public String article(HttpServletRequest request, @PathVariable String slug, Model map) {
         String url = "/articles/s/" + slug;
-        long visits = logService.getVisitsByUrl(url);
+        long visits = logService.recordVisit(url);
         map.addAttribute("visits", visits);
         map.addAttribute("url", url);
         return articlePage(request, slug, map);
@@ -130,10 +133,17 @@ public class ArticlesController {
                 }
             }
         }
-        map.addAttribute("keywords", setKeywords(articleVO));
-        map.addAttribute("description", setDescription(articleVO));
-
-        modifyHtml(map, articleVO);
+        String defaultCover = null;
+        if (map.getAttribute("setting") instanceof WebsiteSettingDTO settingDTO) {
+            defaultCover = settingDTO.getBackgroundSite();
+        }
+        String fallbackCover = defaultCover;
+        ArticleRenderCache.RenderedArticle rendered = articleRenderCache.get(articleVO.getId(), articleVO.getUpdateDate(),
+                settingService.getWebsiteSettingVersion(),
+                () -> new ArticleRenderCache.RenderedArticle(modifyHtml(articleVO, fallbackCover), setKeywords(articleVO), setDescription(articleVO)));
+        map.addAttribute("keywords", rendered.keywords());
+        map.addAttribute("description", rendered.description());
+        articleVO.setHtml(rendered.html());
 
         map.addAttribute("markdown", articleVO);
 
@@ -141,7 +151,7 @@ public class ArticlesController {
         return isPjax ? "article" : "index";
     }
 
-    private static void modifyHtml(Model map, ArticleVO articleVO) {
+    private static String modifyHtml(ArticleVO articleVO, String defaultCover) {
         // 使用 Jsoup 解析 HTML 内容, 使用parseBodyFragment 避免 Jsoup 自动添加 <html> 和 <body> 标签
         Document document = Jsoup.parseBodyFragment(articleVO.getHtml());
 
@@ -164,10 +174,7 @@ public class ArticlesController {
         // default img
         String cover = articleVO.getCover();
         if (StrUtil.isBlank(cover)) {
-            Object object = map.getAttribute("setting");
-            if (object instanceof WebsiteSettingDTO settingDTO) {
-                cover = settingDTO.getBackgroundSite();
-            }
+            cover = defaultCover;
         }
 
         // 遍历所有 img 标签
@@ -181,8 +188,7 @@ public class ArticlesController {
             }
         }
         // 获取修改后的 HTML 内容
-        String modifiedHtmlContent = document.body().html();
-        articleVO.setHtml(modifiedHtmlContent);
+        return document.body().html();
     }
 
     private String setDescription(ArticleVO articleVO) {
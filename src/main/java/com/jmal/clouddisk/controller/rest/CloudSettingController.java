@@ -2,6 +2,10 @@ package com.jmal.clouddisk.controller.rest;
 
 import com.jmal.clouddisk.annotation.LogOperatingFun;
 import com.jmal.clouddisk.annotation.Permission;
+import com.jmal.clouddisk.dao.impl.jpa.write.IWriteService;
+import com.jmal.clouddisk.dao.impl.jpa.write.WriteQueueMetrics;
+import com.jmal.clouddisk.lucene.LuceneCommitMetrics;
+import com.jmal.clouddisk.lucene.LuceneCommitScheduler;
 import com.jmal.clouddisk.lucene.RebuildIndexTaskService;
 import com.jmal.clouddisk.lucene.TaskProgress;
 import com.jmal.clouddisk.lucene.TaskProgressService;
@@ -15,12 +19,15 @@ import com.jmal.clouddisk.ocr.OcrConfig;
 import com.jmal.clouddisk.ocr.OcrService;
 import com.jmal.clouddisk.service.IAuthService;
 import com.jmal.clouddisk.service.impl.CommonUserFileService;
+import com.jmal.clouddisk.service.impl.LogPipelineMetrics;
+import com.jmal.clouddisk.service.impl.LogWritePipeline;
 import com.jmal.clouddisk.service.impl.SettingService;
 import com.jmal.clouddisk.util.ResponseResult;
 import com.jmal.clouddisk.util.ResultUtil;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -47,6 +54,12 @@ public class CloudSettingController {
 
     private final OcrService ocrService;
 
+    private final ObjectProvider<IWriteService> writeServiceProvider;
+
+    private final LuceneCommitScheduler luceneCommitScheduler;
+
+    private final LogWritePipeline logWritePipeline;
+
     @Operation(summary = "重建索引-用户")
     @GetMapping("/user/setting/sync")
     @Permission(value = "cloud:file:upload")
@@ -71,6 +84,28 @@ public class CloudSettingController {
         return settingService.recalculateFolderSize();
     }
 
+    @Operation(summary = "写入队列指标")
+    @GetMapping("/cloud/setting/write-queue/metrics")
+    @Permission(value = "cloud:set:sync")
+    public ResponseResult<WriteQueueMetrics> writeQueueMetrics() {
+        IWriteService writeService = writeServiceProvider.getIfAvailable();
+        return ResultUtil.success(writeService == null ? null : writeService.getMetrics().orElse(null));
+    }
+
+    @Operation(summary = "索引提交指标")
+    @GetMapping("/cloud/setting/lucene-commit/metrics")
+    @Permission(value = "cloud:set:sync")
+    public ResponseResult<LuceneCommitMetrics> luceneCommitMetrics() {
+        return ResultUtil.success(luceneCommitScheduler.getMetrics());
+    }
+
+    @Operation(summary = "日志写入指标")
+    @GetMapping("/cloud/setting/log-pipeline/metrics")
+    @Permission(value = "cloud:set:sync")
+    public ResponseResult<LogPipelineMetrics> logPipelineMetrics() {
+        return ResultUtil.success(logWritePipeline.getMetrics());
+    }
+
     @Operation(summary = "获取视频转码配置")
     @GetMapping("/cloud/setting/transcode/config")
     @Permission(value = "cloud:set:sync")
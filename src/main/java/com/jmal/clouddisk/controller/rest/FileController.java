@@ -90,6 +90,13 @@ public class FileController {
         return fileService.listFiles(upload);
     }
 
+    @Operation(summary = "文件列表(游标分页)")
+    @GetMapping("/list-cursor")
+    @LogOperatingFun(logType = LogOperation.Type.BROWSE)
+    public ResponseResult<Object> listByCursor(UploadApiParamDTO upload, @RequestParam(required = false) String cursor) {
+        return fileService.listFilesByCursor(upload, cursor);
+    }
+
     @Operation(summary = "查找下级目录")
     @GetMapping("/query-file-tree")
     @LogOperatingFun(logType = LogOperation.Type.BROWSE)
@@ -166,6 +173,13 @@ public class FileController {
         return fileService.checkChunkUploaded(upload);
     }
 
+    @Operation(summary = "秒传, 按文件内容摘要检查是否已存在相同的文件")
+    @GetMapping("upload/check-hash")
+    @Permission("cloud:file:upload")
+    public ResponseResult<Object> checkContentHash(UploadApiParamDTO upload) throws IOException {
+        return fileService.checkContentHash(upload);
+    }
+
     @Operation(summary = "合并文件")
     @PostMapping("merge")
     @Permission("cloud:file:upload")
@@ -471,6 +485,22 @@ public class FileController {
         return fileService.unzip(fileId, destFileId);
     }
 
+    @Operation(summary = "浏览压缩文件")
+    @GetMapping("/archive/list")
+    @Permission("cloud:file:list")
+    @LogOperatingFun(logType = LogOperation.Type.BROWSE)
+    public ResponseResult<Object> listArchive(@RequestParam String fileId, String dir) {
+        return fileService.listArchive(fileId, FileNameUtils.safeDecode(dir));
+    }
+
+    @Operation(summary = "下载压缩文件中的单个文件")
+    @GetMapping("/archive/entry")
+    @Permission("cloud:file:download")
+    @LogOperatingFun
+    public void downloadArchiveEntry(HttpServletRequest request, HttpServletResponse response, @RequestParam String fileId, @RequestParam String entryPath) {
+        fileService.downloadArchiveEntry(request, response, fileId, FileNameUtils.safeDecode(entryPath));
+    }
+
     @Operation(summary = "获取目录下的文件")
     @GetMapping("/listfiles")
     @LogOperatingFun(logType = LogOperation.Type.BROWSE)
@@ -35,6 +35,12 @@ public class LuceneSearchController {
         return searchFileService.searchFile(searchDTO);
     }
 
+    @Operation(summary = "搜索(游标分页)")
+    @GetMapping("/cursor")
+    public ResponseResult<List<FileIntroVO>> listByCursor(@Valid SearchDTO searchDTO, @RequestParam(required = false) String cursor) {
+        return searchFileService.searchFileByCursor(searchDTO, cursor);
+    }
+
     @Operation(summary = "最近搜索记录")
     @GetMapping("/recentlySearchHistory")
     public ResponseResult<List<SearchDTO>> recentlySearchHistory(String keyword) {
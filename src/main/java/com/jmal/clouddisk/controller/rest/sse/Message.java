@@ -4,11 +4,17 @@ import com.jmal.clouddisk.config.Reflective;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.List;
+
 @Getter
 @Setter
 public class Message implements Reflective {
     private String username;
     private Object body;
+    /**
+     * 合并推送时窗口内的所有变化, body 为其中最后一个
+     */
+    private List<Object> items;
     private String url;
     private Long space;
 }
@@ -1,5 +1,6 @@
 package com.jmal.clouddisk.dao;
 
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO;
 
 import java.time.Instant;
@@ -27,7 +28,26 @@ public interface IEtagDAO {
 
     List<FileBaseEtagDTO> findFileBaseEtagDTOByRootDirFilesWithoutEtag();
 
-    List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder();
+    /**
+     * 查询需要更新ETag的文件夹, 按目录深度倒序(最深的在前)
+     *
+     * @param limit 最大数量
+     */
+    List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(int limit);
+
+    /**
+     * 统计需要更新ETag的文件夹数量
+     */
+    long countNeedUpdateFolder();
+
+    /**
+     * 认领文件夹的处理租约, 通过 retryAt 实现: 只有 retryAt 为空或已过期时才能认领成功
+     *
+     * @param fileId     文件夹ID
+     * @param leaseUntil 租约到期时间
+     * @return true 认领成功
+     */
+    boolean claimLeaseById(String fileId, Instant leaseUntil);
 
     void clearMarkUpdateById(String fileId);
 
@@ -35,11 +55,45 @@ public interface IEtagDAO {
 
     List<FileBaseEtagDTO> findFileBaseEtagDTOByUserIdAndPath(String userId, String path);
 
-    long updateEtagAndSizeById(String fileId, String etag, long size, int childrenCount);
+    /**
+     * 更新文件夹的ETag, 同时以比较并设置的方式更新 size 和 childrenCount:
+     * 只有当前值仍等于读取时的值才写入汇总结果, 否则说明期间有增量传播, 保留当前值, 只更新ETag
+     *
+     * @param fileId                文件夹ID
+     * @param etag                  新的ETag
+     * @param expectedSize          读取时的 size
+     * @param expectedChildrenCount 读取时的 childrenCount
+     * @param size                  汇总得到的 size
+     * @param childrenCount         汇总得到的 childrenCount
+     * @return 修改的记录数
+     */
+    long updateEtagAndSizeById(String fileId, String etag, Long expectedSize, Integer expectedChildrenCount, long size, int childrenCount);
 
     int findEtagUpdateFailedAttemptsById(String fileId);
 
     void setFailedEtagById(String fileId, int attempts, String errorMsg, Boolean needsEtagUpdate);
 
     void setRetryAtById(String fileId, Instant nextRetryTime, int attempts);
+
+    /**
+     * 查询单个文件/文件夹的ETag信息(包含 size 和 childrenCount)
+     */
+    FileBaseEtagDTO findFileBaseEtagDTOByUserIdAndPathAndName(String userId, String path, String name);
+
+    /**
+     * 给一组文件夹增量更新 size 和 childrenCount, 每个文件夹只更新自身这一行, 不扫描子树
+     *
+     * @param folders    需要更新的文件夹(userId, path, name)
+     * @param deltaSize  size 的变化量
+     * @param deltaCount childrenCount 的变化量
+     */
+    void incrementFolderSizeAndCount(List<FileBaseDTO> folders, long deltaSize, int deltaCount);
+
+    /**
+     * 按目录深度倒序(最深的在前)分页查询文件夹, 用于校验文件夹的 size 和 childrenCount
+     *
+     * @param page     页码, 从0开始
+     * @param pageSize 每页数量
+     */
+    List<FileBaseEtagDTO> findFolderFileBaseEtagDTOOrderByDepth(int page, int pageSize);
 }
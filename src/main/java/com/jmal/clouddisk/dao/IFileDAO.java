@@ -12,6 +12,7 @@ import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseLuceneDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseOperationPermissionDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseOssPathDTO;
+import com.jmal.clouddisk.model.file.dto.FileContentHashDTO;
 import com.jmal.clouddisk.model.file.dto.UpdateFile;
 
 import java.time.LocalDateTime;
@@ -62,6 +63,15 @@ public interface IFileDAO {
      */
     List<String> findByIdIn(Collection<String> fileIdList);
 
+    /**
+     * 按id的字典序升序分页查询文件id(keyset), 用于与索引对账
+     *
+     * @param afterId 上一页最后一个id, 第一页为null
+     * @param limit   每页数量
+     * @return 升序排列的文件id
+     */
+    List<String> findIdsAfter(String afterId, int limit);
+
     List<FileDocument> findAllAndRemoveByUserIdAndIdPrefix(String userId, String idPrefix);
 
     void saveAll(List<FileDocument> fileDocumentList);
@@ -146,6 +156,11 @@ public interface IFileDAO {
 
     List<FileBaseAllDTO> findAllFileBaseAllDTOByUserIdAndPath(String userId, String path);
 
+    /**
+     * 查询目录下由磁盘文件同步而来的子项, 不包括挂载文件, 用于增量扫描时与磁盘比较
+     */
+    List<FileBaseAllDTO> findSyncedFileBaseAllDTOByUserIdAndPath(String userId, String path);
+
     void removeTagsByTagIdIn(List<String> removeTagIds);
 
     List<String> getFileIdListByTagId(String tagId);
@@ -162,6 +177,24 @@ public interface IFileDAO {
 
     void setUpdateDateById(String fileId, LocalDateTime time);
 
+    /**
+     * 设置文件内容摘要
+     * @param fileId 文件id
+     * @param contentHash 内容摘要, 为null时清除
+     * @param contentHashEtag 记录内容摘要时文件的 ETag
+     */
+    void setContentHashById(String fileId, String contentHash, String contentHashEtag);
+
+    /**
+     * 根据内容摘要查找文件, 不包括挂载的文件
+     * @param userId 用户id, 为null时查找所有用户的文件
+     * @param contentHash 内容摘要
+     * @param size 文件大小
+     * @param limit 最多返回的条数
+     * @return 文件列表
+     */
+    List<FileContentHashDTO> findFileBaseDTOByContentHash(String userId, String contentHash, long size, int limit);
+
     List<FileDocument> findByPath(String userId, String path);
 
     List<FileDocument> findAllAndRemoveByIdPrefix(String fileId);
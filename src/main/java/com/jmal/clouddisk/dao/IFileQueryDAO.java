@@ -4,6 +4,7 @@ import com.jmal.clouddisk.model.UploadApiParamDTO;
 import com.jmal.clouddisk.model.file.FileDocument;
 import com.jmal.clouddisk.model.file.FileIntroVO;
 import com.jmal.clouddisk.model.file.dto.FileBaseMountDTO;
+import com.jmal.clouddisk.model.file.dto.FileListCursor;
 import org.springframework.data.domain.Page;
 
 import java.util.List;
@@ -17,4 +18,20 @@ public interface IFileQueryDAO {
     FileDocument findBaseFileDocumentById(String id, boolean excludeContent);
 
     List<FileIntroVO> findAllFileIntroVOByIdIn(List<String> fileIdList);
+
+    /**
+     * 游标(keyset)分页查询目录下的文件, 排序: isFolder DESC, sortProp, id ASC
+     *
+     * @param userId userId
+     * @param path   目录
+     * @param cursor 上一页最后一项的位置, 第一页时 firstPage() 为 true
+     * @param limit  最多返回的条数
+     * @return 文件列表
+     */
+    List<FileIntroVO> findFileIntroVOByCursor(String userId, String path, FileListCursor cursor, int limit);
+
+    /**
+     * 目录下的直接子项数量, 只用于没有文件夹记录的根目录
+     */
+    long countByUserIdAndPath(String userId, String path);
 }
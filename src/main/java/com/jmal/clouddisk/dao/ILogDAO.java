@@ -4,10 +4,19 @@ import com.jmal.clouddisk.model.LogOperation;
 import com.jmal.clouddisk.model.LogOperationDTO;
 import org.springframework.data.domain.Page;
 
+import java.util.List;
+
 public interface ILogDAO {
 
     void save(LogOperation logOperation);
 
+    /**
+     * 批量写入日志
+     *
+     * @param logOperations 日志列表
+     */
+    void saveAll(List<LogOperation> logOperations);
+
     Page<LogOperation> findAllByQuery(LogOperationDTO logOperationDTO, String currentUsername, String currentUserId, boolean isAdministrators);
 
     long countByUrl(String url);
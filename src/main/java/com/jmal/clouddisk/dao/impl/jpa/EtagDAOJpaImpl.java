@@ -7,6 +7,7 @@ import com.jmal.clouddisk.dao.impl.jpa.write.IWriteService;
 import com.jmal.clouddisk.dao.impl.jpa.write.etag.EtagOperation;
 import com.jmal.clouddisk.dao.util.MyQuery;
 import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -94,8 +95,22 @@ public class EtagDAOJpaImpl implements IEtagDAO {
     }
 
     @Override
-    public List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder() {
-        return fileEtagRepository.findFileBaseEtagDTOByNeedUpdateFolder(Instant.now());
+    public List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(int limit) {
+        return fileEtagRepository.findFileBaseEtagDTOByNeedUpdateFolder(Instant.now(), PageRequest.of(0, limit));
+    }
+
+    @Override
+    public long countNeedUpdateFolder() {
+        return fileEtagRepository.countByNeedsEtagUpdateIsTrueAndIsFolderIsTrue();
+    }
+
+    @Override
+    public boolean claimLeaseById(String fileId, Instant leaseUntil) {
+        try {
+            return writeService.submit(new EtagOperation.ClaimLeaseById(fileId, Instant.now(), leaseUntil)).get(30, TimeUnit.SECONDS) > 0;
+        } catch (Exception e) {
+            throw new CommonException(e.getMessage());
+        }
     }
 
     @Override
@@ -126,9 +141,9 @@ public class EtagDAOJpaImpl implements IEtagDAO {
     }
 
     @Override
-    public long updateEtagAndSizeById(String fileId, String etag, long size, int childrenCount) {
+    public long updateEtagAndSizeById(String fileId, String etag, Long expectedSize, Integer expectedChildrenCount, long size, int childrenCount) {
         try {
-            return writeService.submit(new EtagOperation.UpdateEtagAndSizeById(fileId, etag, size, childrenCount)).get(30, TimeUnit.SECONDS);
+            return writeService.submit(new EtagOperation.UpdateEtagAndSizeById(fileId, etag, expectedSize, expectedChildrenCount, size, childrenCount)).get(30, TimeUnit.SECONDS);
         } catch (Exception e) {
             throw new CommonException(e.getMessage());
         }
@@ -156,4 +171,26 @@ public class EtagDAOJpaImpl implements IEtagDAO {
             throw new CommonException(e.getMessage());
         }
     }
+
+    @Override
+    public FileBaseEtagDTO findFileBaseEtagDTOByUserIdAndPathAndName(String userId, String path, String name) {
+        return fileEtagRepository.findFileBaseEtagDTOByUserIdAndPathAndName(userId, path, name).orElse(null);
+    }
+
+    @Override
+    public void incrementFolderSizeAndCount(List<FileBaseDTO> folders, long deltaSize, int deltaCount) {
+        if (folders.isEmpty() || (deltaSize == 0 && deltaCount == 0)) {
+            return;
+        }
+        try {
+            writeService.submit(new EtagOperation.IncrementFolderSizeAndCount(folders, deltaSize, deltaCount)).get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new CommonException(e.getMessage());
+        }
+    }
+
+    @Override
+    public List<FileBaseEtagDTO> findFolderFileBaseEtagDTOOrderByDepth(int page, int pageSize) {
+        return fileEtagRepository.findFolderFileBaseEtagDTOOrderByDepth(PageRequest.of(page, pageSize));
+    }
 }
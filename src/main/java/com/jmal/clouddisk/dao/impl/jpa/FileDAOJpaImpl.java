@@ -24,6 +24,7 @@ import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseLuceneDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseOperationPermissionDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseOssPathDTO;
+import com.jmal.clouddisk.model.file.dto.FileContentHashDTO;
 import com.jmal.clouddisk.model.file.dto.UpdateFile;
 import com.jmal.clouddisk.service.Constants;
 import lombok.RequiredArgsConstructor;
@@ -125,6 +126,15 @@ public class FileDAOJpaImpl implements IFileDAO {
         return fileMetadataRepository.findByPublicIdIn(fileIdList);
     }
 
+    @Override
+    public List<String> findIdsAfter(String afterId, int limit) {
+        PageRequest pageRequest = PageRequest.of(0, limit);
+        if (afterId == null) {
+            return fileMetadataRepository.findPublicIdsOrderByPublicId(pageRequest);
+        }
+        return fileMetadataRepository.findPublicIdsAfterOrderByPublicId(afterId, pageRequest);
+    }
+
     @Override
     public List<FileDocument> findAllAndRemoveByUserIdAndIdPrefix(String userId, String idPrefix) {
         String pathPrefixForLike = MyQuery.escapeLikeSpecialChars(idPrefix) + "%";
@@ -463,6 +473,11 @@ public class FileDAOJpaImpl implements IFileDAO {
         return fileMetadataRepository.findAllFileBaseAllDTOByUserIdAndPath(userId, path);
     }
 
+    @Override
+    public List<FileBaseAllDTO> findSyncedFileBaseAllDTOByUserIdAndPath(String userId, String path) {
+        return fileMetadataRepository.findSyncedFileBaseAllDTOByUserIdAndPath(userId, path);
+    }
+
     @Override
     public void removeTagsByTagIdIn(List<String> tagIds) {
         filePropsDAO.removeTagsByTagIdIn(tagIds);
@@ -524,6 +539,23 @@ public class FileDAOJpaImpl implements IFileDAO {
         }
     }
 
+    @Override
+    public void setContentHashById(String fileId, String contentHash, String contentHashEtag) {
+        try {
+            writeService.submit(new FileOperation.SetContentHashById(fileId, contentHash, contentHashEtag)).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new CommonException(e.getMessage());
+        }
+    }
+
+    @Override
+    public List<FileContentHashDTO> findFileBaseDTOByContentHash(String userId, String contentHash, long size, int limit) {
+        if (userId == null) {
+            return fileMetadataRepository.findFileBaseDTOByContentHash(contentHash, size, PageRequest.of(0, limit));
+        }
+        return fileMetadataRepository.findFileBaseDTOByUserIdAndContentHash(userId, contentHash, size, PageRequest.of(0, limit));
+    }
+
     @Override
     public List<FileDocument> findByPath(String userId, String path) {
         List<FileMetadataDO> fileMetadataDOList = fileMetadataRepository.findAllByUserIdAndPath(userId, path);
@@ -14,9 +14,19 @@ import com.jmal.clouddisk.model.file.FileIntroVO;
 import com.jmal.clouddisk.model.file.FileMetadataDO;
 import com.jmal.clouddisk.model.file.TrashEntityDO;
 import com.jmal.clouddisk.model.file.dto.FileBaseMountDTO;
+import com.jmal.clouddisk.model.file.dto.FileListCursor;
 import com.jmal.clouddisk.service.Constants;
+import com.jmal.clouddisk.service.IUserService;
 import com.jmal.clouddisk.service.impl.CommonFileService;
 import com.jmal.clouddisk.util.TimeUntils;
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
@@ -27,6 +37,8 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -48,6 +60,9 @@ public class FileQueryDAOJpaImpl implements IFileQueryDAO {
 
     private final FileProperties fileProperties;
 
+    @PersistenceContext
+    private EntityManager em;
+
     @Override
     public Page<FileIntroVO> getFileIntroVO(UploadApiParamDTO upload) {
         Page<String> page = null;
@@ -191,6 +206,96 @@ public class FileQueryDAOJpaImpl implements IFileQueryDAO {
         return sortFileIntroVOList(fileIdList, fileMetadataDOList);
     }
 
+    @Override
+    public List<FileIntroVO> findFileIntroVOByCursor(String userId, String path, FileListCursor cursor, int limit) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<FileMetadataDO> cq = cb.createQuery(FileMetadataDO.class);
+        Root<FileMetadataDO> root = cq.from(FileMetadataDO.class);
+
+        Expression<Boolean> isFolder = root.get(Constants.IS_FOLDER);
+        Expression<String> id = root.get("publicId");
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.equal(root.get(IUserService.USER_ID), userId));
+        predicates.add(cb.equal(root.get("path"), path));
+        if (!cursor.firstPage()) {
+            // (isFolder, sortKey, id) > cursor
+            Predicate afterSortKey = cb.or(
+                    sortKeyAfter(cb, root, cursor),
+                    cb.and(sortKeyEqual(cb, root, cursor), cb.greaterThan(id, cursor.id())));
+            if (cursor.isFolder()) {
+                predicates.add(cb.or(cb.isFalse(isFolder), cb.and(cb.isTrue(isFolder), afterSortKey)));
+            } else {
+                predicates.add(cb.and(cb.isFalse(isFolder), afterSortKey));
+            }
+        }
+        Expression<?> sortKey = sortKey(cb, root, cursor);
+        cq.where(predicates.toArray(new Predicate[0]))
+                .orderBy(cb.desc(isFolder), cursor.desc() ? cb.desc(sortKey) : cb.asc(sortKey), cb.asc(id));
+
+        EntityGraph<FileMetadataDO> entityGraph = em.createEntityGraph(FileMetadataDO.class);
+        entityGraph.addAttributeNodes("props");
+        List<FileMetadataDO> fileMetadataDOList = em.createQuery(cq)
+                .setHint("jakarta.persistence.fetchgraph", entityGraph)
+                .setMaxResults(limit)
+                .getResultList();
+        long now = System.currentTimeMillis();
+        return fileMetadataDOList.stream()
+                .map(FileMetadataDO::toFileIntroVO)
+                .filter(Objects::nonNull)
+                .peek(fv -> fv.setAgoTime(now - TimeUntils.getMilli(fv.getUpdateDate())))
+                .toList();
+    }
+
+    @Override
+    public long countByUserIdAndPath(String userId, String path) {
+        return fileMetadataRepository.countByUserIdAndPath(userId, path);
+    }
+
+    private static Expression<?> sortKey(CriteriaBuilder cb, Root<FileMetadataDO> root, FileListCursor cursor) {
+        return switch (cursor.sortProp()) {
+            case FileListCursor.SORT_PROP_SIZE -> sizeKey(cb, root);
+            case FileListCursor.SORT_PROP_UPDATE_DATE -> updateDateKey(cb, root);
+            default -> root.<String>get(Constants.FILENAME_FIELD);
+        };
+    }
+
+    /**
+     * 排序和比较都使用同一个空值替代值, 否则与 NULL 的比较永远不成立, 空值的行在第一页之后会被跳过
+     */
+    private static Expression<Long> sizeKey(CriteriaBuilder cb, Root<FileMetadataDO> root) {
+        return cb.coalesce(root.<Long>get(Constants.SIZE), FileListCursor.NULL_SIZE);
+    }
+
+    private static Expression<LocalDateTime> updateDateKey(CriteriaBuilder cb, Root<FileMetadataDO> root) {
+        return cb.coalesce(root.<LocalDateTime>get(Constants.UPDATE_DATE), FileListCursor.NULL_UPDATE_DATE);
+    }
+
+    private static Predicate sortKeyAfter(CriteriaBuilder cb, Root<FileMetadataDO> root, FileListCursor cursor) {
+        boolean desc = cursor.desc();
+        return switch (cursor.sortProp()) {
+            case FileListCursor.SORT_PROP_SIZE -> {
+                Expression<Long> size = sizeKey(cb, root);
+                yield desc ? cb.lessThan(size, cursor.sizeValue()) : cb.greaterThan(size, cursor.sizeValue());
+            }
+            case FileListCursor.SORT_PROP_UPDATE_DATE -> {
+                Expression<LocalDateTime> updateDate = updateDateKey(cb, root);
+                yield desc ? cb.lessThan(updateDate, cursor.updateDateValue()) : cb.greaterThan(updateDate, cursor.updateDateValue());
+            }
+            default -> {
+                Expression<String> name = root.get(Constants.FILENAME_FIELD);
+                yield desc ? cb.lessThan(name, cursor.sortValue()) : cb.greaterThan(name, cursor.sortValue());
+            }
+        };
+    }
+
+    private static Predicate sortKeyEqual(CriteriaBuilder cb, Root<FileMetadataDO> root, FileListCursor cursor) {
+        return switch (cursor.sortProp()) {
+            case FileListCursor.SORT_PROP_SIZE -> cb.equal(sizeKey(cb, root), cursor.sizeValue());
+            case FileListCursor.SORT_PROP_UPDATE_DATE -> cb.equal(updateDateKey(cb, root), cursor.updateDateValue());
+            default -> cb.equal(root.get(Constants.FILENAME_FIELD), cursor.sortValue());
+        };
+    }
+
     private List<FileIntroVO> sortFileIntroVOList(List<String> sortIdList, List<FileMetadataDO> fileMetadataDOList) {
         long now = System.currentTimeMillis();
         Map<String, FileMetadataDO> resultMap = fileMetadataDOList.stream()
@@ -8,6 +8,7 @@ import com.jmal.clouddisk.dao.impl.jpa.repository.LogRepository;
 import com.jmal.clouddisk.dao.impl.jpa.write.IWriteService;
 import com.jmal.clouddisk.dao.impl.jpa.write.Priority;
 import com.jmal.clouddisk.dao.impl.jpa.write.log.LogDataOperation;
+import com.jmal.clouddisk.exception.CommonException;
 import com.jmal.clouddisk.model.LogOperation;
 import com.jmal.clouddisk.model.LogOperationDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
@@ -24,6 +25,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Repository
@@ -47,6 +49,19 @@ public class LogDAOJpaImpl implements ILogDAO, IWriteCommon<LogOperation> {
         writeService.submit(new LogDataOperation.Create(logOperation), Priority.NORMAL);
     }
 
+    @Override
+    public void saveAll(List<LogOperation> logOperations) {
+        // 等待写入完成, 日志写入管道据此统计写入结果和耗时, 写入慢时管道也随之放慢
+        try {
+            writeService.submit(new LogDataOperation.CreateAll(logOperations), Priority.NORMAL).get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommonException(e.getMessage());
+        } catch (Exception e) {
+            throw new CommonException(e.getMessage());
+        }
+    }
+
     @Override
     public Page<LogOperation> findAllByQuery(LogOperationDTO logOperationDTO, String currentUsername, String currentUserId, boolean isAdministrators) {
         Specification<LogOperation> spec = fromDTO(logOperationDTO, currentUsername, currentUserId, isAdministrators);
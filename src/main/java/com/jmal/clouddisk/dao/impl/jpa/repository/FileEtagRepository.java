@@ -75,10 +75,19 @@ public interface FileEtagRepository extends JpaRepository<FileMetadataDO, Long>
             "WHERE f.needsEtagUpdate = true " +
             "AND (f.retryAt IS NULL OR f.retryAt <= :now) " +
             "AND f.isFolder = true " +
-            "ORDER BY LENGTH(f.path) DESC, f.lastEtagUpdateRequestAt ASC " +
-            "LIMIT 16"
+            "ORDER BY LENGTH(f.path) DESC, f.lastEtagUpdateRequestAt ASC"
     )
-    List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(Instant now);
+    List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(Instant now, Pageable pageable);
+
+    long countByNeedsEtagUpdateIsTrueAndIsFolderIsTrue();
+
+    @Modifying
+    @Query("UPDATE FileMetadataDO f " +
+            "SET f.retryAt = :leaseUntil " +
+            "WHERE f.publicId = :fileId " +
+            "AND f.needsEtagUpdate = true " +
+            "AND (f.retryAt IS NULL OR f.retryAt <= :now)")
+    int claimLeaseById(String fileId, Instant now, Instant leaseUntil);
 
     @Modifying
     @Query("UPDATE FileMetadataDO f " +
@@ -96,7 +105,7 @@ public interface FileEtagRepository extends JpaRepository<FileMetadataDO, Long>
 
     boolean existsByUserIdAndPathAndName(String userId, String path, String name);
 
-    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.etag) " +
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.etag, f.size, f.childrenCount) " +
             "FROM FileMetadataDO f " +
             "WHERE f.userId = :userId " +
             "AND f.path = :userId1"
@@ -104,8 +113,15 @@ public interface FileEtagRepository extends JpaRepository<FileMetadataDO, Long>
     List<FileBaseEtagDTO> findFileBaseEtagDTOByUserIdAndPath(String userId, String userId1);
 
     @Modifying
-    @Query("UPDATE FileMetadataDO f SET f.etag = :etag, f.size = :size, f.childrenCount = :childrenCount, f.updateDate = :now WHERE f.publicId = :fileId")
-    Integer updateEtagAndSizeById(String fileId, String etag, long size, int childrenCount, LocalDateTime now);
+    @Query("UPDATE FileMetadataDO f SET f.etag = :etag, f.size = :size, f.childrenCount = :childrenCount, f.updateDate = :now " +
+            "WHERE f.publicId = :fileId " +
+            "AND (f.size = :expectedSize OR (f.size IS NULL AND :expectedSize IS NULL)) " +
+            "AND (f.childrenCount = :expectedChildrenCount OR (f.childrenCount IS NULL AND :expectedChildrenCount IS NULL))")
+    Integer updateEtagAndSizeById(String fileId, String etag, Long expectedSize, Integer expectedChildrenCount, long size, int childrenCount, LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE FileMetadataDO f SET f.etag = :etag, f.updateDate = :now WHERE f.publicId = :fileId")
+    Integer updateEtagById(String fileId, String etag, LocalDateTime now);
 
     @Query("SELECT f.etagUpdateFailedAttempts FROM FileMetadataDO f WHERE f.publicId = :id")
     Optional<Integer> findEtagUpdateFailedAttemptsById(String id);
@@ -131,4 +147,29 @@ public interface FileEtagRepository extends JpaRepository<FileMetadataDO, Long>
             "f.etagUpdateFailedAttempts = :attempts " +
             "WHERE f.publicId = :fileId")
     void setRetryAtById(String fileId, Instant nextRetryTime, int attempts);
+
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.etag, f.size, f.childrenCount) " +
+            "FROM FileMetadataDO f " +
+            "WHERE f.userId = :userId " +
+            "AND f.path = :path " +
+            "AND f.name = :name"
+    )
+    Optional<FileBaseEtagDTO> findFileBaseEtagDTOByUserIdAndPathAndName(String userId, String path, String name);
+
+    @Modifying
+    @Query("UPDATE FileMetadataDO f " +
+            "SET f.size = COALESCE(f.size, 0) + :deltaSize, " +
+            "f.childrenCount = COALESCE(f.childrenCount, 0) + :deltaCount " +
+            "WHERE f.userId = :userId " +
+            "AND f.path = :path " +
+            "AND f.name = :name " +
+            "AND f.isFolder = true")
+    int incrementFolderSizeAndCount(String userId, String path, String name, long deltaSize, int deltaCount);
+
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.etag, f.size, f.childrenCount) " +
+            "FROM FileMetadataDO f " +
+            "WHERE f.isFolder = true " +
+            "ORDER BY LENGTH(f.path) DESC, f.id ASC"
+    )
+    List<FileBaseEtagDTO> findFolderFileBaseEtagDTOOrderByDepth(Pageable pageable);
 }
@@ -65,6 +65,12 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
     @Query("SELECT f.publicId FROM FileMetadataDO f WHERE f.publicId IN :publicIds")
     List<String> findByPublicIdIn(Collection<String> publicIds);
 
+    @Query("SELECT f.publicId FROM FileMetadataDO f ORDER BY f.publicId")
+    List<String> findPublicIdsOrderByPublicId(Pageable pageable);
+
+    @Query("SELECT f.publicId FROM FileMetadataDO f WHERE f.publicId > :afterId ORDER BY f.publicId")
+    List<String> findPublicIdsAfterOrderByPublicId(String afterId, Pageable pageable);
+
     void removeByMountFileIdIn(Collection<String> mountFileIds);
 
     @Query("SELECT f.publicId FROM FileMetadataDO f WHERE f.mountFileId IN :mountFileIds")
@@ -114,7 +120,9 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
             "f.md5 = :md5, " +
             "f.suffix = :suffix, " +
             "f.contentType = :contentType, " +
-            "f.updateDate = :updateDate " +
+            "f.updateDate = :updateDate, " +
+            "f.contentHash = null, " +
+            "f.contentHashEtag = null " +
             "WHERE f.publicId = :id"
     )
     int updateModifyFile(
@@ -239,10 +247,38 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
             "AND f.path = :path")
     List<FileBaseAllDTO> findAllFileBaseAllDTOByUserIdAndPath(String userId, String path);
 
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseAllDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.suffix, f.size, f.contentType) " +
+            "FROM FileMetadataDO f " +
+            "WHERE f.userId = :userId " +
+            "AND f.path = :path " +
+            "AND f.mountFileId IS NULL")
+    List<FileBaseAllDTO> findSyncedFileBaseAllDTOByUserIdAndPath(String userId, String path);
+
     @Modifying
     @Query("UPDATE FileMetadataDO f SET f.updateDate = :time WHERE f.publicId = :id")
     void setUpdateDateById(String id, LocalDateTime time);
 
+    @Modifying
+    @Query("UPDATE FileMetadataDO f SET f.contentHash = :contentHash, f.contentHashEtag = :contentHashEtag WHERE f.publicId = :id")
+    void setContentHashById(String id, String contentHash, String contentHashEtag);
+
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileContentHashDTO(f.publicId, f.name, f.path, f.userId, f.contentHashEtag) " +
+            "FROM FileMetadataDO f " +
+            "WHERE f.userId = :userId " +
+            "AND f.contentHash = :contentHash " +
+            "AND f.size = :size " +
+            "AND f.mountFileId IS NULL"
+    )
+    List<FileContentHashDTO> findFileBaseDTOByUserIdAndContentHash(String userId, String contentHash, Long size, Pageable pageable);
+
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileContentHashDTO(f.publicId, f.name, f.path, f.userId, f.contentHashEtag) " +
+            "FROM FileMetadataDO f " +
+            "WHERE f.contentHash = :contentHash " +
+            "AND f.size = :size " +
+            "AND f.mountFileId IS NULL"
+    )
+    List<FileContentHashDTO> findFileBaseDTOByContentHash(String contentHash, Long size, Pageable pageable);
+
     boolean existsByPublicId(String publicId);
 
     void deleteByPublicId(String publicId);
@@ -354,6 +390,8 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
     @EntityGraph(attributePaths = "props")
     Page<FileMetadataDO> findAllByUserIdAndPath(String userId, String path, Pageable pageable);
 
+    long countByUserIdAndPath(String userId, String path);
+
     @EntityGraph(attributePaths = "props")
     Page<FileMetadataDO> findAllByUserIdAndIsFavoriteIsTrue(String userId, Pageable pageable);
 
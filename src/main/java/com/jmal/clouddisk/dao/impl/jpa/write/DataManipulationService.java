@@ -1,22 +1,110 @@
 package com.jmal.clouddisk.dao.impl.jpa.write;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+@Slf4j
 @Service
 public class DataManipulationService {
 
     private final Map<Class<? extends IDataOperation<?>>, IDataOperationHandler<?, ?>> handlers;
 
-    public DataManipulationService(Map<Class<? extends IDataOperation<?>>, IDataOperationHandler<?, ?>> handlers) {
+    private final ObjectProvider<PlatformTransactionManager> transactionManagerProvider;
+
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactoryProvider;
+
+    /**
+     * 组提交的事务
+     */
+    private volatile TransactionTemplate batchTransactionTemplate;
+
+    public DataManipulationService(Map<Class<? extends IDataOperation<?>>, IDataOperationHandler<?, ?>> handlers,
+                                   ObjectProvider<PlatformTransactionManager> transactionManagerProvider,
+                                   ObjectProvider<EntityManagerFactory> entityManagerFactoryProvider) {
         this.handlers = handlers;
+        this.transactionManagerProvider = transactionManagerProvider;
+        this.entityManagerFactoryProvider = entityManagerFactoryProvider;
     }
 
     @Transactional
-    @SuppressWarnings("unchecked")
     public <R> R execute(IDataOperation<R> operation) {
+        return handle(operation);
+    }
+
+    /**
+     * 在一个事务中批量执行多个操作(组提交)。
+     * 不使用 savepoint 隔离单个操作: Hibernate 抛出 PersistenceException 时会把整个事务标记为 rollback-only, 回滚到 savepoint 并不能清除这个标记。
+     * 因此每个操作执行后立即 flush, 让约束冲突等错误定位到具体的操作; 一旦某个操作失败就回滚整个事务, 记下它的失败结果,
+     * 再把剩下的操作重新组成一个事务提交, 直到全部提交或失败。
+     * 如果事务提交本身失败, 会抛出异常, 由调用方决定是否逐个重试。
+     *
+     * @param operations 要执行的操作列表
+     * @return 与 operations 一一对应的执行结果
+     */
+    public List<BatchOutcome> executeBatch(List<? extends IDataOperation<?>> operations) {
+        initTransactionTemplate();
+        BatchOutcome[] outcomes = new BatchOutcome[operations.size()];
+        List<Integer> pending = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            pending.add(i);
+        }
+        while (!pending.isEmpty()) {
+            BatchAttempt attempt = batchTransactionTemplate.execute(status -> {
+                BatchAttempt current = executeUntilFailure(operations, pending);
+                if (current.failedIndex() != null) {
+                    status.setRollbackOnly();
+                }
+                return current;
+            });
+            if (attempt == null) {
+                throw new IllegalStateException("组提交事务没有返回结果");
+            }
+            if (attempt.failedIndex() == null) {
+                for (int i = 0; i < pending.size(); i++) {
+                    outcomes[pending.get(i)] = BatchOutcome.success(attempt.results().get(i));
+                }
+                break;
+            }
+            int failedIndex = attempt.failedIndex();
+            outcomes[failedIndex] = BatchOutcome.failure(attempt.error());
+            pending.remove(Integer.valueOf(failedIndex));
+            log.warn("组提交中的操作失败, 回滚后重新提交剩余 {} 个操作: {}, {}", pending.size(),
+                    operations.get(failedIndex).getClass().getName(), attempt.error().getMessage());
+        }
+        return Arrays.asList(outcomes);
+    }
+
+    /**
+     * 在当前事务中依次执行操作, 遇到第一个失败的操作就停止
+     */
+    private BatchAttempt executeUntilFailure(List<? extends IDataOperation<?>> operations, List<Integer> pending) {
+        List<Object> results = new ArrayList<>(pending.size());
+        for (int index : pending) {
+            try {
+                results.add(handle(operations.get(index)));
+                // 逐个 flush, 让约束冲突等错误在这里暴露, 而不是在最终提交时
+                currentEntityManager().flush();
+            } catch (RuntimeException e) {
+                return new BatchAttempt(results, index, e);
+            }
+        }
+        return new BatchAttempt(results, null, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R handle(IDataOperation<R> operation) {
         if (operation == null) {
             throw new IllegalArgumentException("Operation cannot be null.");
         }
@@ -31,4 +119,50 @@ public class DataManipulationService {
         return handler.handle(operation);
     }
 
+    private EntityManager currentEntityManager() {
+        return EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactoryProvider.getObject());
+    }
+
+    private void initTransactionTemplate() {
+        if (batchTransactionTemplate != null) {
+            return;
+        }
+        synchronized (this) {
+            if (batchTransactionTemplate == null) {
+                batchTransactionTemplate = new TransactionTemplate(transactionManagerProvider.getObject());
+            }
+        }
+    }
+
+    /**
+     * 一次组提交事务的执行情况
+     *
+     * @param results     失败之前各操作的返回值
+     * @param failedIndex 失败操作在 operations 中的下标, 全部成功时为 null
+     * @param error       失败操作的异常
+     */
+    private record BatchAttempt(List<Object> results, Integer failedIndex, RuntimeException error) {
+    }
+
+    /**
+     * 组提交中单个操作的执行结果
+     *
+     * @param result 操作返回值
+     * @param error  操作失败时的异常, 成功时为 null
+     */
+    public record BatchOutcome(Object result, Throwable error) {
+
+        static BatchOutcome success(Object result) {
+            return new BatchOutcome(result, null);
+        }
+
+        static BatchOutcome failure(Throwable error) {
+            return new BatchOutcome(null, error);
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
 }
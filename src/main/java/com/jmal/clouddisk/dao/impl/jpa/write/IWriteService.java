@@ -1,5 +1,6 @@
 package com.jmal.clouddisk.dao.impl.jpa.write;
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -30,4 +31,13 @@ public interface IWriteService {
      */
     <R> CompletableFuture<R> submit(IDataOperation<R> operation, Priority priority);
 
+    /**
+     * 获取写入队列的运行指标, 同步写入的实现没有队列, 返回空
+     *
+     * @return 写入队列指标
+     */
+    default Optional<WriteQueueMetrics> getMetrics() {
+        return Optional.empty();
+    }
+
 }
@@ -1,9 +1,13 @@
 package com.jmal.clouddisk.dao.impl.jpa.write;
 
+import com.jmal.clouddisk.config.jpa.DataSourceProperties;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -12,6 +16,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * 当数据源是SQLite时激活。
  * 它将写入任务放入一个内存优先级队列，由一个后台单线程消费者串行执行。
  * 高优先级的任务（如用户操作）会比普通优先级的任务（如后台任务）先被执行。
+ * 开启组提交后，消费者一次最多取出 batchSize 个任务（或等待 lingerMs 凑批），
+ * 在同一个事务中执行，某个任务失败时回滚整个事务并重新提交其余任务，事务提交后再逐个完成任务的 Future。
  */
 @Slf4j
 public class QueuedWriteServiceImpl implements IWriteService {
@@ -76,9 +82,28 @@ public class QueuedWriteServiceImpl implements IWriteService {
 
     private final DataManipulationService dataManipulationService;
 
+    /**
+     * 每次组提交最多包含的任务数, 为1时等同于逐个提交
+     */
+    private final int batchSize;
+
+    /**
+     * 凑批时最多等待的时间(纳秒)
+     */
+    private final long lingerNanos;
+
+    private final WriteStats stats = new WriteStats();
+
     public QueuedWriteServiceImpl(DataManipulationService dataManipulationService) {
+        this(dataManipulationService, new DataSourceProperties.WriteQueue());
+    }
+
+    public QueuedWriteServiceImpl(DataManipulationService dataManipulationService, DataSourceProperties.WriteQueue writeQueueConfig) {
         this.dataManipulationService = dataManipulationService;
-        log.debug("写入策略初始化：带优先级的异步队列写入（适用于SQLite）。");
+        boolean groupCommit = Boolean.TRUE.equals(writeQueueConfig.getGroupCommit());
+        this.batchSize = groupCommit ? Math.max(1, writeQueueConfig.getBatchSize()) : 1;
+        this.lingerNanos = groupCommit ? TimeUnit.MILLISECONDS.toNanos(Math.max(0, writeQueueConfig.getLingerMs())) : 0;
+        log.debug("写入策略初始化：带优先级的异步队列写入（适用于SQLite）, batchSize: {}, lingerMs: {}", batchSize, writeQueueConfig.getLingerMs());
         init();
     }
 
@@ -115,7 +140,17 @@ public class QueuedWriteServiceImpl implements IWriteService {
                             break;
                         }
 
-                        processTask(task);
+                        List<WriteTask<?>> batch = new ArrayList<>(Math.min(batchSize, 64));
+                        batch.add(task);
+                        boolean poisoned = fillBatch(batch);
+
+                        processBatch(batch);
+
+                        if (poisoned) {
+                            log.debug("毒丸接收。消费者线程正在优雅地停止。");
+                            drainQueueOnShutdown();
+                            break;
+                        }
 
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
@@ -130,19 +165,101 @@ public class QueuedWriteServiceImpl implements IWriteService {
         });
     }
 
-    private void processTask(WriteTask<?> task) {
+    /**
+     * 凑批: 先取出队列中已有的任务, 不足 batchSize 时最多再等待 lingerNanos
+     *
+     * @param batch 当前批次, 已包含第一个任务
+     * @return 是否在凑批过程中取到了毒丸
+     */
+    private boolean fillBatch(List<WriteTask<?>> batch) throws InterruptedException {
+        if (batchSize <= 1) {
+            return false;
+        }
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            WriteTask<?> next = writeQueue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                next = writeQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+            }
+            if (next == POISON_PILL) {
+                return true;
+            }
+            batch.add(next);
+        }
+        return false;
+    }
+
+    private void processBatch(List<WriteTask<?>> batch) {
+        if (batch.size() == 1) {
+            long start = System.nanoTime();
+            boolean success = processTask(batch.getFirst());
+            stats.record(1, success ? 0 : 1, System.nanoTime() - start);
+            return;
+        }
+        log.debug("组提交 {} 个操作任务", batch.size());
+        List<IDataOperation<?>> operations = new ArrayList<>(batch.size());
+        for (WriteTask<?> task : batch) {
+            operations.add(task.operation);
+        }
+        long start = System.nanoTime();
+        List<DataManipulationService.BatchOutcome> outcomes;
+        try {
+            outcomes = dataManipulationService.executeBatch(operations);
+        } catch (Throwable e) {
+            // 整个事务提交失败, 退回到逐个提交, 保证单个任务不会拖累整个批次
+            log.warn("组提交失败, 退回逐个提交, 批次大小: {}, {}", batch.size(), e.getMessage());
+            int failed = 0;
+            for (WriteTask<?> task : batch) {
+                if (!processTask(task)) {
+                    failed++;
+                }
+            }
+            stats.record(batch.size(), failed, System.nanoTime() - start);
+            return;
+        }
+        long latency = System.nanoTime() - start;
+        int failed = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            WriteTask<?> task = batch.get(i);
+            DataManipulationService.BatchOutcome outcome = outcomes.get(i);
+            if (outcome.isSuccess()) {
+                completeFuture(task.future, outcome.result());
+            } else {
+                failed++;
+                log.error("处理操作写入任务时出错 {}", task.operation.getClass().getName(), outcome.error());
+                task.future.completeExceptionally(outcome.error());
+            }
+        }
+        stats.record(batch.size(), failed, latency);
+    }
+
+    private boolean processTask(WriteTask<?> task) {
         try {
             log.debug("处理操作任务 {}, 优先级: {}", task.operation.getClass().getName(), task.priority);
             Object result = dataManipulationService.execute(task.operation);
             completeFuture(task.future, result);
+            return true;
         } catch (Throwable e) {
             log.error("处理操作写入任务时出错 {}", task.operation.getClass().getName(), e);
             if (task.future != null) {
                 task.future.completeExceptionally(e);
             }
+            return false;
         }
     }
 
+    @Override
+    public Optional<WriteQueueMetrics> getMetrics() {
+        return Optional.of(stats.snapshot(writeQueue.size(), batchSize, TimeUnit.NANOSECONDS.toMillis(lingerNanos)));
+    }
+
     @SuppressWarnings("unchecked")
     private <R> void completeFuture(CompletableFuture<R> future, Object result) {
         future.complete((R) result);
@@ -187,4 +304,51 @@ public class QueuedWriteServiceImpl implements IWriteService {
             Thread.currentThread().interrupt();
         }
     }
+
+    /**
+     * 组提交统计, 只由消费者线程写入
+     */
+    private static class WriteStats {
+        private volatile int lastBatchSize;
+        private volatile int maxBatchSize;
+        private volatile long lastCommitNanos;
+        private volatile long maxCommitNanos;
+        private final AtomicLong totalCommitNanos = new AtomicLong();
+        private final AtomicLong commitCount = new AtomicLong();
+        private final AtomicLong taskCount = new AtomicLong();
+        private final AtomicLong failedTaskCount = new AtomicLong();
+
+        private void record(int batchSize, int failed, long commitNanos) {
+            lastBatchSize = batchSize;
+            maxBatchSize = Math.max(maxBatchSize, batchSize);
+            lastCommitNanos = commitNanos;
+            maxCommitNanos = Math.max(maxCommitNanos, commitNanos);
+            totalCommitNanos.addAndGet(commitNanos);
+            commitCount.incrementAndGet();
+            taskCount.addAndGet(batchSize);
+            failedTaskCount.addAndGet(failed);
+        }
+
+        private WriteQueueMetrics snapshot(int queueDepth, int batchSizeLimit, long lingerMs) {
+            long commits = commitCount.get();
+            long tasks = taskCount.get();
+            return new WriteQueueMetrics(
+                    queueDepth,
+                    batchSizeLimit,
+                    lingerMs,
+                    lastBatchSize,
+                    maxBatchSize,
+                    commits == 0 ? 0 : (double) tasks / commits,
+                    toMillis(lastCommitNanos),
+                    toMillis(maxCommitNanos),
+                    commits == 0 ? 0 : toMillis(totalCommitNanos.get()) / commits,
+                    commits,
+                    tasks,
+                    failedTaskCount.get());
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
 }
@@ -3,6 +3,7 @@ package com.jmal.clouddisk.dao.impl.jpa.write;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 
@@ -22,4 +23,9 @@ public class SafeWriteServiceDecorator implements IWriteService {
                     throw new CompletionException(ex);
                 });
     }
+
+    @Override
+    public Optional<WriteQueueMetrics> getMetrics() {
+        return delegate.getMetrics();
+    }
 }
@@ -0,0 +1,33 @@
+package com.jmal.clouddisk.dao.impl.jpa.write;
+
+import com.jmal.clouddisk.config.Reflective;
+
+/**
+ * 队列写入服务的运行指标快照
+ *
+ * @param queueDepth          当前队列中等待的任务数
+ * @param batchSizeLimit      配置的组提交最大批次
+ * @param lingerMs            配置的凑批等待时间(毫秒)
+ * @param lastBatchSize       最近一次提交的批次大小
+ * @param maxBatchSize        历史最大批次大小
+ * @param avgBatchSize        平均批次大小
+ * @param lastCommitLatencyMs 最近一次提交耗时(毫秒)
+ * @param maxCommitLatencyMs  历史最大提交耗时(毫秒)
+ * @param avgCommitLatencyMs  平均提交耗时(毫秒)
+ * @param commitCount         提交次数
+ * @param taskCount           已处理的任务总数
+ * @param failedTaskCount     失败的任务总数
+ */
+public record WriteQueueMetrics(int queueDepth,
+                                int batchSizeLimit,
+                                long lingerMs,
+                                int lastBatchSize,
+                                int maxBatchSize,
+                                double avgBatchSize,
+                                double lastCommitLatencyMs,
+                                double maxCommitLatencyMs,
+                                double avgCommitLatencyMs,
+                                long commitCount,
+                                long taskCount,
+                                long failedTaskCount) implements Reflective {
+}
@@ -1,5 +1,6 @@
 package com.jmal.clouddisk.dao.impl.jpa.write;
 
+import com.jmal.clouddisk.config.jpa.DataSourceProperties;
 import com.jmal.clouddisk.dao.DataSourceType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -15,10 +16,12 @@ public class WriteServiceConfiguration {
 
     private final Environment environment;
 
+    private final DataSourceProperties dataSourceProperties;
+
     @Bean
     public IWriteService actualWriteService(DataManipulationService dataManipulationService) {
         if (isSqlite()) {
-            return new QueuedWriteServiceImpl(dataManipulationService);
+            return new QueuedWriteServiceImpl(dataManipulationService, dataSourceProperties.getWriteQueue());
         } else {
             return new DirectWriteServiceImpl(dataManipulationService);
         }
@@ -0,0 +1,21 @@
+package com.jmal.clouddisk.dao.impl.jpa.write.etag;
+
+import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
+import com.jmal.clouddisk.dao.impl.jpa.repository.FileEtagRepository;
+import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperationHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+@Component("etagClaimLeaseByIdHandler")
+@RequiredArgsConstructor
+@Conditional(RelationalDataSourceCondition.class)
+public class ClaimLeaseByIdHandler implements IDataOperationHandler<EtagOperation.ClaimLeaseById, Integer> {
+
+    private final FileEtagRepository repo;
+
+    @Override
+    public Integer handle(EtagOperation.ClaimLeaseById op) {
+        return repo.claimLeaseById(op.fileId(), op.now(), op.leaseUntil());
+    }
+}
@@ -1,6 +1,9 @@
 package com.jmal.clouddisk.dao.impl.jpa.write.etag;
 
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
+
 import java.time.Instant;
+import java.util.List;
 
 public final class EtagOperation {
     private EtagOperation() {}
@@ -13,9 +16,13 @@ public final class EtagOperation {
 
     public record SetMarkUpdateByUserIdAndPathAndName(String userId, String path, String name) implements IEtagOperation<Integer>{}
 
-    public record UpdateEtagAndSizeById(String fileId, String etag, long size, int childrenCount) implements IEtagOperation<Integer>{}
+    public record UpdateEtagAndSizeById(String fileId, String etag, Long expectedSize, Integer expectedChildrenCount, long size, int childrenCount) implements IEtagOperation<Integer>{}
 
     public record SetFailedEtagById(String fileId, int attempts, String errorMsg, Boolean needsEtagUpdate) implements IEtagOperation<Void>{}
 
     public record setRetryAtById(String fileId, Instant nextRetryTime, int attempts) implements IEtagOperation<Void>{}
+
+    public record ClaimLeaseById(String fileId, Instant now, Instant leaseUntil) implements IEtagOperation<Integer>{}
+
+    public record IncrementFolderSizeAndCount(List<FileBaseDTO> folders, long deltaSize, int deltaCount) implements IEtagOperation<Integer>{}
 }
@@ -0,0 +1,26 @@
+package com.jmal.clouddisk.dao.impl.jpa.write.etag;
+
+import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
+import com.jmal.clouddisk.dao.impl.jpa.repository.FileEtagRepository;
+import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperationHandler;
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+@Component("etagIncrementFolderSizeAndCountHandler")
+@RequiredArgsConstructor
+@Conditional(RelationalDataSourceCondition.class)
+public class IncrementFolderSizeAndCountHandler implements IDataOperationHandler<EtagOperation.IncrementFolderSizeAndCount, Integer> {
+
+    private final FileEtagRepository repo;
+
+    @Override
+    public Integer handle(EtagOperation.IncrementFolderSizeAndCount op) {
+        int modified = 0;
+        for (FileBaseDTO folder : op.folders()) {
+            modified += repo.incrementFolderSizeAndCount(folder.getUserId(), folder.getPath(), folder.getName(), op.deltaSize(), op.deltaCount());
+        }
+        return modified;
+    }
+}
@@ -18,6 +18,12 @@ public class UpdateEtagAndSizeByIdHandler implements IDataOperationHandler<EtagO
 
     @Override
     public Integer handle(EtagOperation.UpdateEtagAndSizeById op) {
-        return repo.updateEtagAndSizeById(op.fileId(), op.etag(), op.size(), op.childrenCount(), LocalDateTime.now());
+        LocalDateTime now = LocalDateTime.now();
+        Integer updated = repo.updateEtagAndSizeById(op.fileId(), op.etag(), op.expectedSize(), op.expectedChildrenCount(), op.size(), op.childrenCount(), now);
+        if (updated != null && updated > 0) {
+            return updated;
+        }
+        // size 或 childrenCount 已被增量传播修改, 保留当前值, 只更新ETag
+        return repo.updateEtagById(op.fileId(), op.etag(), now);
     }
 }
@@ -73,6 +73,8 @@ public final class FileOperation {
 
     public record SetUpdateDateById(String fileId, LocalDateTime time) implements IFileOperation<Void> {}
 
+    public record SetContentHashById(String fileId, String contentHash, String contentHashEtag) implements IFileOperation<Void> {}
+
     public record UpdateSharePropsById(String fileId, ShareProperties shareProps) implements IFileOperation<Void> {}
 
     public record UnsetTranscodeVideo() implements IFileOperation<Void> {}
@@ -32,6 +32,9 @@ public class UpdateFileByUserIdAndPathAndNameHandler implements IDataOperationHa
             if (file.getUpdateDate() != null) {
                 fileMetadataDO.setUpdateDate(file.getUpdateDate());
             }
+            if (file.getHasContent() != null) {
+                fileMetadataDO.setHasContent(file.getHasContent());
+            }
             FilePropsDO filePropsDO = fileMetadataDO.getProps();
             OtherProperties otherProperties = filePropsDO.getProps();
             if (file.getExif() != null) {
@@ -40,6 +43,18 @@ public class UpdateFileByUserIdAndPathAndNameHandler implements IDataOperationHa
             if (file.getVideo() != null) {
                 otherProperties.setVideo(file.getVideo());
             }
+            if (file.getW() != null) {
+                otherProperties.setW(file.getW());
+            }
+            if (file.getH() != null) {
+                otherProperties.setH(file.getH());
+            }
+            if (file.getMusic() != null) {
+                otherProperties.setMusic(file.getMusic());
+            }
+            if (file.getMediaCover() != null) {
+                otherProperties.setMediaCover(file.getMediaCover());
+            }
             filePropsDO.setProps(otherProperties);
             fileMetadataDO.setProps(filePropsDO);
             repo.save(fileMetadataDO);
@@ -4,6 +4,7 @@ import cn.hutool.core.convert.Convert;
 import cn.hutool.core.util.ReUtil;
 import com.jmal.clouddisk.dao.IEtagDAO;
 import com.jmal.clouddisk.model.file.FileDocument;
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.impl.CommonFileService;
@@ -14,6 +15,7 @@ import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.*;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -123,7 +125,7 @@ public class EtagDAOImpl implements IEtagDAO {
     }
 
     @Override
-    public List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder() {
+    public List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(int limit) {
         Criteria criteria = Criteria.where(Constants.NEEDS_ETAG_UPDATE_FIELD).is(true).and(Constants.IS_FOLDER).is(true);
         Criteria or1 = Criteria.where("retryAt").exists(false);
         Criteria or2 = Criteria.where("retryAt").lte(Instant.now());
@@ -139,7 +141,7 @@ public class EtagDAOImpl implements IEtagDAO {
                         .and(Sort.by(Sort.Direction.ASC, Constants.LAST_ETAG_UPDATE_REQUEST_AT_FIELD))
         );
 
-        LimitOperation limitOperation = Aggregation.limit(16);
+        LimitOperation limitOperation = Aggregation.limit(limit);
 
         // match -> addFields -> sort -> limit
         Aggregation aggregation = Aggregation.newAggregation(
@@ -158,6 +160,23 @@ public class EtagDAOImpl implements IEtagDAO {
         return results.getMappedResults();
     }
 
+    @Override
+    public long countNeedUpdateFolder() {
+        Query query = new Query();
+        query.addCriteria(Criteria.where(Constants.NEEDS_ETAG_UPDATE_FIELD).is(true).and(Constants.IS_FOLDER).is(true));
+        return mongoTemplate.count(query, FileDocument.class);
+    }
+
+    @Override
+    public boolean claimLeaseById(String fileId, Instant leaseUntil) {
+        Criteria or1 = Criteria.where("retryAt").is(null);
+        Criteria or2 = Criteria.where("retryAt").lte(Instant.now());
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(fileId).and(Constants.NEEDS_ETAG_UPDATE_FIELD).is(true).orOperator(or1, or2));
+        Update update = new Update().set("retryAt", leaseUntil);
+        return mongoTemplate.updateFirst(query, update, FileDocument.class).getModifiedCount() > 0;
+    }
+
     @Override
     public void clearMarkUpdateById(String fileId) {
         Query query = new Query();
@@ -185,16 +204,27 @@ public class EtagDAOImpl implements IEtagDAO {
     }
 
     @Override
-    public long updateEtagAndSizeById(String fileId, String etag, long size, int childrenCount) {
+    public long updateEtagAndSizeById(String fileId, String etag, Long expectedSize, Integer expectedChildrenCount, long size, int childrenCount) {
         Query query = new Query();
-        query.addCriteria(Criteria.where("_id").is(fileId));
+        query.addCriteria(Criteria.where("_id").is(fileId)
+                .and(Constants.SIZE).is(expectedSize)
+                .and(Constants.CHILDREN_COUNT).is(expectedChildrenCount));
         Update update = new Update();
         update.set(Constants.ETAG, etag);
         update.set(Constants.SIZE, size);
         update.set(Constants.CHILDREN_COUNT, childrenCount);
         update.set(Constants.UPDATE_DATE, LocalDateTime.now());
         UpdateResult updateResult = mongoTemplate.updateFirst(query, update, FileDocument.class);
-        return updateResult.getModifiedCount();
+        if (updateResult.getMatchedCount() > 0) {
+            return updateResult.getModifiedCount();
+        }
+        // size 或 childrenCount 已被增量传播修改, 保留当前值, 只更新ETag
+        Query idQuery = new Query();
+        idQuery.addCriteria(Criteria.where("_id").is(fileId));
+        Update etagUpdate = new Update();
+        etagUpdate.set(Constants.ETAG, etag);
+        etagUpdate.set(Constants.UPDATE_DATE, LocalDateTime.now());
+        return mongoTemplate.updateFirst(idQuery, etagUpdate, FileDocument.class).getModifiedCount();
     }
 
     @Override
@@ -228,4 +258,46 @@ public class EtagDAOImpl implements IEtagDAO {
                 .set(Constants.ETAG_UPDATE_FAILED_ATTEMPTS_FIELD, attempts);
         mongoTemplate.updateFirst(query, update, FileDocument.class);
     }
+
+    @Override
+    public FileBaseEtagDTO findFileBaseEtagDTOByUserIdAndPathAndName(String userId, String path, String name) {
+        Query query = FileDAOImpl.getQuery(userId, path, name);
+        return mongoTemplate.findOne(query, FileBaseEtagDTO.class, CommonFileService.COLLECTION_NAME);
+    }
+
+    @Override
+    public void incrementFolderSizeAndCount(List<FileBaseDTO> folders, long deltaSize, int deltaCount) {
+        if (folders.isEmpty() || (deltaSize == 0 && deltaCount == 0)) {
+            return;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileDocument.class);
+        for (FileBaseDTO folder : folders) {
+            Query query = FileDAOImpl.getQuery(folder.getUserId(), folder.getPath(), folder.getName());
+            query.addCriteria(Criteria.where(Constants.IS_FOLDER).is(true));
+            Update update = new Update().inc(Constants.SIZE, deltaSize).inc(Constants.CHILDREN_COUNT, deltaCount);
+            bulkOps.updateOne(query, update);
+        }
+        bulkOps.execute();
+    }
+
+    @Override
+    public List<FileBaseEtagDTO> findFolderFileBaseEtagDTOOrderByDepth(int page, int pageSize) {
+        MatchOperation matchOperation = Aggregation.match(Criteria.where(Constants.IS_FOLDER).is(true));
+        AddFieldsOperation addFieldsOperation = Aggregation.addFields()
+                .addField("pathLength")
+                .withValue(StringOperators.StrLenCP.stringLengthOfCP("$" + Constants.PATH_FIELD))
+                .build();
+        SortOperation sortOperation = Aggregation.sort(
+                Sort.by(Sort.Direction.DESC, "pathLength")
+                        .and(Sort.by(Sort.Direction.ASC, "_id"))
+        );
+        Aggregation aggregation = Aggregation.newAggregation(
+                matchOperation,
+                addFieldsOperation,
+                sortOperation,
+                Aggregation.skip((long) page * pageSize),
+                Aggregation.limit(pageSize)
+        );
+        return mongoTemplate.aggregate(aggregation, CommonFileService.COLLECTION_NAME, FileBaseEtagDTO.class).getMappedResults();
+    }
 }
@@ -21,6 +21,7 @@ import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseLuceneDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseOperationPermissionDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseOssPathDTO;
+import com.jmal.clouddisk.model.file.dto.FileContentHashDTO;
 import com.jmal.clouddisk.model.file.dto.UpdateFile;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.IUserService;
@@ -51,6 +52,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HexFormat;
 import java.util.List;
 
 import static com.jmal.clouddisk.service.IUserService.USER_ID;
@@ -65,6 +67,8 @@ public class FileDAOImpl implements IFileDAO {
 
     private final UserLoginHolder userLoginHolder;
 
+    private static final int OBJECT_ID_HEX_LENGTH = 24;
+
     @Override
     public void deleteAllByIdInBatch(List<String> userIdList) {
         Query query = new Query();
@@ -173,6 +177,86 @@ public class FileDAOImpl implements IFileDAO {
         return list.stream().map(FileDocument::getId).toList();
     }
 
+    /**
+     * _id 中既有字符串也有 ObjectId, $gt 只比较同一类型的值, 所以两种类型分别按 $type 分页, 再按十六进制字符串的字典序归并,
+     * 与索引中 id 的字典序一致(ObjectId 按字节排序与其十六进制字符串的字典序相同)。
+     * 直接使用驱动查询, 避免 Spring 把看起来像 ObjectId 的字符串条件转换为 ObjectId
+     */
+    @Override
+    public List<String> findIdsAfter(String afterId, int limit) {
+        Document stringFilter = new Document("$type", "string");
+        if (afterId != null) {
+            stringFilter.append("$gt", afterId);
+        }
+        List<String> stringIds = findIds(stringFilter, limit);
+        Document objectIdFilter = objectIdAfter(afterId);
+        List<String> objectIds = objectIdFilter == null ? List.of() : findIds(objectIdFilter, limit);
+        List<String> ids = new ArrayList<>(Math.min(limit, stringIds.size() + objectIds.size()));
+        int i = 0;
+        int j = 0;
+        while (ids.size() < limit && (i < stringIds.size() || j < objectIds.size())) {
+            if (j >= objectIds.size() || (i < stringIds.size() && stringIds.get(i).compareTo(objectIds.get(j)) < 0)) {
+                ids.add(stringIds.get(i++));
+            } else {
+                ids.add(objectIds.get(j++));
+            }
+        }
+        return ids;
+    }
+
+    private List<String> findIds(Document idFilter, int limit) {
+        List<String> ids = new ArrayList<>(limit);
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(COLLECTION_NAME)
+                .find(new Document("_id", idFilter))
+                .projection(new Document("_id", 1))
+                .sort(new Document("_id", 1))
+                .limit(limit)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Object id = cursor.next().get("_id");
+                ids.add(id instanceof ObjectId objectId ? objectId.toHexString() : id.toString());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 十六进制字符串按字典序大于 afterId 的 ObjectId 条件, 没有满足条件的 ObjectId 时返回null
+     */
+    private static Document objectIdAfter(String afterId) {
+        Document filter = new Document("$type", "objectId");
+        if (afterId == null) {
+            return filter;
+        }
+        // afterId 中最长的十六进制小写前缀
+        int hexLength = 0;
+        int maxLength = Math.min(afterId.length(), OBJECT_ID_HEX_LENGTH);
+        while (hexLength < maxLength && HexFormat.isHexDigit(afterId.charAt(hexLength)) && !Character.isUpperCase(afterId.charAt(hexLength))) {
+            hexLength++;
+        }
+        String prefix = afterId.substring(0, hexLength);
+        if (hexLength == OBJECT_ID_HEX_LENGTH) {
+            return filter.append("$gt", new ObjectId(prefix));
+        }
+        if (hexLength == afterId.length()) {
+            // 以 afterId 开头的 ObjectId 都比 afterId 大
+            return filter.append("$gte", new ObjectId(padHex(prefix, '0')));
+        }
+        char c = afterId.charAt(hexLength);
+        if (c < '0') {
+            return filter.append("$gte", new ObjectId(padHex(prefix, '0')));
+        }
+        if (c < 'a') {
+            return filter.append("$gte", new ObjectId(padHex(prefix + 'a', '0')));
+        }
+        // 字符大于 'f', 只有前缀更大的 ObjectId 满足条件
+        return hexLength == 0 ? null : filter.append("$gt", new ObjectId(padHex(prefix, 'f')));
+    }
+
+    private static String padHex(String prefix, char c) {
+        return prefix + String.valueOf(c).repeat(OBJECT_ID_HEX_LENGTH - prefix.length());
+    }
+
     @Override
     public List<FileDocument> findAllAndRemoveByUserIdAndIdPrefix(String userId, String idPrefix) {
         Query query = new Query();
@@ -356,6 +440,9 @@ public class FileDAOImpl implements IFileDAO {
         update.set(Constants.SUFFIX, suffix);
         update.set(Constants.CONTENT_TYPE, fileContentType);
         update.set(Constants.UPDATE_DATE, updateTime);
+        // 文件内容已变化
+        update.unset(Constants.CONTENT_HASH);
+        update.unset(Constants.CONTENT_HASH_ETAG);
         Query query = new Query();
         query.addCriteria(Criteria.where("_id").is(id));
         UpdateResult updateResult = mongoTemplate.upsert(query, update, FileDocument.class);
@@ -565,6 +652,18 @@ public class FileDAOImpl implements IFileDAO {
         return mongoTemplate.find(query, FileBaseAllDTO.class, CommonFileService.COLLECTION_NAME);
     }
 
+    @Override
+    public List<FileBaseAllDTO> findSyncedFileBaseAllDTOByUserIdAndPath(String userId, String path) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where(IUserService.USER_ID).is(userId));
+        query.addCriteria(Criteria.where(Constants.PATH_FIELD).is(path));
+        // 与 setDelTag 的范围一致
+        query.addCriteria(Criteria.where("alonePage").exists(false));
+        query.addCriteria(Criteria.where("release").exists(false));
+        query.addCriteria(Criteria.where(Constants.MOUNT_FILE_ID_FIELD).exists(false));
+        return mongoTemplate.find(query, FileBaseAllDTO.class, CommonFileService.COLLECTION_NAME);
+    }
+
     @Override
     public void removeTagsByTagIdIn(List<String> removeTagIds) {
         Query query = new Query();
@@ -676,6 +775,18 @@ public class FileDAOImpl implements IFileDAO {
         if (updateFile.getUpdateDate() != null) {
             update.set(Constants.UPDATE_DATE, updateFile.getUpdateDate());
         }
+        if (updateFile.getW() != null) {
+            update.set("w", updateFile.getW());
+        }
+        if (updateFile.getH() != null) {
+            update.set("h", updateFile.getH());
+        }
+        if (updateFile.getMusic() != null) {
+            update.set("music", updateFile.getMusic());
+        }
+        if (updateFile.getMediaCover() != null) {
+            update.set("mediaCover", updateFile.getMediaCover());
+        }
         mongoTemplate.updateFirst(query, update, FileDocument.class);
     }
 
@@ -700,6 +811,35 @@ public class FileDAOImpl implements IFileDAO {
         mongoTemplate.updateFirst(query, update, FileDocument.class);
     }
 
+    @Override
+    public void setContentHashById(String fileId, String contentHash, String contentHashEtag) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(fileId));
+        Update update = new Update();
+        if (contentHash == null) {
+            update.unset(Constants.CONTENT_HASH);
+            update.unset(Constants.CONTENT_HASH_ETAG);
+        } else {
+            update.set(Constants.CONTENT_HASH, contentHash);
+            update.set(Constants.CONTENT_HASH_ETAG, contentHashEtag);
+        }
+        mongoTemplate.updateFirst(query, update, FileDocument.class);
+    }
+
+    @Override
+    public List<FileContentHashDTO> findFileBaseDTOByContentHash(String userId, String contentHash, long size, int limit) {
+        Query query = new Query();
+        if (userId != null) {
+            query.addCriteria(Criteria.where(USER_ID).is(userId));
+        }
+        query.addCriteria(Criteria.where(Constants.CONTENT_HASH).is(contentHash));
+        query.addCriteria(Criteria.where(Constants.SIZE).is(size));
+        query.addCriteria(Criteria.where(Constants.MOUNT_FILE_ID_FIELD).exists(false));
+        query.fields().include(USER_ID, Constants.PATH_FIELD, Constants.FILENAME_FIELD, Constants.CONTENT_HASH_ETAG);
+        query.limit(limit);
+        return mongoTemplate.find(query, FileContentHashDTO.class, CommonFileService.COLLECTION_NAME);
+    }
+
     @Override
     public List<FileDocument> findByPath(String userId, String path) {
         Query query = new Query();
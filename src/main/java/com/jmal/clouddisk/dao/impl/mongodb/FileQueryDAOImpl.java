@@ -10,11 +10,13 @@ import com.jmal.clouddisk.model.UploadApiParamDTO;
 import com.jmal.clouddisk.model.file.FileDocument;
 import com.jmal.clouddisk.model.file.FileIntroVO;
 import com.jmal.clouddisk.model.file.dto.FileBaseMountDTO;
+import com.jmal.clouddisk.model.file.dto.FileListCursor;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.impl.CommonFileService;
 import com.jmal.clouddisk.service.impl.FileSortService;
 import com.jmal.clouddisk.util.TimeUntils;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -118,6 +120,61 @@ public class FileQueryDAOImpl implements IFileQueryDAO {
         return sortFileIntroVOList(fileIdList, list);
     }
 
+    @Override
+    public List<FileIntroVO> findFileIntroVOByCursor(String userId, String path, FileListCursor cursor, int limit) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where(USER_ID).is(userId));
+        query.addCriteria(Criteria.where("path").is(path));
+        String sortField = cursor.sortProp();
+        if (!cursor.firstPage()) {
+            // (isFolder, sortKey, _id) > cursor
+            Object id = ObjectId.isValid(cursor.id()) ? new ObjectId(cursor.id()) : cursor.id();
+            Criteria afterSortKey = afterSortKey(cursor, sortField, id);
+            if (cursor.isFolder()) {
+                query.addCriteria(new Criteria().orOperator(Criteria.where(Constants.IS_FOLDER).is(false),
+                        new Criteria().andOperator(Criteria.where(Constants.IS_FOLDER).is(true), afterSortKey)));
+            } else {
+                query.addCriteria(new Criteria().andOperator(Criteria.where(Constants.IS_FOLDER).is(false), afterSortKey));
+            }
+        }
+        query.with(Sort.by(Sort.Direction.DESC, Constants.IS_FOLDER)
+                .and(Sort.by(cursor.desc() ? Sort.Direction.DESC : Sort.Direction.ASC, sortField))
+                .and(Sort.by(Sort.Direction.ASC, "_id")));
+        query.limit(limit);
+        query.fields().exclude(Constants.CONTENT).exclude("music.coverBase64").exclude(Constants.CONTENT_TEXT);
+        List<FileIntroVO> list = mongoTemplate.find(query, FileIntroVO.class, CommonFileService.COLLECTION_NAME);
+        return sortFileIntroVOList(null, list);
+    }
+
+    /**
+     * 排序字段在游标之后的条件
+     * 排序时缺少该字段(或为null)的文档小于任何值: 升序排在最前, 倒序排在最后; 而 $gt/$lt 不匹配缺少字段的文档, 需要单独处理
+     */
+    private static Criteria afterSortKey(FileListCursor cursor, String sortField, Object id) {
+        if (cursor.sortValue() == null) {
+            Criteria nullAfterId = new Criteria().andOperator(Criteria.where(sortField).is(null), Criteria.where("_id").gt(id));
+            return cursor.desc() ? nullAfterId : new Criteria().orOperator(Criteria.where(sortField).ne(null), nullAfterId);
+        }
+        Object sortValue = switch (sortField) {
+            case FileListCursor.SORT_PROP_SIZE -> cursor.sizeValue();
+            case FileListCursor.SORT_PROP_UPDATE_DATE -> cursor.updateDateValue();
+            default -> cursor.sortValue();
+        };
+        Criteria sortKeyAfter = cursor.desc()
+                ? new Criteria().orOperator(Criteria.where(sortField).lt(sortValue), Criteria.where(sortField).is(null))
+                : Criteria.where(sortField).gt(sortValue);
+        return new Criteria().orOperator(sortKeyAfter,
+                new Criteria().andOperator(Criteria.where(sortField).is(sortValue), Criteria.where("_id").gt(id)));
+    }
+
+    @Override
+    public long countByUserIdAndPath(String userId, String path) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where(USER_ID).is(userId));
+        query.addCriteria(Criteria.where("path").is(path));
+        return mongoTemplate.count(query, CommonFileService.COLLECTION_NAME);
+    }
+
     private List<FileIntroVO> sortFileIntroVOList(List<String> sortIdList, List<FileIntroVO> list) {
         long now = System.currentTimeMillis();
         if (sortIdList == null || sortIdList.isEmpty()) {
@@ -34,6 +34,11 @@ public class LogDAOImpl implements ILogDAO {
         mongoTemplate.save(logOperation);
     }
 
+    @Override
+    public void saveAll(List<LogOperation> logOperations) {
+        mongoTemplate.insert(logOperations, LogOperation.class);
+    }
+
     @Override
     public Page<LogOperation> findAllByQuery(LogOperationDTO logOperationDTO, String currentUsername, String currentUserId, boolean isAdministrators) {
         Query query = getQuery(logOperationDTO, currentUsername, currentUserId, isAdministrators);
@@ -6,6 +6,7 @@ import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.URLUtil;
 import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.media.DerivedImageCache;
 import com.jmal.clouddisk.media.ImageMagickProcessor;
 import com.jmal.clouddisk.model.file.FileDocument;
 import com.jmal.clouddisk.oss.web.WebOssService;
@@ -87,6 +88,8 @@ public class FileInterceptor implements HandlerInterceptor {
 
     private final WebOssService webOssService;
 
+    private final DerivedImageCache derivedImageCache;
+
     @Override
     public boolean preHandle(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response, @NotNull Object handler) throws IOException {
         if (internalValid(request, response)) return true;
@@ -125,9 +128,10 @@ public class FileInterceptor implements HandlerInterceptor {
         File file = getFileByRequest(request);
         if (!file.exists() || !file.isFile() || !file.canRead()) {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
-        responseImageFileHeader(response, file.getName());
-        ImageMagickProcessor.toWebp(file, response.getOutputStream());
+        Path cacheFile = derivedImageCache.getOrCreate(file, Constants.SUFFIX_WEBP, null, null, null, outputStream -> ImageMagickProcessor.toWebp(file, outputStream));
+        responseDerivedImage(request, response, file.getName(), cacheFile);
     }
 
     private void setHeader(HttpServletRequest request, HttpServletResponse response) {
@@ -304,9 +308,16 @@ public class FileInterceptor implements HandlerInterceptor {
 
     private void webp(HttpServletRequest request, HttpServletResponse response) throws IOException {
         File file = getFileByRequest(request);
-        FileInputStream fileInputStream = new FileInputStream(file);
-        responseImageFileHeader(response, file.getName());
-        ImageMagickProcessor.convertToWebp(fileInputStream, response.getOutputStream());
+        if (!file.isFile()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path cacheFile = derivedImageCache.getOrCreate(file, Constants.SUFFIX_WEBP, null, null, null, outputStream -> {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                ImageMagickProcessor.convertToWebp(inputStream, outputStream);
+            }
+        });
+        responseDerivedImage(request, response, file.getName(), cacheFile);
     }
 
     private void thumbnail(HttpServletRequest request, HttpServletResponse response) throws FileNotFoundException {
@@ -365,8 +376,28 @@ public class FileInterceptor implements HandlerInterceptor {
         String q = request.getParameter("q");
         String w = request.getParameter("w");
         String h = request.getParameter("h");
-        responseImageFileHeader(response, file.getName());
-        ImageMagickProcessor.cropImage(new FileInputStream(file), q, w, h, response.getOutputStream());
+        if (!file.isFile()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path cacheFile = derivedImageCache.getOrCreate(file, "png", w, h, q, outputStream -> {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                ImageMagickProcessor.cropImage(inputStream, q, w, h, outputStream);
+            }
+        });
+        responseDerivedImage(request, response, file.getName(), cacheFile);
+    }
+
+    /**
+     * 从磁盘缓存中输出派生图片
+     */
+    private void responseDerivedImage(HttpServletRequest request, HttpServletResponse response, String fileName, Path cacheFile) throws IOException {
+        if (cacheFile == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        responseImageFileHeader(response, fileName);
+        derivedImageCache.transferTo(cacheFile, request, response);
     }
 
     private File getFileByRequest(HttpServletRequest request) {
@@ -185,7 +185,7 @@ public class FileListener implements DirectoryChangeListener {
             rescanRequired.set(false); // 重置标志
             try {
                 // 异步执行，并在完成后重置扫描状态
-                rebuildIndexTaskService.doSync(null, null, false);
+                rebuildIndexTaskService.doSync(null, null, false, true);
                 rebuildIndexTaskService.onSyncComplete(() -> {
                     log.info("增量扫描完成成功。");
                     scanningInProgress.set(false);
@@ -0,0 +1,131 @@
+package com.jmal.clouddisk.lucene;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+import java.io.IOException;
+
+/**
+ * 分段 Tokenizer
+ * 从 Reader 中依次读取固定大小的片段, 每个片段作为一个 token 交给后续的 NGramTokenFilter,
+ * 相邻片段之间保留少量重叠字符, 防止边界处的子串无法命中。
+ * 读取内容的总长度(按UTF-8字节计算)超过上限后停止, 内存中只保留一个片段
+ */
+public final class ChunkTokenizer extends Tokenizer {
+
+    /**
+     * 每个片段的字符数
+     */
+    public static final int CHUNK_SIZE_CHARS = 1024;
+
+    /**
+     * 片段间的重叠字符数
+     */
+    public static final int CHUNK_OVERLAP_CHARS = 7;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+
+    private final long maxBytes;
+
+    private final char[] chunk = new char[CHUNK_SIZE_CHARS];
+
+    private int chunkLength;
+
+    /**
+     * 当前片段第一个字符的偏移量
+     */
+    private int chunkStart;
+
+    private long consumedBytes;
+
+    private boolean exhausted;
+
+    private boolean first;
+
+    /**
+     * @param maxBytes 最多读取的内容长度(按UTF-8字节计算)
+     */
+    public ChunkTokenizer(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        clearAttributes();
+        while (!exhausted) {
+            int keep = 0;
+            if (!first) {
+                keep = Math.min(CHUNK_OVERLAP_CHARS, chunkLength);
+                System.arraycopy(chunk, chunkLength - keep, chunk, 0, keep);
+                chunkStart += chunkLength - keep;
+            }
+            first = false;
+            int read = fill(keep);
+            chunkLength = keep + read;
+            if (read == 0) {
+                exhausted = true;
+                return false;
+            }
+            if (isBlank()) {
+                continue;
+            }
+            termAtt.copyBuffer(chunk, 0, chunkLength);
+            offsetAtt.setOffset(correctOffset(chunkStart), correctOffset(chunkStart + chunkLength));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 从 from 开始填充片段, 直到片段已满、读取结束或达到长度上限
+     *
+     * @return 读取的字符数
+     */
+    private int fill(int from) throws IOException {
+        int pos = from;
+        while (pos < CHUNK_SIZE_CHARS && !exhausted) {
+            int n = input.read(chunk, pos, CHUNK_SIZE_CHARS - pos);
+            if (n < 0) {
+                exhausted = true;
+                break;
+            }
+            int end = pos + n;
+            for (; pos < end; pos++) {
+                consumedBytes += ContentSpillBuffer.utf8Length(chunk[pos]);
+                if (consumedBytes > maxBytes) {
+                    exhausted = true;
+                    break;
+                }
+            }
+        }
+        return pos - from;
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < chunkLength; i++) {
+            if (!ContentSpillBuffer.isBlankChar(chunk[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        int finalOffset = correctOffset(chunkStart + chunkLength);
+        offsetAtt.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        chunkLength = 0;
+        chunkStart = 0;
+        consumedBytes = 0;
+        exhausted = false;
+        first = true;
+    }
+}
@@ -0,0 +1,137 @@
+package com.jmal.clouddisk.lucene;
+
+import cn.hutool.core.io.file.PathUtil;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 文件内容缓冲区
+ * 提取的文本先写入内存, 超过阈值后转存到临时文件, 建立索引时以 Reader 的形式多次读取,
+ * 无论文件多大, 堆内存中最多只保留阈值大小的内容
+ */
+public class ContentSpillBuffer extends Writer {
+
+    /**
+     * 内存中最多保留的字符数, 超过后转存到临时文件
+     */
+    private static final int MEMORY_THRESHOLD_CHARS = 512 * 1024;
+
+    private final Path spillDir;
+
+    private StringBuilder memory = new StringBuilder();
+
+    private Path spillFile;
+
+    private Writer fileWriter;
+
+    /**
+     * 按UTF-8编码计算的内容长度
+     */
+    private long utf8Length;
+
+    /**
+     * 是否包含非空白字符
+     */
+    private boolean hasText;
+
+    public ContentSpillBuffer(Path spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            char c = cbuf[i];
+            utf8Length += utf8Length(c);
+            if (!hasText && !isBlankChar(c)) {
+                hasText = true;
+            }
+        }
+        if (fileWriter != null) {
+            fileWriter.write(cbuf, off, len);
+            return;
+        }
+        memory.append(cbuf, off, len);
+        if (memory.length() > MEMORY_THRESHOLD_CHARS) {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        Files.createDirectories(spillDir);
+        spillFile = Files.createTempFile(spillDir, "content-", ".txt");
+        fileWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8);
+        fileWriter.append(memory);
+        memory = null;
+    }
+
+    /**
+     * 是否没有有效内容
+     */
+    public boolean isBlank() {
+        return !hasText;
+    }
+
+    /**
+     * 按UTF-8编码计算的内容长度
+     */
+    public long getUtf8Length() {
+        return utf8Length;
+    }
+
+    /**
+     * 打开一个新的 Reader, 从头读取已写入的内容, 可以多次调用
+     */
+    public Reader openReader() throws IOException {
+        if (fileWriter == null) {
+            return new StringReader(memory.toString());
+        }
+        fileWriter.flush();
+        return Files.newBufferedReader(spillFile, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileWriter != null) {
+            fileWriter.flush();
+        }
+    }
+
+    /**
+     * 关闭并删除临时文件
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (fileWriter != null) {
+                fileWriter.close();
+            }
+        } finally {
+            if (spillFile != null) {
+                PathUtil.del(spillFile);
+            }
+            memory = null;
+        }
+    }
+
+    static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800 || Character.isSurrogate(c)) {
+            // 代理对两个字符共4个字节
+            return 2;
+        }
+        return 3;
+    }
+
+    static boolean isBlankChar(char c) {
+        return Character.isWhitespace(c) || Character.isSpaceChar(c) || c == '\uFEFF' || c == '\u202A' || c == '\u0000';
+    }
+}
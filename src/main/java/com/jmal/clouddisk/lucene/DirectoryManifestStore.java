@@ -0,0 +1,143 @@
+package com.jmal.clouddisk.lucene;
+
+import cn.hutool.core.io.file.PathUtil;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.jmal.clouddisk.config.FileProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 目录清单
+ * 记录每个目录上次扫描时的修改时间和每个子项的摘要(名称、大小、修改时间), 增量扫描时清单一致的目录不再访问数据库,
+ * 不一致时通过比较摘要得到新增、修改的子项。清单保存在 db/cache/dirManifest 下, key 为相对于根目录的路径
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DirectoryManifestStore {
+
+    private final FileProperties fileProperties;
+
+    private static final String CACHE_DIR = "dirManifest";
+
+    private static final String MANIFEST_FILE = "manifest.bin";
+
+    /**
+     * 文件格式版本, 格式或摘要算法变化后递增, 旧的清单会被丢弃
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final HashFunction ENTRY_HASH = Hashing.murmur3_128();
+
+    /**
+     * 目录清单
+     *
+     * @param mtime       目录的修改时间
+     * @param entryHashes 子项摘要, 升序
+     */
+    public record Manifest(long mtime, long[] entryHashes) {
+
+        public int entryCount() {
+            return entryHashes.length;
+        }
+
+        public boolean contains(long entryHash) {
+            return Arrays.binarySearch(entryHashes, entryHash) >= 0;
+        }
+
+        public boolean sameAs(Manifest other) {
+            return other != null && mtime == other.mtime && Arrays.equals(entryHashes, other.entryHashes);
+        }
+    }
+
+    /**
+     * 计算子项摘要, 子目录只包含名称, 子目录内部的变化由子目录自己的清单记录
+     */
+    public static long entryHash(String name, boolean isDirectory, long size, long mtime) {
+        if (isDirectory) {
+            return ENTRY_HASH.newHasher().putString(name, StandardCharsets.UTF_8).putBoolean(true).hash().asLong();
+        }
+        return ENTRY_HASH.newHasher().putString(name, StandardCharsets.UTF_8).putBoolean(false)
+                .putLong(size).putLong(mtime).hash().asLong();
+    }
+
+    /**
+     * 加载清单
+     *
+     * @return key: 相对于根目录的路径, value: 清单; 清单不存在或无法读取时返回空Map
+     */
+    public Map<String, Manifest> load() {
+        Path manifestFile = getManifestFile();
+        Map<String, Manifest> manifests = new HashMap<>();
+        if (!Files.isRegularFile(manifestFile)) {
+            return manifests;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifestFile)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return manifests;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String dir = in.readUTF();
+                long mtime = in.readLong();
+                long[] entryHashes = new long[in.readInt()];
+                for (int j = 0; j < entryHashes.length; j++) {
+                    entryHashes[j] = in.readLong();
+                }
+                manifests.put(dir, new Manifest(mtime, entryHashes));
+            }
+        } catch (IOException e) {
+            log.warn("读取目录清单失败, 将全量扫描: {}", e.getMessage());
+            manifests.clear();
+        }
+        return manifests;
+    }
+
+    /**
+     * 保存清单, 先写入临时文件再替换
+     */
+    public void save(Map<String, Manifest> manifests) {
+        Path manifestFile = getManifestFile();
+        Path tmpFile = manifestFile.resolveSibling(MANIFEST_FILE + ".tmp");
+        try {
+            PathUtil.mkParentDirs(manifestFile);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(manifests.size());
+                for (Map.Entry<String, Manifest> entry : manifests.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().mtime());
+                    long[] entryHashes = entry.getValue().entryHashes();
+                    out.writeInt(entryHashes.length);
+                    for (long entryHash : entryHashes) {
+                        out.writeLong(entryHash);
+                    }
+                }
+            }
+            Files.move(tmpFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            PathUtil.del(tmpFile);
+            log.warn("保存目录清单失败: {}", e.getMessage());
+        }
+    }
+
+    private Path getManifestFile() {
+        return Paths.get(fileProperties.getRootDir(), fileProperties.getJmalcloudDBDir(), "cache", CACHE_DIR, MANIFEST_FILE);
+    }
+}
@@ -3,9 +3,14 @@ package com.jmal.clouddisk.lucene;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.ObjectUtil;
+import com.google.common.collect.Lists;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.IEtagDAO;
+import com.jmal.clouddisk.dao.IFolderSizeDAO;
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO;
 import com.jmal.clouddisk.service.impl.CommonUserService;
 import com.jmal.clouddisk.util.CaffeineUtil;
@@ -19,6 +24,7 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
@@ -26,10 +32,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
-import java.util.Comparator;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * EtagService
@@ -51,16 +59,34 @@ public class EtagService {
 
     private final ApplicationEventPublisher eventPublisher;
 
+    private final IFolderSizeDAO folderSizeDAO;
+
+    private final TaskProgressService taskProgressService;
+
     private static final String EMPTY_FOLDER_ETAG_BASE_STRING = "EMPTY_FOLDER_REPRESENTATION_MONGO_V2";
     private static final int MAX_ETAG_UPDATE_ATTEMPTS = 5; // 最大失败重试次数
+    private static final int VERIFY_FOLDER_BATCH_SIZE = 500;
+    private static final int ETAG_BATCH_SIZE_PER_WORKER = 16; // 每个worker每批处理的文件夹数量
+    private static final long ETAG_LEASE_MILLIS = 120_000L; // 处理文件夹的租约时长
+    private static final long ETAG_PROGRESS_INTERVAL_MILLIS = 2000L; // 推送积压进度的最小间隔
+    private static final String ETAG_TASK_ID = "folderEtagBacklog";
 
     private final AtomicBoolean processingScheduled = new AtomicBoolean(false);
 
+    private final AtomicBoolean verifyingFolderSize = new AtomicBoolean(false);
+
     /**
-     * 处理文件夹Etag的线程池
+     * 调度文件夹Etag处理的线程池(单线程)
      */
     private ExecutorService executorMarkedFoldersService;
 
+    /**
+     * 并行计算文件夹Etag的线程池
+     */
+    private ExecutorService etagWorkerPool;
+
+    private int etagWorkerThreads;
+
     @EventListener(ContextRefreshedEvent.class)
     public void onApplicationReady(ContextRefreshedEvent event) {
         if (event.getApplicationContext().getParent() != null) {
@@ -71,7 +97,11 @@ public class EtagService {
 
     public void init() {
         if (executorMarkedFoldersService == null) {
-            executorMarkedFoldersService = ThreadUtil.newFixedExecutor(1, 1, "EtagWorker-", false);
+            executorMarkedFoldersService = ThreadUtil.newFixedExecutor(1, 1, "EtagDispatcher-", false);
+        }
+        if (etagWorkerPool == null) {
+            etagWorkerThreads = Math.max(1, ObjectUtil.defaultIfNull(fileProperties.getEtagWorkerThreads(), 1));
+            etagWorkerPool = ThreadUtil.newFixedExecutor(etagWorkerThreads, etagWorkerThreads * ETAG_BATCH_SIZE_PER_WORKER, "EtagWorker-", false);
         }
         Completable.fromAction(() -> {
                     long countOfFoldersWithoutEtag = etagDAO.countFoldersWithoutEtag();
@@ -303,79 +333,161 @@ public class EtagService {
 
     /**
      * 实际处理标记为需要更新ETag的文件夹的循环。
-     * 此方法由 ensureProcessingMarkedFolders 提交的任务在 EtagWorker 线程中执行。
+     * 此方法由 ensureProcessingMarkedFolders 提交的任务在 EtagDispatcher 线程中执行。
+     * 每批文件夹按目录深度分层(最深的在前), 同一层内的文件夹之间不存在父子关系, 每层平均分给 EtagWorker 线程池并行处理,
+     * 同一个文件夹不会被两个线程同时处理(claimLeaseById)。
+     * 父文件夹的标记在一层处理完之后去重提交, 这样同一批次中父文件夹只会在其所有子文件夹处理完之后计算一次。
      *
      * @param workerId 当前worker的唯一标识
      */
     private void processMarkedFoldersLoop(String workerId) {
+        long startTime = System.currentTimeMillis();
+        long lastReportTime = startTime;
+        long processedCount = 0;
+        boolean reported = false;
         boolean run = true;
-        while (run && !Thread.currentThread().isInterrupted()) {
-            List<FileBaseEtagDTO> tasks = etagDAO.findFileBaseEtagDTOByNeedUpdateFolder();
-            if (tasks.isEmpty()) {
-                run = false;
-                continue;
-            }
-            log.debug("[Worker {}] Found {} folders marked for ETag update. Processing...", workerId, tasks.size());
-
-            for (FileBaseEtagDTO folderDoc : tasks) {
-                if (Thread.currentThread().isInterrupted()) {
-                    log.warn("[Worker {}] ETag processing loop was interrupted.", workerId);
-                    run = false; // 尊重中断信号
-                    break;
+        try {
+            while (run && !Thread.currentThread().isInterrupted()) {
+                List<FileBaseEtagDTO> tasks = etagDAO.findFileBaseEtagDTOByNeedUpdateFolder(etagWorkerThreads * ETAG_BATCH_SIZE_PER_WORKER);
+                if (tasks.isEmpty()) {
+                    run = false;
+                    continue;
                 }
-
-                String folderPath = folderDoc.getPath();
-                String docId = folderDoc.getId();
-                String userId = folderDoc.getUserId();
-                log.debug("[Worker {}] Processing ETag for folder: {} (ID: {})", workerId, folderPath, docId);
-
-                try {
-                    EtagCalculationResult result = calculateAndUpdateSingleFolderEtagInternal(folderDoc, workerId);
-
-                    switch (result) {
-                        case UPDATED:
-                            // 成功更新，清除标记并标记父文件夹
-                            etagDAO.clearMarkUpdateById(docId);
-                            log.debug("[Worker {}] Cleared ETag update mark for folder: {}", workerId, folderPath + folderDoc.getName());
-                            markFolderForEtagUpdate(userId, folderPath);
-                            break;
-                        case NOT_CHANGED:
-                            // ETag未变，只需清除标记
-                            etagDAO.clearMarkUpdateById(docId);
-                            log.debug("[Worker {}] Cleared ETag update mark for folder: {} as ETag was unchanged.", workerId, folderPath + folderDoc.getName());
-                            break;
-                        case SKIPPED_CHILD_NULL:
-                            // 计算失败，设置一个短暂的延迟后重试
-                            int attempts = etagDAO.findEtagUpdateFailedAttemptsById(docId); // 获取已失败次数
-                            // 简单的线性退避，每次延迟 3 秒 * 失败次数
-                            long delayMillis = 3000L * (attempts + 1);
-                            Instant nextRetryTime = Instant.now().plusMillis(delayMillis);
-                            etagDAO.setRetryAtById(docId, nextRetryTime, attempts + 1);
-                            if (attempts > 10) {
-                                log.warn("[Worker {}] ETag calculation for folder {} skipped due to null child ETag. Will retry after {} (attempt {}).", workerId, folderPath + folderDoc.getName(), nextRetryTime, attempts + 1);
+                log.debug("[Worker {}] Found {} folders marked for ETag update. Processing...", workerId, tasks.size());
+
+                // 按目录深度分层, 子文件夹一定比父文件夹深一层
+                Map<Integer, List<FileBaseEtagDTO>> layers = tasks.stream()
+                        .collect(Collectors.groupingBy(folderDoc -> getDepth(folderDoc.getPath()),
+                                () -> new TreeMap<>(Comparator.reverseOrder()),
+                                Collectors.toList()));
+
+                for (List<FileBaseEtagDTO> layer : layers.values()) {
+                    Set<ParentFolder> parentsToMark = ConcurrentHashMap.newKeySet();
+                    int chunkSize = (layer.size() + etagWorkerThreads - 1) / etagWorkerThreads;
+                    List<Callable<Void>> chunkTasks = new ArrayList<>(etagWorkerThreads);
+                    for (List<FileBaseEtagDTO> chunk : Lists.partition(layer, chunkSize)) {
+                        chunkTasks.add(() -> {
+                            String etagWorkerId = workerId + "/" + Thread.currentThread().getName();
+                            for (FileBaseEtagDTO folderDoc : chunk) {
+                                if (Thread.currentThread().isInterrupted()) {
+                                    break;
+                                }
+                                processMarkedFolder(folderDoc, etagWorkerId, parentsToMark);
                             }
-                            if (attempts >= 50) {
-                                // 对目录 folderPath + folderDoc.getName() 重建索引
-                                String username = userService.getUserNameById(userId);
-                                String path = Paths.get(fileProperties.getRootDir(), username, folderPath + folderDoc.getName()).toString();
-                                eventPublisher.publishEvent(new RebuildIndexEvent(this, username, path));
-                            }
-                            break;
-                        case ERROR:
-                            // 出现预料之外的错误
-                            handleProcessingError(docId, folderPath, new RuntimeException("Calculation returned ERROR state"), workerId);
-                            break;
+                            return null;
+                        });
+                    }
+                    etagWorkerPool.invokeAll(chunkTasks);
+                    for (ParentFolder parent : parentsToMark) {
+                        markFolderForEtagUpdate(parent.userId(), parent.folderPath());
                     }
-                } catch (Exception e) {
-                    log.error("[Worker {}] Critical error processing ETag for folder {}: {}", workerId, folderPath, e.getMessage(), e);
-                    handleProcessingError(docId, folderPath, e, workerId);
+                }
+                processedCount += tasks.size();
+                log.debug("[Worker {}] Finished processing batch of {} folders.", workerId, tasks.size());
+
+                long now = System.currentTimeMillis();
+                if (now - lastReportTime >= ETAG_PROGRESS_INTERVAL_MILLIS) {
+                    lastReportTime = now;
+                    reported = true;
+                    reportBacklogProgress(processedCount, now - startTime);
                 }
             }
-            log.debug("[Worker {}] Finished processing batch of {} folders.", workerId, tasks.size());
+        } catch (InterruptedException e) {
+            log.warn("[Worker {}] ETag processing loop was interrupted.", workerId);
+            Thread.currentThread().interrupt();
+        } finally {
+            if (reported) {
+                taskProgressService.removeSystemTaskProgress(ETAG_TASK_ID);
+            }
         }
         log.debug("[Worker {}] ETag processing loop finished or paused.", workerId);
     }
 
+    /**
+     * 目录深度, 即 path 中 '/' 的个数, 例如 / 为1, /a/b/ 为3
+     */
+    private static int getDepth(String path) {
+        return CharSequenceUtil.count(path, '/');
+    }
+
+    /**
+     * 待标记的父文件夹
+     *
+     * @param userId     用户ID
+     * @param folderPath 父文件夹的完整路径, 例如 /a/b/
+     */
+    private record ParentFolder(String userId, String folderPath) {
+    }
+
+    /**
+     * 推送文件夹ETag积压数量和处理速率
+     */
+    private void reportBacklogProgress(long processedCount, long elapsedMillis) {
+        long backlog = etagDAO.countNeedUpdateFolder();
+        double rate = elapsedMillis > 0 ? processedCount * 1000.0 / elapsedMillis : 0;
+        taskProgressService.addSystemTaskProgress(ETAG_TASK_ID, TaskType.FOLDER_ETAG, "文件夹ETag", "剩余 " + backlog + ", " + NumberUtil.round(rate, 1) + "/s");
+    }
+
+    /**
+     * 处理单个标记为需要更新ETag的文件夹, 先认领租约, 认领失败说明已被其他worker处理
+     *
+     * @param folderDoc     文件夹
+     * @param workerId      当前worker的唯一标识
+     * @param parentsToMark 需要标记的父文件夹
+     */
+    private void processMarkedFolder(FileBaseEtagDTO folderDoc, String workerId, Set<ParentFolder> parentsToMark) {
+        String folderPath = folderDoc.getPath();
+        String docId = folderDoc.getId();
+        String userId = folderDoc.getUserId();
+        log.debug("[Worker {}] Processing ETag for folder: {} (ID: {})", workerId, folderPath, docId);
+
+        try {
+            if (!etagDAO.claimLeaseById(docId, Instant.now().plusMillis(ETAG_LEASE_MILLIS))) {
+                log.debug("[Worker {}] Folder {} is leased by another worker, skipped.", workerId, folderPath + folderDoc.getName());
+                return;
+            }
+            EtagCalculationResult result = calculateAndUpdateSingleFolderEtagInternal(folderDoc, workerId);
+
+            switch (result) {
+                case UPDATED:
+                    // 成功更新，清除标记(同时释放租约), 父文件夹在本层处理完后统一标记
+                    etagDAO.clearMarkUpdateById(docId);
+                    log.debug("[Worker {}] Cleared ETag update mark for folder: {}", workerId, folderPath + folderDoc.getName());
+                    parentsToMark.add(new ParentFolder(userId, folderPath));
+                    break;
+                case NOT_CHANGED:
+                    // ETag未变，只需清除标记
+                    etagDAO.clearMarkUpdateById(docId);
+                    log.debug("[Worker {}] Cleared ETag update mark for folder: {} as ETag was unchanged.", workerId, folderPath + folderDoc.getName());
+                    break;
+                case SKIPPED_CHILD_NULL:
+                    // 计算失败，设置一个短暂的延迟后重试
+                    int attempts = etagDAO.findEtagUpdateFailedAttemptsById(docId); // 获取已失败次数
+                    // 简单的线性退避，每次延迟 3 秒 * 失败次数
+                    long delayMillis = 3000L * (attempts + 1);
+                    Instant nextRetryTime = Instant.now().plusMillis(delayMillis);
+                    etagDAO.setRetryAtById(docId, nextRetryTime, attempts + 1);
+                    if (attempts > 10) {
+                        log.warn("[Worker {}] ETag calculation for folder {} skipped due to null child ETag. Will retry after {} (attempt {}).", workerId, folderPath + folderDoc.getName(), nextRetryTime, attempts + 1);
+                    }
+                    if (attempts >= 50) {
+                        // 对目录 folderPath + folderDoc.getName() 重建索引
+                        String username = userService.getUserNameById(userId);
+                        String path = Paths.get(fileProperties.getRootDir(), username, folderPath + folderDoc.getName()).toString();
+                        eventPublisher.publishEvent(new RebuildIndexEvent(this, username, path));
+                    }
+                    break;
+                case ERROR:
+                    // 出现预料之外的错误
+                    handleProcessingError(docId, folderPath, new RuntimeException("Calculation returned ERROR state"), workerId);
+                    break;
+            }
+        } catch (Exception e) {
+            log.error("[Worker {}] Critical error processing ETag for folder {}: {}", workerId, folderPath, e.getMessage(), e);
+            handleProcessingError(docId, folderPath, e, workerId);
+        }
+    }
+
     /**
      * 标记指定文件夹需要ETag更新
      *
@@ -415,6 +527,11 @@ public class EtagService {
         String newCalculatedEtag;
 
         String currentFolderNormalizedPath = folderDoc.getPath() + folderDoc.getName() + "/";
+        // 先于子项读取当前的 size 和 childrenCount, 写入时作为比较并设置的预期值
+        FileBaseEtagDTO current = etagDAO.findFileBaseEtagDTOByUserIdAndPathAndName(userId, folderDoc.getPath(), folderDoc.getName());
+        if (current == null) {
+            current = folderDoc;
+        }
         List<FileBaseEtagDTO> children = etagDAO.findFileBaseEtagDTOByUserIdAndPath(userId, currentFolderNormalizedPath);
         long folderSize = 0;
         int childrenCount = 0;
@@ -436,15 +553,15 @@ public class EtagService {
             }
             newCalculatedEtag = HashUtil.sha256(combinedRepresentation.toString());
 
-            // 计算文件夹大小
-            folderSize = getFolderSize(userId, currentFolderNormalizedPath);
-            // 计算子项数量
-            childrenCount = countFilesInFolder(userId, currentFolderNormalizedPath);
+            // 由直接子项汇总文件夹大小和子项数量, 子文件夹的值已由增量传播或更深一层的处理维护, 无需扫描整个子树
+            FolderStat folderStat = rollupChildren(children);
+            folderSize = folderStat.size();
+            childrenCount = folderStat.childrenCount();
         }
 
         if (!newCalculatedEtag.equals(oldEtag)) {
-            // 更新文件夹大小(如果使用乐观锁，需要检查版本号)
-            long modifiedCount = etagDAO.updateEtagAndSizeById(folderDoc.getId(), newCalculatedEtag, folderSize, childrenCount);
+            // 汇总结果以比较并设置的方式写入, 不覆盖期间到达的增量传播
+            long modifiedCount = etagDAO.updateEtagAndSizeById(folderDoc.getId(), newCalculatedEtag, current.getSize(), current.getChildrenCount(), folderSize, childrenCount);
             if (modifiedCount > 0) {
                 log.debug("[Worker {}] Folder ETag updated for {}: {} -> {}", workerId, folderPath + folderDoc.getName(), oldEtag, newCalculatedEtag);
                 return EtagCalculationResult.UPDATED;
@@ -458,6 +575,134 @@ public class EtagService {
         return EtagCalculationResult.NOT_CHANGED;
     }
 
+    /**
+     * 由直接子项汇总文件夹的大小和子项数量
+     * size 为所有子孙文件大小之和, childrenCount 为所有子孙项(文件和文件夹)的数量
+     */
+    private static FolderStat rollupChildren(List<FileBaseEtagDTO> children) {
+        long size = 0;
+        int childrenCount = 0;
+        for (FileBaseEtagDTO child : children) {
+            size += child.getSize() == null ? 0 : child.getSize();
+            childrenCount++;
+            if (BooleanUtil.isTrue(child.getIsFolder()) && child.getChildrenCount() != null) {
+                childrenCount += child.getChildrenCount();
+            }
+        }
+        return new FolderStat(size, childrenCount);
+    }
+
+    private record FolderStat(long size, int childrenCount) {
+    }
+
+    /**
+     * 新增文件或文件夹后调用, 把 size 和数量的增量传播到所有上级文件夹
+     *
+     * @param userId 用户ID
+     * @param path   新增项所在目录, 例如 /a/b/
+     * @param size   新增项的大小
+     */
+    public void propagateItemAdded(String userId, String path, long size) {
+        propagateDelta(userId, path, size, 1);
+    }
+
+    /**
+     * 文件大小发生变化后调用, 把 size 的增量传播到所有上级文件夹
+     *
+     * @param userId  用户ID
+     * @param path    文件所在目录
+     * @param oldSize 原大小
+     * @param newSize 新大小
+     */
+    public void propagateItemResized(String userId, String path, long oldSize, long newSize) {
+        propagateDelta(userId, path, newSize - oldSize, 0);
+    }
+
+    /**
+     * 删除文件或文件夹前调用(需要读取被删除项的 size 和 childrenCount), 把减量传播到所有上级文件夹
+     *
+     * @param userId 用户ID
+     * @param path   被删除项所在目录
+     * @param name   被删除项名称
+     */
+    public void propagateItemRemoved(String userId, String path, String name) {
+        FileBaseEtagDTO item = etagDAO.findFileBaseEtagDTOByUserIdAndPathAndName(userId, path, name);
+        if (item == null) {
+            return;
+        }
+        long size = item.getSize() == null ? 0 : item.getSize();
+        int count = 1;
+        if (BooleanUtil.isTrue(item.getIsFolder()) && item.getChildrenCount() != null) {
+            count += item.getChildrenCount();
+        }
+        propagateDelta(userId, path, -size, -count);
+    }
+
+    private void propagateDelta(String userId, String path, long deltaSize, int deltaCount) {
+        if (CharSequenceUtil.isBlank(userId) || (deltaSize == 0 && deltaCount == 0)) {
+            return;
+        }
+        List<FileBaseDTO> ancestors = getAncestorFolders(userId, path);
+        if (ancestors.isEmpty()) {
+            return;
+        }
+        try {
+            etagDAO.incrementFolderSizeAndCount(ancestors, deltaSize, deltaCount);
+        } catch (Exception e) {
+            // 增量丢失时由定时校验任务修复
+            log.warn("Failed to propagate folder size delta for {} (size: {}, count: {}): {}", path, deltaSize, deltaCount, e.getMessage());
+        }
+    }
+
+    /**
+     * 获取目录及其所有上级目录对应的文件夹记录, 例如 /a/b/ 对应 (/, a) 和 (/a/, b)
+     */
+    private static List<FileBaseDTO> getAncestorFolders(String userId, String path) {
+        List<FileBaseDTO> ancestors = new ArrayList<>();
+        String current = path;
+        String parent;
+        while ((parent = getParentDbPath(current)) != null) {
+            String name = current.substring(parent.length(), current.length() - 1);
+            ancestors.add(new FileBaseDTO(name, parent, userId));
+            current = parent;
+        }
+        return ancestors;
+    }
+
+    /**
+     * 定时校验文件夹的 size 和 childrenCount, 修复增量传播遗漏导致的偏差
+     * 按目录深度倒序处理, 子文件夹先于父文件夹被修正, 每个文件夹只读取其直接子项
+     */
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void verifyFolderSizeAndCount() {
+        if (!verifyingFolderSize.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int page = 0;
+            int repaired = 0;
+            List<FileBaseEtagDTO> folders;
+            do {
+                folders = etagDAO.findFolderFileBaseEtagDTOOrderByDepth(page++, VERIFY_FOLDER_BATCH_SIZE);
+                for (FileBaseEtagDTO folder : folders) {
+                    String currentFolderNormalizedPath = folder.getPath() + folder.getName() + "/";
+                    FolderStat folderStat = rollupChildren(etagDAO.findFileBaseEtagDTOByUserIdAndPath(folder.getUserId(), currentFolderNormalizedPath));
+                    if (!ObjectUtil.equals(folder.getSize(), folderStat.size()) || !ObjectUtil.equals(folder.getChildrenCount(), folderStat.childrenCount())) {
+                        folderSizeDAO.updateFileSize(folder.getId(), folderStat.size(), folderStat.childrenCount());
+                        repaired++;
+                    }
+                }
+            } while (folders.size() == VERIFY_FOLDER_BATCH_SIZE);
+            if (repaired > 0) {
+                log.info("Folder size verification finished, {} folders repaired.", repaired);
+            }
+        } catch (Exception e) {
+            log.error("Folder size verification failed: {}", e.getMessage(), e);
+        } finally {
+            verifyingFolderSize.set(false);
+        }
+    }
+
     private void handleProcessingError(String docId, String folderPath, Exception e, String workerId) {
         int attempts = etagDAO.findEtagUpdateFailedAttemptsById(docId);
 
@@ -555,6 +800,9 @@ public class EtagService {
         if (executorMarkedFoldersService != null) {
             executorMarkedFoldersService.shutdown();
         }
+        if (etagWorkerPool != null) {
+            etagWorkerPool.shutdown();
+        }
     }
 
 }
@@ -0,0 +1,31 @@
+package com.jmal.clouddisk.lucene;
+
+import com.jmal.clouddisk.config.Reflective;
+
+/**
+ * Lucene 索引提交的运行指标快照
+ *
+ * @param pendingOps          未提交的修改数
+ * @param ramBytesUsed        IndexWriter 当前占用的内存(字节)
+ * @param maxIntervalMs       配置的最大提交间隔(毫秒)
+ * @param maxPendingOps       配置的触发提交的修改数
+ * @param ramThresholdMB      配置的触发提交的内存阈值(MB)
+ * @param lastCommitSeqNo     最近一次提交的序列号, 序列号不大于它的修改都已持久化
+ * @param lastCommitLatencyMs 最近一次提交耗时(毫秒)
+ * @param maxCommitLatencyMs  历史最大提交耗时(毫秒)
+ * @param avgCommitLatencyMs  平均提交耗时(毫秒)
+ * @param commitCount         提交次数
+ * @param committedOps        已提交的修改总数
+ */
+public record LuceneCommitMetrics(long pendingOps,
+                                  long ramBytesUsed,
+                                  long maxIntervalMs,
+                                  int maxPendingOps,
+                                  int ramThresholdMB,
+                                  long lastCommitSeqNo,
+                                  double lastCommitLatencyMs,
+                                  double maxCommitLatencyMs,
+                                  double avgCommitLatencyMs,
+                                  long commitCount,
+                                  long committedOps) implements Reflective {
+}
@@ -0,0 +1,225 @@
+package com.jmal.clouddisk.lucene;
+
+import cn.hutool.core.thread.ThreadUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.IndexWriter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 共享 IndexWriter 的统一提交
+ * 修改索引后只登记未提交的修改数, 满足以下任一条件时合并为一次提交:
+ * 距上次提交超过最大间隔、未提交的修改数达到上限、IndexWriter 占用的内存超过阈值。
+ * 需要持久化保证的调用方使用修改返回的序列号调用 {@link #awaitCommit(long)}。
+ * 搜索的可见性仍由 ControlledRealTimeReopenThread 负责, 与提交无关
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LuceneCommitScheduler {
+
+    private final IndexWriter indexWriter;
+
+    /**
+     * 最大提交间隔(毫秒)
+     */
+    private static final long MAX_INTERVAL_MS = 10_000;
+
+    /**
+     * 未提交的修改数达到该值后立即提交
+     */
+    private static final int MAX_PENDING_OPS = 1000;
+
+    /**
+     * IndexWriter 占用的内存达到该值(MB)后立即提交
+     */
+    private static final int RAM_THRESHOLD_MB = 32;
+
+    /**
+     * 检查是否需要提交的间隔(毫秒)
+     */
+    private static final long CHECK_INTERVAL_MS = 1000;
+
+    private final Object commitLock = new Object();
+
+    private final AtomicLong pendingOps = new AtomicLong();
+
+    private final AtomicBoolean commitScheduled = new AtomicBoolean(false);
+
+    private volatile long lastCommitSeqNo = -1;
+
+    private volatile long lastCommitTime = System.currentTimeMillis();
+
+    private final CommitStats stats = new CommitStats();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        scheduler = new ScheduledThreadPoolExecutor(1, ThreadUtil.createThreadFactory("luceneCommit"));
+        scheduler.scheduleWithFixedDelay(this::checkCommit, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登记索引修改
+     *
+     * @param ops 修改的文档数
+     */
+    public void onChange(int ops) {
+        long pending = pendingOps.addAndGet(ops);
+        if (pending >= MAX_PENDING_OPS || ramExceeded()) {
+            scheduleCommit();
+        }
+    }
+
+    /**
+     * 等待序列号不大于 seqNo 的修改都已提交, 尚未提交时立即提交
+     *
+     * @param seqNo IndexWriter 修改索引时返回的序列号
+     */
+    public void awaitCommit(long seqNo) throws IOException {
+        if (seqNo <= lastCommitSeqNo) {
+            return;
+        }
+        synchronized (commitLock) {
+            // 等待锁期间可能已经有其他提交包含了这次修改
+            if (seqNo <= lastCommitSeqNo) {
+                return;
+            }
+            doCommit();
+        }
+    }
+
+    /**
+     * 立即提交所有修改
+     */
+    public void commit() throws IOException {
+        synchronized (commitLock) {
+            doCommit();
+        }
+    }
+
+    public LuceneCommitMetrics getMetrics() {
+        return stats.snapshot(pendingOps.get(), indexWriter.ramBytesUsed(), lastCommitSeqNo);
+    }
+
+    private void doCommit() throws IOException {
+        long ops = pendingOps.getAndSet(0);
+        if (!indexWriter.hasUncommittedChanges()) {
+            lastCommitTime = System.currentTimeMillis();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            lastCommitSeqNo = indexWriter.commit();
+        } catch (IOException | RuntimeException e) {
+            pendingOps.addAndGet(ops);
+            throw e;
+        }
+        lastCommitTime = System.currentTimeMillis();
+        stats.record(ops, System.nanoTime() - start);
+    }
+
+    private void scheduleCommit() {
+        if (!commitScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.execute(() -> {
+                commitScheduled.set(false);
+                commitQuietly();
+            });
+        } catch (RejectedExecutionException e) {
+            commitScheduled.set(false);
+        }
+    }
+
+    private void checkCommit() {
+        if (pendingOps.get() == 0) {
+            return;
+        }
+        if (System.currentTimeMillis() - lastCommitTime >= MAX_INTERVAL_MS || ramExceeded()) {
+            commitQuietly();
+        }
+    }
+
+    private boolean ramExceeded() {
+        return indexWriter.ramBytesUsed() >= (long) RAM_THRESHOLD_MB * LuceneService.BYTES_PER_MB;
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (Exception e) {
+            log.error("提交索引失败: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (indexWriter.isOpen()) {
+            commitQuietly();
+            log.debug("最终索引提交完成");
+        }
+    }
+
+    /**
+     * 提交统计
+     */
+    private static class CommitStats {
+        private volatile long lastCommitNanos;
+        private volatile long maxCommitNanos;
+        private final AtomicLong totalCommitNanos = new AtomicLong();
+        private final AtomicLong commitCount = new AtomicLong();
+        private final AtomicLong committedOps = new AtomicLong();
+
+        private void record(long ops, long commitNanos) {
+            lastCommitNanos = commitNanos;
+            maxCommitNanos = Math.max(maxCommitNanos, commitNanos);
+            totalCommitNanos.addAndGet(commitNanos);
+            commitCount.incrementAndGet();
+            committedOps.addAndGet(ops);
+        }
+
+        private LuceneCommitMetrics snapshot(long pendingOps, long ramBytesUsed, long lastCommitSeqNo) {
+            long commits = commitCount.get();
+            return new LuceneCommitMetrics(
+                    pendingOps,
+                    ramBytesUsed,
+                    MAX_INTERVAL_MS,
+                    MAX_PENDING_OPS,
+                    RAM_THRESHOLD_MB,
+                    lastCommitSeqNo,
+                    toMillis(lastCommitNanos),
+                    toMillis(maxCommitNanos),
+                    commits == 0 ? 0 : toMillis(totalCommitNanos.get()) / commits,
+                    commits,
+                    committedOps.get());
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
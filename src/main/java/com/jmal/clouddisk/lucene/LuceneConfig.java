@@ -93,6 +93,30 @@ public class LuceneConfig {
         };
     }
 
+    /**
+     * 创建一个用于文件内容精确子串匹配的 N-Gram Analyzer 实例
+     * 策略: ChunkTokenizer -> LowerCaseFilter (可选) -> NGramTokenFilter
+     * 内容以 Reader 的形式按片段读取, 每个片段作为一个 token 生成 N-Grams, 超过 ngramMaxContentLength 的部分不再索引
+     */
+    @Bean("contentNgramAnalyzer")
+    public Analyzer contentNgramAnalyzer() {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new ChunkTokenizer(fileProperties.getNgramMaxContentLength());
+                TokenStream stream = tokenizer;
+
+                if (IGNORE_CASE_FOR_NGRAM) {
+                    stream = new LowerCaseFilter(stream);
+                }
+
+                stream = new NGramTokenFilter(stream, fileProperties.getNgramMinSize(), fileProperties.getNgramMaxSize(), false);
+
+                return new TokenStreamComponents(tokenizer, stream);
+            }
+        };
+    }
+
     /**
      * 创建一个用于处理精确子串查询词的 Analyzer 实例
      * 策略: KeywordTokenizer -> LowerCaseFilter (可选)
@@ -115,10 +139,11 @@ public class LuceneConfig {
 
     @Bean
     public IndexWriter indexWriter(Directory directory, Analyzer analyzer, // 注入默认的 SmartChineseAnalyzer (确保bean名为 "analyzer")
-                                   @Qualifier("ngramAnalyzer") Analyzer ngramAnalyzer // 注入 ngramAnalyzer
+                                   @Qualifier("ngramAnalyzer") Analyzer ngramAnalyzer, // 注入 ngramAnalyzer
+                                   @Qualifier("contentNgramAnalyzer") Analyzer contentNgramAnalyzer
     ) throws IOException {
         Map<String, Analyzer> analyzerPerField = new HashMap<>();
-        analyzerPerField.put(LuceneService.FIELD_CONTENT_NGRAM, ngramAnalyzer);
+        analyzerPerField.put(LuceneService.FIELD_CONTENT_NGRAM, contentNgramAnalyzer);
         analyzerPerField.put(LuceneService.FIELD_FILENAME_NGRAM, ngramAnalyzer);
         analyzerPerField.put(LuceneService.FIELD_TAG_NAME_NGRAM, ngramAnalyzer);
         // 如果其他字段也需要特定分析器，在这里添加
@@ -4,9 +4,11 @@ import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.BooleanUtil;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.exception.ExceptionType;
 import com.jmal.clouddisk.model.query.SearchDTO;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.IUserService;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.analysis.Analyzer;
@@ -18,25 +20,32 @@ import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherLifetimeManager;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollectorManager;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.util.BytesRef;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.jmal.clouddisk.lucene.LuceneService.FIELD_TAG_NAME_FUZZY;
@@ -53,6 +62,25 @@ public class LuceneQueryService {
     private final Analyzer analyzer;
     private final FileProperties fileProperties;
 
+    /**
+     * 游标分页使用的搜索器, 保证同一次翻页始终使用同一个索引快照
+     */
+    private final SearcherLifetimeManager searcherLifetimeManager = new SearcherLifetimeManager();
+
+    /**
+     * 游标分页的搜索器最长保留时间(秒)
+     */
+    private static final double SEARCHER_MAX_AGE_SECONDS = 600;
+
+    /**
+     * 游标分页统计命中数的阈值, 不超过阈值时精确统计, 超过后只统计到阈值为止
+     */
+    private static final int TOTAL_HITS_THRESHOLD = 10_000;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
     public boolean existsSha256(String key, String fileIndexHash) {
         return exists(getEtagQuery(key, fileIndexHash));
     }
@@ -143,7 +171,6 @@ public class LuceneQueryService {
     public Page<String> find(Query query, SearchDTO searchDTO) {
         IndexSearcher indexSearcher = null;
         try {
-            searcherManager.maybeRefresh();
             indexSearcher = searcherManager.acquire();
             ScoreDoc lastScoreDoc = null;
             int pageNum = searchDTO.getPage();
@@ -174,6 +201,102 @@ public class LuceneQueryService {
         return Page.empty();
     }
 
+    /**
+     * 游标分页查询
+     * 第一页使用当前的搜索器并记录其版本, 之后的页通过游标中的版本取回同一个搜索器继续 searchAfter,
+     * 不需要跳过前面的结果, 也不需要额外的 count 查询。
+     * 搜索器由 ControlledRealTimeReopenThread 在后台刷新, 查询时不再主动刷新
+     *
+     * @param query     查询条件
+     * @param searchDTO 分页大小和排序规则
+     * @param cursor    上一页返回的游标, 第一页为null
+     * @return SearchCursorPage
+     */
+    public SearchCursorPage findByCursor(Query query, SearchDTO searchDTO, String cursor) {
+        Sort sort = getSort(searchDTO);
+        SearchCursor searchCursor = CharSequenceUtil.isBlank(cursor) ? null : SearchCursor.decode(cursor);
+        if (searchCursor != null && !sort.toString().equals(searchCursor.sort())) {
+            throw new CommonException(ExceptionType.PARAMETERS_VALUE.getCode(), "排序规则与游标不一致");
+        }
+        int pageSize = getPageSize(searchDTO);
+        IndexSearcher indexSearcher = null;
+        boolean fromLifetime = false;
+        try {
+            long version;
+            if (searchCursor != null) {
+                indexSearcher = searcherLifetimeManager.acquire(searchCursor.version());
+            }
+            if (indexSearcher != null) {
+                fromLifetime = true;
+                version = searchCursor.version();
+            } else {
+                // 第一页, 或游标对应的搜索器已被清理, 使用当前的搜索器
+                indexSearcher = searcherManager.acquire();
+                version = searcherLifetimeManager.record(indexSearcher);
+            }
+            FieldDoc after = searchCursor == null ? null : searchCursor.toFieldDoc();
+            // 多取一条用于判断是否还有下一页
+            TopFieldCollectorManager collectorManager = new TopFieldCollectorManager(sort, pageSize + 1, after, TOTAL_HITS_THRESHOLD);
+            TopFieldDocs topDocs = indexSearcher.search(query, collectorManager);
+            boolean hasMore = topDocs.scoreDocs.length > pageSize;
+            if (hasMore) {
+                topDocs.scoreDocs = Arrays.copyOf(topDocs.scoreDocs, pageSize);
+            }
+            List<String> fileIds = getFileIds(indexSearcher, topDocs);
+            String nextCursor = null;
+            if (hasMore) {
+                FieldDoc last = (FieldDoc) topDocs.scoreDocs[pageSize - 1];
+                nextCursor = SearchCursor.of(version, sort.toString(), last).encode();
+            }
+            boolean totalExact = topDocs.totalHits.relation() == TotalHits.Relation.EQUAL_TO;
+            return new SearchCursorPage(fileIds, nextCursor, topDocs.totalHits.value(), totalExact);
+        } catch (IOException e) {
+            log.error("查询失败, query: {}", query, e);
+        } finally {
+            if (indexSearcher != null) {
+                try {
+                    if (fromLifetime) {
+                        searcherLifetimeManager.release(indexSearcher);
+                    } else {
+                        searcherManager.release(indexSearcher);
+                    }
+                } catch (IOException e) {
+                    log.error("释放搜索器失败", e);
+                }
+            }
+        }
+        return SearchCursorPage.empty();
+    }
+
+    private static int getPageSize(SearchDTO searchDTO) {
+        Integer pageSize = searchDTO.getPageSize();
+        if (pageSize == null || pageSize <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(pageSize, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * 清理过期的游标分页搜索器
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void pruneSearchers() {
+        try {
+            searcherLifetimeManager.prune(new SearcherLifetimeManager.PruneByAge(SEARCHER_MAX_AGE_SECONDS));
+        } catch (IOException e) {
+            log.warn("清理搜索器失败: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void closeSearchers() {
+        try {
+            searcherLifetimeManager.close();
+        } catch (IOException e) {
+            log.warn("关闭搜索器失败: {}", e.getMessage());
+        }
+    }
+
     public List<String> find(Query query) {
         IndexSearcher indexSearcher = null;
         try {
@@ -4,16 +4,22 @@ import cn.hutool.core.thread.ThreadUtil;
 import com.jmal.clouddisk.dao.IFileDAO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiBits;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SearcherManager;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -32,12 +38,19 @@ public class LuceneReconciliationService {
     // 每批处理的文档数量
     private static final int BATCH_SIZE = 1000;
 
+    /**
+     * 每次对账最多重新加入索引队列的文件数, 避免索引尚未完成时大量重复入队
+     */
+    private static final int MAX_REQUEUE = 10_000;
+
     public void startReconciliation() {
         ThreadUtil.execute(this::reconcileOrphanDocuments);
     }
 
     /**
-     * 对账并清理 Lucene 中的孤儿索引
+     * 对账
+     * 按字典序遍历索引中 id 字段的词典(不读取存储字段), 同时按 id 升序分页遍历数据库, 做有序归并:
+     * 只在索引中存在的为孤儿索引, 删除; 只在数据库中存在的为缺失索引, 重新加入索引队列
      */
     private void reconcileOrphanDocuments() {
         if (!isRunning.compareAndSet(false, true)) {
@@ -46,66 +59,53 @@ public class LuceneReconciliationService {
         }
         log.debug("🚀 开始Lucene协调任务...");
         long startTime = System.currentTimeMillis();
-        long totalDocsChecked = 0;
-        Set<String> orphanIds = new HashSet<>();
+        ReconcileStats stats = new ReconcileStats();
 
         IndexSearcher searcher = null;
         try {
             searcherManager.maybeRefreshBlocking();
             searcher = searcherManager.acquire();
-            if (searcher.getIndexReader().maxDoc() == 0) {
+            IndexReader reader = searcher.getIndexReader();
+            if (reader.maxDoc() == 0) {
                 log.debug("✅ Lucene索引为空。无需对账。");
                 return;
             }
-
-            // 1. 使用 MatchAllDocsQuery 来匹配所有“活文档”
-            Query query = new org.apache.lucene.search.MatchAllDocsQuery();
-
-            // 2. 使用 searchAfter 进行深度分页遍历
-            TopDocs topDocs = searcher.search(query, BATCH_SIZE);
-            ScoreDoc lastHit = null;
-
-            while (topDocs != null && topDocs.scoreDocs.length > 0) {
-                Set<String> luceneIdsInBatch = new HashSet<>();
-
-                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-                    Document doc = searcher.storedFields().document(scoreDoc.doc);
-                    String idValue = doc.get("id");
-                    if (idValue != null) {
-                        luceneIdsInBatch.add(idValue);
+            DbIdIterator dbIds = new DbIdIterator();
+            String dbId = dbIds.next();
+
+            Terms terms = MultiTerms.getTerms(reader, "id");
+            if (terms != null) {
+                Bits liveDocs = MultiBits.getLiveDocs(reader);
+                TermsEnum termsEnum = terms.iterator();
+                PostingsEnum postings = null;
+                BytesRef term;
+                while ((term = termsEnum.next()) != null) {
+                    if (liveDocs != null) {
+                        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                        if (!hasLiveDoc(postings, liveDocs)) {
+                            // 文档已被删除, 只是还未合并
+                            continue;
+                        }
                     }
-                    lastHit = scoreDoc; // 记录本批次的最后一个文档
-                }
-
-                log.debug("处理了 {} 个文档...", luceneIdsInBatch.size());
-                totalDocsChecked += luceneIdsInBatch.size();
-
-                if (!luceneIdsInBatch.isEmpty()) {
-                    // 批量查询数据库，找出存在的 ID
-                    List<String> existingDbIds = fileDAO.findByIdIn(luceneIdsInBatch);
-
-                    // 差集操作，找出孤儿 ID
-                    luceneIdsInBatch.removeAll(new HashSet<>(existingDbIds));
-
-                    if (!luceneIdsInBatch.isEmpty()) {
-                        log.debug("在本批中找到{}个孤立的文档。", luceneIdsInBatch.size());
-                        orphanIds.addAll(luceneIdsInBatch);
+                    String indexId = term.utf8ToString();
+                    stats.indexDocs++;
+                    while (dbId != null && dbId.compareTo(indexId) < 0) {
+                        onMissingIndex(dbId, stats);
+                        dbId = dbIds.next();
+                    }
+                    if (indexId.equals(dbId)) {
+                        dbId = dbIds.next();
+                    } else {
+                        onOrphanIndex(indexId, stats);
                     }
                 }
-
-                // 获取下一批的文档
-                topDocs = searcher.searchAfter(lastHit, query, BATCH_SIZE);
             }
-
-            // 如果找到了孤儿索引，执行批量删除
-            if (!orphanIds.isEmpty()) {
-                log.debug("待删除的总孤儿文档数: {}", orphanIds.size());
-                deleteOrphansFromIndex(orphanIds);
-            } else {
-                log.debug("✅ 未找到孤儿文档。索引与数据库一致。");
+            while (dbId != null) {
+                onMissingIndex(dbId, stats);
+                dbId = dbIds.next();
             }
-
-
+            flushOrphans(stats);
+            stats.dbDocs = dbIds.count;
         } catch (IOException e) {
             log.error("Lucene协调过程中出现错误。", e);
         } finally {
@@ -118,13 +118,88 @@ public class LuceneReconciliationService {
             }
             isRunning.set(false);
         }
-        long duration = System.currentTimeMillis() - startTime;
-        log.debug("🏁 Lucene 协调任务已完成。检查：{} 篇文档。发现孤岛：{}。耗时：{} 毫秒",
-                totalDocsChecked, orphanIds.size(), duration);
+        long duration = Math.max(System.currentTimeMillis() - startTime, 1);
+        log.debug("🏁 Lucene 协调任务已完成。索引文档: {}, 数据库文档: {}, 孤儿索引: {}, 缺失索引: {}(重新入队: {}), 耗时: {} 毫秒, 速度: {} docs/s",
+                stats.indexDocs, stats.dbDocs, stats.orphans, stats.missing, stats.requeued, duration,
+                (stats.indexDocs + stats.dbDocs) * 1000 / duration);
     }
 
-    private void deleteOrphansFromIndex(Set<String> orphanIds) throws IOException {
+    private static boolean hasLiveDoc(PostingsEnum postings, Bits liveDocs) throws IOException {
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+            if (liveDocs.get(doc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onOrphanIndex(String indexId, ReconcileStats stats) {
+        stats.orphanBatch.add(indexId);
+        if (stats.orphanBatch.size() >= BATCH_SIZE) {
+            flushOrphans(stats);
+        }
+    }
+
+    private void onMissingIndex(String dbId, ReconcileStats stats) {
+        stats.missing++;
+        if (stats.requeued < MAX_REQUEUE) {
+            eventPublisher.publishEvent(new LuceneIndexQueueEvent(this, dbId));
+            stats.requeued++;
+        }
+    }
+
+    /**
+     * 删除孤儿索引
+     * 数据库的排序规则可能与索引的字典序不完全一致, 删除前再按id确认一次, 避免误删
+     */
+    private void flushOrphans(ReconcileStats stats) {
+        if (stats.orphanBatch.isEmpty()) {
+            return;
+        }
+        Set<String> orphanIds = new HashSet<>(stats.orphanBatch);
+        stats.orphanBatch.clear();
+        fileDAO.findByIdIn(orphanIds).forEach(orphanIds::remove);
+        if (orphanIds.isEmpty()) {
+            return;
+        }
+        stats.orphans += orphanIds.size();
         eventPublisher.publishEvent(new LuceneIndexQueueEvent(this, orphanIds));
         log.debug("已发布事件，用于从Lucene索引中删除{}个孤立的文档。", orphanIds.size());
     }
+
+    /**
+     * 按id升序分页读取数据库中的文件id
+     */
+    private class DbIdIterator {
+        private List<String> page = List.of();
+        private int index;
+        private boolean exhausted;
+        private long count;
+
+        private String next() {
+            if (index >= page.size()) {
+                if (exhausted) {
+                    return null;
+                }
+                String afterId = page.isEmpty() ? null : page.getLast();
+                page = fileDAO.findIdsAfter(afterId, BATCH_SIZE);
+                index = 0;
+                exhausted = page.size() < BATCH_SIZE;
+                if (page.isEmpty()) {
+                    return null;
+                }
+            }
+            count++;
+            return page.get(index++);
+        }
+    }
+
+    private static class ReconcileStats {
+        private final List<String> orphanBatch = new ArrayList<>(BATCH_SIZE);
+        private long indexDocs;
+        private long dbDocs;
+        private long orphans;
+        private long missing;
+        private long requeued;
+    }
 }
@@ -1,7 +1,7 @@
 package com.jmal.clouddisk.lucene;
 
-import cn.hutool.core.io.FileTypeUtil;
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.thread.ThreadUtil;
 import com.jmal.clouddisk.config.FileProperties;
@@ -10,9 +10,9 @@ import com.jmal.clouddisk.model.FileIndex;
 import com.jmal.clouddisk.model.file.dto.FileBaseLuceneDTO;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.IUserService;
-import com.jmal.clouddisk.service.impl.CommonFileService;
 import com.jmal.clouddisk.service.impl.CommonUserService;
 import com.jmal.clouddisk.util.FileContentTypeUtils;
+import com.jmal.clouddisk.util.FileProbe;
 import com.jmal.clouddisk.util.MyFileUtils;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -31,15 +31,11 @@ import org.apache.lucene.util.BytesRef;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -80,6 +76,7 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
     private final RebuildIndexTaskService rebuildIndexTaskService;
     private final LuceneQueryService luceneQueryService;
     private final EtagService esTagService;
+    private final LuceneCommitScheduler luceneCommitScheduler;
 
     public static final String MONGO_INDEX_FIELD = "index";
 
@@ -127,14 +124,15 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
     public static final String FIELD_TAG_NAME_FUZZY = "tagName";
     public static final String FIELD_TAG_ID = "tagId";
 
-    // 定义分段大小
-    private static final int CHUNK_SIZE_CHARS = 1024; // 例如，每 1KB 左右一个块，或者按行数
-    private static final int CHUNK_OVERLAP_CHARS = 7; // 段落间的重叠字符数，防止边界切割问题 (NGramTokenFilter本身可能处理部分边界，但显式重叠更保险)
+    /**
+     * 提取的文件内容超过内存阈值后转存的临时目录(位于 chunkFileDir 下)
+     */
+    private static final String CONTENT_SPILL_DIR = "luceneContent";
 
     public static final int BYTES_PER_MB = 1024 * 1024;
     private static final int BIG_FILE_BYTES_MB = 10 * BYTES_PER_MB; // 10MB
     private static final long MEMORY_PER_SMALL_THREAD_MB = 500;
-    private static final long MEMORY_PER_BIG_THREAD_MB = 4096;
+    private static final long MEMORY_PER_BIG_THREAD_MB = 512;
 
     @PostConstruct
     public void init() {
@@ -156,9 +154,10 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
             executorUpdateContentIndexService = ThreadUtil.newFixedExecutor(smallProcessors, 20, "updateContentIndexTask", true);
         }
         if (executorUpdateBigContentIndexService == null) {
-            // 设置线程数, 假设每个线程占用内存为4G
-            int bigProcessors = Math.toIntExact((maxMemory / BYTES_PER_MB) / MEMORY_PER_BIG_THREAD_MB);
-            bigProcessors = Math.max(bigProcessors, 1);
+            // 文件内容以流的形式建立索引, 内存占用与文件大小无关, 主要是文件解析时的开销, 假设每个线程占用内存为512M
+            int bigProcessors = Runtime.getRuntime().availableProcessors() / 2;
+            int maxBigProcessors = Math.toIntExact((maxMemory / BYTES_PER_MB) / MEMORY_PER_BIG_THREAD_MB);
+            bigProcessors = Math.max(Math.min(bigProcessors, maxBigProcessors), 1);
             executorUpdateBigContentIndexService = ThreadUtil.newFixedExecutor(bigProcessors, 100, "updateBigContentIndexTask", true);
         }
         log.debug("NGRAM_MAX_CONTENT_LENGTH_MB:{}, NGRAM_MIN_SIZE: {}, ngramMaxSize: {}", fileProperties.getNgramMaxContentLengthMB(), fileProperties.getNgramMinSize(), fileProperties.getNgramMaxSize());
@@ -292,15 +291,17 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
             }
 
             if (readContent) {
-                try (StringWriter contentWriter = new StringWriter()) {
-                    readFileContent(file, fileBaseLuceneDTO.getId(), contentWriter);
-                    String fullContent = contentWriter.toString();
+                try (ContentSpillBuffer content = new ContentSpillBuffer(Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), CONTENT_SPILL_DIR))) {
+                    readFileContent(file, fileBaseLuceneDTO.getId(), content);
 
-                    if (CharSequenceUtil.isBlank(fullContent)) {
+                    if (content.isBlank()) {
                         return;
                     }
+                    if (fileProperties.getExactSearch() && content.getUtf8Length() > fileProperties.getNgramMaxContentLength()) {
+                        log.warn("内容已截断以进行N-Gram索引（截断至 {} 字节）, 文件大小: {}MB 文件: {}", fileProperties.getNgramMaxContentLength(), fileIndex.getSize() / BYTES_PER_MB, Paths.get(fileIndex.getPath(), fileIndex.getName()));
+                    }
                     // 建立包含内容的索引
-                    updateIndexDocument(indexWriter, fileIndex, fullContent, fileIndexHash);
+                    updateIndexDocument(indexWriter, fileIndex, content, fileIndexHash);
                     startProcessFilesToBeIndexed();
                 } catch (IOException e) {
                     log.warn("读取文件内容失败: file={}, {}", file.getAbsolutePath(), e.getMessage(), e);
@@ -392,7 +393,8 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
             if (file == null || !file.isFile() || file.length() < 1) {
                 return;
             }
-            String type = FileTypeUtil.getType(file).toLowerCase();
+            FileProbe.Probe probe = FileProbe.probe(file);
+            String type = probe.magicType();
             switch (type) {
                 case "pdf" -> popplerPdfReader.readPdfContent(file, fileId, writer);
                 case "dwg" -> readContentService.dwg2mxweb(file, fileId);
@@ -402,7 +404,7 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
                 case "xls", "xlsx" -> readContentService.readExcelContent(file, writer);
                 default -> {
                     if (fileProperties.getSimText().contains(type)) {
-                        charset = MyFileUtils.getCharset(file);
+                        charset = probe.charset();
                         if (charset == null) {
                             return;
                         }
@@ -411,8 +413,7 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
                             reader.transferTo(writer);
                         }
                     } else {
-                        String contentType = CommonFileService.getContentType(file, FileContentTypeUtils.getContentType(file, MyFileUtils.extName(file.getName())));
-                        if (contentType.contains("charset=utf-8")) {
+                        if (probe.text()) {
                             try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
                                 reader.transferTo(writer);
                             }
@@ -435,36 +436,41 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
             if (!file.isFile() || file.length() < 1) {
                 return false;
             }
-            String type = FileTypeUtil.getType(file).toLowerCase();
+            FileProbe.Probe probe = FileProbe.probe(file);
+            String type = probe.magicType();
             if (MyFileUtils.hasContentFile(type)) {
                 return true;
             }
             if (fileProperties.getSimText().contains(type)) {
                 return true;
             }
-            return MyFileUtils.hasCharset(file);
+            return probe.text();
         } catch (Exception e) {
             return false;
         }
     }
 
-    private final Object commitLock = new Object();
-
-    public void deleteIndexDocuments(Collection<String> fileIds) {
+    /**
+     * 删除索引, 由 LuceneCommitScheduler 合并提交
+     *
+     * @param fileIds fileIds
+     * @return 修改的序列号, 可用于 LuceneCommitScheduler#awaitCommit, 失败返回-1
+     */
+    public long deleteIndexDocuments(Collection<String> fileIds) {
         if (fileIds == null || fileIds.isEmpty()) {
-            return;
+            return -1;
         }
         try {
             Term[] termsToDelete = fileIds.stream()
                     .map(fileId -> new Term("id", fileId))
                     .toArray(Term[]::new);
-            indexWriter.deleteDocuments(termsToDelete);
-            synchronized (commitLock) {
-                indexWriter.commit();
-            }
+            long seqNo = indexWriter.deleteDocuments(termsToDelete);
+            luceneCommitScheduler.onChange(termsToDelete.length);
+            return seqNo;
         } catch (IOException e) {
             log.error("删除索引失败, fileIds: {}, {}", fileIds, e.getMessage(), e);
         }
+        return -1;
     }
 
     /**
@@ -472,11 +478,13 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
      *
      * @param indexWriter   indexWriter
      * @param fileIndex     FileIndex
-     * @param fullContent   fullContent
+     * @param content       文件内容, 不读取内容时为null
      * @param fileIndexHash 文件索引哈希值
+     * @return 修改的序列号, 可用于 LuceneCommitScheduler#awaitCommit, 失败返回-1
      */
-    public void updateIndexDocument(IndexWriter indexWriter, FileIndex fileIndex, String fullContent, String fileIndexHash) {
+    public long updateIndexDocument(IndexWriter indexWriter, FileIndex fileIndex, ContentSpillBuffer content, String fileIndexHash) {
         String fileId = fileIndex.getFileId();
+        List<Reader> contentReaders = new ArrayList<>(2);
         try {
             String fileName = (fileIndex.getName() == null ? "" : fileIndex.getName()) + " " + fileIndex.getRemark();
             String tagName = fileIndex.getTagName();
@@ -520,27 +528,16 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
                     }
                 }
             }
-            if (CharSequenceUtil.isNotBlank(fullContent)) {
-                newDocument.add(new TextField(FIELD_CONTENT_FUZZY, fullContent, Field.Store.NO));
-            }
-            if (CharSequenceUtil.isNotBlank(fullContent) && fileProperties.getExactSearch()) {
-                String contentForNgram;
-                // 将完整内容字符串转换为内存中的输入流
-                try (InputStream contentStream = new ByteArrayInputStream(fullContent.getBytes(StandardCharsets.UTF_8))) {
-                    // 调用内存高效的流式截断方法
-                    contentForNgram = getContentForNgram(contentStream, fileIndex);
-                } catch (IOException e) {
-                    log.error("Error creating ByteArrayInputStream: {}", e.getMessage(), e);
-                    return;
-                }
-
-                if (CharSequenceUtil.isNotBlank(contentForNgram)) {
-                    List<String> chunks = segmentContent(contentForNgram);
-                    for (String chunk : chunks) {
-                        if (CharSequenceUtil.isNotBlank(chunk)) {
-                            newDocument.add(new Field(FIELD_CONTENT_NGRAM, chunk, TextField.TYPE_NOT_STORED));
-                        }
-                    }
+            if (content != null && !content.isBlank()) {
+                // 内容以 Reader 的形式交给分词器, 不在内存中保留完整内容
+                Reader fuzzyReader = content.openReader();
+                contentReaders.add(fuzzyReader);
+                newDocument.add(new TextField(FIELD_CONTENT_FUZZY, fuzzyReader));
+                if (fileProperties.getExactSearch()) {
+                    // 由 ChunkTokenizer 分段生成 N-Grams, 见 LuceneConfig#contentNgramAnalyzer
+                    Reader ngramReader = content.openReader();
+                    contentReaders.add(ngramReader);
+                    newDocument.add(new Field(FIELD_CONTENT_NGRAM, ngramReader, TextField.TYPE_NOT_STORED));
                 }
             }
 
@@ -553,75 +550,15 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
             if (fileIndex.getSize() != null) {
                 newDocument.add(new NumericDocValuesField(Constants.SIZE, fileIndex.getSize()));
             }
-            indexWriter.updateDocument(new Term("id", fileId), newDocument);
+            long seqNo = indexWriter.updateDocument(new Term("id", fileId), newDocument);
+            luceneCommitScheduler.onChange(1);
+            return seqNo;
         } catch (IOException e) {
             log.error("更新索引失败, fileId: {}, {}", fileId, e.getMessage(), e);
+        } finally {
+            contentReaders.forEach(IoUtil::close);
         }
-    }
-
-    /**
-     * 从输入流中高效地截取用于N-Gram的内容，避免OOM。
-     *
-     * @param contentStream 内容的输入流
-     * @param fileIndex     文件元数据，用于日志记录
-     * @return 截断后的UTF-8字符串
-     * @throws IOException 读取流异常
-     */
-    private String getContentForNgram(InputStream contentStream, FileIndex fileIndex) throws IOException {
-        int maxContentLengthInBytes = fileProperties.getNgramMaxContentLength();
-        byte[] buffer = new byte[8192]; // 8KB的读取缓冲区
-        int bytesRead;
-
-        // 使用 ByteArrayOutputStream 来存储截取的结果
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream(maxContentLengthInBytes)) {
-            while ((bytesRead = contentStream.read(buffer)) != -1) {
-                int remainingCapacity = maxContentLengthInBytes - baos.size();
-                if (bytesRead > remainingCapacity) {
-                    baos.write(buffer, 0, remainingCapacity);
-                    log.warn("内容已截断以进行N-Gram索引（截断至 {} 字节）, 文件大小: {}MB 文件: {}", maxContentLengthInBytes, fileIndex.getSize() / BYTES_PER_MB, Paths.get(fileIndex.getPath(), fileIndex.getName()));
-                    break; // 已达到上限
-                }
-                baos.write(buffer, 0, bytesRead);
-            }
-
-            byte[] contentBytes = baos.toByteArray();
-
-            // 进行UTF-8字符边界检查，防止乱码
-            int effectiveLength = contentBytes.length;
-            while (effectiveLength > 0 && (contentBytes[effectiveLength - 1] & 0xC0) == 0x80) {
-                effectiveLength--;
-            }
-
-            if (effectiveLength == 0) {
-                return "";
-            }
-
-            return new String(contentBytes, 0, effectiveLength, StandardCharsets.UTF_8);
-        }
-    }
-
-    private List<String> segmentContent(String content) {
-        List<String> chunks = new ArrayList<>();
-        if (content == null || content.isEmpty()) {
-            return chunks;
-        }
-        int length = content.length();
-        if (length <= CHUNK_SIZE_CHARS) { // 如果内容本身小于或等于块大小，则作为一个块
-            chunks.add(content);
-            return chunks;
-        }
-
-        // 确保步进大于0
-        int step = CHUNK_SIZE_CHARS - CHUNK_OVERLAP_CHARS;
-
-        for (int i = 0; i < length; i += step) {
-            int end = Math.min(i + CHUNK_SIZE_CHARS, length);
-            chunks.add(content.substring(i, end));
-            if (end == length) {
-                break; // 已到达内容末尾
-            }
-        }
-        return chunks;
+        return -1;
     }
 
     /**
@@ -646,7 +583,7 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
             if (!hasUnIndexFile()) {
                 log.debug("待索引文件处理完成");
                 rebuildIndexTaskService.delayResetIndex();
-                indexWriter.commit();
+                luceneCommitScheduler.commit();
                 run = false;
             }
             List<FileBaseLuceneDTO> fileBaseLuceneDTOList = fileDAO.findFileBaseLuceneDTOByLuceneIndex(IndexStatus.NOT_INDEX.getStatus(), 8);
@@ -708,10 +645,8 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
 
         // 最后提交所有待处理的索引
         try {
-            synchronized (commitLock) {
-                indexWriter.commit();
-                log.debug("最终索引提交完成");
-            }
+            luceneCommitScheduler.commit();
+            log.debug("最终索引提交完成");
         } catch (IOException e) {
             log.error("最终索引提交失败", e);
         }
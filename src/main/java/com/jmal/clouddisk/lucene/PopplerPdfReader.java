@@ -13,9 +13,20 @@ import org.springframework.stereotype.Service;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -25,8 +36,8 @@ import java.util.regex.Pattern;
  * 这个类完全不依赖 org.apache.pdfbox, 从而避免了 GraalVM Native Image 的 AWT 问题.
  * 依赖的外部命令行工具:
  * - pdfinfo: 获取 PDF 元数据 (如页数).
- * - pdftotext: 从页面提取文本.
- * - pdfimages: 检查页面是否包含图片.
+ * - pdftotext: 按页范围批量提取文本, 以换页符拆分各页.
+ * - pdfimages: 一次列出整个文档中包含图片的页面.
  * - pdftoppm: 将页面渲染为图片 (用于封面和 OCR).
  */
 @Service
@@ -42,6 +53,20 @@ public class PopplerPdfReader {
     // 用于从 'pdfinfo' 的输出中解析页数的正则表达式
     private static final Pattern PAGES_PATTERN = Pattern.compile("Pages:\\s*(\\d+)");
 
+    /**
+     * 每次 pdftotext 提取的页数, 限制单次命令的输出大小
+     */
+    static final int PAGE_RANGE_SIZE = 200;
+
+    /**
+     * 单个文档同时渲染和识别的页数, OCR 引擎本身的并发数仍由 OcrService 控制
+     */
+    private static final int OCR_CONCURRENCY_PER_DOCUMENT = 4;
+
+    private static final long COMMAND_TIMEOUT_SECONDS = 30;
+
+    private static final long RANGE_COMMAND_TIMEOUT_SECONDS = 600;
+
     /**
      * 主入口方法，替代原有的 readPdfContent.
      * @param file PDF 文件
@@ -60,12 +85,13 @@ public class PopplerPdfReader {
                 coverFileService.updateCoverFileDocument(fileId, coverFile);
             }
 
-            // 2. 逐页处理
-            for (int pageIndex = 0; pageIndex < totalPages; pageIndex++) {
-                // poppler 工具使用 1-based 索引
-                int pageNumber = pageIndex + 1;
-                log.debug("Processing page {} of {}", pageNumber, totalPages);
-                readPdfOfPage(file, pageNumber, totalPages, writer, username);
+            // 2. 一次性找出包含图片的页面, 再按页范围批量提取文本
+            boolean ocrEnabled = BooleanUtil.isTrue(ocrService.getOcrConfig().getEnable());
+            BitSet imagePages = ocrEnabled ? pagesWithImages(file) : new BitSet();
+            for (int first = 1; first <= totalPages; first += PAGE_RANGE_SIZE) {
+                int last = Math.min(first + PAGE_RANGE_SIZE - 1, totalPages);
+                log.debug("Processing pages {}-{} of {}", first, last, totalPages);
+                readPdfOfRange(file, first, last, totalPages, imagePages, ocrEnabled, writer, username);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -76,30 +102,59 @@ public class PopplerPdfReader {
         }
     }
 
-    private void readPdfOfPage(File file, int pageNumber, int totalPages, Writer writer, String username) throws IOException, InterruptedException {
-        // 1. 提取文本
-        String text = extractTextFromPage(file, pageNumber).trim();
-
-        // 2. 检查页面是否包含图片 (替代 checkPageContent)
-        boolean hasImages = pageContainsImages(file, pageNumber);
-
-        // 3. 如果页面包含文字，写入 writer
-        if (!text.isEmpty()) {
-            writer.write(text);
+    /**
+     * 处理 [first, last] 范围内的页面
+     * 文本由一次 pdftotext 提取, 需要 OCR 的页面(包含图片或没有文字)并行渲染和识别,
+     * 每页的文字和 OCR 结果按页码顺序写入 writer
+     */
+    private void readPdfOfRange(File file, int first, int last, int totalPages, BitSet imagePages, boolean ocrEnabled,
+                                Writer writer, String username) throws IOException, InterruptedException {
+        List<String> pageTexts = extractTextOfRange(file, first, last);
+        Map<Integer, Future<String>> ocrResults = new HashMap<>();
+        Semaphore permits = new Semaphore(OCR_CONCURRENCY_PER_DOCUMENT);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int pageNumber = first; pageNumber <= last; pageNumber++) {
+                boolean hasImages = imagePages.get(pageNumber);
+                boolean textEmpty = pageTexts.get(pageNumber - first).isBlank();
+                if (ocrEnabled && (hasImages || textEmpty)) {
+                    log.debug("Page {} requires OCR (has images: {}, text is empty: {}).", pageNumber, hasImages, textEmpty);
+                    int page = pageNumber;
+                    ocrResults.put(page, executor.submit(() -> ocrPage(file, page, totalPages, username, permits)));
+                }
+            }
+            for (int pageNumber = first; pageNumber <= last; pageNumber++) {
+                String text = pageTexts.get(pageNumber - first).trim();
+                if (!text.isEmpty()) {
+                    writer.write(text);
+                }
+                Future<String> ocrResult = ocrResults.get(pageNumber);
+                if (ocrResult != null) {
+                    writeOcrResult(writer, ocrResult, pageNumber);
+                }
+            }
         }
+    }
 
-        // 4. 如果 (页面包含图片 或 页面没有文字) 并且 OCR 已启用，则进行 OCR
-        boolean shouldOcr = hasImages || text.isEmpty();
-        boolean ocrEnabled = BooleanUtil.isTrue(ocrService.getOcrConfig().getEnable());
-
-        if (shouldOcr && ocrEnabled) {
-            log.debug("Page {} requires OCR (has images: {}, text is empty: {}).", pageNumber, hasImages, text.isEmpty());
-
+    private String ocrPage(File file, int pageNumber, int totalPages, String username, Semaphore permits) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
             String tempImage = imageMagickProcessor.generateOrcTempImagePath(username);
             // 用 pdftoppm 将该页转为图片 300 DPI for OCR
             String imageForOcr = renderPageToImage(file, pageNumber, 300, tempImage);
-            ocrService.extractPageWithOCR(writer, file, imageForOcr, pageNumber, totalPages, username);
-            log.debug("Page {} has OCR test: {}", pageNumber, writer.toString());
+            StringWriter pageWriter = new StringWriter();
+            ocrService.extractPageWithOCR(pageWriter, file, imageForOcr, pageNumber, totalPages, username);
+            log.debug("Page {} has OCR test: {}", pageNumber, pageWriter);
+            return pageWriter.toString();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static void writeOcrResult(Writer writer, Future<String> ocrResult, int pageNumber) throws IOException, InterruptedException {
+        try {
+            writer.write(ocrResult.get());
+        } catch (ExecutionException e) {
+            log.error("OCR failed on page {}", pageNumber, e.getCause());
         }
     }
 
@@ -114,19 +169,58 @@ public class PopplerPdfReader {
         throw new IOException("Could not determine number of pages from pdfinfo output.");
     }
 
-    private String extractTextFromPage(File pdfFile, int pageNumber) throws IOException, InterruptedException {
+    /**
+     * 用一次 pdftotext 提取 [first, last] 范围内的文本, pdftotext 在每页末尾输出换页符(\f), 据此拆分为每页的文本
+     *
+     * @return 每页的文本, 数量与页数一致
+     */
+    static List<String> extractTextOfRange(File pdfFile, int first, int last) throws IOException, InterruptedException {
         // -f: first page, -l: last page, -: output to stdout
-        return executeCommand("pdftotext", "-f", String.valueOf(pageNumber), "-l", String.valueOf(pageNumber), pdfFile.getAbsolutePath(), "-");
+        String output = executeCommand(rangeTimeoutSeconds(first, last), "pdftotext", "-f", String.valueOf(first), "-l", String.valueOf(last), pdfFile.getAbsolutePath(), "-");
+        return splitPages(output, last - first + 1);
+    }
+
+    static List<String> splitPages(String output, int pageCount) {
+        List<String> pages = new ArrayList<>(pageCount);
+        int start = 0;
+        while (pages.size() < pageCount) {
+            int end = output.indexOf('\f', start);
+            if (end < 0) {
+                // 最后一页可能没有换页符, 提取失败时整个输出为空
+                pages.add(output.substring(Math.min(start, output.length())));
+                start = output.length() + 1;
+                continue;
+            }
+            pages.add(output.substring(start, end));
+            start = end + 1;
+        }
+        return pages;
     }
 
     /**
-     * 替代 checkPageContent. 使用 'pdfimages -list' 命令.
-     * 如果命令输出的行数 > 2 (标题行 + "total" 行), 则说明有图片.
+     * 用一次 'pdfimages -list' 列出整个文档的图片.
+     * 输出的前两行为标题, 之后每行一张图片, 第一列为页码
+     *
+     * @return 包含图片的页码(1-based)
      */
-    private boolean pageContainsImages(File pdfFile, int pageNumber) throws IOException, InterruptedException {
-        String output = executeCommand("pdfimages", "-f", String.valueOf(pageNumber), "-l", String.valueOf(pageNumber), "-list", pdfFile.getAbsolutePath());
-        // The output of `pdfimages -list` has a 2-line header. More than 2 lines means images were found.
-        return output.lines().count() > 2;
+    static BitSet pagesWithImages(File pdfFile) throws IOException, InterruptedException {
+        String output = executeCommand(RANGE_COMMAND_TIMEOUT_SECONDS, "pdfimages", "-list", pdfFile.getAbsolutePath());
+        BitSet pages = new BitSet();
+        output.lines().skip(2).forEach(line -> {
+            String trimmed = line.trim();
+            int end = 0;
+            while (end < trimmed.length() && Character.isDigit(trimmed.charAt(end))) {
+                end++;
+            }
+            if (end > 0) {
+                pages.set(Integer.parseInt(trimmed.substring(0, end)));
+            }
+        });
+        return pages;
+    }
+
+    private static long rangeTimeoutSeconds(int first, int last) {
+        return Math.max(COMMAND_TIMEOUT_SECONDS, Math.min(RANGE_COMMAND_TIMEOUT_SECONDS, (long) (last - first + 1) * 2));
     }
 
     public String renderPageToImage(File pdfFile, int pageNumber, int dpi, String tempImage) throws IOException, InterruptedException {
@@ -144,7 +238,16 @@ public class PopplerPdfReader {
     }
 
     public static String executeCommand(String... command) throws IOException, InterruptedException {
+        return executeCommand(COMMAND_TIMEOUT_SECONDS, command);
+    }
+
+    /**
+     * @param timeoutSeconds 超时时间(秒), 处理整个文档或较大页范围的命令需要更长的超时时间
+     */
+    public static String executeCommand(long timeoutSeconds, String... command) throws IOException, InterruptedException {
         ProcessBuilder pb = new ProcessBuilder(command);
+        // 丢弃错误输出, 避免大文档的大量警告填满管道导致进程阻塞
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
         Process process = pb.start();
 
         String output;
@@ -152,7 +255,7 @@ public class PopplerPdfReader {
             output = new String(processStream.readAllBytes(), StandardCharsets.UTF_8);
         }
 
-        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+        if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
             process.destroyForcibly();
             throw new IOException("Command timed out: " + String.join(" ", command));
         }
@@ -7,6 +7,7 @@ import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.StrUtil;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.IFileDAO;
+import com.jmal.clouddisk.model.file.dto.FileBaseAllDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.ocr.OcrService;
 import com.jmal.clouddisk.service.Constants;
@@ -34,8 +35,11 @@ import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
 import java.io.IOException;
 import java.math.RoundingMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -43,8 +47,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -56,12 +65,15 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * <p>重建索引任务</p>
  * 重建索引分为两个步骤<br>
  * 1. 同步文件到数据库<br>
  * 2. 创建文件内容索引<br>
+ * 增量扫描只同步目录清单发生变化的目录, 见 {@link DirectoryManifestStore}
  */
 @Service
 @Slf4j
@@ -98,6 +110,10 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
 
     private final LuceneReconciliationService luceneReconciliationService;
 
+    private final DirectoryManifestStore directoryManifestStore;
+
+    private IncrementalScanner incrementalScanner;
+
     /**
      * 接收消息的用户
      */
@@ -173,6 +189,18 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
     }
 
     public void doSync(String username, String path, boolean isDelIndex) {
+        doSync(username, path, isDelIndex, false);
+    }
+
+    /**
+     * 同步文件到数据库
+     *
+     * @param username    接收消息的用户
+     * @param path        要扫描的路径, 为空时扫描根目录
+     * @param isDelIndex  是否删除索引
+     * @param incremental 是否增量扫描
+     */
+    public void doSync(String username, String path, boolean isDelIndex, boolean incremental) {
         if (isSyncFile() || isIndexing()) {
             return;
         }
@@ -195,7 +223,11 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
                 if (!Files.exists(canPath)) {
                     return;
                 }
-                rebuildingIndex(finalUsername, canPath, isDelIndex);
+                if (incremental) {
+                    incrementalSync(finalUsername, canPath);
+                } else {
+                    rebuildingIndex(finalUsername, canPath, isDelIndex);
+                }
             } finally {
                 SYNC_FILE_LOCK.unlock();
                 setPercentMap(100d, 100d);
@@ -238,10 +270,14 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
             if (syncFileVisitor == null) {
                 syncFileVisitor = new SyncFileVisitor(totalCount);
             }
-            Files.walkFileTree(path, fileVisitOptions, Integer.MAX_VALUE, syncFileVisitor);
+            SyncFileVisitor visitor = syncFileVisitor;
+            Files.walkFileTree(path, fileVisitOptions, Integer.MAX_VALUE, visitor);
             // 等待线程池里所有任务完成
-            waitTaskCompleted();
+            boolean completed = waitTaskCompleted();
             deleteDocWithDeleteFlag();
+            if (completed) {
+                saveDirectoryManifests(path, visitor.manifests);
+            }
         } catch (IOException e) {
             log.error("{}{}", e.getMessage(), path, e);
         } finally {
@@ -251,7 +287,61 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
         }
     }
 
-    private void waitTaskCompleted() {
+    /**
+     * 保存全量扫描得到的目录清单, 替换扫描路径下原有的清单, 之后的增量扫描可以直接跳过没有变化的目录
+     *
+     * @param path      扫描的路径
+     * @param scanned   全量扫描得到的目录清单
+     */
+    private void saveDirectoryManifests(Path path, Map<String, DirectoryManifestStore.Manifest> scanned) {
+        if (!path.startsWith(Paths.get(fileProperties.getRootDir()))) {
+            return;
+        }
+        String startKey = getManifestKey(path);
+        Map<String, DirectoryManifestStore.Manifest> manifests = directoryManifestStore.load();
+        manifests.keySet().removeIf(key -> isUnder(key, startKey));
+        manifests.putAll(scanned);
+        directoryManifestStore.save(manifests);
+        log.info("path: {}, 保存目录清单, 目录数: {}", path, scanned.size());
+    }
+
+    /**
+     * 增量扫描
+     * 逐个目录读取子项并与上次扫描的清单比较, 清单一致的目录不访问数据库; 不一致的目录与数据库中的子项比较,
+     * 只同步新增、修改和删除的子项, 不需要给整个表添加删除标记
+     *
+     * @param recipient 接收消息的用户
+     * @param path      要扫描的路径
+     */
+    private void incrementalSync(String recipient, Path path) {
+        TimeInterval timeInterval = new TimeInterval();
+        try {
+            getRecipient(recipient);
+            restIndexedTasks();
+            resetIndexStatus();
+            incrementalScanner = new IncrementalScanner(path, directoryManifestStore.load());
+            log.info("path: {}, 开始增量扫描, 目录清单数: {}", path, incrementalScanner.manifests.size());
+            incrementalScanner.scan();
+            boolean completed = waitTaskCompleted();
+            totalCount = incrementalScanner.submitCount.get();
+            if (completed) {
+                directoryManifestStore.save(incrementalScanner.manifests);
+            }
+            log.info("增量扫描完成, 目录数: {}, 变化的目录数: {}, 同步的文件数: {}, 耗时: {}s",
+                    incrementalScanner.processCount.get(), incrementalScanner.changedCount, incrementalScanner.submitCount.get(),
+                    Convert.toDouble(timeInterval.intervalMs() / 1000));
+        } catch (Exception e) {
+            log.error("增量扫描失败: {}, {}", path, e.getMessage(), e);
+        } finally {
+            incrementalScanner = null;
+        }
+        if (!isIndexing() && syncCompleteCallback != null) {
+            // 没有需要索引的文件, 不会触发 rebuildingIndexCompleted
+            syncCompleteCallback.run();
+        }
+    }
+
+    private boolean waitTaskCompleted() {
         try {
             log.info("等待扫描文件完成");
             // 等待线程池里所有任务完成
@@ -259,10 +349,13 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
                 log.warn("扫描文件超时, 尝试强制停止所有任务");
                 // 移除删除标记, 以免误删索引
                 removeDeletedFlag(null);
+                return false;
             }
+            return true;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             log.error(e.getMessage(), e);
+            return false;
         }
     }
 
@@ -399,6 +492,10 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
      * 获取同步进度
      */
     private double getSyncPercent() {
+        IncrementalScanner scanner = incrementalScanner;
+        if (scanner != null) {
+            return Math.min(100, scanner.getPercent());
+        }
         if (syncFileVisitor == null) {
             return PERCENT_MAP.getOrDefault(SYNC_PERCENT, 100d);
         }
@@ -437,6 +534,16 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
 
         private final AtomicInteger processCount;
 
+        /**
+         * 扫描到的目录清单, 规则与增量扫描一致, 全量扫描完成后保存, 作为增量扫描的基准
+         */
+        private final Map<String, DirectoryManifestStore.Manifest> manifests = new HashMap<>();
+
+        /**
+         * 正在访问的目录, 栈顶为当前目录
+         */
+        private final Deque<ManifestBuilder> manifestBuilders = new ArrayDeque<>();
+
         public SyncFileVisitor(double totalCount) {
             this.totalCount = totalCount;
             this.processCount = new AtomicInteger(0);
@@ -450,15 +557,40 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
         @Override
         public FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException exc) throws IOException {
             log.error(exc.getMessage(), exc);
+            ManifestBuilder parent = manifestBuilders.peek();
+            if (parent != null) {
+                if (exc instanceof FileSystemLoopException) {
+                    // 与增量扫描一致, 符号链接循环的目录仍是父目录的子项
+                    parent.add(DirectoryManifestStore.entryHash(file.getFileName().toString(), true, 0, 0));
+                } else {
+                    // 有无法读取的子项, 不保存父目录的清单, 下次重新扫描
+                    parent.failed = true;
+                }
+            }
             return super.visitFileFailed(file, exc);
         }
 
+        @NotNull
+        @Override
+        public FileVisitResult postVisitDirectory(@NotNull Path dir, @Nullable IOException exc) throws IOException {
+            ManifestBuilder builder = manifestBuilders.pop();
+            if (exc == null && !builder.failed) {
+                manifests.put(builder.key, builder.build());
+            }
+            return super.postVisitDirectory(dir, exc);
+        }
+
         @NotNull
         @Override
         public FileVisitResult preVisitDirectory(@NotNull Path dir, @NotNull BasicFileAttributes attrs) throws IOException {
             // 跳过临时文件目录
             FileVisitResult skipTempDirectory = skipTempDirectory(dir);
             if (skipTempDirectory != null) return skipTempDirectory;
+            ManifestBuilder parent = manifestBuilders.peek();
+            if (parent != null) {
+                parent.add(DirectoryManifestStore.entryHash(dir.getFileName().toString(), true, 0, 0));
+            }
+            manifestBuilders.push(new ManifestBuilder(getManifestKey(dir), attrs.lastModifiedTime().toMillis()));
             String username = pathService.getUsernameByAbsolutePath(dir);
             processCount.incrementAndGet();
             if (StrUtil.isBlank(username)) {
@@ -473,10 +605,14 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
         public FileVisitResult visitFile(Path file, @NotNull BasicFileAttributes attrs) throws IOException {
             // 判断文件名是否在monitorIgnoreFilePrefix中
             String filename = file.getFileName().toString();
-            if (fileProperties.getMonitorIgnoreFilePrefix().stream().anyMatch(filename::startsWith)) {
+            if (isIgnored(filename)) {
                 log.debug("忽略文件:{}", file.getFileName());
                 return super.visitFile(file, attrs);
             }
+            ManifestBuilder parent = manifestBuilders.peek();
+            if (parent != null) {
+                parent.add(DirectoryManifestStore.entryHash(filename, false, attrs.size(), attrs.lastModifiedTime().toMillis()));
+            }
             processCount.incrementAndGet();
             String username = pathService.getUsernameByAbsolutePath(file);
             if (StrUtil.isBlank(username)) {
@@ -505,6 +641,213 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
         }
     }
 
+    /**
+     * 全量扫描时逐个收集目录子项的摘要, 目录访问完后生成清单
+     */
+    private static class ManifestBuilder {
+
+        private final String key;
+
+        private final long mtime;
+
+        private final List<Long> entryHashes = new ArrayList<>();
+
+        private boolean failed;
+
+        private ManifestBuilder(String key, long mtime) {
+            this.key = key;
+            this.mtime = mtime;
+        }
+
+        private void add(long entryHash) {
+            entryHashes.add(entryHash);
+        }
+
+        private DirectoryManifestStore.Manifest build() {
+            return new DirectoryManifestStore.Manifest(mtime, entryHashes.stream().mapToLong(Long::longValue).sorted().toArray());
+        }
+    }
+
+    /**
+     * 增量扫描, 每个目录只读取一次子项的属性, 只把变化的子项提交到线程池同步
+     */
+    private class IncrementalScanner {
+
+        /**
+         * 磁盘上的子项
+         *
+         * @param path      路径
+         * @param directory 是否为目录
+         * @param hash      子项摘要
+         */
+        private record DiskEntry(Path path, boolean directory, long hash) {
+        }
+
+        private final Path rootPath = Paths.get(fileProperties.getRootDir());
+
+        private final Path startPath;
+
+        /**
+         * 上次扫描的清单, 扫描过程中替换为本次的清单
+         */
+        private final Map<String, DirectoryManifestStore.Manifest> manifests;
+
+        /**
+         * 预计的目录数, 用于计算进度
+         */
+        private final int estimatedCount;
+
+        private final Set<String> scannedDirs = new HashSet<>();
+
+        /**
+         * 已扫描目录的 fileKey, 防止符号链接循环
+         */
+        private final Set<Object> visitedKeys = new HashSet<>();
+
+        private final AtomicInteger processCount = new AtomicInteger(0);
+
+        private final AtomicInteger submitCount = new AtomicInteger(0);
+
+        private int changedCount;
+
+        private IncrementalScanner(Path startPath, Map<String, DirectoryManifestStore.Manifest> manifests) {
+            this.startPath = startPath;
+            this.manifests = manifests;
+            this.estimatedCount = Math.max(1, manifests.size());
+        }
+
+        private double getPercent() {
+            return NumberUtil.round((double) processCount.get() / estimatedCount * 100, 2).doubleValue();
+        }
+
+        private void scan() {
+            Deque<Path> dirs = new ArrayDeque<>();
+            dirs.push(startPath);
+            while (!dirs.isEmpty()) {
+                Path dir = dirs.pop();
+                if (skipTempDirectory(dir) != null) {
+                    continue;
+                }
+                try {
+                    scanDirectory(dir, dirs);
+                } catch (IOException e) {
+                    log.warn("扫描目录失败: {}, {}", dir, e.getMessage());
+                    // 下次重新扫描
+                    manifests.remove(getManifestKey(dir));
+                }
+            }
+            // 移除已不存在的目录的清单
+            String startKey = getManifestKey(startPath);
+            manifests.keySet().removeIf(key -> isUnder(key, startKey) && !scannedDirs.contains(key));
+        }
+
+        private void scanDirectory(Path dir, Deque<Path> dirs) throws IOException {
+            BasicFileAttributes dirAttrs = Files.readAttributes(dir, BasicFileAttributes.class);
+            Object fileKey = dirAttrs.fileKey();
+            if (fileKey != null && !visitedKeys.add(fileKey)) {
+                return;
+            }
+            processCount.incrementAndGet();
+            String key = getManifestKey(dir);
+            scannedDirs.add(key);
+            Map<String, DiskEntry> entries = new HashMap<>();
+            Set<String> failedNames = new HashSet<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path child : stream) {
+                    String name = child.getFileName().toString();
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        failedNames.add(name);
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (skipTempDirectory(child) != null) {
+                            continue;
+                        }
+                        dirs.push(child);
+                        entries.put(name, new DiskEntry(child, true, DirectoryManifestStore.entryHash(name, true, 0, 0)));
+                    } else if (!isIgnored(name)) {
+                        long hash = DirectoryManifestStore.entryHash(name, false, attrs.size(), attrs.lastModifiedTime().toMillis());
+                        entries.put(name, new DiskEntry(child, false, hash));
+                    }
+                }
+            }
+            long[] entryHashes = entries.values().stream().mapToLong(DiskEntry::hash).sorted().toArray();
+            DirectoryManifestStore.Manifest manifest = new DirectoryManifestStore.Manifest(dirAttrs.lastModifiedTime().toMillis(), entryHashes);
+            DirectoryManifestStore.Manifest previous = manifests.get(key);
+            if (failedNames.isEmpty() && manifest.sameAs(previous)) {
+                return;
+            }
+            changedCount++;
+            syncDirectory(dir, entries, failedNames, previous);
+            if (failedNames.isEmpty()) {
+                manifests.put(key, manifest);
+            } else {
+                // 有无法读取的子项, 下次重新扫描
+                manifests.remove(key);
+            }
+        }
+
+        /**
+         * 比较磁盘和数据库中的子项, 同步新增、修改和删除的子项
+         */
+        private void syncDirectory(Path dir, Map<String, DiskEntry> entries, Set<String> failedNames, DirectoryManifestStore.Manifest previous) {
+            Path relativePath = rootPath.relativize(dir);
+            if (relativePath.toString().isEmpty()) {
+                // 根目录下是用户目录, 不需要同步
+                return;
+            }
+            String username = relativePath.getName(0).toString();
+            String userId = commonUserService.getUserIdByUserName(username);
+            if (StrUtil.isBlank(userId)) {
+                return;
+            }
+            String path = relativePath.getNameCount() > 1 ? "/" + relativePath.subpath(1, relativePath.getNameCount()) + "/" : "/";
+            Map<String, FileBaseAllDTO> synced = fileDAO.findSyncedFileBaseAllDTOByUserIdAndPath(userId, path).stream()
+                    .collect(Collectors.toMap(FileBaseDTO::getName, Function.identity(), (first, _) -> first));
+            entries.forEach((name, entry) -> {
+                FileBaseAllDTO exists = synced.get(name);
+                if (exists == null) {
+                    submit(() -> commonUserFileService.createFile(username, entry.path().toFile(), userId, null));
+                } else if (!entry.directory() && (previous == null || !previous.contains(entry.hash()))) {
+                    submit(() -> commonFileService.modifyFile(username, entry.path().toFile()));
+                }
+            });
+            synced.keySet().forEach(name -> {
+                if (entries.containsKey(name) || failedNames.contains(name)) {
+                    return;
+                }
+                File file = dir.resolve(name).toFile();
+                if (!file.exists() || isIgnored(name)) {
+                    submit(() -> commonFileService.deleteFile(username, file));
+                }
+            });
+        }
+
+        private void submit(Runnable task) {
+            submitCount.incrementAndGet();
+            syncFileVisitorService.execute(task);
+        }
+
+    }
+
+    private boolean isIgnored(String filename) {
+        return fileProperties.getMonitorIgnoreFilePrefix().stream().anyMatch(filename::startsWith);
+    }
+
+    /**
+     * 目录清单的 key, 相对于根目录的路径
+     */
+    private String getManifestKey(Path dir) {
+        return Paths.get(fileProperties.getRootDir()).relativize(dir).toString();
+    }
+
+    private static boolean isUnder(String key, String startKey) {
+        return startKey.isEmpty() || key.equals(startKey) || key.startsWith(startKey + File.separator);
+    }
+
     private void setPercentMap(Double syncPercent, Double indexingPercent) {
         if (syncPercent == null) {
             syncPercent = getSyncPercent();
@@ -0,0 +1,95 @@
+package com.jmal.clouddisk.lucene;
+
+import com.jmal.clouddisk.config.Reflective;
+import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.exception.ExceptionType;
+import com.jmal.clouddisk.util.JacksonUtil;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.util.BytesRef;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 全文搜索游标(searchAfter)分页的位置
+ * 记录上一页最后一项的排序值和docId, 以及所属搜索器的版本, 下一页使用同一个搜索器继续查询, 翻页过程中索引变化不会导致结果重复或遗漏。
+ * 对外以不透明的 base64 字符串传递
+ *
+ * @param version 搜索器版本, 见 SearcherLifetimeManager#record
+ * @param sort    排序规则, 用于校验前后两次请求的排序一致
+ * @param doc     上一页最后一项的docId
+ * @param score   上一页最后一项的相关度
+ * @param values  上一页最后一项的排序值, 按类型加前缀编码
+ */
+public record SearchCursor(long version, String sort, int doc, float score, List<String> values) implements Reflective {
+
+    private static final String TYPE_NULL = "N";
+    private static final String TYPE_LONG = "L";
+    private static final String TYPE_INT = "I";
+    private static final String TYPE_FLOAT = "F";
+    private static final String TYPE_DOUBLE = "D";
+    private static final String TYPE_BYTES = "B";
+
+    public static SearchCursor of(long version, String sort, FieldDoc fieldDoc) {
+        List<String> values = new ArrayList<>(fieldDoc.fields.length);
+        for (Object field : fieldDoc.fields) {
+            values.add(encodeValue(field));
+        }
+        return new SearchCursor(version, sort, fieldDoc.doc, fieldDoc.score, values);
+    }
+
+    public FieldDoc toFieldDoc() {
+        Object[] fields = new Object[values.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = decodeValue(values.get(i));
+        }
+        return new FieldDoc(doc, score, fields);
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JacksonUtil.toJSONString(this).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchCursor decode(String cursor) {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            SearchCursor searchCursor = JacksonUtil.parseObject(json, SearchCursor.class);
+            if (searchCursor == null || searchCursor.values() == null) {
+                throw new IllegalArgumentException(cursor);
+            }
+            // 提前解码一次, 保证排序值格式正确
+            searchCursor.toFieldDoc();
+            return searchCursor;
+        } catch (RuntimeException e) {
+            throw new CommonException(ExceptionType.PARAMETERS_VALUE.getCode(), "无效参数 cursor");
+        }
+    }
+
+    private static String encodeValue(Object value) {
+        return switch (value) {
+            case null -> TYPE_NULL;
+            case Long l -> TYPE_LONG + l;
+            case Integer i -> TYPE_INT + i;
+            case Float f -> TYPE_FLOAT + Float.floatToIntBits(f);
+            case Double d -> TYPE_DOUBLE + Double.doubleToLongBits(d);
+            case BytesRef bytesRef -> TYPE_BYTES + Base64.getUrlEncoder().withoutPadding().encodeToString(BytesRef.deepCopyOf(bytesRef).bytes);
+            default -> throw new IllegalArgumentException("不支持的排序值类型: " + value.getClass());
+        };
+    }
+
+    private static Object decodeValue(String value) {
+        String type = value.substring(0, 1);
+        String body = value.substring(1);
+        return switch (type) {
+            case TYPE_NULL -> null;
+            case TYPE_LONG -> Long.parseLong(body);
+            case TYPE_INT -> Integer.parseInt(body);
+            case TYPE_FLOAT -> Float.intBitsToFloat(Integer.parseInt(body));
+            case TYPE_DOUBLE -> Double.longBitsToDouble(Long.parseLong(body));
+            case TYPE_BYTES -> new BytesRef(Base64.getUrlDecoder().decode(body));
+            default -> throw new IllegalArgumentException("不支持的排序值类型: " + type);
+        };
+    }
+}
@@ -0,0 +1,18 @@
+package com.jmal.clouddisk.lucene;
+
+import java.util.List;
+
+/**
+ * 全文搜索游标分页的结果
+ *
+ * @param ids        本页文件id
+ * @param nextCursor 下一页的游标, 没有下一页时为null
+ * @param total      命中总数
+ * @param totalExact 命中总数是否精确, 超过阈值后只统计到阈值为止, total 为下限
+ */
+public record SearchCursorPage(List<String> ids, String nextCursor, long total, boolean totalExact) {
+
+    public static SearchCursorPage empty() {
+        return new SearchCursorPage(List.of(), null, 0, true);
+    }
+}
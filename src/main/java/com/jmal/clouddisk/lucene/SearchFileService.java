@@ -94,6 +94,54 @@ public class SearchFileService {
         }
     }
 
+    /**
+     * 游标分页搜索
+     * 下一页的游标放在 props.cursor 中, 没有下一页时不返回; props.totalExact 表示 count 是否为精确值
+     *
+     * @param searchDTO searchDTO
+     * @param cursor    上一页返回的游标, 第一页为空
+     */
+    public ResponseResult<List<FileIntroVO>> searchFileByCursor(SearchDTO searchDTO, String cursor) {
+        String keyword = searchDTO.getKeyword();
+        if (keyword == null || keyword.trim().isEmpty() || searchDTO.getUserId() == null) {
+            return ResultUtil.success(Collections.emptyList());
+        }
+        ResponseResult<List<FileIntroVO>> result = ResultUtil.genResult();
+        try {
+            beforeQuery(searchDTO);
+            Map<String, Object> props = new HashMap<>();
+            if (!searchDTO.getUserId().equals(userLoginHolder.getUserId())) {
+                props.put("fileUsername", userService.getUserNameById(searchDTO.getUserId()));
+            }
+
+            Query query = getQuery(searchDTO);
+
+            SearchCursorPage page = luceneQueryService.findByCursor(query, searchDTO, cursor);
+
+            List<FileIntroVO> fileIntroVOList = fileQueryDAO.findAllFileIntroVOByIdIn(page.ids());
+            result.setData(fileIntroVOList);
+            result.setCount(page.total());
+            if (page.nextCursor() != null) {
+                props.put("cursor", page.nextCursor());
+            }
+            props.put("totalExact", page.totalExact());
+            result.setProps(props);
+
+            if (CharSequenceUtil.isBlank(cursor)) {
+                String userId = userLoginHolder.getUserId();
+                // 添加搜索历史, 只在第一页添加
+                Completable.fromAction(() -> addSearchHistory(userId, searchDTO)).subscribeOn(Schedulers.io())
+                        .doOnError(e -> log.error(e.getMessage(), e))
+                        .onErrorComplete()
+                        .subscribe();
+            }
+            return result;
+        } catch (ParseException | java.lang.IllegalArgumentException e) {
+            log.error("搜索失败", e);
+            return result.setData(Collections.emptyList()).setCount(0);
+        }
+    }
+
     /**
      * 添加搜索历史
      *
@@ -75,6 +75,32 @@ public class TaskProgressService {
         removeTaskProgress(taskId);
     }
 
+    /**
+     * 添加与具体文件无关的系统任务进度, 推送给管理员
+     * @param taskId 任务id
+     * @param taskType 任务类型
+     * @param name 任务名称
+     * @param progress 进度
+     */
+    public void addSystemTaskProgress(String taskId, TaskType taskType, String name, String progress) {
+        TaskProgress taskProgress;
+        if (checkTaskProgress(taskId)) {
+            taskProgress = getTaskProgress(taskId);
+            taskProgress.setProgress(progress);
+        } else {
+            taskProgress = new TaskProgress(taskId, getDefaultUsername(), taskType, name, progress);
+        }
+        addTaskProgress(taskProgress);
+    }
+
+    /**
+     * 移除系统任务进度
+     * @param taskId 任务id
+     */
+    public void removeSystemTaskProgress(String taskId) {
+        removeTaskProgress(taskId);
+    }
+
     private String getDefaultUsername() {
         if (defaultUsername == null) {
             defaultUsername = commonUserService.getCreatorUsername();
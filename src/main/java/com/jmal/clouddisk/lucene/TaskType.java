@@ -14,7 +14,15 @@ public enum TaskType {
     /**
      * 视频转码
      */
-    TRANSCODE_VIDEO("视频转码");
+    TRANSCODE_VIDEO("视频转码"),
+    /**
+     * 文件夹ETag更新
+     */
+    FOLDER_ETAG("文件夹ETag更新"),
+    /**
+     * 文件复制
+     */
+    COPY_FILE("文件复制");
 
     private final String type;
 
@@ -0,0 +1,216 @@
+package com.jmal.clouddisk.media;
+
+import cn.hutool.core.io.file.PathUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.util.HashUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * 派生图片(裁剪、webp转换)的磁盘缓存
+ * 缓存key由源文件路径、ETag和处理参数(w, h, q, format)组成, 源文件变化后ETag随之变化, 旧的缓存不再命中, 最终被淘汰。
+ * ETag 只由大小和修改时间决定, 必须带上路径, 否则大小和修改时间相同的不同文件会共用同一份缓存。
+ * 缓存总大小受 derivedImageCacheSizeMB 限制, 同一个key的并发请求只会启动一个 magick 进程。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DerivedImageCache {
+
+    private final FileProperties fileProperties;
+
+    private static final String CACHE_DIR = "derivedImage";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final long MEGABYTE = 1024L * 1024;
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * key: 缓存key, value: 缓存文件大小
+     */
+    private Cache<String, Long> cacheIndex;
+
+    /**
+     * 正在生成的缓存, 保证同一个key只生成一次
+     */
+    private final Map<String, CompletableFuture<Path>> inflight = new ConcurrentHashMap<>();
+
+    private Path cacheDir;
+
+    @FunctionalInterface
+    public interface ImageWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    @PostConstruct
+    public void init() {
+        cacheDir = Paths.get(fileProperties.getRootDir(), fileProperties.getJmalcloudDBDir(), "cache", CACHE_DIR);
+        long maxWeight = Math.max(1, fileProperties.getDerivedImageCacheSizeMB()) * MEGABYTE;
+        cacheIndex = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String _, Long size) -> (int) Math.min(Integer.MAX_VALUE, Math.max(1, size)))
+                .removalListener((String key, Long _, RemovalCause cause) -> {
+                    if (key != null && cause.wasEvicted()) {
+                        deleteEvicted(key);
+                    }
+                })
+                .build();
+        ThreadUtil.execute(this::loadIndex);
+    }
+
+    /**
+     * 获取派生图片, 不存在则生成
+     *
+     * @param srcFile 源文件
+     * @param format  输出格式
+     * @param w       宽
+     * @param h       高
+     * @param q       质量
+     * @param writer  生成派生图片
+     * @return 缓存文件, 生成失败返回null
+     */
+    public Path getOrCreate(File srcFile, String format, String w, String h, String q, ImageWriter writer) throws IOException {
+        String key = HashUtil.sha256(String.join("|", srcFile.getCanonicalPath(), HashUtil.fileEtag(srcFile), format, String.valueOf(w), String.valueOf(h), String.valueOf(q)));
+        Path cacheFile = getCacheFile(key);
+        if (cacheIndex.getIfPresent(key) != null && Files.exists(cacheFile)) {
+            return cacheFile;
+        }
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inflight.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            future.complete(generate(key, cacheFile, writer));
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key);
+        }
+        return future.join();
+    }
+
+    /**
+     * 把缓存文件写入响应
+     * 容器支持 sendfile 时(Tomcat NIO/NIO2 连接器会设置 org.apache.tomcat.sendfile.support), 只设置文件和区间, 由容器在 servlet 返回后用 sendfile 发送, 数据不经过用户态;
+     * 否则退回到经由 ServletOutputStream 的普通拷贝
+     */
+    public void transferTo(Path cacheFile, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long size = Files.size(cacheFile);
+        response.setContentLengthLong(size);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, cacheFile.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return;
+        }
+        Files.copy(cacheFile, response.getOutputStream());
+    }
+
+    private Path generate(String key, Path cacheFile, ImageWriter writer) throws IOException {
+        PathUtil.mkParentDirs(cacheFile);
+        Path tmpFile = cacheFile.resolveSibling(cacheFile.getFileName() + TMP_SUFFIX);
+        try (OutputStream outputStream = Files.newOutputStream(tmpFile)) {
+            writer.write(outputStream);
+        }
+        long size = Files.size(tmpFile);
+        if (size == 0) {
+            PathUtil.del(tmpFile);
+            return null;
+        }
+        Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        cacheIndex.put(key, size);
+        return cacheFile;
+    }
+
+    /**
+     * 删除被淘汰的缓存文件
+     * 淘汰通知是异步的, 同一个key可能已经重新生成; 在 inflight 的同一把锁内判断, 正在生成或已重新加入索引时不删除
+     */
+    private void deleteEvicted(String key) {
+        inflight.compute(key, (k, running) -> {
+            if (running == null && cacheIndex.getIfPresent(k) == null) {
+                PathUtil.del(getCacheFile(k));
+            }
+            return running;
+        });
+    }
+
+    private static Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Path getCacheFile(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * 启动时加载已有的缓存文件, 按最后修改时间从旧到新加入索引
+     */
+    private void loadIndex() {
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(cacheDir, 2)) {
+            files = stream.filter(Files::isRegularFile).toList();
+        } catch (IOException e) {
+            log.warn("加载图片缓存失败: {}", e.getMessage());
+            return;
+        }
+        files.stream()
+                .sorted(Comparator.comparingLong(path -> path.toFile().lastModified()))
+                .forEach(path -> {
+                    String name = path.getFileName().toString();
+                    if (name.endsWith(TMP_SUFFIX)) {
+                        PathUtil.del(path);
+                        return;
+                    }
+                    cacheIndex.put(name, path.toFile().length());
+                });
+        log.debug("加载图片缓存: {}", files.size());
+    }
+
+}
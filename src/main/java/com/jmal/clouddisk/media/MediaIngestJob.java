@@ -0,0 +1,19 @@
+package com.jmal.clouddisk.media;
+
+import com.jmal.clouddisk.config.Reflective;
+
+/**
+ * 媒体文件入库任务, 持久化到各阶段的队列目录中
+ *
+ * @param fileId   文件ID
+ * @param username 用户名
+ * @param userId   用户ID
+ * @param path     文件所在目录(相对于用户目录)
+ * @param name     文件名
+ */
+public record MediaIngestJob(String fileId, String username, String userId, String path, String name) implements Reflective {
+
+    public MediaIngestJob withName(String newName) {
+        return new MediaIngestJob(fileId, username, userId, path, newName);
+    }
+}
@@ -0,0 +1,44 @@
+package com.jmal.clouddisk.media;
+
+import lombok.Getter;
+
+/**
+ * 媒体文件入库的处理阶段
+ * 每个阶段有独立的并发上限和持久化队列
+ */
+@Getter
+public enum MediaIngestStage {
+    /**
+     * 图片转换为webp, 完成后再进入 PROBE/EXIF/THUMBNAIL
+     */
+    WEBP(2),
+    /**
+     * 图片尺寸(identify) / 视频信息(ffprobe)
+     */
+    PROBE(4),
+    /**
+     * 图片Exif信息, PROBE 完成后执行
+     */
+    EXIF(4),
+    /**
+     * 图片缩略图
+     */
+    THUMBNAIL(2),
+    /**
+     * 视频封面(ffmpeg)
+     */
+    COVER(1),
+    /**
+     * 音频标签
+     */
+    AUDIO(2);
+
+    /**
+     * 该阶段的最大并发数
+     */
+    private final int concurrency;
+
+    MediaIngestStage(int concurrency) {
+        this.concurrency = concurrency;
+    }
+}
@@ -0,0 +1,429 @@
+package com.jmal.clouddisk.media;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.file.PathUtil;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import com.google.common.util.concurrent.Striped;
+import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.dao.IFileDAO;
+import com.jmal.clouddisk.lucene.EtagService;
+import com.jmal.clouddisk.lucene.LuceneIndexQueueEvent;
+import com.jmal.clouddisk.model.Music;
+import com.jmal.clouddisk.model.file.FileDocument;
+import com.jmal.clouddisk.model.file.dto.UpdateFile;
+import com.jmal.clouddisk.service.Constants;
+import com.jmal.clouddisk.service.impl.UserSpaceService;
+import com.jmal.clouddisk.util.AudioFileUtils;
+import com.jmal.clouddisk.util.CaffeineUtil;
+import com.jmal.clouddisk.util.FileContentTypeUtils;
+import com.jmal.clouddisk.util.FileProbe;
+import com.jmal.clouddisk.util.ImageExifUtil;
+import com.jmal.clouddisk.util.JacksonUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * 媒体文件入库流水线
+ * createFile 只负责立即写入元数据, 之后的 webp转换、尺寸探测、Exif、缩略图、视频封面、音频标签等耗时操作
+ * 分别在各自的阶段中异步执行, 每个阶段有独立的并发上限和持久化队列(rootDir/dbDir/mediaIngest/{stage}/{fileId}.json),
+ * 每个阶段完成后把结果更新到文件记录中。重启后会从队列目录中恢复未完成的任务。
+ * PROBE 完成后再执行 EXIF, 两者都会读取并整体保存文件记录, 同一个文件依次执行, 以免后保存的覆盖先保存的字段
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaIngestionService {
+
+    private final FileProperties fileProperties;
+
+    private final IFileDAO fileDAO;
+
+    private final VideoProcessService videoProcessService;
+
+    private final AudioFileUtils audioFileUtils;
+
+    private final EtagService etagService;
+
+    private final UserSpaceService userSpaceService;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private static final String QUEUE_DIR = "mediaIngest";
+
+    private static final String JOB_SUFFIX = ".json";
+
+    /**
+     * 正在执行的任务文件后缀, 执行期间重新入队的任务写入新的 .json 文件, 不会被当前任务删除
+     */
+    private static final String RUNNING_SUFFIX = ".running";
+
+    /**
+     * 每个阶段内存队列的最大长度, 超出的任务只保留在磁盘队列中, 下次启动时恢复
+     */
+    private static final int MAX_QUEUE_SIZE = 100_000;
+
+    private final Map<MediaIngestStage, ExecutorService> stageExecutors = new EnumMap<>(MediaIngestStage.class);
+
+    /**
+     * 各阶段已提交但尚未完成的任务, key: fileId, value: 最新提交的任务
+     * 任务执行期间同一个文件再次提交时只替换 value, 当前任务完成后发现 value 已变化则重新执行
+     */
+    private final Map<MediaIngestStage, Map<String, PendingJob>> pendingJobs = new EnumMap<>(MediaIngestStage.class);
+
+    /**
+     * 同一个文件的记录更新依次执行, 各阶段的更新都是读取后整体保存
+     */
+    private final Striped<Lock> patchLocks = Striped.lazyWeakLock(64);
+
+    @PostConstruct
+    public void init() {
+        for (MediaIngestStage stage : MediaIngestStage.values()) {
+            String threadNamePrefix = "mediaIngest-" + stage.name().toLowerCase() + "-";
+            stageExecutors.put(stage, ThreadUtil.newFixedExecutor(stage.getConcurrency(), MAX_QUEUE_SIZE, threadNamePrefix, false));
+            pendingJobs.put(stage, new ConcurrentHashMap<>());
+        }
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void onApplicationReady(ContextRefreshedEvent event) {
+        if (event.getApplicationContext().getParent() != null) {
+            return;
+        }
+        ThreadUtil.execute(this::recover);
+    }
+
+    /**
+     * 新文件入库: 写入元数据之后调用, 按文件类型把任务放入对应的阶段
+     *
+     * @param job         任务
+     * @param contentType 文件类型
+     * @param suffix      文件后缀
+     * @param toWebp      是否需要先转换为webp
+     */
+    public void submitNewFile(MediaIngestJob job, String contentType, String suffix, boolean toWebp) {
+        if (contentType.contains(Constants.AUDIO)) {
+            enqueue(MediaIngestStage.AUDIO, job);
+        }
+        if (contentType.contains(Constants.VIDEO)) {
+            enqueue(MediaIngestStage.COVER, job);
+        }
+        if (ImageExifUtil.isImageType(contentType, suffix)) {
+            if (toWebp) {
+                enqueue(MediaIngestStage.WEBP, job);
+            } else {
+                submitImageStages(job);
+            }
+        }
+    }
+
+    /**
+     * 把任务写入阶段的持久化队列, 并提交执行
+     */
+    public void enqueue(MediaIngestStage stage, MediaIngestJob job) {
+        try {
+            Path jobFile = getJobFile(stage, job.fileId());
+            PathUtil.mkParentDirs(jobFile);
+            Files.writeString(jobFile, JacksonUtil.toJSONString(job), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("写入媒体处理队列失败, stage: {}, file: {}, {}", stage, job.name(), e.getMessage());
+        }
+        submit(stage, job);
+    }
+
+    /**
+     * 图片的后续阶段, EXIF 在 PROBE 完成后提交
+     */
+    private void submitImageStages(MediaIngestJob job) {
+        enqueue(MediaIngestStage.PROBE, job);
+        enqueue(MediaIngestStage.THUMBNAIL, job);
+    }
+
+    private void submit(MediaIngestStage stage, MediaIngestJob job) {
+        PendingJob pendingJob = new PendingJob(job);
+        if (pendingJobs.get(stage).put(job.fileId(), pendingJob) != null) {
+            // 已有任务在排队或执行, 完成后会执行最新的任务
+            return;
+        }
+        execute(stage, pendingJob);
+    }
+
+    private void execute(MediaIngestStage stage, PendingJob pendingJob) {
+        try {
+            stageExecutors.get(stage).execute(() -> run(stage, pendingJob));
+        } catch (RejectedExecutionException e) {
+            pendingJobs.get(stage).remove(pendingJob.job.fileId(), pendingJob);
+            log.warn("媒体处理队列已满, stage: {}, file: {}, 任务保留在磁盘队列中", stage, pendingJob.job.name());
+        }
+    }
+
+    private void run(MediaIngestStage stage, PendingJob pendingJob) {
+        MediaIngestJob job = pendingJob.job;
+        Path runningFile = claimJobFile(stage, job.fileId());
+        try {
+            File file = Paths.get(fileProperties.getRootDir(), job.username(), job.path(), job.name()).toFile();
+            if (!file.exists()) {
+                log.debug("媒体处理任务对应的文件不存在, stage: {}, file: {}", stage, file.getAbsolutePath());
+                return;
+            }
+            switch (stage) {
+                case WEBP -> processWebp(job, file);
+                case PROBE -> processProbe(job, file);
+                case EXIF -> processExif(job, file);
+                case THUMBNAIL -> processThumbnail(job, file);
+                case COVER -> processCover(job);
+                case AUDIO -> processAudio(job, file);
+            }
+        } catch (Exception e) {
+            log.warn("媒体处理失败, stage: {}, file: {}, {}", stage, job.name(), e.getMessage(), e);
+        } finally {
+            if (runningFile != null) {
+                PathUtil.del(runningFile);
+            }
+            if (stage == MediaIngestStage.PROBE) {
+                enqueue(MediaIngestStage.EXIF, job);
+            }
+            Map<String, PendingJob> pending = pendingJobs.get(stage);
+            if (!pending.remove(job.fileId(), pendingJob)) {
+                // 执行期间文件重新入队, 执行最新的任务
+                PendingJob latest = pending.get(job.fileId());
+                if (latest != null) {
+                    execute(stage, latest);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把任务文件改名为 .running, 只有当前任务会删除它
+     *
+     * @return 改名后的文件, 任务文件不存在或改名失败时返回null
+     */
+    private Path claimJobFile(MediaIngestStage stage, String fileId) {
+        Path jobFile = getJobFile(stage, fileId);
+        Path runningFile = jobFile.resolveSibling(fileId + RUNNING_SUFFIX);
+        try {
+            return Files.move(jobFile, runningFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 转换为webp: 先写出webp文件并更新记录, 再删除原文件, 避免文件监听把原文件的删除当成记录删除
+     */
+    private void processWebp(MediaIngestJob job, File file) {
+        String suffix = FileUtil.getSuffix(file).toLowerCase();
+        String fileNameWithoutSuffix = StrUtil.removeSuffix(file.getName(), "." + FileUtil.getSuffix(file.getName()));
+        String newName = fileNameWithoutSuffix + Constants.POINT_SUFFIX_WEBP;
+        File outputFile = new File(file.getParentFile().getAbsoluteFile(), newName);
+        if (Constants.SUFFIX_WEBP.equals(suffix) || outputFile.exists()) {
+            submitImageStages(job);
+            return;
+        }
+        ImageMagickProcessor.replaceWebp(file, outputFile, false);
+        if (!outputFile.exists() || outputFile.length() == 0) {
+            FileUtil.del(outputFile);
+            submitImageStages(job);
+            return;
+        }
+        CaffeineUtil.setUploadFileCache(outputFile.getAbsolutePath());
+        long oldSize = file.length();
+        long newSize = outputFile.length();
+        String contentType = FileContentTypeUtils.getContentType(outputFile, Constants.SUFFIX_WEBP);
+        fileDAO.setNameAndSuffixById(newName, Constants.SUFFIX_WEBP, job.fileId());
+        fileDAO.updateModifyFile(job.fileId(), newSize, newSize + job.path() + newName, Constants.SUFFIX_WEBP, contentType, LocalDateTime.now());
+        etagService.propagateItemResized(job.userId(), job.path(), oldSize, newSize);
+        userSpaceService.onFileResized(job.userId(), oldSize, newSize);
+        FileUtil.del(file);
+        // 文件名变了, 重建索引
+        eventPublisher.publishEvent(new LuceneIndexQueueEvent(this, job.fileId()));
+        submitImageStages(job.withName(newName));
+    }
+
+    private void processProbe(MediaIngestJob job, File file) {
+        String contentType = FileProbe.probe(file).contentType();
+        UpdateFile updateFile = new UpdateFile();
+        if (contentType.contains(Constants.VIDEO)) {
+            VideoInfo videoInfo = videoProcessService.getVideoInfo(file);
+            updateFile.setVideo(videoInfo.toVideoInfoDO());
+        } else {
+            // 获取图片尺寸
+            ImageMagickProcessor.ImageFormat imageFormat = ImageMagickProcessor.identifyFormat(file);
+            if (imageFormat != null && imageFormat.getWidth() > 0 && imageFormat.getHeight() > 0) {
+                updateFile.setW(Convert.toStr(imageFormat.getWidth()));
+                updateFile.setH(Convert.toStr(imageFormat.getHeight()));
+            }
+        }
+        patch(job, updateFile);
+    }
+
+    private void processExif(MediaIngestJob job, File file) {
+        UpdateFile updateFile = new UpdateFile();
+        updateFile.setExif(ImageExifUtil.getExif(file));
+        patch(job, updateFile);
+    }
+
+    private void processThumbnail(MediaIngestJob job, File file) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            ImageMagickProcessor.cropImage(inputStream, "1", "256", "256", byteArrayOutputStream);
+        }
+        if (byteArrayOutputStream.size() > 0) {
+            fileDAO.setContent(job.fileId(), byteArrayOutputStream.toByteArray());
+        }
+    }
+
+    private void processCover(MediaIngestJob job) {
+        VideoInfo videoInfo = videoProcessService.getVideoCover(job.fileId(), job.username(), job.path(), job.name());
+        String coverPath = videoInfo.getCovertPath();
+        UpdateFile updateFile = new UpdateFile();
+        if (!CharSequenceUtil.isBlank(coverPath) && FileUtil.exist(coverPath)) {
+            fileDAO.setContent(job.fileId(), PathUtil.readBytes(Paths.get(coverPath)));
+            updateFile.setVideo(videoInfo.toVideoInfoDO());
+            updateFile.setMediaCover(true);
+            patch(job, updateFile);
+            videoProcessService.convertToM3U8(job.fileId());
+            FileUtil.del(coverPath);
+        } else {
+            updateFile.setMediaCover(false);
+            patch(job, updateFile);
+        }
+    }
+
+    private void processAudio(MediaIngestJob job, File file) {
+        FileDocument fileDocument = new FileDocument();
+        fileDocument.setId(job.fileId());
+        Music music = audioFileUtils.readAudio(fileDocument, file);
+        UpdateFile updateFile = new UpdateFile();
+        updateFile.setMusic(music);
+        if (fileDocument.getContent() != null) {
+            // 封面已由 FilePersistenceService 写入
+            updateFile.setHasContent(true);
+        }
+        patch(job, updateFile);
+    }
+
+    private void patch(MediaIngestJob job, UpdateFile updateFile) {
+        if (!updateFile.isNotEmpty()) {
+            return;
+        }
+        Lock lock = patchLocks.get(job.fileId());
+        lock.lock();
+        try {
+            fileDAO.updateFileByUserIdAndPathAndName(job.userId(), job.path(), job.name(), updateFile);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 恢复磁盘队列中未完成的任务
+     */
+    private void recover() {
+        for (MediaIngestStage stage : MediaIngestStage.values()) {
+            Path stageDir = getStageDir(stage);
+            if (!Files.isDirectory(stageDir)) {
+                continue;
+            }
+            restoreRunningJobFiles(stage, stageDir);
+            List<Path> jobFiles;
+            try (Stream<Path> stream = Files.list(stageDir)) {
+                jobFiles = stream.filter(path -> path.getFileName().toString().endsWith(JOB_SUFFIX)).toList();
+            } catch (IOException e) {
+                log.warn("读取媒体处理队列失败, stage: {}, {}", stage, e.getMessage());
+                continue;
+            }
+            if (!jobFiles.isEmpty()) {
+                log.info("恢复媒体处理任务, stage: {}, count: {}", stage, jobFiles.size());
+            }
+            for (Path jobFile : jobFiles) {
+                try {
+                    submit(stage, JacksonUtil.parseObject(Files.readString(jobFile, StandardCharsets.UTF_8), MediaIngestJob.class));
+                } catch (Exception e) {
+                    log.warn("无效的媒体处理任务: {}, {}", jobFile, e.getMessage());
+                    PathUtil.del(jobFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * 上次退出时正在执行的任务改回 .json; 已有同名的 .json 时是更新的任务, 删除 .running
+     */
+    private void restoreRunningJobFiles(MediaIngestStage stage, Path stageDir) {
+        List<Path> runningFiles;
+        try (Stream<Path> stream = Files.list(stageDir)) {
+            runningFiles = stream.filter(path -> path.getFileName().toString().endsWith(RUNNING_SUFFIX)).toList();
+        } catch (IOException e) {
+            log.warn("读取媒体处理队列失败, stage: {}, {}", stage, e.getMessage());
+            return;
+        }
+        for (Path runningFile : runningFiles) {
+            String fileId = StrUtil.removeSuffix(runningFile.getFileName().toString(), RUNNING_SUFFIX);
+            Path jobFile = getJobFile(stage, fileId);
+            try {
+                if (Files.exists(jobFile)) {
+                    Files.delete(runningFile);
+                } else {
+                    Files.move(runningFile, jobFile);
+                }
+            } catch (IOException e) {
+                log.warn("恢复媒体处理任务失败: {}, {}", runningFile, e.getMessage());
+            }
+        }
+    }
+
+    private Path getStageDir(MediaIngestStage stage) {
+        return Paths.get(fileProperties.getRootDir(), fileProperties.getJmalcloudDBDir(), QUEUE_DIR, stage.name().toLowerCase());
+    }
+
+    private Path getJobFile(MediaIngestStage stage, String fileId) {
+        return getStageDir(stage).resolve(fileId + JOB_SUFFIX);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stageExecutors.values().forEach(ExecutorService::shutdown);
+    }
+
+    /**
+     * 已提交的任务, 按引用比较, 同一个文件重新提交的任务即使内容相同也是新的任务
+     */
+    private static final class PendingJob {
+
+        private final MediaIngestJob job;
+
+        private PendingJob(MediaIngestJob job) {
+            this.job = job;
+        }
+    }
+}
@@ -47,6 +47,14 @@ public class UploadApiParamDTO implements Reflective {
      * 文件唯一标识MD5
      */
     String identifier;
+    /**
+     * 文件内容摘要(SHA-256), 用于秒传
+     */
+    String contentHash;
+    /**
+     * 秒传持有证明: SHA-256(proofNonce + 文件中 proofOffset 开始的 proofLength 字节), 由服务端在 checkContentHash 的响应中指定
+     */
+    String contentProof;
     /***
      * 文件或文件夹名
      */
@@ -35,6 +35,18 @@ public class UploadResponse implements Reflective {
      * 上传后是合并完成
      */
     boolean merge;
+    /**
+     * 秒传需要持有证明时服务端生成的随机串, 客户端计算 contentProof 后重新请求秒传
+     */
+    String proofNonce;
+    /**
+     * 秒传持有证明的数据范围起点
+     */
+    Long proofOffset;
+    /**
+     * 秒传持有证明的数据长度
+     */
+    Long proofLength;
 
     public UploadResponse() {
         this.pass = false;
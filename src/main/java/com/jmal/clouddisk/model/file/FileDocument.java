@@ -30,6 +30,7 @@ import java.util.Objects;
         @CompoundIndex(name = "updateDate_1", def = "{'updateDate': 1}"),
         @CompoundIndex(name = "path_name", def = "{'path': 1, 'name': 1}"),
         @CompoundIndex(name = "user_md5_path", def = "{'userId': 1,'md5': 1, 'path': 1}"),
+        @CompoundIndex(name = "user_contentHash", def = "{'userId': 1, 'contentHash': 1}"),
         @CompoundIndex(name = "user_path", def = "{'userId': 1, 'path': 1}"),
         @CompoundIndex(name = "user_path_name", def = "{'userId': 1, 'path': 1, 'name': 1}"),
         @CompoundIndex(name = "user_isFolder_path", def = "{'userId': 1, 'isFolder': 1, 'path': 1}"),
@@ -85,6 +86,14 @@ public class FileDocument extends FileBase implements Reflective {
      * 文件后缀名
      */
     private String suffix;
+    /**
+     * 文件内容摘要(SHA-256), 上传时增量计算, 用于秒传, 文件被修改后清除
+     */
+    private String contentHash;
+    /**
+     * 记录内容摘要时文件的 ETag(大小和修改时间), 与当前 ETag 不一致说明文件已被修改, 内容摘要失效
+     */
+    private String contentHashEtag;
     /***
      * 是否收藏
      */
@@ -38,6 +38,7 @@ import java.time.LocalDateTime;
                 @Index(name = "files_path", columnList = "path"),
                 @Index(name = "files_mount_file_id", columnList = "mountFileId"),
                 @Index(name = "files_del_tag", columnList = "delTag"),
+                @Index(name = "files_content_hash", columnList = "contentHash"),
         }
 )
 public class FileMetadataDO extends AuditablePerformanceEntity implements Reflective {
@@ -48,6 +49,16 @@ public class FileMetadataDO extends AuditablePerformanceEntity implements Reflec
     @Column(nullable = false)
     private String name;
     private String md5;
+    /**
+     * 文件内容摘要(SHA-256), 用于秒传
+     */
+    @Column(length = 64)
+    private String contentHash;
+    /**
+     * 记录内容摘要时文件的 ETag, 用于判断内容摘要是否失效
+     */
+    @Column(length = 64)
+    private String contentHashEtag;
     @Column(nullable = false)
     private String path;
     private Long size;
@@ -130,6 +141,8 @@ public class FileMetadataDO extends AuditablePerformanceEntity implements Reflec
         this.uploadDate = fileDocument.getUploadDate();
         this.updateDate = fileDocument.getUpdateDate();
         this.suffix = fileDocument.getSuffix();
+        this.contentHash = fileDocument.getContentHash();
+        this.contentHashEtag = fileDocument.getContentHashEtag();
         this.isFavorite = fileDocument.getIsFavorite();
         this.mountFileId = fileDocument.getMountFileId();
         this.ossFolder = fileDocument.getOssFolder();
@@ -160,6 +173,8 @@ public class FileMetadataDO extends AuditablePerformanceEntity implements Reflec
         fileDocument.setPath(this.path);
         fileDocument.setChildrenCount(this.childrenCount);
         fileDocument.setSuffix(this.suffix);
+        fileDocument.setContentHash(this.contentHash);
+        fileDocument.setContentHashEtag(this.contentHashEtag);
         fileDocument.setIsFavorite(this.isFavorite);
         if (this.props != null) {
             fileDocument.setShareId(this.props.getShareId());
@@ -19,6 +19,10 @@ public class FileBaseEtagDTO extends FileBaseDTO implements Reflective {
 
     private String etag;
 
+    private Long size;
+
+    private Integer childrenCount;
+
     public FileBaseEtagDTO(String id, String name, String path, String userId) {
         super(id, name, path, userId);
     }
@@ -33,6 +37,13 @@ public class FileBaseEtagDTO extends FileBaseDTO implements Reflective {
         this.etag = etag;
     }
 
+    public FileBaseEtagDTO(String id, String name, String path, String userId, Boolean isFolder, String etag, Long size, Integer childrenCount) {
+        super(id, name, path, userId, isFolder);
+        this.etag = etag;
+        this.size = size;
+        this.childrenCount = childrenCount;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
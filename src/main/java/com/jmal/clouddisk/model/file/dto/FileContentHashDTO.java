@@ -0,0 +1,31 @@
+package com.jmal.clouddisk.model.file.dto;
+
+import com.jmal.clouddisk.config.Reflective;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 秒传时按内容摘要查找到的文件
+ *
+ * @author jmal
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class FileContentHashDTO extends FileBaseDTO implements Reflective {
+
+    /**
+     * 记录内容摘要时文件的 ETag
+     */
+    String contentHashEtag;
+
+    public FileContentHashDTO(String id, String name, String path, String userId, String contentHashEtag) {
+        this.id = id;
+        this.name = name;
+        this.path = path;
+        this.userId = userId;
+        this.contentHashEtag = contentHashEtag;
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.jmal.clouddisk.model.file.dto;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import com.jmal.clouddisk.config.Reflective;
+import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.exception.ExceptionType;
+import com.jmal.clouddisk.model.file.FileIntroVO;
+import com.jmal.clouddisk.service.Constants;
+import com.jmal.clouddisk.util.JacksonUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 文件列表游标(keyset)分页的位置
+ * 排序规则固定为 isFolder DESC, sortProp ASC/DESC, id ASC, 游标记录上一页最后一项的这三个值,
+ * 对外以不透明的 base64 字符串传递
+ *
+ * @param sortProp  排序字段, name / size / updateDate
+ * @param desc      是否倒序
+ * @param isFolder  上一页最后一项是否为文件夹
+ * @param sortValue 上一页最后一项的排序字段值
+ * @param id        上一页最后一项的id
+ */
+public record FileListCursor(String sortProp, boolean desc, boolean isFolder, String sortValue, String id) implements Reflective {
+
+    public static final String SORT_PROP_NAME = Constants.FILENAME_FIELD;
+    public static final String SORT_PROP_SIZE = Constants.SIZE;
+    public static final String SORT_PROP_UPDATE_DATE = Constants.UPDATE_DATE;
+
+    /**
+     * 关系型数据库中 size 为空时参与排序和比较的值
+     */
+    public static final long NULL_SIZE = 0L;
+
+    /**
+     * 关系型数据库中 updateDate 为空时参与排序和比较的值, 早于所有实际的时间
+     */
+    public static final LocalDateTime NULL_UPDATE_DATE = LocalDateTime.of(1000, 1, 1, 0, 0);
+
+    /**
+     * 第一页的游标
+     *
+     * @param sortProp 排序字段, 不支持的字段按文件名排序
+     * @param order    排序方式
+     */
+    public static FileListCursor first(String sortProp, String order) {
+        String prop = switch (CharSequenceUtil.nullToEmpty(sortProp)) {
+            case SORT_PROP_SIZE -> SORT_PROP_SIZE;
+            case SORT_PROP_UPDATE_DATE -> SORT_PROP_UPDATE_DATE;
+            default -> SORT_PROP_NAME;
+        };
+        return new FileListCursor(prop, Constants.DESCENDING.equals(order), true, null, null);
+    }
+
+    /**
+     * 是否为第一页
+     */
+    public boolean firstPage() {
+        return id == null;
+    }
+
+    /**
+     * 以本页最后一项生成下一页的游标
+     */
+    public FileListCursor next(FileIntroVO last) {
+        String value = switch (sortProp) {
+            case SORT_PROP_SIZE -> last.getSize() == null ? null : String.valueOf(last.getSize());
+            case SORT_PROP_UPDATE_DATE -> last.getUpdateDate() == null ? null : last.getUpdateDate().toString();
+            default -> last.getName();
+        };
+        return new FileListCursor(sortProp, desc, Boolean.TRUE.equals(last.getIsFolder()), value, last.getId());
+    }
+
+    /**
+     * 上一页最后一项的 size, 为空时返回 {@link #NULL_SIZE}
+     */
+    public Long sizeValue() {
+        return sortValue == null ? NULL_SIZE : Long.parseLong(sortValue);
+    }
+
+    /**
+     * 上一页最后一项的 updateDate, 为空时返回 {@link #NULL_UPDATE_DATE}
+     */
+    public LocalDateTime updateDateValue() {
+        return sortValue == null ? NULL_UPDATE_DATE : LocalDateTime.parse(sortValue);
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JacksonUtil.toJSONString(this).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FileListCursor decode(String cursor) {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            FileListCursor fileListCursor = JacksonUtil.parseObject(json, FileListCursor.class);
+            if (fileListCursor == null || fileListCursor.sortProp() == null) {
+                throw new IllegalArgumentException(cursor);
+            }
+            return fileListCursor;
+        } catch (RuntimeException e) {
+            throw new CommonException(ExceptionType.PARAMETERS_VALUE.getCode(), "无效参数 cursor");
+        }
+    }
+}
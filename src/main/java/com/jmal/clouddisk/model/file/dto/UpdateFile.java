@@ -1,6 +1,7 @@
 package com.jmal.clouddisk.model.file.dto;
 
 import com.jmal.clouddisk.media.VideoInfoDO;
+import com.jmal.clouddisk.model.Music;
 import com.jmal.clouddisk.model.file.ExifInfo;
 import lombok.Getter;
 import lombok.Setter;
@@ -15,12 +16,25 @@ public class UpdateFile {
     private String contentType;
     private String suffix;
     private LocalDateTime updateDate;
+    private String w;
+    private String h;
+    private Music music;
+    private Boolean mediaCover;
+    /**
+     * 内容(缩略图/封面)已由 FilePersistenceService 写入, 只需设置标记(仅关系型数据库)
+     */
+    private Boolean hasContent;
 
     public boolean isNotEmpty() {
         return exif != null ||
                 video != null ||
                 contentType != null ||
                 suffix != null ||
-                updateDate != null;
+                updateDate != null ||
+                w != null ||
+                h != null ||
+                music != null ||
+                mediaCover != null ||
+                hasContent != null;
     }
 }
@@ -12,4 +12,11 @@ public interface IOcrService {
      */
     void doOCR(Writer writer, String imagePath, String tempImagePath);
 
+    /**
+     * 识别结果相关的配置(语言、模型等), 变化后之前缓存的识别结果不再使用
+     */
+    default String getCacheVersion() {
+        return "";
+    }
+
 }
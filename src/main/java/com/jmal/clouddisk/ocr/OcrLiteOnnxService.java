@@ -46,6 +46,11 @@ public class OcrLiteOnnxService implements IOcrService {
         }
     }
 
+    @Override
+    public String getCacheVersion() {
+        return "dbnet|crnn_lite_lstm|" + fileProperties.getOcrLiteONNXModelPath();
+    }
+
     /**
      * 构建 OcrLiteOnnx 命令的 ProcessBuilder.
      * @param inputPath 输入图片路径
@@ -0,0 +1,155 @@
+package com.jmal.clouddisk.ocr;
+
+import cn.hutool.core.io.file.PathUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.util.HashUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * OCR识别结果的磁盘缓存
+ * 缓存key由待识别图片的内容哈希、OCR引擎和引擎配置版本组成, 重建索引时相同的页面直接复用之前的识别结果,
+ * 只有新增或变化的页面才会调用OCR引擎。缓存总大小受 ocrResultCacheSizeMB 限制
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OcrResultCache {
+
+    private final FileProperties fileProperties;
+
+    private static final String CACHE_DIR = "ocrResult";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final long MEGABYTE = 1024L * 1024;
+
+    /**
+     * 缓存格式版本, 预处理方式等变化后递增, 使旧的识别结果失效
+     */
+    private static final String FORMAT_VERSION = "1";
+
+    /**
+     * key: 缓存key, value: 缓存文件大小
+     */
+    private Cache<String, Long> cacheIndex;
+
+    private Path cacheDir;
+
+    @PostConstruct
+    public void init() {
+        cacheDir = Paths.get(fileProperties.getRootDir(), fileProperties.getJmalcloudDBDir(), "cache", CACHE_DIR);
+        long maxWeight = Math.max(1, fileProperties.getOcrResultCacheSizeMB()) * MEGABYTE;
+        cacheIndex = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String _, Long size) -> (int) Math.min(Integer.MAX_VALUE, Math.max(1, size)))
+                .removalListener((String key, Long _, RemovalCause cause) -> {
+                    if (key != null && cause.wasEvicted()) {
+                        PathUtil.del(getCacheFile(key));
+                    }
+                })
+                .build();
+        ThreadUtil.execute(this::loadIndex);
+    }
+
+    /**
+     * 生成缓存key
+     *
+     * @param imagePath    待识别的图片
+     * @param ocrEngine    OCR引擎
+     * @param cacheVersion 引擎配置版本
+     * @return 缓存key, 读取图片失败返回null
+     */
+    public String key(String imagePath, String ocrEngine, String cacheVersion) {
+        try {
+            String imageHash = HashUtil.sha256(new File(imagePath));
+            return HashUtil.sha256(String.join("|", FORMAT_VERSION, imageHash, ocrEngine, cacheVersion));
+        } catch (IOException e) {
+            log.warn("计算OCR图片哈希失败: {}, {}", imagePath, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 获取缓存的识别结果
+     *
+     * @return 识别结果, 未命中返回null
+     */
+    public String get(String key) {
+        Path cacheFile = getCacheFile(key);
+        if (cacheIndex.getIfPresent(key) != null) {
+            try {
+                return Files.readString(cacheFile, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                cacheIndex.invalidate(key);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 缓存识别结果
+     */
+    public void put(String key, String text) {
+        Path cacheFile = getCacheFile(key);
+        Path tmpFile = cacheFile.resolveSibling(cacheFile.getFileName() + TMP_SUFFIX);
+        try {
+            PathUtil.mkParentDirs(cacheFile);
+            Files.writeString(tmpFile, text, StandardCharsets.UTF_8);
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            cacheIndex.put(key, Files.size(cacheFile));
+        } catch (IOException e) {
+            PathUtil.del(tmpFile);
+            log.warn("缓存OCR识别结果失败: {}", e.getMessage());
+        }
+    }
+
+    private Path getCacheFile(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * 启动时加载已有的缓存文件, 按最后修改时间从旧到新加入索引
+     */
+    private void loadIndex() {
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(cacheDir, 2)) {
+            files = stream.filter(Files::isRegularFile).toList();
+        } catch (IOException e) {
+            log.warn("加载OCR缓存失败: {}", e.getMessage());
+            return;
+        }
+        files.stream()
+                .sorted(Comparator.comparingLong(path -> path.toFile().lastModified()))
+                .forEach(path -> {
+                    String name = path.getFileName().toString();
+                    if (name.endsWith(TMP_SUFFIX)) {
+                        PathUtil.del(path);
+                        return;
+                    }
+                    cacheIndex.put(name, path.toFile().length());
+                });
+        log.debug("加载OCR缓存: {}", files.size());
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.jmal.clouddisk.ocr;
 
+import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.BooleanUtil;
 import com.github.benmanes.caffeine.cache.Cache;
@@ -15,6 +16,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -34,6 +37,8 @@ public class OcrService {
 
     private final IOcrConfigDAO ocrConfigDAO;
 
+    private final OcrResultCache ocrResultCache;
+
     // 初始设置为1个并发请求
     private final Semaphore semaphore = new Semaphore(1);
 
@@ -85,7 +90,31 @@ public class OcrService {
         if (ocrService == null) {
             throw new IllegalArgumentException("Unknown OCR engine: " + ocrEngine);
         }
-        ocrService.doOCR(writer, imagePath, tempImagePath);
+        String cacheKey = ocrResultCache.key(imagePath, ocrEngine, ocrService.getCacheVersion());
+        if (cacheKey == null) {
+            ocrService.doOCR(writer, imagePath, tempImagePath);
+            return;
+        }
+        String text = ocrResultCache.get(cacheKey);
+        if (text == null) {
+            StringWriter result = new StringWriter();
+            ocrService.doOCR(result, imagePath, tempImagePath);
+            text = result.toString();
+            // 识别失败时引擎只记录日志并返回空结果, 空结果不缓存
+            if (CharSequenceUtil.isNotBlank(text)) {
+                ocrResultCache.put(cacheKey, text);
+            }
+        } else {
+            log.debug("OCR缓存命中: {}", imagePath);
+            if (CharSequenceUtil.isNotBlank(tempImagePath)) {
+                FileUtil.del(tempImagePath);
+            }
+        }
+        try {
+            writer.write(text);
+        } catch (IOException e) {
+            log.error("写入OCR识别结果失败: {}", e.getMessage(), e);
+        }
     }
 
     /**
@@ -33,6 +33,11 @@ public class TesseractService implements IOcrService {
         doOCR(writer, imagePath, tempImagePath, tesseractOcrConfig.getDataPath());
     }
 
+    @Override
+    public String getCacheVersion() {
+        return "chi_sim|" + tesseractOcrConfig.getDataPath();
+    }
+
     public void doOCR(Writer writer, String imagePath, String tempImagePath, String tessdataDir) {
         try {
 
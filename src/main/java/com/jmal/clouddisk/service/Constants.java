@@ -90,6 +90,10 @@ public class Constants {
 
     public static final String SIZE = "size";
 
+    public static final String CONTENT_HASH = "contentHash";
+
+    public static final String CONTENT_HASH_ETAG = "contentHashEtag";
+
     public static final String CHILDREN_COUNT = "childrenCount";
 
     public static final String DELETE_FILE = "deleteFile";
@@ -109,6 +109,14 @@ public interface IFileService {
      */
     ResponseResult<Object> checkChunkUploaded(UploadApiParamDTO upload) throws IOException;
 
+    /**
+     * 秒传, 按文件内容摘要检查是否已存在相同的文件, 存在则直接创建, 不需要上传
+     * @param upload 上传参数, 需要 contentHash 和 totalSize
+     * @return ResponseResult<Object>
+     * @throws IOException IOException
+     */
+    ResponseResult<Object> checkContentHash(UploadApiParamDTO upload) throws IOException;
+
     /**
      * 合并文件
      * @param upload 上传参数
@@ -124,6 +132,14 @@ public interface IFileService {
      */
     ResponseResult<Object> listFiles(UploadApiParamDTO upload);
 
+    /**
+     * 文件列表(游标分页), 适用于子项很多的目录
+     * @param upload 上传参数
+     * @param cursor 上一页返回的游标, 第一页为空
+     * @return ResponseResult<Object>, props.cursor 为下一页的游标, 没有下一页时为空
+     */
+    ResponseResult<Object> listFilesByCursor(UploadApiParamDTO upload, String cursor);
+
     /**
      * 搜索文件
      * @param upload 上传参数
@@ -277,6 +293,23 @@ public interface IFileService {
      */
     ResponseResult<Object> unzip(String fileId, String destFileId);
 
+    /**
+     * 浏览压缩文件, 不解压
+     * @param fileId 压缩文件id
+     * @param dir 压缩包内的目录, 为空时表示根目录
+     * @return ResponseResult<Object>
+     */
+    ResponseResult<Object> listArchive(String fileId, String dir);
+
+    /**
+     * 下载压缩文件中的单个文件, 不解压其他文件
+     * @param request HttpServletRequest
+     * @param response HttpServletResponse
+     * @param fileId 压缩文件id
+     * @param entryPath 压缩包内的文件路径
+     */
+    void downloadArchiveEntry(HttpServletRequest request, HttpServletResponse response, String fileId, String entryPath);
+
     /**
      * 获取目录下的文件
      * @param path 文件目录路径
@@ -0,0 +1,175 @@
+package com.jmal.clouddisk.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.exception.ExceptionType;
+import com.jmal.clouddisk.model.file.FileIntroVO;
+import com.jmal.clouddisk.util.CompressUtils;
+import com.jmal.clouddisk.util.FileContentTypeUtils;
+import com.jmal.clouddisk.util.HashUtil;
+import com.jmal.clouddisk.util.MyFileUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压缩文件浏览
+ * 压缩包只读取一次目录(7z l -slt, tar.gz 等压缩的 tar 包使用 commons-compress), 解析结果按压缩文件路径和 ETag 缓存, 浏览子目录不再重复读取;
+ * 下载单个文件时只输出该条目, 不需要把整个压缩包解压到磁盘
+ *
+ * @author jmal
+ */
+@Slf4j
+@Service
+public class ArchiveBrowseService {
+
+    /**
+     * 缓存的条目总数上限
+     */
+    private static final int MAX_CACHED_ENTRIES = 2_000_000;
+
+    /**
+     * 压缩文件目录缓存
+     * key: 压缩文件路径 + ETag
+     * value: 压缩文件中的所有条目
+     */
+    private final Cache<String, List<CompressUtils.ArchiveEntry>> entriesCache = Caffeine.newBuilder()
+            .maximumWeight(MAX_CACHED_ENTRIES)
+            .weigher((String _, List<CompressUtils.ArchiveEntry> entries) -> Math.max(1, entries.size()))
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 压缩文件中的所有条目
+     *
+     * @param archiveFile 压缩文件
+     */
+    public List<CompressUtils.ArchiveEntry> getEntries(File archiveFile) {
+        String key = archiveFile.getAbsolutePath() + ":" + HashUtil.fileEtag(archiveFile);
+        List<CompressUtils.ArchiveEntry> entries = entriesCache.getIfPresent(key);
+        if (entries != null) {
+            return entries;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            entries = List.copyOf(CompressUtils.listEntries(archiveFile));
+            log.debug("读取压缩文件目录: {}, 条目数: {}, 耗时: {}ms", archiveFile.getName(), entries.size(), System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            throw new CommonException(ExceptionType.UNRECOGNIZED_FILE.getCode(), "读取压缩文件失败: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), "读取压缩文件被中断");
+        }
+        entriesCache.put(key, entries);
+        return entries;
+    }
+
+    /**
+     * 把压缩文件当作文件夹浏览, 列出 dir 下的直接子文件/文件夹
+     * 压缩包中没有单独条目的中间目录也会列出
+     *
+     * @param archiveFile 压缩文件
+     * @param dir         压缩包内的目录, 为空时表示根目录
+     * @return 子文件/文件夹, path 为压缩包内的路径
+     */
+    public List<FileIntroVO> listDir(File archiveFile, String dir) {
+        String normalizedDir = normalize(dir);
+        String prefix = normalizedDir.isEmpty() ? "" : normalizedDir + "/";
+        Map<String, FileIntroVO> children = new LinkedHashMap<>();
+        for (CompressUtils.ArchiveEntry entry : getEntries(archiveFile)) {
+            String path = entry.path();
+            if (!path.startsWith(prefix) || path.length() == prefix.length()) {
+                continue;
+            }
+            String rest = path.substring(prefix.length());
+            int slash = rest.indexOf('/');
+            if (slash < 0) {
+                children.put(rest, toFileIntroVO(entry, rest));
+            } else {
+                String folderName = rest.substring(0, slash);
+                children.computeIfAbsent(folderName, name -> toFolderVO(prefix + name, name));
+            }
+        }
+        return children.values().stream().sorted(FileSortService::compareByFileName).toList();
+    }
+
+    /**
+     * 获取压缩文件中的单个文件
+     *
+     * @param archiveFile 压缩文件
+     * @param entryPath   压缩包内的文件路径
+     */
+    public CompressUtils.ArchiveEntry getFileEntry(File archiveFile, String entryPath) {
+        String path = normalize(entryPath);
+        CompressUtils.ArchiveEntry entry = getEntries(archiveFile).stream()
+                .filter(archiveEntry -> !archiveEntry.folder() && archiveEntry.path().equals(path))
+                .findFirst()
+                .orElseThrow(() -> new CommonException(ExceptionType.FILE_NOT_FIND));
+        if (entry.encrypted()) {
+            throw new CommonException(ExceptionType.WARNING.getCode(), "暂不支持加密的压缩文件");
+        }
+        return entry;
+    }
+
+    /**
+     * 输出压缩文件中单个文件的内容
+     *
+     * @param archiveFile  压缩文件
+     * @param entry        {@link #getFileEntry} 返回的条目
+     * @param outputStream 输出流
+     */
+    public void writeEntry(File archiveFile, CompressUtils.ArchiveEntry entry, OutputStream outputStream) throws IOException {
+        try {
+            CompressUtils.extractEntry(archiveFile, entry.path(), outputStream);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("解压被中断", e);
+        }
+    }
+
+    private static String normalize(String path) {
+        if (path == null) {
+            return "";
+        }
+        String normalized = path.replace("\\", "/");
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private static FileIntroVO toFileIntroVO(CompressUtils.ArchiveEntry entry, String name) {
+        if (entry.folder()) {
+            return toFolderVO(entry.path(), name);
+        }
+        FileIntroVO fileIntroVO = new FileIntroVO();
+        String suffix = MyFileUtils.extName(name);
+        fileIntroVO.setName(name);
+        fileIntroVO.setPath(entry.path());
+        fileIntroVO.setIsFolder(false);
+        fileIntroVO.setSize(entry.size());
+        fileIntroVO.setSuffix(suffix);
+        fileIntroVO.setContentType(FileContentTypeUtils.getContentType(suffix));
+        fileIntroVO.setUpdateDate(entry.modified());
+        return fileIntroVO;
+    }
+
+    private static FileIntroVO toFolderVO(String path, String name) {
+        FileIntroVO fileIntroVO = new FileIntroVO();
+        fileIntroVO.setName(name);
+        fileIntroVO.setPath(path);
+        fileIntroVO.setIsFolder(true);
+        return fileIntroVO;
+    }
+}
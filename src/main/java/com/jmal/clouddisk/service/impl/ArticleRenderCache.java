@@ -0,0 +1,66 @@
+package com.jmal.clouddisk.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 文章渲染结果缓存
+ * 缓存处理后的HTML(标题id、图片懒加载)、关键词和描述, key由文章id、修改时间和网站设置版本组成,
+ * 文章修改或网站设置变化后旧的缓存不再命中, 编辑文章时主动移除该文章的缓存
+ */
+@Component
+public class ArticleRenderCache {
+
+    /**
+     * 渲染后的文章
+     *
+     * @param html        处理后的HTML
+     * @param keywords    关键词
+     * @param description 描述
+     */
+    public record RenderedArticle(String html, String keywords, String description) {
+    }
+
+    private record RenderKey(String articleId, LocalDateTime updateDate, long settingVersion) {
+    }
+
+    /**
+     * 按HTML字符数限制缓存总大小
+     */
+    private static final long MAX_WEIGHT_CHARS = 64L * 1024 * 1024;
+
+    private final Cache<RenderKey, RenderedArticle> cache = Caffeine.newBuilder()
+            .maximumWeight(MAX_WEIGHT_CHARS)
+            .weigher((RenderKey _, RenderedArticle article) -> article.html() == null ? 1 : Math.max(1, article.html().length()))
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    /**
+     * 获取渲染结果, 不存在则渲染
+     *
+     * @param articleId      文章id
+     * @param updateDate     文章修改时间
+     * @param settingVersion 网站设置版本
+     * @param renderer       渲染文章
+     */
+    public RenderedArticle get(String articleId, LocalDateTime updateDate, long settingVersion, Supplier<RenderedArticle> renderer) {
+        return cache.get(new RenderKey(articleId, updateDate, settingVersion), _ -> renderer.get());
+    }
+
+    /**
+     * 移除文章的所有缓存
+     *
+     * @param articleId 文章id
+     */
+    public void invalidate(String articleId) {
+        if (articleId == null) {
+            return;
+        }
+        cache.asMap().keySet().removeIf(key -> articleId.equals(key.articleId()));
+    }
+}
@@ -0,0 +1,373 @@
+package com.jmal.clouddisk.service.impl;
+
+import cn.hutool.core.io.file.PathUtil;
+import com.google.common.hash.Hasher;
+import com.jmal.clouddisk.util.HashUtil;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 分片按位置组装
+ * 创建时预分配目标文件, 每个分片直接写入 (chunkNumber - 1) × chunkSize 的位置, 分片可以乱序、并行上传,
+ * 不需要先落地分片文件再按顺序追加。已写入的分片记录在 BitSet 中并持久化, 重启后可以继续上传。
+ * 连续写入的分片随即计入内容摘要(SHA-256), 写完最后一个分片时摘要也已算完, 不需要在合并后重新读取整个文件。
+ * 写入前 {@link #retain()}、写入后 {@link #release()}, {@link #close()} 等到没有使用者时才关闭文件
+ */
+public class ChunkAssembly implements Closeable {
+
+    /**
+     * 组装中的目标文件
+     */
+    public static final String DATA_FILE = "data";
+
+    /**
+     * 已写入的分片
+     */
+    public static final String BITMAP_FILE = "chunks.bitmap";
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * 进度文件头: totalSize, chunkSize, totalChunks
+     */
+    private static final int HEADER_SIZE = Long.BYTES * 2 + Integer.BYTES;
+
+    @Getter
+    private final Path dataFile;
+
+    private final Path bitmapFile;
+
+    @Getter
+    private final long totalSize;
+
+    private final long chunkSize;
+
+    @Getter
+    private final int totalChunks;
+
+    private final FileChannel channel;
+
+    /**
+     * 已写入的分片, 第 n 个分片对应第 n - 1 位
+     */
+    private final BitSet written;
+
+    /**
+     * 内容摘要, 按分片顺序增量计算
+     */
+    private final Hasher contentHasher = HashUtil.newContentHasher();
+
+    /**
+     * 已计入内容摘要的分片数, 即从第1个分片开始连续写入的分片数
+     */
+    private int hashedChunks;
+
+    private String contentHash;
+
+    private final Object hashLock = new Object();
+
+    /**
+     * 正在使用的次数, 以下三个字段由 this 保护
+     */
+    private int refCount;
+
+    /**
+     * 已封存, 不再接受新的写入
+     */
+    private boolean sealed;
+
+    /**
+     * 已请求关闭, 没有使用者时关闭文件
+     */
+    private boolean closeRequested;
+
+    private ChunkAssembly(Path dir, long totalSize, long chunkSize, int totalChunks) throws IOException {
+        this.dataFile = dir.resolve(DATA_FILE);
+        this.bitmapFile = dir.resolve(BITMAP_FILE);
+        this.totalSize = totalSize;
+        this.chunkSize = chunkSize;
+        this.totalChunks = totalChunks;
+        Files.createDirectories(dir);
+        BitSet bitmap = readBitmap();
+        if (bitmap == null || !Files.isRegularFile(dataFile) || Files.size(dataFile) != totalSize) {
+            // 没有可以恢复的进度
+            bitmap = new BitSet(totalChunks);
+            Files.deleteIfExists(bitmapFile);
+            Files.deleteIfExists(dataFile);
+        }
+        this.written = bitmap;
+        this.channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() != totalSize) {
+            // 预分配, 大多数文件系统上为稀疏文件
+            channel.position(totalSize - 1);
+            channel.write(ByteBuffer.wrap(new byte[1]));
+            channel.position(0);
+        }
+    }
+
+    /**
+     * 打开分片组装, 目录下有之前的进度则继续
+     *
+     * @param dir         分片目录
+     * @param totalSize   文件总大小
+     * @param chunkSize   分片大小, 最后一个分片可能大于或小于分片大小
+     * @param totalChunks 分片总数
+     */
+    public static ChunkAssembly open(Path dir, long totalSize, long chunkSize, int totalChunks) throws IOException {
+        if (totalSize <= 0 || chunkSize <= 0 || totalChunks <= 0) {
+            throw new IllegalArgumentException("totalSize, chunkSize and totalChunks must be positive");
+        }
+        return new ChunkAssembly(dir, totalSize, chunkSize, totalChunks);
+    }
+
+    /**
+     * 按进度文件头中的分片方式重新打开, 用于合并请求没有携带分片信息时检查是否已写入所有分片
+     *
+     * @param dir 分片目录
+     * @return 没有进度文件、文件头无效或目标文件大小与文件头不一致时返回null
+     */
+    public static ChunkAssembly reopen(Path dir) throws IOException {
+        Path bitmapFile = dir.resolve(BITMAP_FILE);
+        Path dataFile = dir.resolve(DATA_FILE);
+        if (!Files.isRegularFile(bitmapFile) || !Files.isRegularFile(dataFile)) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(bitmapFile));
+        if (header.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        long totalSize = header.getLong();
+        long chunkSize = header.getLong();
+        int totalChunks = header.getInt();
+        if (totalSize <= 0 || chunkSize <= 0 || totalChunks <= 0
+                || (totalChunks - 1) * chunkSize >= totalSize
+                || Files.size(dataFile) != totalSize) {
+            return null;
+        }
+        return new ChunkAssembly(dir, totalSize, chunkSize, totalChunks);
+    }
+
+    /**
+     * 写入分片, 不同分片可以并发写入
+     *
+     * @param chunkNumber 分片序号, 从1开始
+     * @param inputStream 分片内容
+     * @throws IOException 写入失败或分片长度与预期不一致
+     */
+    public void write(int chunkNumber, InputStream inputStream) throws IOException {
+        if (chunkNumber < 1 || chunkNumber > totalChunks) {
+            throw new IOException("chunkNumber out of range: " + chunkNumber);
+        }
+        long position = (chunkNumber - 1) * chunkSize;
+        long expectedLength = chunkNumber == totalChunks ? totalSize - position : chunkSize;
+        if (expectedLength <= 0) {
+            throw new IOException("chunk " + chunkNumber + " is beyond the end of file");
+        }
+        long length = 0;
+        ReadableByteChannel in = Channels.newChannel(inputStream);
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, expectedLength + 1));
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            if (length + buffer.remaining() > expectedLength) {
+                throw new IOException("chunk " + chunkNumber + " is longer than expected: " + expectedLength);
+            }
+            while (buffer.hasRemaining()) {
+                length += channel.write(buffer, position + length);
+            }
+            buffer.clear();
+        }
+        if (length != expectedLength) {
+            throw new IOException("chunk " + chunkNumber + " length " + length + " != expected " + expectedLength);
+        }
+        // 先持久化分片内容, 再记录进度
+        channel.force(false);
+        synchronized (written) {
+            written.set(chunkNumber - 1);
+            writeBitmap();
+        }
+        advanceContentHash();
+    }
+
+    /**
+     * 内容摘要(SHA-256), 未写入所有分片时返回null
+     */
+    public String getContentHash() throws IOException {
+        advanceContentHash();
+        synchronized (hashLock) {
+            return contentHash;
+        }
+    }
+
+    /**
+     * 把新连续起来的分片计入内容摘要, 这些分片刚写入, 读取时命中页缓存。
+     * 乱序到达的分片等前面的分片写入后再计入; 重启后摘要从第1个分片重新计算
+     */
+    private void advanceContentHash() throws IOException {
+        synchronized (hashLock) {
+            ByteBuffer buffer = null;
+            while (hashedChunks < totalChunks && isWritten(hashedChunks + 1)) {
+                long position = hashedChunks * chunkSize;
+                long length = hashedChunks + 1 == totalChunks ? totalSize - position : chunkSize;
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                }
+                long read = 0;
+                while (read < length) {
+                    buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - read));
+                    int n = channel.read(buffer, position + read);
+                    if (n < 0) {
+                        throw new IOException("unexpected end of file while hashing chunk " + (hashedChunks + 1));
+                    }
+                    buffer.flip();
+                    contentHasher.putBytes(buffer);
+                    read += n;
+                }
+                hashedChunks++;
+            }
+            if (hashedChunks == totalChunks && contentHash == null) {
+                contentHash = contentHasher.hash().toString();
+            }
+        }
+    }
+
+    /**
+     * 分片是否已写入
+     */
+    public boolean isWritten(int chunkNumber) {
+        synchronized (written) {
+            return chunkNumber >= 1 && written.get(chunkNumber - 1);
+        }
+    }
+
+    /**
+     * 已写入的分片数
+     */
+    public int writtenCount() {
+        synchronized (written) {
+            return written.cardinality();
+        }
+    }
+
+    /**
+     * 是否已写入所有分片
+     */
+    public boolean isComplete() {
+        return writtenCount() == totalChunks;
+    }
+
+    /**
+     * 已写入的分片序号, 用于断点续传
+     */
+    public List<Integer> writtenChunks() {
+        synchronized (written) {
+            List<Integer> chunks = new ArrayList<>(written.cardinality());
+            for (int i = written.nextSetBit(0); i >= 0; i = written.nextSetBit(i + 1)) {
+                chunks.add(i + 1);
+            }
+            return chunks;
+        }
+    }
+
+    private void writeBitmap() throws IOException {
+        Path tmpFile = bitmapFile.resolveSibling(BITMAP_FILE + ".tmp");
+        byte[] bits = written.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bits.length)
+                .putLong(totalSize)
+                .putLong(chunkSize)
+                .putInt(totalChunks)
+                .put(bits);
+        try {
+            Files.write(tmpFile, buffer.array());
+            Files.move(tmpFile, bitmapFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            PathUtil.del(tmpFile);
+            throw e;
+        }
+    }
+
+    /**
+     * 读取之前的进度, 文件大小或分片方式不同时返回null
+     */
+    private BitSet readBitmap() throws IOException {
+        if (!Files.isRegularFile(bitmapFile)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(bitmapFile));
+        if (buffer.remaining() < HEADER_SIZE
+                || buffer.getLong() != totalSize
+                || buffer.getLong() != chunkSize
+                || buffer.getInt() != totalChunks) {
+            return null;
+        }
+        return BitSet.valueOf(buffer);
+    }
+
+    /**
+     * 开始使用, 写入前调用, 使用完后调用 {@link #release()}
+     *
+     * @return false 表示已封存或已关闭, 需要重新打开
+     */
+    public synchronized boolean retain() {
+        if (sealed || closeRequested) {
+            return false;
+        }
+        refCount++;
+        return true;
+    }
+
+    /**
+     * 结束使用, 已请求关闭且没有其他使用者时关闭文件
+     */
+    public synchronized void release() throws IOException {
+        refCount--;
+        if (refCount == 0) {
+            notifyAll();
+            if (closeRequested) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * 封存: 不再接受新的写入, 等待正在进行的写入完成, 用于合并前。
+     * 返回后调用方持有一个引用, 使用完后调用 {@link #release()}
+     */
+    public synchronized void seal() throws InterruptedIOException {
+        sealed = true;
+        while (refCount > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for chunk writes");
+            }
+        }
+        refCount++;
+    }
+
+    /**
+     * 关闭文件, 有使用者时推迟到最后一个使用者 {@link #release()} 时关闭
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closeRequested = true;
+        if (refCount == 0) {
+            channel.close();
+        }
+    }
+}
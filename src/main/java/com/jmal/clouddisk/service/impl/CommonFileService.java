@@ -20,6 +20,7 @@ import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.IFileVersionService;
 import com.jmal.clouddisk.util.FileContentTypeUtils;
+import com.jmal.clouddisk.util.FileProbe;
 import com.jmal.clouddisk.util.MyFileUtils;
 import com.jmal.clouddisk.util.TimeUntils;
 import com.jmal.clouddisk.webdav.MyWebdavServlet;
@@ -82,6 +83,8 @@ public class CommonFileService {
 
     private final EtagService etagService;
 
+    private final UserSpaceService userSpaceService;
+
     protected static final Set<String> FILE_PATH_LOCK = new CopyOnWriteArraySet<>();
 
     public ResponseEntity<InputStreamResource> getImageInputStreamResourceEntity(FileDocument fileDocument) {
@@ -157,7 +160,7 @@ public class CommonFileService {
 
     public static String getContentType(File file, String contentType) {
         try {
-            Charset charset = MyFileUtils.getCharset(file);
+            Charset charset = FileProbe.probe(file).charset();
             if (charset != null) {
                 if (FileContentTypeUtils.DEFAULT_CONTENT_TYPE.equals(contentType)) {
                     contentType = "text/plan;charset=utf-8";
@@ -267,12 +270,15 @@ public class CommonFileService {
         FileBaseDTO fileBaseDTO = fileDAO.findFileBaseDTOByUserIdAndPathAndName(userId, relativePath, fileName);
         if (fileBaseDTO != null) {
             deleteDependencies(username, Collections.singletonList(fileBaseDTO.getId()));
+            // 增量更新上级文件夹的大小和子项数量, 需要在删除记录之前读取被删除项的大小
+            etagService.propagateItemRemoved(userId, relativePath, fileName);
             fileDAO.removeByUserIdAndPathAndName(userId, relativePath, fileName);
             if (BooleanUtil.isTrue(fileBaseDTO.getIsFolder())) {
                 // 删除文件夹及其下的所有文件
                 fileDAO.removeAllByFolder(fileBaseDTO);
                 eventPublisher.publishEvent(new LuceneIndexQueueEvent(this, Collections.singletonList(fileBaseDTO.getId())));
             }
+            userSpaceService.markDirty(userId);
         }
         // update parent folder etag
         etagService.handleItemDeletionAsync(username, file);
@@ -294,7 +300,6 @@ public class CommonFileService {
         // 文件是否存在
         FileDocument fileDocument = fileDAO.findByUserIdAndPathAndName(userId, relativePath, fileName);
         String suffix = MyFileUtils.extName(file.getName());
-        String contentType = FileContentTypeUtils.getContentType(file, suffix);
         // 文件是否存在
         if (fileDocument != null) {
             LocalDateTime updateTime = CommonUserFileService.getFileLastModifiedTime(file);
@@ -302,9 +307,13 @@ public class CommonFileService {
             if (TimeUntils.isWithinOneSecond(fileDocument.getUpdateDate(), updateTime)) {
                 return;
             }
-            String fileContentType = getContentType(file, contentType);
+            String fileContentType = FileProbe.probe(file).contentTypeWithCharset();
             String md5 = file.length() + "/" + fileDocument.getName();
             long modifiedCount = fileDAO.updateModifyFile(fileDocument.getId(), file.length(), md5, suffix, fileContentType, updateTime);
+            if (modifiedCount > 0 && fileDocument.getSize() != null) {
+                etagService.propagateItemResized(userId, relativePath, fileDocument.getSize(), file.length());
+                userSpaceService.onFileResized(userId, fileDocument.getSize(), file.length());
+            }
             fileDocument.setSize(file.length());
             fileDocument.setUpdateDate(updateTime);
             messageService.pushMessage(username, fileDocument, Constants.UPDATE_FILE);
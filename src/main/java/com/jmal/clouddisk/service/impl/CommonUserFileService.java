@@ -3,7 +3,6 @@ package com.jmal.clouddisk.service.impl;
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.date.LocalDateTimeUtil;
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.io.file.PathUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
@@ -17,10 +16,9 @@ import com.jmal.clouddisk.lucene.EtagService;
 import com.jmal.clouddisk.lucene.LuceneIndexQueueEvent;
 import com.jmal.clouddisk.lucene.RebuildIndexTaskService;
 import com.jmal.clouddisk.media.ImageMagickProcessor;
-import com.jmal.clouddisk.media.VideoInfo;
-import com.jmal.clouddisk.media.VideoInfoDO;
-import com.jmal.clouddisk.media.VideoProcessService;
-import com.jmal.clouddisk.model.Music;
+import com.jmal.clouddisk.media.MediaIngestJob;
+import com.jmal.clouddisk.media.MediaIngestStage;
+import com.jmal.clouddisk.media.MediaIngestionService;
 import com.jmal.clouddisk.model.OperationPermission;
 import com.jmal.clouddisk.model.ShareBaseInfoDTO;
 import com.jmal.clouddisk.model.UploadApiParamDTO;
@@ -29,9 +27,8 @@ import com.jmal.clouddisk.model.file.dto.UpdateFile;
 import com.jmal.clouddisk.model.rbac.ConsumerDO;
 import com.jmal.clouddisk.oss.OssConfigService;
 import com.jmal.clouddisk.service.Constants;
-import com.jmal.clouddisk.util.AudioFileUtils;
 import com.jmal.clouddisk.util.CaffeineUtil;
-import com.jmal.clouddisk.util.FileContentTypeUtils;
+import com.jmal.clouddisk.util.FileProbe;
 import com.jmal.clouddisk.util.ImageExifUtil;
 import com.jmal.clouddisk.util.MyFileUtils;
 import com.jmal.clouddisk.util.TimeUntils;
@@ -54,6 +51,7 @@ import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -79,17 +77,15 @@ public class CommonUserFileService {
 
     private final EtagService etagService;
 
-    private final CommonUserService commonUserService;
-
-    private final VideoProcessService videoProcessService;
+    private final UserSpaceService userSpaceService;
 
-    private final ImageMagickProcessor imageMagickProcessor;
+    private final CommonUserService commonUserService;
 
     private final DataSourceProperties dataSourceProperties;
 
     private final FilePersistenceService filePersistenceService;
 
-    private final AudioFileUtils audioFileUtils;
+    private final MediaIngestionService mediaIngestionService;
 
     /**
      * 创建文件索引
@@ -114,15 +110,7 @@ public class CommonUserFileService {
         }
         String fileName = file.getName();
         String suffix = MyFileUtils.extName(fileName);
-        String contentType = CommonFileService.getContentType(file, FileContentTypeUtils.getContentType(file, suffix));
-        if (contentType.startsWith(Constants.CONTENT_TYPE_IMAGE)) {
-            // 换成webp格式的图片
-            file = replaceWebp(userId, file);
-            if (file == null) {
-                return null;
-            }
-        }
-
+        String contentType = FileProbe.probe(file).contentTypeWithCharset();
         String fileAbsolutePath = file.getAbsolutePath();
         Lock lock = uploadFileLockCache.get(fileAbsolutePath, _ -> new ReentrantLock());
         if (lock != null) {
@@ -139,10 +127,13 @@ public class CommonUserFileService {
                 // 添加文件索引
                 // 获取tagName
                 UpdateFile updateFile = new UpdateFile();
-                updateExifInfo(file, fileExists, contentType, suffix, updateFile);
-                updateVideoInfo(file, fileExists, contentType, updateFile);
+                submitExistsMediaIngest(username, userId, file, fileExists, contentType, suffix);
                 updateOtherInfo(fileExists, contentType, suffix, updateFile);
                 updateLastModifiedTime(file, fileExists, updateFile);
+                if (fileExists.getContentHash() != null && file.isFile() && !Objects.equals(fileExists.getSize(), file.length())) {
+                    // 文件已被覆盖, 内容摘要失效
+                    fileDAO.setContentHashById(fileExists.getId(), null, null);
+                }
                 if (updateFile.isNotEmpty()) {
                     fileDAO.updateFileByUserIdAndPathAndName(userId, relativePath, fileName, updateFile);
                 }
@@ -163,17 +154,30 @@ public class CommonUserFileService {
                 fileDocument.setIsPublic(true);
             }
             if (file.isFile()) {
-                setFileConfig(fileId, username, file, fileName, suffix, contentType, relativePath, fileDocument);
+                setFileConfig(file, fileName, suffix, contentType, relativePath, fileDocument);
             } else {
+                // 新文件夹的大小为0, 缺少 size 字段的文件夹在按大小分页时会被跳过
+                fileDocument.setSize(0L);
                 // 检查目录是否为OSS目录
                 checkOSSPath(username, relativePath, fileName, fileDocument);
             }
             // 检查该文件的上级目录是否有已经分享的目录
             checkShareBase(fileDocument, relativePath);
             upsertFileId = fileDAO.upsertByUserIdAndPathAndName(userId, relativePath, fileName, fileDocument);
+            // 增量更新上级文件夹的大小和子项数量
+            etagService.propagateItemAdded(userId, relativePath, fileDocument.getSize() == null ? 0 : fileDocument.getSize());
+            if (file.isFile() && fileDocument.getSize() != null) {
+                userSpaceService.onFileAdded(userId, fileDocument.getSize());
+            }
             messageService.pushMessage(username, fileDocument, Constants.CREATE_FILE);
             // 添加文件索引
             eventPublisher.publishEvent(new LuceneIndexQueueEvent(this, fileId));
+            if (file.isFile()) {
+                // 异步处理媒体信息(webp转换、尺寸、Exif、缩略图、视频封面、音频标签)
+                String ingestFileId = upsertFileId != null ? upsertFileId : fileId;
+                MediaIngestJob job = new MediaIngestJob(ingestFileId, username, userId, relativePath, fileName);
+                mediaIngestionService.submitNewFile(job, contentType, suffix, isToWebp(userId, suffix));
+            }
             if (file.isDirectory()) {
                 etagService.handleNewFolderCreationAsync(username, file);
             }
@@ -292,31 +296,28 @@ public class CommonUserFileService {
     }
 
     /**
-     * 更新文档的Exif信息
+     * 已存在的文件: 缺少Exif或视频信息时(或正在同步文件), 提交到媒体处理流水线
      *
      * @param file        文件
      * @param fileExists  文件信息
      * @param contentType 文件类型
      * @param suffix      文件后缀
      */
-    private void updateExifInfo(File file, FileDocument fileExists, String contentType, String suffix, UpdateFile updateFile) {
-        if (!ImageExifUtil.isImageType(contentType, suffix)) {
+    private void submitExistsMediaIngest(String username, String userId, File file, FileDocument fileExists, String contentType, String suffix) {
+        if (!file.isFile()) {
             return;
         }
-        if (fileExists.getExif() == null || RebuildIndexTaskService.isSyncFile()) {
-            // 更新图片Exif信息
-            updateFile.setExif(ImageExifUtil.getExif(file));
-        }
-    }
-
-    private void updateVideoInfo(File file, FileDocument fileExists, String contentType, UpdateFile updateFile) {
-        if (!contentType.contains(Constants.VIDEO)) {
-            return;
+        MediaIngestJob job = new MediaIngestJob(fileExists.getId(), username, userId, fileExists.getPath(), fileExists.getName());
+        if (ImageExifUtil.isImageType(contentType, suffix)) {
+            if (isToWebp(userId, suffix)) {
+                // 换成webp格式的图片, 转换完成后会重新处理尺寸、Exif和缩略图
+                mediaIngestionService.enqueue(MediaIngestStage.WEBP, job);
+            } else if (fileExists.getExif() == null || RebuildIndexTaskService.isSyncFile()) {
+                mediaIngestionService.enqueue(MediaIngestStage.EXIF, job);
+            }
         }
-        if (fileExists.getVideo() == null || RebuildIndexTaskService.isSyncFile()) {
-            VideoInfo videoInfo = videoProcessService.getVideoInfo(file);
-            VideoInfoDO videoInfoDO = videoInfo.toVideoInfoDO();
-            updateFile.setVideo(videoInfoDO);
+        if (contentType.contains(Constants.VIDEO) && (fileExists.getVideo() == null || RebuildIndexTaskService.isSyncFile())) {
+            mediaIngestionService.enqueue(MediaIngestStage.PROBE, job);
         }
     }
 
@@ -330,23 +331,13 @@ public class CommonUserFileService {
         }
     }
 
-    private void setFileConfig(String fileId, String username, File file, String fileName, String suffix, String contentType, String relativePath, FileDocument fileDocument) {
+    private void setFileConfig(File file, String fileName, String suffix, String contentType, String relativePath, FileDocument fileDocument) {
         try {
             long size = file.length();
             fileDocument.setSize(size);
             fileDocument.setMd5(size + relativePath + fileName);
             fileDocument.setContentType(contentType);
             fileDocument.setSuffix(suffix);
-            if (contentType.contains(Constants.AUDIO)) {
-                setMusic(file, fileDocument);
-            }
-            if (contentType.contains(Constants.VIDEO)) {
-                setMediaCover(fileId, username, fileName, relativePath, fileDocument);
-            }
-            if (ImageExifUtil.isImageType(contentType, suffix)) {
-                // 处理图片
-                processImage(file, fileDocument);
-            }
             if (contentType.contains(Constants.CONTENT_TYPE_MARK_DOWN) || "md".equals(suffix)) {
                 // 写入markdown内容
                 String markDownContent = FileUtil.readString(file, MyFileUtils.getFileCharset(file));
@@ -363,64 +354,15 @@ public class CommonUserFileService {
         }
     }
 
-    private void setMusic(File file, FileDocument fileDocument) {
-        Music music = audioFileUtils.readAudio(fileDocument, file);
-        fileDocument.setMusic(music);
-    }
-
-    private void setMediaCover(String fileId, String username, String fileName, String relativePath, FileDocument fileDocument) {
-        VideoInfo videoInfo = videoProcessService.getVideoCover(fileId, username, relativePath, fileName);
-        String coverPath = videoInfo.getCovertPath();
-        log.debug("\r\ncoverPath:{}", coverPath);
-        if (!CharSequenceUtil.isBlank(coverPath)) {
-            Path contentPath = Paths.get(coverPath);
-
-            if (dataSourceProperties.getType() == DataSourceType.mongodb) {
-                fileDocument.setContent(PathUtil.readBytes(contentPath));
-            } else {
-                fileDocument.setContent(new byte[0]);
-                filePersistenceService.persistContent(fileDocument.getId(), contentPath);
-            }
-            fileDocument.setVideo(videoInfo.toVideoInfoDO());
-            videoProcessService.convertToM3U8(fileId);
-            fileDocument.setMediaCover(true);
-            FileUtil.del(coverPath);
-        } else {
-            fileDocument.setMediaCover(false);
-        }
-    }
-
-    private void processImage(File file, FileDocument fileDocument) {
-        // 获取图片尺寸
-        ImageMagickProcessor.ImageFormat imageFormat = ImageMagickProcessor.identifyFormat(file);
-        if (imageFormat != null) {
-            int srcWidth = imageFormat.getWidth();
-            int srcHeight = imageFormat.getHeight();
-            if (srcWidth > 0 && srcHeight > 0) {
-                fileDocument.setW(Convert.toStr(srcWidth));
-                fileDocument.setH(Convert.toStr(srcHeight));
-            }
-        }
-        // 获取图片Exif信息
-        fileDocument.setExif(ImageExifUtil.getExif(file));
-        // 生成缩略图
-        imageMagickProcessor.generateThumbnail(file, fileDocument);
-    }
-
-    private File replaceWebp(String userId, File file) {
-        String suffix = FileUtil.getSuffix(file).toLowerCase();
-
-        if (getDisabledWebp(userId) || ("ico".equals(suffix))) {
-            return file;
-        }
-        if (Constants.SUFFIX_WEBP.equals(suffix)) {
-            return file;
+    /**
+     * 是否需要把图片转换为webp格式
+     */
+    private boolean isToWebp(String userId, String suffix) {
+        String lowerSuffix = CharSequenceUtil.nullToEmpty(suffix).toLowerCase();
+        if ("ico".equals(lowerSuffix) || Constants.SUFFIX_WEBP.equals(lowerSuffix)) {
+            return false;
         }
-        // 去掉fileName中的后缀
-        String fileNameWithoutSuffix = StrUtil.removeSuffix(file.getName(), "." + FileUtil.getSuffix(file.getName()));
-        File outputFile = new File(file.getParentFile().getAbsoluteFile(), fileNameWithoutSuffix + Constants.POINT_SUFFIX_WEBP);
-        ImageMagickProcessor.replaceWebp(file, outputFile, true);
-        return outputFile;
+        return !getDisabledWebp(userId);
     }
 
     /**
@@ -0,0 +1,237 @@
+package com.jmal.clouddisk.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.exception.ExceptionType;
+import com.jmal.clouddisk.lucene.TaskProgressService;
+import com.jmal.clouddisk.lucene.TaskType;
+import com.jmal.clouddisk.util.FileCloneUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 文件复制
+ * 对整个目录树逐个文件按 reflink、硬链接(copyHardLink 开启时)、复制的顺序处理, 文件由 copyWorkers 个线程并行复制。
+ * reflink 与源文件共享数据块, 同一文件系统上复制大文件夹几乎不产生磁盘 I/O, 也不占用额外空间。
+ * 复制过程中通过 TaskProgressService 推送进度, 分别统计实际复制和克隆(reflink/硬链接)的字节数
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileCopyService {
+
+    private final FileProperties fileProperties;
+
+    private final TaskProgressService taskProgressService;
+
+    /**
+     * 进度推送的最短间隔
+     */
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * 复制结果
+     *
+     * @param files       处理的文件数
+     * @param skipped     目标已存在而跳过的文件数
+     * @param copiedBytes 实际复制的字节数
+     * @param clonedBytes reflink 克隆的字节数
+     * @param linkedBytes 硬链接的字节数
+     */
+    public record CopyStats(long files, long skipped, long copiedBytes, long clonedBytes, long linkedBytes) {
+    }
+
+    /**
+     * 复制文件或文件夹到目标文件夹下, 与 FileUtil.copy(src, destDir, isOverride) 的行为一致:
+     * 文件夹合并, 目标文件已存在时按 override 覆盖或跳过
+     *
+     * @param source    源文件或文件夹
+     * @param targetDir 目标文件夹
+     * @param override  是否覆盖已存在的文件
+     * @return 复制结果
+     */
+    public CopyStats copyToDir(Path source, Path targetDir, boolean override) throws IOException {
+        source = source.toAbsolutePath().normalize();
+        Path target = targetDir.toAbsolutePath().normalize().resolve(source.getFileName());
+        if (target.startsWith(source)) {
+            throw new CommonException(ExceptionType.WARNING.getCode(), "不能复制到自身的子目录");
+        }
+        boolean isDirectory = Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS);
+        Progress progress = new Progress(target.toFile(), isDirectory ? treeSize(source) : Files.size(source));
+        try {
+            if (isDirectory) {
+                copyTree(source, target, override, progress);
+            } else {
+                copyFile(source, target, progress.totalBytes, override, progress);
+            }
+        } finally {
+            taskProgressService.removeTaskProgress(progress.taskFile);
+        }
+        CopyStats stats = progress.toStats();
+        log.info("复制完成: {} -> {}, 文件数: {}, 跳过: {}, 复制: {}, reflink: {}, 硬链接: {}", source, target, stats.files(), stats.skipped(),
+                FileUtil.readableFileSize(stats.copiedBytes()), FileUtil.readableFileSize(stats.clonedBytes()), FileUtil.readableFileSize(stats.linkedBytes()));
+        return stats;
+    }
+
+    private void copyTree(Path source, Path target, boolean override, Progress progress) throws IOException {
+        Semaphore permits = new Semaphore(Math.max(1, fileProperties.getCopyWorkers()));
+        AtomicReference<Exception> error = new AtomicReference<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Files.walkFileTree(source, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Files.createDirectories(target.resolve(source.relativize(dir)));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Path dest = target.resolve(source.relativize(file));
+                    if (attrs.isSymbolicLink()) {
+                        if (override || !Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+                            Files.copy(file, dest, LinkOption.NOFOLLOW_LINKS, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (error.get() != null) {
+                        permits.release();
+                        return FileVisitResult.TERMINATE;
+                    }
+                    executor.execute(() -> {
+                        try {
+                            copyFile(file, dest, attrs.size(), override, progress);
+                        } catch (Exception e) {
+                            error.compareAndSet(null, e);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        Exception e = error.get();
+        if (e != null) {
+            log.error("复制失败: {} -> {}, {}", source, target, e.getMessage(), e);
+            throw e instanceof IOException ioException ? ioException : new IOException(e);
+        }
+    }
+
+    /**
+     * 目录下所有文件的大小, 不跟随符号链接
+     */
+    private static long treeSize(Path dir) throws IOException {
+        LongAdder size = new LongAdder();
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    size.add(attrs.size());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size.sum();
+    }
+
+    private void copyFile(Path file, Path dest, long size, boolean override, Progress progress) throws IOException {
+        if (!override && Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+            progress.skipped(size);
+            return;
+        }
+        FileCloneUtil.CloneMode mode = FileCloneUtil.cloneFile(file, dest, Boolean.TRUE.equals(fileProperties.getCopyHardLink()));
+        progress.done(mode, size);
+    }
+
+    private class Progress {
+
+        private final File taskFile;
+
+        private final long totalBytes;
+
+        private final LongAdder files = new LongAdder();
+
+        private final LongAdder skipped = new LongAdder();
+
+        private final LongAdder skippedBytes = new LongAdder();
+
+        private final LongAdder copiedBytes = new LongAdder();
+
+        private final LongAdder clonedBytes = new LongAdder();
+
+        private final LongAdder linkedBytes = new LongAdder();
+
+        private final AtomicLong lastReportNanos = new AtomicLong(System.nanoTime());
+
+        Progress(File taskFile, long totalBytes) {
+            this.taskFile = taskFile;
+            this.totalBytes = totalBytes;
+        }
+
+        void skipped(long size) {
+            skipped.increment();
+            skippedBytes.add(size);
+            report();
+        }
+
+        void done(FileCloneUtil.CloneMode mode, long size) {
+            files.increment();
+            switch (mode) {
+                case REFLINK -> clonedBytes.add(size);
+                case HARD_LINK -> linkedBytes.add(size);
+                case COPY -> copiedBytes.add(size);
+            }
+            report();
+        }
+
+        private void report() {
+            long now = System.nanoTime();
+            long last = lastReportNanos.get();
+            if (now - last < PROGRESS_INTERVAL_NANOS || !lastReportNanos.compareAndSet(last, now)) {
+                return;
+            }
+            long processed = copiedBytes.sum() + clonedBytes.sum() + linkedBytes.sum() + skippedBytes.sum();
+            int percent = totalBytes <= 0 ? 100 : (int) Math.min(100, processed * 100 / totalBytes);
+            String progress = percent + "% - 复制: " + FileUtil.readableFileSize(copiedBytes.sum())
+                    + ", 克隆: " + FileUtil.readableFileSize(clonedBytes.sum() + linkedBytes.sum());
+            taskProgressService.addTaskProgress(taskFile, TaskType.COPY_FILE, progress);
+        }
+
+        CopyStats toStats() {
+            return new CopyStats(files.sum(), skipped.sum(), copiedBytes.sum(), clonedBytes.sum(), linkedBytes.sum());
+        }
+    }
+}
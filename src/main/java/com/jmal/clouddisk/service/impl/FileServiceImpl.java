@@ -11,6 +11,7 @@ import cn.hutool.core.util.ReUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.crypto.SecureUtil;
 import cn.hutool.crypto.symmetric.AES;
+import com.google.common.hash.HashingInputStream;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.IFileDAO;
 import com.jmal.clouddisk.dao.IFileQueryDAO;
@@ -19,6 +20,7 @@ import com.jmal.clouddisk.dao.ITrashDAO;
 import com.jmal.clouddisk.exception.CommonException;
 import com.jmal.clouddisk.exception.ExceptionType;
 import com.jmal.clouddisk.interceptor.AuthInterceptor;
+import com.jmal.clouddisk.lucene.EtagService;
 import com.jmal.clouddisk.lucene.LuceneIndexQueueEvent;
 import com.jmal.clouddisk.lucene.LuceneService;
 import com.jmal.clouddisk.lucene.SearchFileService;
@@ -43,6 +45,7 @@ import com.jmal.clouddisk.model.file.dto.FileBaseAllDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseMountDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseOssPathDTO;
+import com.jmal.clouddisk.model.file.dto.FileListCursor;
 import com.jmal.clouddisk.model.query.SearchDTO;
 import com.jmal.clouddisk.oss.web.WebOssCommonService;
 import com.jmal.clouddisk.oss.web.WebOssCopyFileService;
@@ -51,11 +54,14 @@ import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.IFileService;
 import com.jmal.clouddisk.util.CaffeineUtil;
 import com.jmal.clouddisk.util.CompressUtils;
+import com.jmal.clouddisk.util.FileCloneUtil;
 import com.jmal.clouddisk.util.FileContentTypeUtils;
 import com.jmal.clouddisk.util.FileContentUtil;
+import com.jmal.clouddisk.util.HashUtil;
 import com.jmal.clouddisk.util.MyFileUtils;
 import com.jmal.clouddisk.util.ResponseResult;
 import com.jmal.clouddisk.util.ResultUtil;
+import com.jmal.clouddisk.util.StoredZipArchive;
 import com.jmal.clouddisk.util.TimeUntils;
 import com.jmal.clouddisk.webdav.MyWebdavServlet;
 import io.reactivex.rxjava3.core.Completable;
@@ -85,6 +91,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -99,6 +106,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 
 /**
@@ -134,8 +142,14 @@ public class FileServiceImpl implements IFileService {
 
     private final MessageService messageService;
 
+    private final UserSpaceService userSpaceService;
+
     private final MultipartUpload multipartUpload;
 
+    private final FileCopyService fileCopyService;
+
+    private final ArchiveBrowseService archiveBrowseService;
+
     private final WebOssService webOssService;
 
     private final WebOssCopyFileService webOssCopyFileService;
@@ -148,8 +162,14 @@ public class FileServiceImpl implements IFileService {
 
     private final SearchFileService searchFileService;
 
+    private final EtagService etagService;
+
     private static final AES aes = SecureUtil.aes();
 
+    private static final int DEFAULT_CURSOR_PAGE_SIZE = 100;
+
+    private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+
     private final LogService logService;
 
     private final ApplicationEventPublisher eventPublisher;
@@ -171,6 +191,48 @@ public class FileServiceImpl implements IFileService {
         return getFileIntroVOResult(upload, currentDirectory, result);
     }
 
+    @Override
+    public ResponseResult<Object> listFilesByCursor(UploadApiParamDTO upload, String cursor) {
+        Path path = Paths.get(upload.getUsername(), upload.getCurrentDirectory());
+        if (CaffeineUtil.getOssPath(path) != null || CharSequenceUtil.isNotBlank(upload.getQueryFileType())) {
+            // oss目录和按类型查询不支持游标分页
+            return listFiles(upload);
+        }
+        String currentDirectory = commonFileService.getUserDirectory(upload.getCurrentDirectory());
+        if (!CharSequenceUtil.isBlank(upload.getFolder()) && checkMountParam(upload, currentDirectory)) {
+            return listFilesByCursor(upload, cursor);
+        }
+        upload.setCurrentDirectory(currentDirectory);
+
+        FileListCursor fileListCursor = CharSequenceUtil.isBlank(cursor) ? FileListCursor.first(upload.getSortableProp(), upload.getOrder()) : FileListCursor.decode(cursor);
+        int pageSize = upload.getPageSize() == null || upload.getPageSize() <= 0 ? DEFAULT_CURSOR_PAGE_SIZE : Math.min(upload.getPageSize(), MAX_CURSOR_PAGE_SIZE);
+        String userId = upload.getUserId();
+        // 多查一条, 用于判断是否还有下一页
+        List<FileIntroVO> list = fileQueryDAO.findFileIntroVOByCursor(userId, currentDirectory, fileListCursor, pageSize + 1);
+        String nextCursor = null;
+        if (list.size() > pageSize) {
+            list = list.subList(0, pageSize);
+            nextCursor = fileListCursor.next(list.getLast()).encode();
+        }
+
+        ResponseResult<Object> result = ResultUtil.genResult();
+        messageService.pushMessage(upload.getUsername(), Constants.LOCAL_CHUNK_SIZE, Constants.UPLOADER_CHUNK_SIZE);
+        result.setData(list);
+        result.setCount(getChildrenCount(userId, currentDirectory, fileListCursor));
+        Map<String, Object> props = upload.getProps() == null ? new HashMap<>(2) : new HashMap<>(upload.getProps());
+        props.put("cursor", nextCursor);
+        result.setProps(props);
+        return result;
+    }
+
+    /**
+     * 目录的直接子项数量, 只在第一页时统计一次, 翻页时不再重复统计
+     * 文件夹记录上的 childrenCount 包含所有子孙项, 不能作为列表的总数
+     */
+    private Long getChildrenCount(String userId, String currentDirectory, FileListCursor fileListCursor) {
+        return fileListCursor.firstPage() ? fileQueryDAO.countByUserIdAndPath(userId, currentDirectory) : null;
+    }
+
     /**
      * 查看是否有挂载文件
      *
@@ -664,14 +726,68 @@ public class FileServiceImpl implements IFileService {
             String fileUsername = userService.getUserNameById(fileDoc.getUserId());
             return Paths.get(fileProperties.getRootDir(), fileUsername, fileDoc.getPath(), fileDoc.getName());
         }).toList();
-        // 压缩传输
         try {
+            StoredZipArchive archive = storedArchiveOrNull(selectFileList);
+            if (archive != null) {
+                storedPackageDownload(request, response, archive);
+                return;
+            }
+            // 压缩传输
             CompressUtils.compress(selectFileList, response.getOutputStream());
+        } catch (ClientAbortException ignored) {
+            // 客户端断开, 续传时会重新请求
         } catch (IOException e) {
             log.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * 按 packageDownloadMode 判断是否使用不压缩的 ZIP64 打包, 不使用时返回 null
+     */
+    private StoredZipArchive storedArchiveOrNull(List<Path> selectFileList) throws IOException {
+        String mode = fileProperties.getPackageDownloadMode();
+        if ("DEFLATE".equalsIgnoreCase(mode)) {
+            return null;
+        }
+        StoredZipArchive archive = StoredZipArchive.of(selectFileList);
+        if ("STORE".equalsIgnoreCase(mode) || archive.getCompressibleSize() * 10 <= archive.getDataSize()) {
+            return archive;
+        }
+        return null;
+    }
+
+    /**
+     * 不压缩的 ZIP64 打包下载, 返回 Content-Length, 支持 Range 断点续传
+     */
+    private void storedPackageDownload(HttpServletRequest request, HttpServletResponse response, StoredZipArchive archive) throws IOException {
+        long size = archive.getSize();
+        String etag = "\"" + archive.getEtag() + "\"";
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, etag);
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        // If-Range 与当前 ETag 不一致说明文件已变化, 返回完整内容
+        if (CharSequenceUtil.isNotBlank(range) && (ifRange == null || ifRange.equals(etag))) {
+            long[] ranges = StoredZipArchive.parseRange(range, size);
+            if (ranges != null && ranges.length == 0) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return;
+            }
+            if (ranges != null) {
+                start = ranges[0];
+                end = ranges[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+        response.setContentLengthLong(end - start + 1);
+        archive.write(response.getOutputStream(), start, end);
+    }
+
     /***
      * 对下载的文件名转码 解决不同浏览器压缩包名字含有中文时乱码的问题
      * @param request HttpServletRequest
@@ -1048,6 +1164,104 @@ public class FileServiceImpl implements IFileService {
         }
     }
 
+    @Override
+    public ResponseResult<Object> listArchive(String fileId, String dir) {
+        File archiveFile = getArchiveFile(fileId);
+        return ResultUtil.success(archiveBrowseService.listDir(archiveFile, dir));
+    }
+
+    @Override
+    public void downloadArchiveEntry(HttpServletRequest request, HttpServletResponse response, String fileId, String entryPath) {
+        File archiveFile = getArchiveFile(fileId);
+        CompressUtils.ArchiveEntry entry = archiveBrowseService.getFileEntry(archiveFile, entryPath);
+        String filename = entry.path().substring(entry.path().lastIndexOf('/') + 1);
+        response.setContentType(FileContentTypeUtils.getContentType(MyFileUtils.extName(filename)));
+        setDownloadName(request, response, filename);
+        // 第一次输出内容时才设置长度并提交响应, 解压失败(如加密、格式损坏)时还可以返回错误
+        LazyResponseOutputStream outputStream = new LazyResponseOutputStream(response, entry.size());
+        try {
+            archiveBrowseService.writeEntry(archiveFile, entry, outputStream);
+            if (!outputStream.isStarted()) {
+                response.setContentLengthLong(0);
+            }
+        } catch (ClientAbortException ignored) {
+            // ignored error
+        } catch (IOException e) {
+            log.error("读取压缩文件中的文件失败: {}, {}", archiveFile.getName(), entry.path(), e);
+            if (!response.isCommitted()) {
+                response.reset();
+                throw new CommonException(ExceptionType.UNRECOGNIZED_FILE.getCode(), "读取压缩文件失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 第一次写入时才设置 Content-Length 并打开响应输出流
+     */
+    private static class LazyResponseOutputStream extends OutputStream {
+
+        private final HttpServletResponse response;
+
+        private final long contentLength;
+
+        private OutputStream delegate;
+
+        private LazyResponseOutputStream(HttpServletResponse response, long contentLength) {
+            this.response = response;
+            this.contentLength = contentLength;
+        }
+
+        private boolean isStarted() {
+            return delegate != null;
+        }
+
+        private OutputStream delegate() throws IOException {
+            if (delegate == null) {
+                response.setContentLengthLong(contentLength);
+                delegate = response.getOutputStream();
+            }
+            return delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                delegate().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (delegate != null) {
+                delegate.flush();
+            }
+        }
+    }
+
+    /**
+     * 获取要浏览的压缩文件
+     */
+    private File getArchiveFile(String fileId) {
+        String ossPath = CaffeineUtil.getOssPath(Paths.get(fileId));
+        if (ossPath != null) {
+            throw new CommonException(ExceptionType.WARNING.getCode(), "暂不支持浏览压缩文件");
+        }
+        FileDocument fileDocument = commonFileService.getById(fileId);
+        if (fileDocument == null) {
+            throw new CommonException(ExceptionType.FILE_NOT_FIND);
+        }
+        String username = userService.getUserNameById(fileDocument.getUserId());
+        if (CharSequenceUtil.isBlank(username)) {
+            throw new CommonException(ExceptionType.USER_NOT_FIND);
+        }
+        return new File(getFilePathByFileId(username, fileDocument));
+    }
+
     @Override
     public ResponseResult<Object> listFiles(String path, String username, boolean tempDir) {
         Path prePth = Paths.get(username, path);
@@ -1341,8 +1555,15 @@ public class FileServiceImpl implements IFileService {
         Path fromFilePath = Paths.get(getUserDir(username), path);
         String toParentPath = Paths.get(path).getParent().toString();
         Path toFilePath = Paths.get(getUserDir(username), toParentPath, newFilename);
-        // 复制文件
-        PathUtil.copyFile(fromFilePath, toFilePath);
+        if (Files.exists(toFilePath)) {
+            throw new CommonException(ExceptionType.EXISTING_RESOURCES);
+        }
+        // 复制文件, 支持时使用 reflink
+        try {
+            FileCloneUtil.cloneFile(fromFilePath, toFilePath, false);
+        } catch (IOException e) {
+            throw new CommonException(e.getMessage());
+        }
         // 文件操作日志
         logService.syncAddLogFileOperation(username, Paths.get(toParentPath, newFilename).toString(), "创建副本, 源文件: \"" + path + "\"");
         // 保存文件信息
@@ -1468,7 +1689,11 @@ public class FileServiceImpl implements IFileService {
                 if (move) {
                     FileUtil.move(new File(fromFilePath), new File(toFilePath), isOverride);
                 } else {
-                    FileUtil.copy(fromFilePath, toFilePath, isOverride);
+                    try {
+                        fileCopyService.copyToDir(Paths.get(fromFilePath), Paths.get(toFilePath), isOverride);
+                    } catch (IOException e) {
+                        throw new CommonException(e.getMessage());
+                    }
                 }
                 String operation = move ? "移动" : "复制";
                 if (isOverride) {
@@ -1613,13 +1838,16 @@ public class FileServiceImpl implements IFileService {
         }
 
         if (currentChunkSize == totalSize) {
-            // 没有分片,直接存
-            try (InputStream inputStream = file.getInputStream()) {
+            // 没有分片,直接存, 同时计算内容摘要
+            String contentHash;
+            try (HashingInputStream inputStream = HashUtil.contentHashingInputStream(file.getInputStream())) {
                 FileUtil.writeFromStream(inputStream, chunkFile);
+                contentHash = inputStream.hash().toString();
             }
             // 设置文件最后修改时间
             CommonUserFileService.setLastModifiedTime(chunkFile.toPath(), upload.getLastModified());
-            uploadFile(upload.getUsername(), chunkFile);
+            String fileId = uploadFile(upload.getUsername(), chunkFile);
+            multipartUpload.setContentHash(fileId, contentHash, chunkFile);
             uploadResponse.setUpload(true);
             // 文件操作日志
             logService.syncAddLogFileOperation(upload.getUsername(), userDirectoryFilePath, "上传文件");
@@ -1702,6 +1930,13 @@ public class FileServiceImpl implements IFileService {
         return ResultUtil.success(multipartUpload.checkChunk(upload));
     }
 
+    @Override
+    public ResponseResult<Object> checkContentHash(UploadApiParamDTO upload) throws IOException {
+        setMountInfo(upload);
+        commonFileService.checkPermissionUsername(upload.getUsername(), upload.getOperationPermissionList(), OperationPermission.UPLOAD);
+        return ResultUtil.success(multipartUpload.checkContentHash(upload));
+    }
+
     @Override
     public ResponseResult<Object> merge(UploadApiParamDTO upload) throws IOException {
         setMountInfo(upload);
@@ -1814,6 +2049,10 @@ public class FileServiceImpl implements IFileService {
                     isDel = true;
                 }
             }
+            if (isDel || BooleanUtil.isTrue(fileDocument.getIsFolder())) {
+                // 增量更新上级文件夹的大小和子项数量, 需要在删除记录之前读取被删除项的大小
+                etagService.propagateItemRemoved(fileDocument.getUserId(), fileDocument.getPath(), fileDocument.getName());
+            }
             isDel = delFolder(username, sweep, fileDocument, isDel);
             messageService.pushMessage(username, fileDocument.getPath(), Constants.DELETE_FILE);
             deleteFileLog(isDel, username, sweep, fileDocument);
@@ -1834,6 +2073,7 @@ public class FileServiceImpl implements IFileService {
                 moveToTrash(username, delFileDocumentList, false);
             }
             commonFileService.deleteDependencies(username, fileIds);
+            userSpaceService.markDirty(userService.getUserIdByUserName(username));
             operationTips.setSuccess(true);
         } else {
             operationTips.setSuccess(false);
@@ -1975,6 +2215,7 @@ public class FileServiceImpl implements IFileService {
             String userId = userService.getUserIdByUserName(username);
             List<String> fileIds = trashDAO.findAllIdsAndRemove(userId);
             commonFileService.deleteDependencies(username, fileIds);
+            userSpaceService.markDirty(userId);
             Path trashPath = Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), username, fileProperties.getJmalcloudTrashDir());
             PathUtil.del(trashPath);
             deleteFileLog(logOperation, true, username, true, null);
@@ -1997,6 +2238,7 @@ public class FileServiceImpl implements IFileService {
             PathUtil.del(trashFilePath);
             deleteFileLog(logOperation, true, username, true, trashFileDocument);
         });
+        userSpaceService.markDirty(userService.getUserIdByUserName(username));
     }
 
     private void moveToTrash(String username, List<FileDocument> delFileDocumentList, boolean hidden) {
@@ -2044,11 +2286,25 @@ public class FileServiceImpl implements IFileService {
                         sourceFilePath = Paths.get(fileProperties.getRootDir(), username, trashFileDocument.getPath(), timePrefix + "_" + trashFileDocument.getName());
                     }
                     PathUtil.move(trashFilePath, sourceFilePath, false);
+                    createRestoredFiles(username, trashFileDocument.getUserId(), sourceFilePath);
                     eventPublisher.publishEvent(new LuceneIndexQueueEvent(this, trashFileDocument.getId()));
                 }
                 deleteFileLog(logOperation, true, username, true, new FileBaseDTO(trashFileDocument));
             }
         });
+        userSpaceService.markDirty(userService.getUserIdByUserName(username));
+    }
+
+    /**
+     * 为还原的文件(文件夹及其下的所有文件)创建记录, 同时增量更新上级文件夹的大小和子项数量;
+     * 之后到达的文件监听事件会找到已有的记录, 不会重复计算
+     */
+    private void createRestoredFiles(String username, String userId, Path restoredPath) {
+        try (Stream<Path> paths = Files.walk(restoredPath)) {
+            paths.forEach(path -> commonUserFileService.createFile(username, path.toFile(), userId, null));
+        } catch (IOException e) {
+            log.warn("创建还原文件的记录失败: {}, {}", restoredPath, e.getMessage());
+        }
     }
 
 }
@@ -0,0 +1,35 @@
+package com.jmal.clouddisk.service.impl;
+
+import com.jmal.clouddisk.config.Reflective;
+
+/**
+ * 日志写入管道的运行指标快照
+ *
+ * @param bufferSize         缓冲区容量
+ * @param pending            缓冲区中待写入的日志数
+ * @param batchSize          配置的单批最大条数
+ * @param flushIntervalMs    配置的最长写入间隔(毫秒)
+ * @param dropPolicy         缓冲区已满时的处理策略
+ * @param submitted          已提交的日志数
+ * @param flushed            已写入的日志数
+ * @param dropped            缓冲区已满被丢弃的日志数
+ * @param failed             写入失败的日志数
+ * @param flushCount         批量写入次数
+ * @param lastFlushLatencyMs 最近一次写入耗时(毫秒)
+ * @param maxFlushLatencyMs  历史最大写入耗时(毫秒)
+ * @param avgFlushLatencyMs  平均写入耗时(毫秒)
+ */
+public record LogPipelineMetrics(int bufferSize,
+                                 int pending,
+                                 int batchSize,
+                                 long flushIntervalMs,
+                                 String dropPolicy,
+                                 long submitted,
+                                 long flushed,
+                                 long dropped,
+                                 long failed,
+                                 long flushCount,
+                                 double lastFlushLatencyMs,
+                                 double maxFlushLatencyMs,
+                                 double avgFlushLatencyMs) implements Reflective {
+}
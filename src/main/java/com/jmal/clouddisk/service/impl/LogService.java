@@ -4,6 +4,8 @@ import cn.hutool.core.net.URLDecoder;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.http.useragent.UserAgent;
 import cn.hutool.http.useragent.UserAgentUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.ILogDAO;
 import com.jmal.clouddisk.model.LogOperation;
@@ -13,8 +15,6 @@ import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.util.ResponseResult;
 import com.jmal.clouddisk.util.ResultUtil;
 import com.jmal.clouddisk.util.TimeUntils;
-import io.reactivex.rxjava3.core.Completable;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -22,6 +22,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.lionsoul.ip2region.xdb.Searcher;
 import org.springframework.data.domain.Page;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
@@ -29,6 +30,8 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -53,8 +56,19 @@ public class LogService {
 
     private final FileProperties fileProperties;
 
+    private final LogWritePipeline logWritePipeline;
+
     private Searcher ipSearcher = null;
 
+    /**
+     * url的访问次数, key: url, value: 访问次数
+     * 首次访问时从日志统计一次, 之后在内存中累加。每次访问都会写入一条日志, 定时从日志重新统计, 修正尚未写入或已清理的日志造成的偏差
+     */
+    private final Cache<String, AtomicLong> visitsCache = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
     @PostConstruct
     public void initIpDbSearcher() {
         String ip2regionDbPath = fileProperties.getIp2regionDbPath();
@@ -147,7 +161,7 @@ public class LogService {
         // 客户端ip
         String ip = getIpAddress(request);
         logOperation.setIp(ip);
-        setIpInfo(logOperation, ip);
+        // ip归属地在写入前补充, 见 prepareLog
         return logOperation;
     }
 
@@ -182,6 +196,16 @@ public class LogService {
         return ip;
     }
 
+    /***
+     * 写入前补充耗时的信息, 异步写入时在日志写入管道的线程中执行
+     * @param logOperation LogOperation
+     */
+    private void prepareLog(LogOperation logOperation) {
+        if (logOperation.getIpInfo() == null) {
+            setIpInfo(logOperation, logOperation.getIp());
+        }
+    }
+
     /***
      * 设置IP详细信息
      * @param logOperation LogOperation
@@ -247,10 +271,11 @@ public class LogService {
      * @param desc 描述
      */
     public void asyncAddLogFileOperation(LogOperation logOperation, String fileUsername, String filepath, String desc) {
-        Completable.fromAction(() -> addLogFileOperation(logOperation, fileUsername, filepath, desc)).subscribeOn(Schedulers.io())
-                .doOnError(e -> log.error(e.getMessage(), e))
-                .onErrorComplete()
-                .subscribe();
+        logOperation.setCreateTime(LocalDateTime.now(TimeUntils.ZONE_ID));
+        logWritePipeline.submit(logOperation, op -> {
+            setFileOperation(op, fileUsername, filepath, desc);
+            prepareLog(op);
+        });
     }
 
     /**
@@ -265,6 +290,11 @@ public class LogService {
     }
 
     private void addLogFileOperation(LogOperation logOperation, String fileUsername, String filepath, String desc) {
+        setFileOperation(logOperation, fileUsername, filepath, desc);
+        addLog(logOperation);
+    }
+
+    private void setFileOperation(LogOperation logOperation, String fileUsername, String filepath, String desc) {
         String fileUserId = userService.getUserIdByUserName(fileUsername);
         logOperation.setFileUserId(fileUserId);
         String affiliated = !fileUsername.equals(logOperation.getUsername()) ? ", 所属用户: \"" + fileUsername + "\"" : "";
@@ -277,7 +307,6 @@ public class LogService {
         logOperation.setType(LogOperation.Type.OPERATION_FILE.name());
         logOperation.setStatus(0);
         logOperation.setOperationModule("文件管理");
-        addLog(logOperation);
     }
 
     /**
@@ -300,18 +329,18 @@ public class LogService {
         syncAddLogFileOperation(getLogOperation(), fileUsername, filepath, desc);
     }
 
+    /**
+     * 添加日志(异步), 由日志写入管道批量写入
+     * @param logOperation 日志
+     */
     public void asyncAddLog(LogOperation logOperation) {
-        Completable.fromAction(() -> {
-            logOperation.setCreateTime(LocalDateTime.now(TimeUntils.ZONE_ID));
-            logDAO.save(logOperation);
-        }).subscribeOn(Schedulers.io())
-                .doOnError(e -> log.error(e.getMessage(), e))
-                .onErrorComplete()
-                .subscribe();
+        logOperation.setCreateTime(LocalDateTime.now(TimeUntils.ZONE_ID));
+        logWritePipeline.submit(logOperation, this::prepareLog);
     }
 
     public void addLog(LogOperation logOperation) {
         logOperation.setCreateTime(LocalDateTime.now(TimeUntils.ZONE_ID));
+        prepareLog(logOperation);
         logDAO.save(logOperation);
     }
 
@@ -347,4 +376,28 @@ public class LogService {
     public long getVisitsByUrl(String url) {
         return logDAO.countByUrl(url);
     }
+
+    /***
+     * 记录一次url访问
+     * @param url url
+     * @return 本次访问之前的访问次数
+     */
+    public long recordVisit(String url) {
+        AtomicLong visits = visitsCache.get(url, key -> new AtomicLong(getVisitsByUrl(key)));
+        return visits.getAndIncrement();
+    }
+
+    /**
+     * 定时从日志重新统计访问次数
+     */
+    @Scheduled(fixedDelay = 600_000, initialDelay = 600_000)
+    public void syncVisits() {
+        visitsCache.asMap().forEach((url, visits) -> {
+            try {
+                visits.set(getVisitsByUrl(url));
+            } catch (Exception e) {
+                log.warn("统计访问次数失败, url: {}, {}", url, e.getMessage());
+            }
+        });
+    }
 }
@@ -0,0 +1,265 @@
+package com.jmal.clouddisk.service.impl;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.dao.ILogDAO;
+import com.jmal.clouddisk.model.LogOperation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 日志写入管道
+ * 日志先放入有界缓冲区, 由单个后台线程补充信息(ip归属地、所属用户等)后按条数或时间批量写入, 请求线程不再等待数据库。
+ * 缓冲区已满时按 logDropPolicy 处理: BLOCK 等待一小段时间后仍然已满则丢弃, DROP_NEWEST 丢弃新日志, DROP_OLDEST 丢弃最旧的日志
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LogWritePipeline {
+
+    private final ILogDAO logDAO;
+
+    private final FileProperties fileProperties;
+
+    /**
+     * BLOCK 策略下等待缓冲区空位的最长时间(毫秒)
+     */
+    private static final long BLOCK_TIMEOUT_MS = 200;
+
+    /**
+     * 后台线程检查是否已关闭的最长间隔(毫秒)
+     */
+    private static final long SHUTDOWN_POLL_MS = 200;
+
+    public enum DropPolicy {
+        BLOCK, DROP_NEWEST, DROP_OLDEST
+    }
+
+    /**
+     * @param logOperation 日志
+     * @param preparer     写入前在后台线程中执行, 可以为null
+     */
+    private record Entry(LogOperation logOperation, Consumer<LogOperation> preparer) {
+    }
+
+    private BlockingQueue<Entry> buffer;
+
+    private int bufferSize;
+
+    private int batchSize;
+
+    private long flushIntervalMs;
+
+    private DropPolicy dropPolicy;
+
+    private Thread worker;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong flushed = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong flushCount = new AtomicLong();
+
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+
+    private volatile long lastFlushNanos;
+
+    private volatile long maxFlushNanos;
+
+    @PostConstruct
+    public void init() {
+        bufferSize = Math.max(1, fileProperties.getLogBufferSize());
+        batchSize = Math.max(1, fileProperties.getLogBatchSize());
+        flushIntervalMs = Math.max(1, fileProperties.getLogFlushIntervalMs());
+        dropPolicy = parseDropPolicy(fileProperties.getLogDropPolicy());
+        buffer = new ArrayBlockingQueue<>(bufferSize);
+        worker = ThreadUtil.createThreadFactory("log-write-pipeline").newThread(this::run);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private static DropPolicy parseDropPolicy(String value) {
+        try {
+            return DropPolicy.valueOf(value.trim().toUpperCase());
+        } catch (Exception e) {
+            log.warn("无效的日志丢弃策略: {}, 使用 BLOCK", value);
+            return DropPolicy.BLOCK;
+        }
+    }
+
+    /**
+     * 提交日志
+     *
+     * @param logOperation 日志
+     * @param preparer     写入前在后台线程中执行, 用于补充耗时的信息, 可以为null
+     * @return 是否已放入缓冲区
+     */
+    public boolean submit(LogOperation logOperation, Consumer<LogOperation> preparer) {
+        submitted.incrementAndGet();
+        Entry entry = new Entry(logOperation, preparer);
+        if (!running) {
+            // 已关闭, 直接写入
+            flush(List.of(entry));
+            return true;
+        }
+        boolean accepted = switch (dropPolicy) {
+            case DROP_NEWEST -> buffer.offer(entry);
+            case DROP_OLDEST -> offerDropOldest(entry);
+            case BLOCK -> offerBlocking(entry);
+        };
+        if (!accepted) {
+            onDropped();
+        }
+        return accepted;
+    }
+
+    private boolean offerBlocking(Entry entry) {
+        try {
+            return buffer.offer(entry, BLOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean offerDropOldest(Entry entry) {
+        while (!buffer.offer(entry)) {
+            if (buffer.poll() != null) {
+                onDropped();
+            }
+        }
+        return true;
+    }
+
+    private void onDropped() {
+        long count = dropped.incrementAndGet();
+        // 避免日志刷屏, 只在丢弃数为2的幂时记录
+        if (Long.bitCount(count) == 1) {
+            log.warn("日志缓冲区已满, 已丢弃 {} 条日志, 策略: {}", count, dropPolicy);
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        // 关闭时不中断后台线程, 中断会让正在进行的写入失败(如 MongoInterruptedException), 只按 running 在下一次等待超时后退出
+        long pollMs = Math.min(flushIntervalMs, SHUTDOWN_POLL_MS);
+        while (running) {
+            try {
+                Entry first = buffer.poll(pollMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (running && batch.size() < batchSize) {
+                    buffer.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Entry next = buffer.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(pollMs)), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 线程即将退出, 不恢复中断标记, 否则下面写入剩余日志时会失败
+                log.warn("日志写入线程被中断, 写入剩余日志后退出");
+                break;
+            }
+            flush(batch);
+            batch.clear();
+        }
+        // 关闭前写入缓冲区中剩余的日志, 先清除中断标记, 避免写入时抛出中断异常
+        Thread.interrupted();
+        buffer.drainTo(batch);
+        for (int i = 0; i < batch.size(); i += batchSize) {
+            flush(batch.subList(i, Math.min(batch.size(), i + batchSize)));
+        }
+    }
+
+    private void flush(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<LogOperation> logOperations = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            try {
+                if (entry.preparer() != null) {
+                    entry.preparer().accept(entry.logOperation());
+                }
+                logOperations.add(entry.logOperation());
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("处理日志失败: {}", e.getMessage(), e);
+            }
+        }
+        if (logOperations.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            logDAO.saveAll(logOperations);
+            flushed.addAndGet(logOperations.size());
+        } catch (Exception e) {
+            failed.addAndGet(logOperations.size());
+            log.error("批量写入日志失败, 条数: {}, {}", logOperations.size(), e.getMessage(), e);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        flushCount.incrementAndGet();
+        totalFlushNanos.addAndGet(elapsed);
+        lastFlushNanos = elapsed;
+        if (elapsed > maxFlushNanos) {
+            maxFlushNanos = elapsed;
+        }
+    }
+
+    public LogPipelineMetrics getMetrics() {
+        long count = flushCount.get();
+        return new LogPipelineMetrics(bufferSize,
+                buffer.size(),
+                batchSize,
+                flushIntervalMs,
+                dropPolicy.name(),
+                submitted.get(),
+                flushed.get(),
+                dropped.get(),
+                failed.get(),
+                count,
+                toMillis(lastFlushNanos),
+                toMillis(maxFlushNanos),
+                count == 0 ? 0 : toMillis(totalFlushNanos.get() / count));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -107,6 +107,8 @@ public class MarkdownServiceImpl implements IMarkdownService {
 
     private final IFileDAO fileDAO;
 
+    private final ArticleRenderCache articleRenderCache;
+
 
     @Override
     public ResponseResult<FileDocument> getMarkDownOne(ArticleDTO articleDTO) {
@@ -418,6 +420,7 @@ public class MarkdownServiceImpl implements IMarkdownService {
             fileDocument.setPageSort(upload.getPageSort());
         }
         articleDAO.upsert(upload, isUpdate, fileDocument);
+        articleRenderCache.invalidate(fileDocument.getId());
         luceneService.pushCreateIndexQueue(upload.getFileId());
         return ResultUtil.success(upload.getFileId());
     }
@@ -1,29 +1,21 @@
 package com.jmal.clouddisk.service.impl;
 
 import cn.hutool.core.text.CharSequenceUtil;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.jmal.clouddisk.controller.rest.sse.Message;
 import com.jmal.clouddisk.controller.rest.sse.SseController;
-import com.jmal.clouddisk.dao.ITrashDAO;
 import com.jmal.clouddisk.exception.CommonException;
 import com.jmal.clouddisk.model.file.FileDocument;
-import com.jmal.clouddisk.model.rbac.ConsumerDO;
 import com.jmal.clouddisk.service.Constants;
-import com.jmal.clouddisk.util.CaffeineUtil;
-import com.jmal.clouddisk.util.ThrottleExecutor;
+import com.jmal.clouddisk.util.CoalescingTimerWheel;
 import io.reactivex.rxjava3.core.Completable;
-import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
@@ -36,65 +28,33 @@ public class MessageService {
 
     private final CommonUserService commonUserService;
 
-    private final ITrashDAO trashDAO;
-
-    private final Cache<String, Map<String, ThrottleExecutor>> throttleExecutorCache = Caffeine.newBuilder()
-            .expireAfterAccess(10, TimeUnit.MINUTES) // 用户10分钟不活跃后，缓存自动过期
-            .maximumSize(10000) // 最多缓存10000个用户的节流器
-            .removalListener((String username, Map<String, ThrottleExecutor> map, RemovalCause cause) -> {
-                // 2. 添加移除监听器，用于释放资源
-                log.debug("Removing throttle executors for user '{}' due to {}", username, cause);
-                if (map != null) {
-                    map.values().forEach(executor -> {
-                        // 假设 ThrottleExecutor 实现了 shutdown 接口
-                        if (executor != null) {
-                            executor.shutdown();
-                        }
-                    });
-                }
-            })
-            .build();
-
-    private final Cache<String, Long> userSpaceCache = Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.SECONDS).build();
+    private final UserSpaceService userSpaceService;
 
-    public long takeUpSpace(String userId) throws CommonException {
-        return occupiedSpace(userId);
-    }
+    /**
+     * 文件变化消息的合并窗口(毫秒)
+     */
+    private static final long MESSAGE_WINDOW_MS = 300;
 
-    public long occupiedSpace(String userId) {
-        Long space = userSpaceCache.get(userId, _ -> calculateTotalOccupiedSpace(userId).blockingGet());
-        if (space == null) {
-            space = 0L;
-        }
-        ConsumerDO consumerDO = commonUserService.getUserInfoById(userId);
-        if (consumerDO != null && consumerDO.getQuota() != null) {
-            if (space >= consumerDO.getQuota() * 1024L * 1024L * 1024L) {
-                // 空间已满
-                CaffeineUtil.setSpaceFull(userId);
-            } else {
-                if (CaffeineUtil.spaceFull(userId)) {
-                    CaffeineUtil.removeSpaceFull(userId);
-                }
-            }
-        }
-        return space;
-    }
+    /**
+     * 单条合并消息最多包含的文件数, 超过后提前推送
+     */
+    private static final int MAX_MESSAGE_BATCH_SIZE = 1000;
 
-    public Single<Long> calculateTotalOccupiedSpace(String userId) {
-        Single<Long> space1Single = getOccupiedSpaceAsync(userId, CommonFileService.COLLECTION_NAME)
-                .doOnError(e -> log.error("获取常规文件占用空间失败, userId: {}", userId, e))
-                .onErrorReturnItem(0L);
+    /**
+     * 所有用户共用的文件变化消息合并器, 同一用户同一类型的消息在窗口内合并为一条
+     */
+    private final CoalescingTimerWheel<MessageKey, Object> messageCoalescer = new CoalescingTimerWheel<>(
+            MESSAGE_WINDOW_MS, 50, MAX_MESSAGE_BATCH_SIZE, "message-coalescer", this::pushBatch);
 
-        Single<Long> space2Single = getOccupiedSpaceAsync(userId, CommonFileService.TRASH_COLLECTION_NAME)
-                .doOnError(e -> log.error("获取回收站占用空间失败, userId: {}", userId, e))
-                .onErrorReturnItem(0L);
+    private record MessageKey(String username, String url) {
+    }
 
-        return Single.zip(space1Single, space2Single, Long::sum);
+    public long takeUpSpace(String userId) throws CommonException {
+        return occupiedSpace(userId);
     }
 
-    public Single<Long> getOccupiedSpaceAsync(String userId, String collectionName) {
-        return Single.fromCallable(() -> trashDAO.getOccupiedSpace(userId, collectionName))
-                .subscribeOn(Schedulers.io());
+    public long occupiedSpace(String userId) {
+        return userSpaceService.getUsedSpace(userId);
     }
 
     public void pushMessage(String username, Object message, String url) {
@@ -117,18 +77,7 @@ public class MessageService {
         }
         if (timelyPush(username, message, url)) return;
         if (Constants.CREATE_FILE.equals(url) || Constants.DELETE_FILE.equals(url)) {
-            Map<String, ThrottleExecutor> userExecutors = throttleExecutorCache.get(username, _ -> new ConcurrentHashMap<>(8));
-            ThrottleExecutor throttleExecutor = null;
-            if (userExecutors != null) {
-                throttleExecutor = userExecutors.computeIfAbsent(url, key -> {
-                    log.debug("Creating new ThrottleExecutor for user '{}' and url '{}'", username, key);
-                    return new ThrottleExecutor(300); // 300ms 节流窗口
-                });
-            }
-
-            if (throttleExecutor != null) {
-                throttleExecutor.schedule(() -> pushMsg(username, message, url));
-            }
+            messageCoalescer.add(new MessageKey(username, url), message == null ? new Document() : message);
         } else {
             pushMsg(username, message, url);
         }
@@ -151,7 +100,38 @@ public class MessageService {
         return false;
     }
 
+    /**
+     * 推送合并后的消息, body 为最后一个变化(兼容单条消息), items 为窗口内所有的变化
+     */
+    private void pushBatch(MessageKey key, List<Object> messages) {
+        Completable.fromAction(() -> {
+                    messages.forEach(MessageService::clearLargeFields);
+                    Message msg = newMessage(key.username(), messages.getLast(), key.url());
+                    msg.setItems(messages);
+                    sseController.sendEvent(msg);
+                }).subscribeOn(Schedulers.io())
+                .doOnError(e -> log.error(e.getMessage(), e))
+                .onErrorComplete()
+                .subscribe();
+    }
+
     private void pushMsg(String username, Object message, String url) {
+        if (message == null) {
+            message = new Document();
+        }
+        clearLargeFields(message);
+        sseController.sendEvent(newMessage(username, message, url));
+    }
+
+    private static void clearLargeFields(Object message) {
+        if (message instanceof FileDocument fileDocument) {
+            fileDocument.setContent(null);
+            fileDocument.setMusicNull();
+            fileDocument.setContentText(null);
+        }
+    }
+
+    private Message newMessage(String username, Object message, String url) {
         Message msg = new Message();
         String userId = userLoginHolder.getUserId();
         if (CharSequenceUtil.isBlank(userId)) {
@@ -161,18 +141,15 @@ public class MessageService {
             long takeUpSpace = occupiedSpace(userId);
             msg.setSpace(takeUpSpace);
         }
-        if (message == null) {
-            message = new Document();
-        }
-        if (message instanceof FileDocument fileDocument) {
-            fileDocument.setContent(null);
-            fileDocument.setMusicNull();
-            fileDocument.setContentText(null);
-        }
         msg.setUrl(url);
         msg.setUsername(username);
         msg.setBody(message);
-        sseController.sendEvent(msg);
+        return msg;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        messageCoalescer.shutdown();
     }
 
 }
@@ -2,16 +2,25 @@ package com.jmal.clouddisk.service.impl;
 
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.io.file.PathUtil;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.util.NumberUtil;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.common.util.concurrent.Striped;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.IFileDAO;
 import com.jmal.clouddisk.exception.CommonException;
 import com.jmal.clouddisk.exception.ExceptionType;
 import com.jmal.clouddisk.model.UploadApiParamDTO;
 import com.jmal.clouddisk.model.UploadResponse;
+import com.jmal.clouddisk.model.file.dto.FileContentHashDTO;
 import com.jmal.clouddisk.oss.web.WebOssService;
 import com.jmal.clouddisk.util.CaffeineUtil;
+import com.jmal.clouddisk.util.FileCloneUtil;
+import com.jmal.clouddisk.util.HashUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -19,11 +28,17 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -49,6 +64,8 @@ public class MultipartUpload {
 
     private final IFileDAO fileDAO;
 
+    private final CommonUserService commonUserService;
+
     /***
      * 断点恢复上传缓存(已上传的缓存)
      */
@@ -66,6 +83,33 @@ public class MultipartUpload {
      * 合并文件的写入锁缓存
      */
     private static final Cache<String, Lock> chunkWriteLockCache = CaffeineUtil.getChunkWriteLockCache();
+    /***
+     * 按位置组装的分片上传, key: 分片目录
+     */
+    private final Cache<String, ChunkAssembly> chunkAssemblyCache = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .removalListener((String _, ChunkAssembly assembly, RemovalCause _) -> IoUtil.close(assembly))
+            .build();
+
+    /**
+     * 按位置组装的分片合并锁, key: 分片目录
+     */
+    private final Striped<Lock> chunkMergeLocks = Striped.lazyWeakLock(64);
+
+    /**
+     * 秒传持有证明的数据长度
+     */
+    private static final long CONTENT_PROOF_LENGTH = 64 * 1024;
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    /**
+     * 秒传持有证明的挑战, key: userId:contentHash
+     */
+    private final Cache<String, ContentProofChallenge> contentProofCache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .build();
 
     /**
      * 上传分片文件
@@ -76,6 +120,20 @@ public class MultipartUpload {
      * @param file           MultipartFile
      */
     public void uploadChunkFile(UploadApiParamDTO upload, UploadResponse uploadResponse, String md5, MultipartFile file) throws IOException {
+        if (isPositional(upload)) {
+            // 直接写入目标文件的对应位置
+            ChunkAssembly assembly = retainChunkAssembly(upload);
+            try (InputStream inputStream = file.getInputStream()) {
+                assembly.write(upload.getChunkNumber(), inputStream);
+            } finally {
+                assembly.release();
+            }
+            uploadResponse.setUpload(true);
+            if (assembly.isComplete()) {
+                uploadResponse.setMerge(true);
+            }
+            return;
+        }
         // 多个分片
         // 落地保存文件
         // 这时保存的每个块, 块先存好, 后续会调合并接口, 将所有块合成一个大文件
@@ -108,25 +166,46 @@ public class MultipartUpload {
         }
 
         String md5 = upload.getIdentifier();
+        Path chunkDir = getChunkDir(upload);
         Path file = Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), upload.getUsername(), upload.getFilename());
+        String contentHash = null;
         Path outputFile = Paths.get(fileProperties.getRootDir(), upload.getUsername(), commonUserFileService.getUserDirectoryFilePath(upload));
-        // 清除缓存
-        resumeCache.invalidate(md5);
-        writtenCache.invalidate(md5);
-        unWrittenCache.invalidate(md5);
-        chunkWriteLockCache.invalidate(md5);
-        Path chunkDir = Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), upload.getUsername(), md5);
-        PathUtil.del(chunkDir);
-        if (!Files.exists(outputFile)) {
-            Files.createFile(outputFile);
+        Lock mergeLock = chunkMergeLocks.get(chunkDir.toString());
+        mergeLock.lock();
+        try {
+            ChunkAssembly assembly = chunkAssemblyCache.getIfPresent(chunkDir.toString());
+            if (assembly == null && Files.exists(chunkDir.resolve(ChunkAssembly.BITMAP_FILE))) {
+                // 重启或缓存过期后按进度文件头恢复, 合并请求可能没有携带分片信息
+                assembly = reopenChunkAssembly(chunkDir);
+                if (assembly == null) {
+                    throw new CommonException(ExceptionType.FAIL_MERGE_FILE);
+                }
+            }
+            if (assembly != null) {
+                // 按位置组装的文件
+                contentHash = finishChunkAssembly(chunkDir, assembly);
+                file = chunkDir.resolve(ChunkAssembly.DATA_FILE);
+            }
+            // 清除缓存
+            resumeCache.invalidate(md5);
+            writtenCache.invalidate(md5);
+            unWrittenCache.invalidate(md5);
+            chunkWriteLockCache.invalidate(md5);
+            if (!Files.exists(outputFile)) {
+                Files.createFile(outputFile);
+            }
+            PathUtil.move(file, outputFile, true);
+            PathUtil.del(chunkDir);
+        } finally {
+            mergeLock.unlock();
         }
-        PathUtil.move(file, outputFile, true);
 
         // 设置文件最后修改时间
         CommonUserFileService.setLastModifiedTime(outputFile, upload.getLastModified());
         uploadResponse.setUpload(true);
         CaffeineUtil.setUploadFileCache(outputFile.toFile().getAbsolutePath());
-        commonUserFileService.createFile(upload.getUsername(), outputFile.toFile(), null, null);
+        String fileId = commonUserFileService.createFile(upload.getUsername(), outputFile.toFile(), null, null);
+        setContentHash(fileId, contentHash, outputFile.toFile());
 
         // 文件操作日志
         logService.syncAddLogFileOperation(upload.getUsername(), commonUserFileService.getUserDirectoryFilePath(upload), "上传文件");
@@ -134,6 +213,169 @@ public class MultipartUpload {
         return uploadResponse;
     }
 
+    /**
+     * 秒传: 按文件内容摘要查找已存在的相同文件, 找到则直接在目标位置克隆一份, 不需要再上传
+     *
+     * @param upload UploadApiParamDTO, 需要 contentHash 和 totalSize
+     * @return pass = true 表示已通过秒传创建文件
+     */
+    public UploadResponse checkContentHash(UploadApiParamDTO upload) throws IOException {
+        UploadResponse uploadResponse = new UploadResponse();
+        String contentHash = upload.getContentHash();
+        if (!HashUtil.isContentHash(contentHash) || upload.getTotalSize() == null || upload.getTotalSize() <= 0) {
+            return uploadResponse;
+        }
+        Path prePth = Paths.get(upload.getUsername(), upload.getCurrentDirectory(), upload.getRelativePath());
+        if (CaffeineUtil.getOssPath(prePth) != null) {
+            // 对象存储不支持
+            return uploadResponse;
+        }
+        String userId = Boolean.TRUE.equals(fileProperties.getDedupAcrossUsers()) ? null : upload.getUserId();
+        ContentHashSource hashSource = findContentHashSource(userId, contentHash, upload.getTotalSize());
+        if (hashSource == null) {
+            return uploadResponse;
+        }
+        if (!hashSource.userId().equals(upload.getUserId()) && !verifyContentProof(upload, hashSource.path(), uploadResponse)) {
+            // 其他用户的文件, 需要先证明持有该文件
+            return uploadResponse;
+        }
+        Path source = hashSource.path();
+        String userDirectoryFilePath = commonUserFileService.getUserDirectoryFilePath(upload);
+        Path outputFile = Paths.get(fileProperties.getRootDir(), upload.getUsername(), userDirectoryFilePath);
+        if (CommonFileService.isLock(outputFile.toFile(), fileProperties.getRootDir(), upload.getUsername())) {
+            throw new CommonException(ExceptionType.LOCKED_RESOURCES);
+        }
+        if (outputFile.equals(source)) {
+            // 上传到源文件本身的位置, 内容相同
+            uploadResponse.setPass(true);
+            uploadResponse.setUpload(true);
+            return uploadResponse;
+        }
+        FileCloneUtil.CloneMode cloneMode = FileCloneUtil.cloneFile(source, outputFile, Boolean.TRUE.equals(fileProperties.getDedupHardLink()));
+        log.debug("秒传: {} -> {}, {}", source, outputFile, cloneMode);
+        if (cloneMode != FileCloneUtil.CloneMode.HARD_LINK) {
+            // 硬链接共享修改时间, 不修改源文件
+            CommonUserFileService.setLastModifiedTime(outputFile, upload.getLastModified());
+        }
+        CaffeineUtil.setUploadFileCache(outputFile.toFile().getAbsolutePath());
+        String fileId = commonUserFileService.createFile(upload.getUsername(), outputFile.toFile(), null, null);
+        setContentHash(fileId, contentHash, outputFile.toFile());
+        uploadResponse.setPass(true);
+        uploadResponse.setUpload(true);
+        // 文件操作日志
+        logService.syncAddLogFileOperation(upload.getUsername(), userDirectoryFilePath, "秒传文件");
+        return uploadResponse;
+    }
+
+    /**
+     * 秒传的源文件
+     *
+     * @param userId 源文件所属用户
+     * @param path   源文件路径
+     */
+    private record ContentHashSource(String userId, Path path) {
+    }
+
+    /**
+     * 秒传持有证明的挑战
+     *
+     * @param nonce    随机串
+     * @param offset   数据范围起点
+     * @param length   数据长度
+     * @param expected 期望的证明
+     */
+    private record ContentProofChallenge(String nonce, long offset, long length, String expected) {
+    }
+
+    /**
+     * 查找内容摘要相同且磁盘上仍然存在、未被修改的文件
+     * 文件的 ETag 与记录内容摘要时不一致说明文件已被修改(WebDAV、在线编辑、通过硬链接原地修改等), 清除失效的内容摘要
+     */
+    private ContentHashSource findContentHashSource(String userId, String contentHash, long size) {
+        for (FileContentHashDTO fileDTO : fileDAO.findFileBaseDTOByContentHash(userId, contentHash, size, 10)) {
+            String username = commonUserService.getUserNameById(fileDTO.getUserId());
+            if (CharSequenceUtil.isBlank(username)) {
+                continue;
+            }
+            Path path = Paths.get(fileProperties.getRootDir(), username, fileDTO.getPath(), fileDTO.getName());
+            try {
+                if (!Files.isRegularFile(path) || Files.size(path) != size) {
+                    continue;
+                }
+            } catch (IOException e) {
+                log.debug("读取文件大小失败: {}, {}", path, e.getMessage());
+                continue;
+            }
+            if (!HashUtil.fileEtag(path.toFile()).equals(fileDTO.getContentHashEtag())) {
+                log.debug("文件已被修改, 清除内容摘要: {}", path);
+                clearContentHash(fileDTO.getId());
+                continue;
+            }
+            return new ContentHashSource(fileDTO.getUserId(), path);
+        }
+        return null;
+    }
+
+    /**
+     * 校验秒传持有证明
+     * 只知道内容摘要和大小不能复制其他用户的文件: 第一次请求时生成随机串和随机的数据范围返回给客户端,
+     * 客户端用本地文件计算 SHA-256(随机串 + 该范围的内容) 后带上 contentProof 重新请求, 每个挑战只能校验一次
+     *
+     * @return true: 校验通过; false: 已在 uploadResponse 中返回新的挑战, 或校验失败
+     */
+    private boolean verifyContentProof(UploadApiParamDTO upload, Path source, UploadResponse uploadResponse) throws IOException {
+        String key = upload.getUserId() + ":" + upload.getContentHash();
+        ContentProofChallenge challenge = contentProofCache.getIfPresent(key);
+        if (challenge != null && upload.getContentProof() != null) {
+            contentProofCache.invalidate(key);
+            boolean passed = MessageDigest.isEqual(challenge.expected().getBytes(StandardCharsets.UTF_8),
+                    upload.getContentProof().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            if (!passed) {
+                log.warn("秒传持有证明校验失败, userId: {}, contentHash: {}", upload.getUserId(), upload.getContentHash());
+            }
+            return passed;
+        }
+        long size = upload.getTotalSize();
+        long length = Math.min(size, CONTENT_PROOF_LENGTH);
+        long offset = size == length ? 0 : SECURE_RANDOM.nextLong(size - length + 1);
+        byte[] nonceBytes = new byte[16];
+        SECURE_RANDOM.nextBytes(nonceBytes);
+        String nonce = HexFormat.of().formatHex(nonceBytes);
+        String expected = HashUtil.contentProof(source.toFile(), nonce, offset, length);
+        contentProofCache.put(key, new ContentProofChallenge(nonce, offset, length, expected));
+        uploadResponse.setProofNonce(nonce);
+        uploadResponse.setProofOffset(offset);
+        uploadResponse.setProofLength(length);
+        return false;
+    }
+
+    /**
+     * 保存文件内容摘要和当前的文件 ETag, 失败时只记录日志
+     *
+     * @param fileId      文件id
+     * @param contentHash 内容摘要
+     * @param file        文件
+     */
+    public void setContentHash(String fileId, String contentHash, File file) {
+        if (fileId == null || contentHash == null) {
+            return;
+        }
+        try {
+            fileDAO.setContentHashById(fileId, contentHash, HashUtil.fileEtag(file));
+        } catch (Exception e) {
+            // 只影响秒传
+            log.warn("保存文件内容摘要失败: {}, {}", fileId, e.getMessage());
+        }
+    }
+
+    private void clearContentHash(String fileId) {
+        try {
+            fileDAO.setContentHashById(fileId, null, null);
+        } catch (Exception e) {
+            log.warn("清除文件内容摘要失败: {}, {}", fileId, e.getMessage());
+        }
+    }
+
     /***
      * 合并文件追加分片
      * @param upload UploadApiParamDTO
@@ -214,6 +456,13 @@ public class MultipartUpload {
             if (fileDAO.existsByUserIdAndPathAndMd5(upload.getUserId(), path, md5)) {
                 // 文件已存在
                 uploadResponse.setPass(true);
+            } else if (isPositional(upload)) {
+                ChunkAssembly assembly = getChunkAssembly(upload);
+                // 返回已写入的分片
+                uploadResponse.setResume(assembly.writtenChunks());
+                if (assembly.isComplete()) {
+                    mergeFile(upload);
+                }
             } else {
                 int totalChunks = upload.getTotalChunks();
                 List<Integer> chunks = resumeCache.get(md5, _ -> createResumeCache(upload));
@@ -230,6 +479,80 @@ public class MultipartUpload {
         return uploadResponse;
     }
 
+    /***
+     * 是否按位置组装分片
+     */
+    private boolean isPositional(UploadApiParamDTO upload) {
+        return Boolean.TRUE.equals(fileProperties.getPositionalChunkWrite())
+                && upload.getTotalSize() != null && upload.getTotalSize() > 0
+                && upload.getChunkSize() != null && upload.getChunkSize() > 0
+                && upload.getTotalChunks() != null && upload.getTotalChunks() > 0;
+    }
+
+    private Path getChunkDir(UploadApiParamDTO upload) {
+        return Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), upload.getUsername(), upload.getIdentifier());
+    }
+
+    private ChunkAssembly getChunkAssembly(UploadApiParamDTO upload) {
+        Path chunkDir = getChunkDir(upload);
+        return chunkAssemblyCache.get(chunkDir.toString(), _ -> {
+            try {
+                return ChunkAssembly.open(chunkDir, upload.getTotalSize(), upload.getChunkSize(), upload.getTotalChunks());
+            } catch (IOException e) {
+                log.error("打开分片文件失败: {}, {}", chunkDir, e.getMessage(), e);
+                throw new CommonException(ExceptionType.FAIL_UPLOAD_FILE);
+            }
+        });
+    }
+
+    /**
+     * 获取分片组装并开始使用, 缓存中的实例已封存或已关闭(过期)时重新打开
+     */
+    private ChunkAssembly retainChunkAssembly(UploadApiParamDTO upload) {
+        String key = getChunkDir(upload).toString();
+        while (true) {
+            ChunkAssembly assembly = getChunkAssembly(upload);
+            if (assembly.retain()) {
+                return assembly;
+            }
+            chunkAssemblyCache.asMap().remove(key, assembly);
+        }
+    }
+
+    /**
+     * 合并前结束分片组装: 从缓存中移除, 等待正在进行的写入完成, 检查是否已写入所有分片,
+     * 在移动目标文件之前同步关闭, 不依赖异步执行的 removalListener
+     *
+     * @return 内容摘要
+     */
+    private String finishChunkAssembly(Path chunkDir, ChunkAssembly assembly) throws IOException {
+        chunkAssemblyCache.asMap().remove(chunkDir.toString(), assembly);
+        assembly.seal();
+        try {
+            if (!assembly.isComplete()) {
+                throw new CommonException(ExceptionType.FAIL_MERGE_FILE);
+            }
+            return assembly.getContentHash();
+        } finally {
+            assembly.release();
+            assembly.close();
+        }
+    }
+
+    /**
+     * 按进度文件头重新打开分片组装, 进度文件无效时返回null
+     */
+    private ChunkAssembly reopenChunkAssembly(Path chunkDir) {
+        return chunkAssemblyCache.get(chunkDir.toString(), _ -> {
+            try {
+                return ChunkAssembly.reopen(chunkDir);
+            } catch (IOException e) {
+                log.error("恢复分片文件失败: {}, {}", chunkDir, e.getMessage(), e);
+                throw new CommonException(ExceptionType.FAIL_MERGE_FILE);
+            }
+        });
+    }
+
     /***
      * 追加分片操作
      * @param upload UploadApiParamDTO
@@ -317,6 +640,10 @@ public class MultipartUpload {
             File[] fileArray = f.listFiles(pathName -> !pathName.isDirectory());
             if (fileArray != null) {
                 for (File file : fileArray) {
+                    if (!NumberUtil.isInteger(file.getName())) {
+                        // 按位置组装时的目标文件和进度文件
+                        continue;
+                    }
                     // 分片文件
                     int resume = Integer.parseInt(file.getName());
                     resumeList.add(resume);
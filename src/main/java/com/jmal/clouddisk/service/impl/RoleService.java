@@ -249,6 +249,7 @@ public class RoleService {
     public void refreshUserAuthoritiesCache(String username) {
         List<String> authorities = getAuthorities(username);
         CaffeineUtil.setAuthoritiesCache(username, authorities);
+        CaffeineUtil.removeWebdavCredentialCache(username);
     }
 
     /**
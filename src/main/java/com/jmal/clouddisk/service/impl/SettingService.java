@@ -71,6 +71,11 @@ public class SettingService {
 
     private final MessageService messageService;
 
+    /**
+     * 网站设置版本, 每次更新网站设置后递增, 用于使依赖网站设置的缓存失效
+     */
+    private final AtomicLong websiteSettingVersion = new AtomicLong();
+
     private final AtomicBoolean calculateFolderSizeScheduled = new AtomicBoolean(false);
 
     /**
@@ -144,9 +149,14 @@ public class SettingService {
         // 添加心语记录
         addHeartwings(websiteSettingDO);
         websiteSettingDAO.upsert(websiteSettingDO);
+        websiteSettingVersion.incrementAndGet();
         return ResultUtil.success();
     }
 
+    public long getWebsiteSettingVersion() {
+        return websiteSettingVersion.get();
+    }
+
     /***
      * 添加心语记录
      * @param websiteSettingDO WebsiteSettingDO
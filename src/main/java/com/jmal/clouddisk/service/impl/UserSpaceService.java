@@ -0,0 +1,189 @@
+package com.jmal.clouddisk.service.impl;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import com.jmal.clouddisk.dao.ITrashDAO;
+import com.jmal.clouddisk.model.rbac.ConsumerDO;
+import com.jmal.clouddisk.util.CaffeineUtil;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户已使用空间
+ * 每个用户的已使用空间(文件 + 回收站)保存在内存计数器中, 首次读取时统计一次, 之后由文件的新增、大小变化增量更新,
+ * 删除等无法直接得到大小的操作标记为待重新统计, 由后台任务合并后重新统计。
+ * 定时重新统计所有已加载的用户, 修正增量更新可能产生的偏差。读取和配额检查都只访问内存
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserSpaceService {
+
+    private final ITrashDAO trashDAO;
+
+    private final CommonUserService commonUserService;
+
+    private static final long GIGABYTE = 1024L * 1024L * 1024L;
+
+    /**
+     * key: userId, value: 已使用空间(字节)
+     */
+    private final Map<String, AtomicLong> usedSpace = new ConcurrentHashMap<>();
+
+    /**
+     * 待重新统计的用户
+     */
+    private final Set<String> dirtyUsers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 获取用户已使用的空间
+     *
+     * @param userId userId
+     * @return 已使用空间(字节)
+     */
+    public long getUsedSpace(String userId) {
+        if (CharSequenceUtil.isBlank(userId)) {
+            return 0L;
+        }
+        AtomicLong space = usedSpace.get(userId);
+        if (space == null) {
+            long total = calculateTotalOccupiedSpace(userId).blockingGet();
+            space = usedSpace.computeIfAbsent(userId, _ -> new AtomicLong(total));
+        }
+        long value = space.get();
+        // 配额可能被修改, 每次读取时都检查一次
+        checkQuota(userId, value);
+        return value;
+    }
+
+    /**
+     * 新增文件后调用
+     *
+     * @param userId userId
+     * @param size   文件大小
+     */
+    public void onFileAdded(String userId, long size) {
+        addDelta(userId, size);
+    }
+
+    /**
+     * 文件大小变化后调用
+     *
+     * @param userId  userId
+     * @param oldSize 原大小
+     * @param newSize 新大小
+     */
+    public void onFileResized(String userId, long oldSize, long newSize) {
+        addDelta(userId, newSize - oldSize);
+    }
+
+    /**
+     * 删除文件、清空回收站等无法直接得到变化量的操作后调用, 稍后重新统计
+     *
+     * @param userId userId
+     */
+    public void markDirty(String userId) {
+        if (CharSequenceUtil.isNotBlank(userId) && usedSpace.containsKey(userId)) {
+            dirtyUsers.add(userId);
+        }
+    }
+
+    private void addDelta(String userId, long delta) {
+        if (CharSequenceUtil.isBlank(userId) || delta == 0) {
+            return;
+        }
+        AtomicLong space = usedSpace.get(userId);
+        if (space == null) {
+            // 尚未加载, 首次读取时统计
+            return;
+        }
+        checkQuota(userId, space.addAndGet(delta));
+    }
+
+    /**
+     * 重新统计被标记的用户
+     */
+    @Scheduled(fixedDelay = 5_000, initialDelay = 5_000)
+    public void recalculateDirtyUsers() {
+        if (dirtyUsers.isEmpty()) {
+            return;
+        }
+        List<String> userIds = new ArrayList<>(dirtyUsers);
+        userIds.forEach(dirtyUsers::remove);
+        userIds.forEach(this::recalculate);
+    }
+
+    /**
+     * 定时重新统计所有已加载的用户
+     */
+    @Scheduled(fixedDelay = 600_000, initialDelay = 600_000)
+    public void reconcile() {
+        long start = System.currentTimeMillis();
+        int drifted = 0;
+        for (String userId : List.copyOf(usedSpace.keySet())) {
+            if (recalculate(userId)) {
+                drifted++;
+            }
+        }
+        log.debug("用户已使用空间校验完成, 用户数: {}, 修正: {}, 耗时: {}ms", usedSpace.size(), drifted, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return 统计结果与计数器是否不一致
+     */
+    private boolean recalculate(String userId) {
+        try {
+            long total = calculateTotalOccupiedSpace(userId).blockingGet();
+            AtomicLong space = usedSpace.computeIfAbsent(userId, _ -> new AtomicLong(total));
+            long previous = space.getAndSet(total);
+            checkQuota(userId, total);
+            if (previous != total) {
+                log.debug("用户已使用空间已修正, userId: {}, {} -> {}", userId, previous, total);
+                return true;
+            }
+        } catch (Exception e) {
+            log.warn("统计用户已使用空间失败, userId: {}, {}", userId, e.getMessage());
+        }
+        return false;
+    }
+
+    private void checkQuota(String userId, long space) {
+        ConsumerDO consumerDO = commonUserService.getUserInfoById(userId);
+        if (consumerDO == null || consumerDO.getQuota() == null) {
+            return;
+        }
+        if (space >= consumerDO.getQuota() * GIGABYTE) {
+            // 空间已满
+            CaffeineUtil.setSpaceFull(userId);
+        } else if (CaffeineUtil.spaceFull(userId)) {
+            CaffeineUtil.removeSpaceFull(userId);
+        }
+    }
+
+    public Single<Long> calculateTotalOccupiedSpace(String userId) {
+        Single<Long> space1Single = getOccupiedSpaceAsync(userId, CommonFileService.COLLECTION_NAME)
+                .doOnError(e -> log.error("获取常规文件占用空间失败, userId: {}", userId, e))
+                .onErrorReturnItem(0L);
+
+        Single<Long> space2Single = getOccupiedSpaceAsync(userId, CommonFileService.TRASH_COLLECTION_NAME)
+                .doOnError(e -> log.error("获取回收站占用空间失败, userId: {}", userId, e))
+                .onErrorReturnItem(0L);
+
+        return Single.zip(space1Single, space2Single, Long::sum);
+    }
+
+    private Single<Long> getOccupiedSpaceAsync(String userId, String collectionName) {
+        return Single.fromCallable(() -> trashDAO.getOccupiedSpace(userId, collectionName))
+                .subscribeOn(Schedulers.io());
+    }
+}
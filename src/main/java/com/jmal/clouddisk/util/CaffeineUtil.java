@@ -100,6 +100,13 @@ public class CaffeineUtil {
      */
     private static final Cache<String, String> USERNAME_CACHE = Caffeine.newBuilder().build();
 
+    /**
+     * WebDAV 已验证通过的凭据, 避免每个请求都做一次 PBKDF2 校验
+     * key: HMAC(username, password, hashPassword)
+     * value: username
+     */
+    private static final Cache<String, String> WEBDAV_CREDENTIAL_CACHE = Caffeine.newBuilder().expireAfterWrite(5, TimeUnit.MINUTES).maximumSize(10_000).build();
+
     public static List<String> getAuthoritiesCache(String username) {
         return AUTHORITIES_CACHE.getIfPresent(username);
     }
@@ -119,6 +126,23 @@ public class CaffeineUtil {
 
     public static void removeAuthoritiesCache(String username) {
         AUTHORITIES_CACHE.invalidate(username);
+        removeWebdavCredentialCache(username);
+    }
+
+    public static boolean existsWebdavCredentialCache(String credentialKey) {
+        return WEBDAV_CREDENTIAL_CACHE.getIfPresent(credentialKey) != null;
+    }
+
+    public static void setWebdavCredentialCache(String credentialKey, String username) {
+        WEBDAV_CREDENTIAL_CACHE.put(credentialKey, username);
+    }
+
+    /**
+     * 移除该用户所有已验证的 WebDAV 凭据
+     * @param username username
+     */
+    public static void removeWebdavCredentialCache(String username) {
+        WEBDAV_CREDENTIAL_CACHE.asMap().values().removeIf(username::equals);
     }
 
     public static String getUserIdCache(String username) {
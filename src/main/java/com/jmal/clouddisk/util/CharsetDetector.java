@@ -20,7 +20,7 @@ import java.util.Set;
 @Slf4j
 public class CharsetDetector {
 
-    private static final int SAMPLE_SIZE = 8 * 1024; // 8KB
+    public static final int SAMPLE_SIZE = 8 * 1024; // 8KB
     private static final int BINARY_CHECK_LENGTH = 1024;
     private static final double MAX_NULL_BYTE_RATIO = 0.05;
     private static final double MAX_CONTROL_CHAR_RATIO = 0.1;
@@ -0,0 +1,210 @@
+package com.jmal.clouddisk.util;
+
+import cn.hutool.core.thread.ThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于时间轮的事件合并器
+ * 同一个key在一个时间窗口内提交的所有事件合并为一批, 窗口结束时一次性交给 flusher, 不会丢弃任何事件。
+ * 所有key共用一个时间轮和一个线程, 窗口结束后key的状态立即移除, 空闲的key不占用内存。
+ * 单批事件数达到上限时提前交付。flusher 在时间轮线程中执行, 耗时的操作需要自行切换线程
+ *
+ * @param <K> key
+ * @param <V> 事件
+ */
+@Slf4j
+public class CoalescingTimerWheel<K, V> {
+
+    /**
+     * 时间轮的槽数
+     */
+    private static final int WHEEL_SIZE = 64;
+
+    private final long tickMs;
+
+    private final long windowTicks;
+
+    private final int maxBatchSize;
+
+    private final BiConsumer<K, List<V>> flusher;
+
+    @SuppressWarnings("unchecked")
+    private final Queue<Batch<K, V>>[] wheel = new Queue[WHEEL_SIZE];
+
+    private final Map<K, Batch<K, V>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 当前刻度, 只由时间轮线程修改
+     */
+    private volatile long currentTick;
+
+    private final AtomicLong flushedBatches = new AtomicLong();
+
+    private final AtomicLong flushedEvents = new AtomicLong();
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param windowMs     合并窗口(毫秒)
+     * @param tickMs       时间轮刻度(毫秒), 决定窗口的精度
+     * @param maxBatchSize 单批最多合并的事件数
+     * @param name         线程名
+     * @param flusher      处理合并后的事件
+     */
+    public CoalescingTimerWheel(long windowMs, long tickMs, int maxBatchSize, String name, BiConsumer<K, List<V>> flusher) {
+        if (windowMs <= 0 || tickMs <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("windowMs, tickMs and maxBatchSize must be positive");
+        }
+        this.tickMs = tickMs;
+        this.windowTicks = Math.max(1, (windowMs + tickMs - 1) / tickMs);
+        this.maxBatchSize = maxBatchSize;
+        this.flusher = flusher;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        ThreadFactory threadFactory = ThreadUtil.createThreadFactory(name);
+        worker = threadFactory.newThread(this::run);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 提交事件, key没有未结束的窗口时开始一个新窗口
+     */
+    public void add(K key, V event) {
+        Batch<K, V> full = null;
+        while (true) {
+            Batch<K, V> batch = pending.computeIfAbsent(key, this::newBatch);
+            synchronized (batch) {
+                if (batch.closed) {
+                    // 该批次刚被交付, 重新获取
+                    continue;
+                }
+                batch.events.add(event);
+                if (batch.events.size() >= maxBatchSize) {
+                    batch.closed = true;
+                    pending.remove(key, batch);
+                    full = batch;
+                }
+            }
+            break;
+        }
+        if (full != null) {
+            deliver(full);
+        }
+    }
+
+    private Batch<K, V> newBatch(K key) {
+        Batch<K, V> batch = new Batch<>(key, currentTick + windowTicks);
+        wheel[(int) (batch.deadlineTick % WHEEL_SIZE)].add(batch);
+        return batch;
+    }
+
+    /**
+     * 未交付的key数
+     */
+    public int pendingKeys() {
+        return pending.size();
+    }
+
+    public long getFlushedBatches() {
+        return flushedBatches.get();
+    }
+
+    public long getFlushedEvents() {
+        return flushedEvents.get();
+    }
+
+    private void run() {
+        long startNanos = System.nanoTime();
+        while (running) {
+            long nextTick = currentTick + 1;
+            long sleepMs = nextTick * tickMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (sleepMs > 0) {
+                try {
+                    Thread.sleep(sleepMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            currentTick = nextTick;
+            expire(wheel[(int) (nextTick % WHEEL_SIZE)], nextTick);
+        }
+        // 关闭前交付所有未结束的窗口
+        for (Queue<Batch<K, V>> slot : wheel) {
+            expire(slot, Long.MAX_VALUE);
+        }
+    }
+
+    private void expire(Queue<Batch<K, V>> slot, long tick) {
+        int size = slot.size();
+        for (int i = 0; i < size; i++) {
+            Batch<K, V> batch = slot.poll();
+            if (batch == null) {
+                return;
+            }
+            if (batch.deadlineTick > tick) {
+                // 窗口超过一圈, 留到下一圈
+                slot.add(batch);
+                continue;
+            }
+            synchronized (batch) {
+                if (batch.closed) {
+                    continue;
+                }
+                batch.closed = true;
+                pending.remove(batch.key, batch);
+            }
+            deliver(batch);
+        }
+    }
+
+    private void deliver(Batch<K, V> batch) {
+        flushedBatches.incrementAndGet();
+        flushedEvents.addAndGet(batch.events.size());
+        try {
+            flusher.accept(batch.key, batch.events);
+        } catch (Exception e) {
+            log.error("处理合并事件失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 停止时间轮, 交付所有未结束的窗口
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Batch<K, V> {
+        private final K key;
+        private final long deadlineTick;
+        private final List<V> events = new ArrayList<>();
+        private boolean closed;
+
+        private Batch(K key, long deadlineTick) {
+            this.key = key;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
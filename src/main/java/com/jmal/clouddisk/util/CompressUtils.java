@@ -4,6 +4,11 @@ import cn.hutool.core.io.FileUtil;
 import com.jmal.clouddisk.exception.CommonException;
 import com.jmal.clouddisk.exception.ExceptionType;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.tools.zip.ZipEntry;
 import org.apache.tools.zip.ZipOutputStream;
 import org.jetbrains.annotations.NotNull;
@@ -13,12 +18,20 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
 
 /**
  * 压缩解压工具类（基于 7z 命令）
@@ -49,6 +62,15 @@ public class CompressUtils {
     /** 解压总大小限制: 50GB */
     private static final long MAX_TOTAL_SIZE = 50L * 1024 * 1024 * 1024;
 
+    /** 浏览压缩文件时的最大条目数量 */
+    private static final int MAX_LIST_ENTRY_COUNT = 500000;
+
+    /** 压缩的 tar 包的扩展名 */
+    private static final List<String> COMPRESSED_TAR_SUFFIXES = List.of(".tar.gz", ".tgz", ".tar.bz2", ".tbz2", ".tbz", ".tar.xz", ".txz");
+
+    /** 7z -slt 输出的修改时间格式 */
+    private static final DateTimeFormatter MODIFIED_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     // ==================== 压缩方法 ====================
 
     /**
@@ -141,6 +163,8 @@ public class CompressUtils {
     private static void addFileToZip(Path rootDir, Path file, ZipOutputStream zipOut) throws IOException {
         String zipEntryName = rootDir.relativize(file).toString().replace("\\", "/");
         ZipEntry zipEntry = new ZipEntry(zipEntryName);
+        // 已压缩格式的文件 deflate 几乎没有收益, 不再压缩以节省 CPU
+        zipOut.setLevel(StoredZipArchive.isCompressed(zipEntryName) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
         zipOut.putNextEntry(zipEntry);
 
         try (InputStream in = Files.newInputStream(file)) {
@@ -164,6 +188,282 @@ public class CompressUtils {
         zipOut.closeEntry();
     }
 
+    // ==================== 浏览方法 ====================
+
+    /**
+     * 压缩包中的条目
+     *
+     * @param path      条目路径, 以 / 分隔, 不以 / 开头或结尾
+     * @param folder    是否为文件夹
+     * @param size      原始大小
+     * @param modified  修改时间, 可能为 null
+     * @param encrypted 是否加密
+     */
+    public record ArchiveEntry(String path, boolean folder, long size, LocalDateTime modified, boolean encrypted) {
+    }
+
+    /**
+     * 列出压缩包中的所有条目(7z l -slt, 压缩的 tar 包使用 commons-compress), 不解压
+     * 过滤规则与 {@link #extractEmptyFiles} 一致, 跳过系统文件和不安全的路径
+     *
+     * @param archiveFile 压缩文件
+     */
+    public static List<ArchiveEntry> listEntries(File archiveFile) throws IOException, InterruptedException {
+        if (!archiveFile.exists()) {
+            throw new CommonException(ExceptionType.FILE_NOT_FIND.getCode(), "压缩文件不存在: " + archiveFile.getAbsolutePath());
+        }
+        String compressedTarType = compressedTarType(archiveFile);
+        if (compressedTarType != null) {
+            return listTarEntries(archiveFile, compressedTarType);
+        }
+        ProcessBuilder pb = new ProcessBuilder("7z", "l", "-slt", "--", archiveFile.getAbsolutePath());
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process proc = pb.start();
+        // 加密的压缩包会提示输入密码, 关闭标准输入使其直接失败
+        proc.getOutputStream().close();
+
+        List<ArchiveEntry> entries;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(proc.getInputStream(), StandardCharsets.UTF_8))) {
+            entries = parseSltEntries(reader);
+        } catch (IOException | RuntimeException e) {
+            proc.destroyForcibly();
+            throw e;
+        }
+
+        boolean finished = proc.waitFor(COMMAND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        if (!finished) {
+            proc.destroyForcibly();
+            throw new IOException("7z 列表命令执行超时");
+        }
+        int exitCode = proc.exitValue();
+        if (exitCode != 0) {
+            if (entries.isEmpty()) {
+                throw new CommonException(ExceptionType.UNRECOGNIZED_FILE.getCode(), "无法读取压缩文件, 7z 退出码: " + exitCode);
+            }
+            log.warn("7z 列表命令退出码: {}, 文件: {}", exitCode, archiveFile.getName());
+        }
+        return entries;
+    }
+
+    /**
+     * 解析 7z l -slt 的输出
+     * "----------" 之前是压缩包本身的信息, 之后每个条目是一组 "键 = 值", 以空行分隔
+     */
+    static List<ArchiveEntry> parseSltEntries(BufferedReader reader) throws IOException {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        boolean started = false;
+        Map<String, String> block = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!started) {
+                started = line.startsWith("----------");
+                continue;
+            }
+            if (!line.isEmpty()) {
+                int index = line.indexOf(" = ");
+                if (index > 0) {
+                    block.put(line.substring(0, index), line.substring(index + 3));
+                } else if (line.endsWith(" =")) {
+                    block.put(line.substring(0, line.length() - 2), "");
+                }
+                continue;
+            }
+            addEntry(entries, toArchiveEntry(block));
+            block.clear();
+        }
+        addEntry(entries, toArchiveEntry(block));
+        return entries;
+    }
+
+    private static void addEntry(List<ArchiveEntry> entries, ArchiveEntry entry) {
+        if (entry == null) {
+            return;
+        }
+        entries.add(entry);
+        if (entries.size() > MAX_LIST_ENTRY_COUNT) {
+            throw new CommonException(ExceptionType.WARNING.getCode(), "压缩文件条目数量超过限制 (" + MAX_LIST_ENTRY_COUNT + ")");
+        }
+    }
+
+    private static ArchiveEntry toArchiveEntry(Map<String, String> block) {
+        String path = block.get("Path");
+        if (path == null) {
+            return null;
+        }
+        boolean folder = determineFolderType(path, "+".equals(block.get("Folder")), block.get("Attributes"));
+        long size = 0;
+        try {
+            size = Long.parseLong(block.getOrDefault("Size", "0"));
+        } catch (NumberFormatException ignored) {
+            // 部分格式没有大小
+        }
+        LocalDateTime modified = null;
+        String modifiedValue = block.get("Modified");
+        if (modifiedValue != null && modifiedValue.length() >= 19) {
+            try {
+                modified = LocalDateTime.parse(modifiedValue.substring(0, 19), MODIFIED_FORMATTER);
+            } catch (DateTimeParseException ignored) {
+                // 忽略无法解析的时间
+            }
+        }
+        return newArchiveEntry(path, folder, size, modified, "+".equals(block.get("Encrypted")));
+    }
+
+    /**
+     * 统一条目路径的分隔符并去掉末尾的 /, 跳过系统文件和不安全的路径
+     */
+    private static ArchiveEntry newArchiveEntry(String rawPath, boolean folder, long size, LocalDateTime modified, boolean encrypted) {
+        String path = rawPath.replace("\\", "/");
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (!isValidFilePath(path)) {
+            return null;
+        }
+        return new ArchiveEntry(path, folder, size, modified, encrypted);
+    }
+
+    /**
+     * 压缩的 tar 包(tar.gz/tgz、tar.bz2、tar.xz/txz)的外层压缩格式, 不是压缩的 tar 包时返回 null
+     * 7z 只把外层当作单个文件, 看不到 tar 中的条目, 这类文件使用 commons-compress 流式读取
+     */
+    private static String compressedTarType(File archiveFile) throws IOException {
+        String name = archiveFile.getName().toLowerCase();
+        if (COMPRESSED_TAR_SUFFIXES.stream().noneMatch(name::endsWith)) {
+            return null;
+        }
+        String type = DetectArchiveType.detectType(archiveFile.getAbsolutePath());
+        return switch (type) {
+            case "gzip", "bzip2", "xz" -> type;
+            default -> null;
+        };
+    }
+
+    private static TarArchiveInputStream openCompressedTar(File archiveFile, String type) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(archiveFile.toPath()), BUFFER_SIZE);
+        try {
+            InputStream decompressed = switch (type) {
+                case "gzip" -> new GzipCompressorInputStream(in, true);
+                case "bzip2" -> new BZip2CompressorInputStream(in, true);
+                case "xz" -> new XZCompressorInputStream(in, true);
+                default -> throw new IOException("不支持的压缩格式: " + type);
+            };
+            return new TarArchiveInputStream(decompressed, StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static List<ArchiveEntry> listTarEntries(File archiveFile, String type) throws IOException {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        try (TarArchiveInputStream tarIn = openCompressedTar(archiveFile, type)) {
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tarIn.getNextEntry()) != null) {
+                addEntry(entries, toArchiveEntry(tarEntry));
+            }
+        }
+        return entries;
+    }
+
+    private static ArchiveEntry toArchiveEntry(TarArchiveEntry tarEntry) {
+        // 只列出普通文件和文件夹, 跳过符号链接、硬链接和设备文件
+        if (tarEntry.isSymbolicLink() || tarEntry.isLink() || tarEntry.isCharacterDevice()
+                || tarEntry.isBlockDevice() || tarEntry.isFIFO()) {
+            return null;
+        }
+        String path = tarEntry.getName();
+        while (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        LocalDateTime modified = LocalDateTime.ofInstant(tarEntry.getLastModifiedTime().toInstant(), ZoneId.systemDefault());
+        return newArchiveEntry(path, tarEntry.isDirectory(), tarEntry.getSize(), modified, false);
+    }
+
+    /**
+     * 顺序读取压缩的 tar 包, 找到条目后只输出该条目
+     */
+    private static void extractTarEntry(File archiveFile, String type, String entryPath, OutputStream outputStream) throws IOException {
+        try (TarArchiveInputStream tarIn = openCompressedTar(archiveFile, type)) {
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tarIn.getNextEntry()) != null) {
+                ArchiveEntry entry = toArchiveEntry(tarEntry);
+                if (entry != null && !entry.folder() && entry.path().equals(entryPath)) {
+                    tarIn.transferTo(outputStream);
+                    return;
+                }
+            }
+        }
+        throw new FileNotFoundException("压缩文件中没有该条目: " + entryPath);
+    }
+
+    /**
+     * 输出压缩包中单个文件的内容, 不解压其他文件
+     * zip 通过中央目录直接定位条目; 压缩的 tar 包顺序读取到该条目; 其他格式(或 zip 无法按 UTF-8 读取时)使用 7z e -so 输出到标准输出
+     *
+     * @param archiveFile 压缩文件
+     * @param entryPath   条目路径, 必须是 {@link #listEntries} 返回的路径
+     * @param outputStream 输出流
+     */
+    public static void extractEntry(File archiveFile, String entryPath, OutputStream outputStream) throws IOException, InterruptedException {
+        String compressedTarType = compressedTarType(archiveFile);
+        if (compressedTarType != null) {
+            extractTarEntry(archiveFile, compressedTarType, entryPath, outputStream);
+            return;
+        }
+        String compressionType = DetectArchiveType.detectType(archiveFile.getAbsolutePath());
+        if (("zip".equals(compressionType) || "jar".equals(compressionType)) && extractZipEntry(archiveFile, entryPath, outputStream)) {
+            return;
+        }
+        // -spd: 条目路径不作为通配符
+        ProcessBuilder pb = new ProcessBuilder("7z", "e", "-so", "-spd", "-bd", "--", archiveFile.getAbsolutePath(), entryPath);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process proc = pb.start();
+        proc.getOutputStream().close();
+        try (InputStream in = proc.getInputStream()) {
+            in.transferTo(outputStream);
+        } catch (IOException e) {
+            proc.destroyForcibly();
+            throw e;
+        }
+        boolean finished = proc.waitFor(COMMAND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        if (!finished) {
+            proc.destroyForcibly();
+            throw new IOException("7z 解压命令执行超时");
+        }
+        int exitCode = proc.exitValue();
+        if (exitCode != 0) {
+            throw new IOException("7z 解压失败，退出码: " + exitCode + ", 条目: " + entryPath);
+        }
+    }
+
+    /**
+     * 通过 zip 的中央目录直接读取条目
+     *
+     * @return false: 无法按 UTF-8 打开或找不到条目, 需要使用 7z
+     */
+    private static boolean extractZipEntry(File archiveFile, String entryPath, OutputStream outputStream) throws IOException {
+        java.util.zip.ZipFile zipFile;
+        try {
+            zipFile = new java.util.zip.ZipFile(archiveFile, StandardCharsets.UTF_8);
+        } catch (ZipException e) {
+            log.debug("无法直接读取 zip 文件, 使用 7z: {}, {}", archiveFile.getName(), e.getMessage());
+            return false;
+        }
+        try (zipFile) {
+            java.util.zip.ZipEntry zipEntry = zipFile.getEntry(entryPath);
+            if (zipEntry == null || zipEntry.isDirectory()) {
+                return false;
+            }
+            try (InputStream in = zipFile.getInputStream(zipEntry)) {
+                in.transferTo(outputStream);
+            }
+            return true;
+        }
+    }
+
     // ==================== 解压方法 ====================
 
     /**
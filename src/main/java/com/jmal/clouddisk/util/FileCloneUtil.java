@@ -0,0 +1,162 @@
+package com.jmal.clouddisk.util;
+
+import cn.hutool.core.io.file.PathUtil;
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.exec.environment.EnvironmentUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文件克隆
+ * 优先使用 reflink(写时复制, btrfs/xfs/zfs 等支持), 不占用额外空间且修改互不影响;
+ * 不支持时按配置使用硬链接或普通复制
+ */
+@Slf4j
+public class FileCloneUtil {
+
+    /**
+     * 克隆方式
+     */
+    public enum CloneMode {
+        /**
+         * 写时复制, 共享数据块
+         */
+        REFLINK,
+        /**
+         * 硬链接, 共享 inode, 原地修改其中一个文件会影响所有链接
+         */
+        HARD_LINK,
+        /**
+         * 普通复制
+         */
+        COPY
+    }
+
+    /**
+     * 小于该大小的文件直接复制, 启动 cp 进程的开销比复制本身更大
+     */
+    private static final long REFLINK_MIN_SIZE = 64 * 1024;
+
+    /**
+     * cp --reflink 只在 GNU coreutils 中可用
+     */
+    private static final boolean IS_LINUX = System.getProperty("os.name", "").toLowerCase().contains("linux");
+
+    /**
+     * 不支持 reflink 的文件系统, 不再尝试, 避免每次都启动外部进程
+     * 按目标所在的文件系统记录, 不同挂载点(如 rootDir 与 OSS 缓存目录)的支持情况可能不同
+     */
+    private static final Set<FileStore> REFLINK_UNSUPPORTED_STORES = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 临时文件前缀, 以 ._ 开头的文件被文件监控忽略(monitorIgnoreFilePrefix)
+     */
+    private static final String TMP_PREFIX = "._";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private FileCloneUtil() {
+    }
+
+    /**
+     * 克隆文件, 目标文件已存在时覆盖
+     * 先克隆到同目录下的临时文件, 成功后再替换目标文件, 克隆失败时不影响已存在的目标文件
+     *
+     * @param source        源文件
+     * @param target        目标文件
+     * @param allowHardLink 不支持 reflink 时是否使用硬链接
+     * @return 实际使用的克隆方式
+     */
+    public static CloneMode cloneFile(Path source, Path target, boolean allowHardLink) throws IOException {
+        PathUtil.mkParentDirs(target);
+        Path tmpFile = target.resolveSibling(TMP_PREFIX + target.getFileName() + "." + UUID.fastUUID().toString(true) + TMP_SUFFIX);
+        try {
+            CloneMode cloneMode = cloneTo(source, tmpFile, allowHardLink);
+            replace(tmpFile, target);
+            return cloneMode;
+        } finally {
+            // 不留下不完整的文件
+            PathUtil.del(tmpFile);
+        }
+    }
+
+    private static CloneMode cloneTo(Path source, Path target, boolean allowHardLink) throws IOException {
+        if (Files.size(source) >= REFLINK_MIN_SIZE && reflink(source, target)) {
+            return CloneMode.REFLINK;
+        }
+        if (allowHardLink) {
+            try {
+                Files.createLink(target, source);
+                return CloneMode.HARD_LINK;
+            } catch (IOException | UnsupportedOperationException e) {
+                // 跨文件系统等
+                log.debug("创建硬链接失败, 使用复制: {}, {}", target, e.getMessage());
+            }
+        }
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        return CloneMode.COPY;
+    }
+
+    private static void replace(Path tmpFile, Path target) throws IOException {
+        try {
+            Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static boolean reflink(Path source, Path target) {
+        if (!IS_LINUX) {
+            return false;
+        }
+        FileStore fileStore;
+        try {
+            fileStore = Files.getFileStore(target.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            return false;
+        }
+        if (REFLINK_UNSUPPORTED_STORES.contains(fileStore)) {
+            return false;
+        }
+        CommandLine cmdLine = new CommandLine("cp");
+        cmdLine.addArgument("--reflink=always");
+        cmdLine.addArgument(source.toAbsolutePath().toString(), false);
+        cmdLine.addArgument(target.toAbsolutePath().toString(), false);
+        DefaultExecutor executor = DefaultExecutor.builder().get();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        executor.setStreamHandler(new PumpStreamHandler(output));
+        executor.setWatchdog(ExecuteWatchdog.builder().setTimeout(Duration.ofSeconds(30)).get());
+        try {
+            // 固定输出英文错误信息, 用于判断是否不支持
+            Map<String, String> environment = EnvironmentUtils.getProcEnvironment();
+            environment.put("LC_ALL", "C");
+            executor.execute(cmdLine, environment);
+            return true;
+        } catch (IOException e) {
+            PathUtil.del(target);
+            String message = output.toString();
+            if (message.contains("not supported")) {
+                REFLINK_UNSUPPORTED_STORES.add(fileStore);
+                log.info("文件系统 {} 不支持 reflink, 改为使用硬链接或复制", fileStore);
+            } else {
+                log.debug("reflink 失败: {}, {}", target, message.isBlank() ? e.getMessage() : message.trim());
+            }
+            return false;
+        }
+    }
+}
@@ -79,6 +79,25 @@ public class FileContentTypeUtils {
         return contentType;
     }
 
+    /**
+     * 根据文件头部内容嗅探Content-Type, 嗅探失败返回默认类型
+     *
+     * @param head     文件头部内容
+     * @param fileName 文件名
+     * @return 文件Content-Type
+     */
+    public static String detect(byte[] head, String fileName) {
+        try {
+            String tikaDetectedType = TIKA_INSTANCE.detect(head, fileName);
+            if (tikaDetectedType != null && !tikaDetectedType.isEmpty()) {
+                return tikaDetectedType;
+            }
+        } catch (Exception e) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+        return DEFAULT_CONTENT_TYPE;
+    }
+
     private static final Map<String, String> CONTENT_TYPE_MAP = new HashMap<>(800);
 
     static {
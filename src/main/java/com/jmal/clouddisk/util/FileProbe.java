@@ -0,0 +1,141 @@
+package com.jmal.clouddisk.util;
+
+import cn.hutool.core.io.FileTypeUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件探测
+ * 只读取一次文件头部, 同时得到 Content-Type、魔数类型、字符编码和是否为文本文件,
+ * 结果按 (路径, 大小, 修改时间) 缓存, 文件变化后自动失效。
+ * 替代分别调用 Tika、FileTypeUtil、CharsetDetector 时对同一个文件的多次打开和读取
+ */
+@Slf4j
+public class FileProbe {
+
+    /**
+     * 读取的文件头部大小, 覆盖 Tika 嗅探所需的长度
+     */
+    private static final int HEAD_SIZE = 64 * 1024;
+
+    private static final Cache<Key, Probe> PROBE_CACHE = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    private FileProbe() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * 探测结果
+     *
+     * @param contentType Content-Type, 不含charset
+     * @param magicType   根据魔数得到的文件类型(小写), 无法识别时为文件后缀
+     * @param charset     字符编码, 二进制文件为null
+     * @param text        是否为文本文件
+     */
+    public record Probe(String contentType, String magicType, Charset charset, boolean text) {
+
+        private static final Probe EMPTY = new Probe(FileContentTypeUtils.DEFAULT_CONTENT_TYPE, "", null, false);
+
+        /**
+         * 带charset的Content-Type, 同 CommonFileService.getContentType(File, String)
+         */
+        public String contentTypeWithCharset() {
+            if (charset == null) {
+                return contentType;
+            }
+            if (FileContentTypeUtils.DEFAULT_CONTENT_TYPE.equals(contentType)) {
+                return "text/plan;charset=utf-8";
+            }
+            return contentType + ";charset=utf-8";
+        }
+    }
+
+    private record Key(String path, long size, long lastModified) {
+    }
+
+    /**
+     * 探测文件
+     *
+     * @param file 文件
+     * @return Probe, 文件不存在或不是普通文件时返回空结果
+     */
+    public static Probe probe(File file) {
+        if (file == null) {
+            return Probe.EMPTY;
+        }
+        Path path = file.toPath();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return Probe.EMPTY;
+        }
+        if (!attributes.isRegularFile()) {
+            return Probe.EMPTY;
+        }
+        Key key = new Key(file.getAbsolutePath(), attributes.size(), attributes.lastModifiedTime().toMillis());
+        return PROBE_CACHE.get(key, _ -> doProbe(file, attributes.size()));
+    }
+
+    private static Probe doProbe(File file, long size) {
+        String ext = MyFileUtils.extName(file.getName());
+        byte[] head = readHead(file.toPath(), size);
+
+        String contentType = FileContentTypeUtils.getContentType(ext);
+        if (contentType.equals(FileContentTypeUtils.DEFAULT_CONTENT_TYPE) && size <= FileContentTypeUtils.MAX_DETECT_FILE_SIZE && head.length > 0) {
+            contentType = FileContentTypeUtils.detect(head, file.getName());
+        }
+
+        String magicType = ext;
+        if (head.length > 0) {
+            String type = FileTypeUtil.getType(new ByteArrayInputStream(head), file.getName());
+            if (type != null) {
+                magicType = type.toLowerCase();
+            }
+        }
+
+        Charset charset = null;
+        if (head.length > 0) {
+            // 字符编码检测只使用头部的 8KB, 与 CharsetDetector.detect(File) 一致
+            byte[] sample = head.length > CharsetDetector.SAMPLE_SIZE ? Arrays.copyOf(head, CharsetDetector.SAMPLE_SIZE) : head;
+            charset = MyFileUtils.getCharset(file, sample, sample.length);
+        }
+        return new Probe(contentType, magicType, charset, charset != null);
+    }
+
+    private static byte[] readHead(Path path, long size) {
+        int length = (int) Math.min(size, HEAD_SIZE);
+        if (length <= 0) {
+            return new byte[0];
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("读取文件头部失败: {}, {}", path, e.getMessage());
+            return new byte[0];
+        }
+        return buffer.position() == length ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+}
@@ -1,16 +1,25 @@
 package com.jmal.clouddisk.util;
 
+import com.google.common.hash.Funnels;
 import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.Files;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
 
 public class HashUtil {
 
     private static final HashFunction SHA256 = Hashing.sha256();
 
+    private static final Pattern CONTENT_HASH_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+
     /**
      * 轻量级文件 ETag（零文件 I/O）
      */
@@ -34,4 +43,47 @@ public class HashUtil {
     public static String sha256(String str) {
         return SHA256.hashString(str, StandardCharsets.UTF_8).toString();
     }
+
+    /**
+     * 文件内容的 SHA-256
+     */
+    public static String sha256(File file) throws IOException {
+        return Files.asByteSource(file).hash(SHA256).toString();
+    }
+
+    /**
+     * 秒传持有证明: SHA-256(nonce + 文件中 [offset, offset + length) 的内容)
+     * nonce 由服务端随机生成, 即使范围覆盖整个文件, 结果也不等于已公开的内容摘要
+     *
+     * @param file   文件
+     * @param nonce  服务端生成的随机串
+     * @param offset 起始位置
+     * @param length 长度
+     */
+    public static String contentProof(File file, String nonce, long offset, long length) throws IOException {
+        Hasher hasher = SHA256.newHasher().putString(nonce, StandardCharsets.UTF_8);
+        Files.asByteSource(file).slice(offset, length).copyTo(Funnels.asOutputStream(hasher));
+        return hasher.hash().toString();
+    }
+
+    /**
+     * 增量计算文件内容摘要(SHA-256), 与 {@link #sha256(File)} 结果一致
+     */
+    public static Hasher newContentHasher() {
+        return SHA256.newHasher();
+    }
+
+    /**
+     * 读取的同时计算文件内容摘要, 读取完成后通过 {@link HashingInputStream#hash()} 获取
+     */
+    public static HashingInputStream contentHashingInputStream(InputStream inputStream) {
+        return new HashingInputStream(SHA256, inputStream);
+    }
+
+    /**
+     * 是否为有效的文件内容摘要(小写十六进制的 SHA-256)
+     */
+    public static boolean isContentHash(String contentHash) {
+        return contentHash != null && CONTENT_HASH_PATTERN.matcher(contentHash).matches();
+    }
 }
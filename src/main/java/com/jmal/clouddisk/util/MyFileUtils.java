@@ -1,6 +1,5 @@
 package com.jmal.clouddisk.util;
 
-import cn.hutool.core.io.FileTypeUtil;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.CharsetUtil;
 import cn.hutool.core.util.StrUtil;
@@ -76,6 +75,26 @@ public class MyFileUtils {
         }
     }
 
+    /**
+     * 根据已读取的文件头部获取文件的字符编码, 不再重复读取文件
+     *
+     * @param file   文件
+     * @param head   文件头部
+     * @param length 头部有效长度
+     * @return 字符编码, 二进制文件返回null
+     */
+    public static Charset getCharset(File file, byte[] head, int length) {
+        try {
+            String contentType = FileContentTypeUtils.getContentType(MyFileUtils.extName(file.getName()));
+            if (isBinaryOrCompressedType(contentType)) {
+                return null;
+            }
+            return CharsetDetector.detect(file, head, length);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     /***
      * 获取文件的字符编码
      * @param file 源文件
@@ -96,9 +115,9 @@ public class MyFileUtils {
             if (file.length() == 0) {
                 return true;
             }
-            String type = FileTypeUtil.getType(file).toLowerCase();
-            if (hasContentFile(type)) return true;
-            return hasCharset(file);
+            FileProbe.Probe probe = FileProbe.probe(file);
+            if (hasContentFile(probe.magicType())) return true;
+            return probe.text();
         } catch (Exception e) {
             return false;
         }
@@ -0,0 +1,529 @@
+package com.jmal.clouddisk.util;
+
+import cn.hutool.core.io.FileUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 不压缩(STORED)的 ZIP64 虚拟压缩包
+ * 所有条目都按原样存储, 压缩包的布局只由文件名和文件大小决定, 因此可以在输出之前算出压缩包的准确大小,
+ * 并按偏移量输出任意区间的内容, 用于支持 Content-Length 和 Range 断点续传。
+ * 本地文件头中的 CRC32 在输出该文件之前计算, 按文件路径和 ETag 缓存, 续传和输出中央目录时不需要重新读取文件
+ *
+ * @author jmal
+ */
+@Slf4j
+public class StoredZipArchive {
+
+    /** 读取缓冲区大小 */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** 小于该大小且 CRC 未缓存的文件一次读入内存, 计算 CRC 和输出数据只读一次文件 */
+    private static final int PRELOAD_SIZE = 1024 * 1024;
+
+    private static final int VERSION_ZIP64 = 45;
+
+    /** 通用标志位: 文件名使用 UTF-8 编码 */
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int LOCAL_EXTRA_SIZE = 20;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int CENTRAL_EXTRA_SIZE = 28;
+
+    private static final int ZIP64_END_SIZE = 56;
+
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int END_SIZE = 22;
+
+    /** MS-DOS 目录属性 */
+    private static final int DOS_DIRECTORY = 0x10;
+
+    /**
+     * 文件 CRC32 缓存, 用于续传时不同的请求之间共享
+     * key: 文件路径 + ETag
+     * 同一个布局中算出的 CRC32 还会记录在条目上, 不受缓存淘汰影响, 输出中央目录时不会重新读取文件
+     */
+    private static final Cache<String, Long> CRC_CACHE = Caffeine.newBuilder().maximumSize(100_000).build();
+
+    /**
+     * 已经是压缩格式的文件后缀, deflate 几乎不能再减小它们的体积
+     */
+    private static final Set<String> COMPRESSED_SUFFIXES = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "heif", "avif",
+            "mp3", "m4a", "aac", "ogg", "opus", "flac", "wma",
+            "mp4", "m4v", "mkv", "mov", "avi", "webm", "flv", "wmv", "rmvb", "ts",
+            "zip", "7z", "rar", "gz", "tgz", "bz2", "xz", "zst", "lz4", "jar", "apk", "ipa", "dmg", "iso",
+            "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub", "pdf");
+
+    private static final Comparator<Path> BY_NAME = Comparator.comparing(path -> String.valueOf(path.getFileName()));
+
+    private final List<Entry> entries;
+
+    /** 中央目录的偏移量 */
+    private final long centralDirectoryOffset;
+
+    /** 中央目录的大小 */
+    private final long centralDirectorySize;
+
+    /**
+     * 压缩包总大小
+     */
+    @Getter
+    private final long size;
+
+    /**
+     * 所有文件的大小
+     */
+    @Getter
+    private final long dataSize;
+
+    /**
+     * 可压缩文件的大小, 即后缀不在已压缩格式中的文件
+     */
+    @Getter
+    private final long compressibleSize;
+
+    /**
+     * 压缩包的 ETag, 由条目名称、大小和修改时间决定, 用于 If-Range 判断续传时内容是否变化
+     */
+    @Getter
+    private final String etag;
+
+    private StoredZipArchive(List<Entry> entries) {
+        this.entries = entries;
+        long offset = 0;
+        long cdSize = 0;
+        long data = 0;
+        long compressible = 0;
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Entry entry : entries) {
+            entry.headerOffset = offset;
+            offset = entry.dataOffset() + entry.size;
+            cdSize += CENTRAL_HEADER_SIZE + entry.name.length + CENTRAL_EXTRA_SIZE;
+            data += entry.size;
+            if (!entry.directory && !isCompressed(entry.path.getFileName().toString())) {
+                compressible += entry.size;
+            }
+            hasher.putBytes(entry.name).putLong(entry.size).putLong(entry.lastModified);
+        }
+        this.centralDirectoryOffset = offset;
+        this.centralDirectorySize = cdSize;
+        this.size = offset + cdSize + ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE + END_SIZE;
+        this.dataSize = data;
+        this.compressibleSize = compressible;
+        this.etag = hasher.hash().toString();
+    }
+
+    /**
+     * 根据要打包的文件/文件夹生成压缩包布局, 条目名称和跳过符号链接的规则与 {@link CompressUtils#compress} 一致
+     * 选中的路径和每个文件夹的子项都按名称排序, 布局不受数据库返回顺序和文件系统遍历顺序影响, 续传时偏移量保持一致
+     *
+     * @param paths 要打包的路径列表
+     */
+    public static StoredZipArchive of(List<Path> paths) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Path path : paths.stream().sorted(BY_NAME.thenComparing(Path::toString)).toList()) {
+            if (!Files.exists(path)) {
+                log.warn("路径不存在，跳过: {}", path);
+                continue;
+            }
+            if (Files.isSymbolicLink(path)) {
+                log.warn("跳过符号链接: {}", path);
+                continue;
+            }
+            Path rootDir = path.getParent();
+            if (!Files.isDirectory(path)) {
+                entries.add(new Entry(rootDir, path, Files.readAttributes(path, BasicFileAttributes.class)));
+                continue;
+            }
+            addDirectory(rootDir, path, entries);
+        }
+        return new StoredZipArchive(entries);
+    }
+
+    /**
+     * 按名称顺序添加文件夹下的所有文件夹和文件, 跳过符号链接
+     */
+    private static void addDirectory(Path rootDir, Path dir, List<Entry> entries) {
+        List<Path> children;
+        try (Stream<Path> stream = Files.list(dir)) {
+            children = stream.sorted(BY_NAME).toList();
+        } catch (IOException e) {
+            log.warn("访问文件失败: {}, 原因: {}", dir, e.getMessage());
+            return;
+        }
+        for (Path child : children) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                log.warn("访问文件失败: {}, 原因: {}", child, e.getMessage());
+                continue;
+            }
+            if (attrs.isSymbolicLink()) {
+                log.warn("跳过符号链接文件: {}", child);
+            } else if (attrs.isDirectory()) {
+                entries.add(new Entry(rootDir, child, attrs));
+                addDirectory(rootDir, child, entries);
+            } else if (attrs.isRegularFile()) {
+                entries.add(new Entry(rootDir, child, attrs));
+            }
+        }
+    }
+
+    /**
+     * 是否为已压缩格式的文件(图片、音视频、压缩包等)
+     *
+     * @param filename 文件名
+     */
+    public static boolean isCompressed(String filename) {
+        String suffix = FileUtil.getSuffix(filename);
+        return suffix != null && COMPRESSED_SUFFIXES.contains(suffix.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 解析 Range 请求头, 只支持单个区间
+     *
+     * @param range Range 请求头, 例如: bytes=100-, bytes=100-199, bytes=-500
+     * @param size  内容总大小
+     * @return [start, end](包含 end); 无法解析或多个区间时返回 null, 应返回完整内容; 区间无法满足时返回空数组, 应返回 416
+     */
+    public static long[] parseRange(String range, long size) {
+        String prefix = "bytes=";
+        if (range == null || !range.startsWith(prefix) || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring(prefix.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // 最后 n 个字节
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, size - suffixLength);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            }
+            if (start < 0 || start >= size || end < start) {
+                return new long[0];
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 输出压缩包中 [start, end] 区间的内容
+     *
+     * @param out   输出流
+     * @param start 起始偏移量
+     * @param end   结束偏移量(包含)
+     */
+    public void write(OutputStream out, long start, long end) throws IOException {
+        long endExclusive = end + 1;
+        for (Entry entry : entries) {
+            if (entry.headerOffset >= endExclusive) {
+                return;
+            }
+            if (entry.dataOffset() + entry.size <= start) {
+                continue;
+            }
+            writeEntry(out, entry, start, endExclusive);
+        }
+        if (endExclusive > centralDirectoryOffset) {
+            writeSlice(out, centralDirectory(), centralDirectoryOffset, start, endExclusive);
+        }
+    }
+
+    private void writeEntry(OutputStream out, Entry entry, long start, long endExclusive) throws IOException {
+        long dataOffset = entry.dataOffset();
+        byte[] preloaded = null;
+        if (start < dataOffset) {
+            long crc;
+            Long cached = entry.directory ? Long.valueOf(0L) : cachedCrc(entry);
+            if (cached != null) {
+                crc = cached;
+            } else if (entry.size <= PRELOAD_SIZE) {
+                preloaded = Files.readAllBytes(entry.path);
+                entry.checkSize(preloaded.length);
+                CRC32 crc32 = new CRC32();
+                crc32.update(preloaded);
+                crc = crc32.getValue();
+                entry.crc = crc;
+                CRC_CACHE.put(entry.cacheKey(), crc);
+            } else {
+                crc = crc(entry);
+            }
+            writeSlice(out, localHeader(entry, crc), entry.headerOffset, start, endExclusive);
+        }
+        long from = Math.max(start, dataOffset) - dataOffset;
+        long to = Math.min(endExclusive, dataOffset + entry.size) - dataOffset;
+        if (from >= to) {
+            return;
+        }
+        if (preloaded != null) {
+            out.write(preloaded, (int) from, (int) (to - from));
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(entry.path, StandardOpenOption.READ)) {
+            channel.position(from);
+            InputStream in = Channels.newInputStream(channel);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = to - from;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("文件在下载过程中被修改: " + entry.path);
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * 只输出 region 与 [start, endExclusive) 重叠的部分
+     */
+    private static void writeSlice(OutputStream out, byte[] region, long regionOffset, long start, long endExclusive) throws IOException {
+        long from = Math.max(start, regionOffset) - regionOffset;
+        long to = Math.min(endExclusive, regionOffset + region.length) - regionOffset;
+        if (from < to) {
+            out.write(region, (int) from, (int) (to - from));
+        }
+    }
+
+    /**
+     * 条目上已算出的 CRC32, 没有时从缓存读取并记录到条目上
+     */
+    private static Long cachedCrc(Entry entry) {
+        if (entry.crc == null) {
+            entry.crc = CRC_CACHE.getIfPresent(entry.cacheKey());
+        }
+        return entry.crc;
+    }
+
+    /**
+     * 文件的 CRC32, 优先使用已算出或缓存的值
+     */
+    private static long crc(Entry entry) throws IOException {
+        if (entry.directory) {
+            return 0;
+        }
+        Long cached = cachedCrc(entry);
+        if (cached != null) {
+            return cached;
+        }
+        CRC32 crc32 = new CRC32();
+        long total = 0;
+        try (FileChannel channel = FileChannel.open(entry.path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                total += buffer.remaining();
+                crc32.update(buffer);
+                buffer.clear();
+            }
+        }
+        entry.checkSize(total);
+        long crc = crc32.getValue();
+        entry.crc = crc;
+        CRC_CACHE.put(entry.cacheKey(), crc);
+        return crc;
+    }
+
+    private static byte[] localHeader(Entry entry, long crc) {
+        ByteBuffer buffer = ByteBuffer.allocate(LOCAL_HEADER_SIZE + entry.name.length + LOCAL_EXTRA_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x04034b50);
+        buffer.putShort((short) VERSION_ZIP64);
+        buffer.putShort((short) FLAG_UTF8);
+        // STORED
+        buffer.putShort((short) 0);
+        buffer.putInt(entry.dosTime);
+        buffer.putInt((int) crc);
+        buffer.putInt((int) ZIP64_MAGIC);
+        buffer.putInt((int) ZIP64_MAGIC);
+        buffer.putShort((short) entry.name.length);
+        buffer.putShort((short) LOCAL_EXTRA_SIZE);
+        buffer.put(entry.name);
+        // ZIP64 扩展字段: 原始大小、压缩后大小
+        buffer.putShort((short) 0x0001);
+        buffer.putShort((short) 16);
+        buffer.putLong(entry.size);
+        buffer.putLong(entry.size);
+        return buffer.array();
+    }
+
+    /**
+     * 中央目录、ZIP64 中央目录结束记录及定位器、中央目录结束记录
+     */
+    private byte[] centralDirectory() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, size - centralDirectoryOffset));
+        for (Entry entry : entries) {
+            ByteBuffer buffer = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + entry.name.length + CENTRAL_EXTRA_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0x02014b50);
+            buffer.putShort((short) VERSION_ZIP64);
+            buffer.putShort((short) VERSION_ZIP64);
+            buffer.putShort((short) FLAG_UTF8);
+            buffer.putShort((short) 0);
+            buffer.putInt(entry.dosTime);
+            buffer.putInt((int) crc(entry));
+            buffer.putInt((int) ZIP64_MAGIC);
+            buffer.putInt((int) ZIP64_MAGIC);
+            buffer.putShort((short) entry.name.length);
+            buffer.putShort((short) CENTRAL_EXTRA_SIZE);
+            // 注释长度、起始磁盘号、内部属性
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putInt(entry.directory ? DOS_DIRECTORY : 0);
+            buffer.putInt((int) ZIP64_MAGIC);
+            buffer.put(entry.name);
+            // ZIP64 扩展字段: 原始大小、压缩后大小、本地文件头偏移量
+            buffer.putShort((short) 0x0001);
+            buffer.putShort((short) 24);
+            buffer.putLong(entry.size);
+            buffer.putLong(entry.size);
+            buffer.putLong(entry.headerOffset);
+            out.write(buffer.array());
+        }
+        long zip64EndOffset = centralDirectoryOffset + centralDirectorySize;
+        ByteBuffer buffer = ByteBuffer.allocate(ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE + END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        // ZIP64 中央目录结束记录
+        buffer.putInt(0x06064b50);
+        buffer.putLong(ZIP64_END_SIZE - 12);
+        buffer.putShort((short) VERSION_ZIP64);
+        buffer.putShort((short) VERSION_ZIP64);
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putLong(entries.size());
+        buffer.putLong(entries.size());
+        buffer.putLong(centralDirectorySize);
+        buffer.putLong(centralDirectoryOffset);
+        // ZIP64 中央目录结束记录定位器
+        buffer.putInt(0x07064b50);
+        buffer.putInt(0);
+        buffer.putLong(zip64EndOffset);
+        buffer.putInt(1);
+        // 中央目录结束记录, 实际值在 ZIP64 记录中
+        buffer.putInt(0x06054b50);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0xFFFF);
+        buffer.putShort((short) 0xFFFF);
+        buffer.putInt((int) ZIP64_MAGIC);
+        buffer.putInt((int) ZIP64_MAGIC);
+        buffer.putShort((short) 0);
+        out.write(buffer.array());
+        return out.toByteArray();
+    }
+
+    private static final class Entry {
+
+        private final Path path;
+
+        private final byte[] name;
+
+        private final boolean directory;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final int dosTime;
+
+        private long headerOffset;
+
+        /**
+         * 本布局中已算出的 CRC32
+         */
+        private Long crc;
+
+        Entry(Path rootDir, Path path, BasicFileAttributes attrs) {
+            this.path = path;
+            this.directory = attrs.isDirectory();
+            String entryName = rootDir.relativize(path).toString().replace("\\", "/");
+            this.name = (directory ? entryName + "/" : entryName).getBytes(StandardCharsets.UTF_8);
+            this.size = directory ? 0 : attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.dosTime = toDosTime(lastModified);
+        }
+
+        long dataOffset() {
+            return headerOffset + LOCAL_HEADER_SIZE + name.length + LOCAL_EXTRA_SIZE;
+        }
+
+        String cacheKey() {
+            return path + ":" + HashUtil.fileEtag(path.toFile());
+        }
+
+        /**
+         * 文件大小与生成布局时不一致时, 已经输出的内容无法再对应, 只能中断下载
+         */
+        void checkSize(long actualSize) throws IOException {
+            if (actualSize != size) {
+                throw new IOException("文件在下载过程中被修改: " + path);
+            }
+        }
+
+        private static int toDosTime(long millis) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+            if (time.getYear() < 1980) {
+                return (1 << 21) | (1 << 16);
+            }
+            return (time.getYear() - 1980) << 25
+                    | time.getMonthValue() << 21
+                    | time.getDayOfMonth() << 16
+                    | time.getHour() << 11
+                    | time.getMinute() << 5
+                    | time.getSecond() >> 1;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.jmal.clouddisk.webdav;
 
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.crypto.digest.HMac;
+import cn.hutool.crypto.digest.HmacAlgorithm;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.config.WebFilter;
 import com.jmal.clouddisk.service.impl.RoleService;
@@ -51,6 +54,11 @@ public class MyRealm extends RealmBase {
 
     private static final List<String> DEFAULT_ROLES = List.of("webdav");
 
+    /**
+     * 凭据缓存key的HMAC密钥, 每次启动随机生成, 缓存中不保存明文密码
+     */
+    private static final byte[] CREDENTIAL_HMAC_KEY = SecureUtil.generateKey(HmacAlgorithm.HmacSHA256.getValue()).getEncoded();
+
     @Override
     protected String getPassword(String username) {
         return null;
@@ -67,8 +75,22 @@ public class MyRealm extends RealmBase {
         if (StrUtil.isBlank(hashPassword)) {
             return null;
         }
+        // 凭据或密码哈希变化后key也随之变化, 不会命中旧的缓存
+        String credentialKey = credentialKey(username, password, hashPassword);
+        if (CaffeineUtil.existsWebdavCredentialCache(credentialKey)) {
+            return getPrincipal(username);
+        }
         boolean valid = PasswordHash.validatePassword(password, hashPassword);
-        return valid ? getPrincipal(username) : null;
+        if (!valid) {
+            return null;
+        }
+        CaffeineUtil.setWebdavCredentialCache(credentialKey, username);
+        return getPrincipal(username);
+    }
+
+    private static String credentialKey(String username, String password, String hashPassword) {
+        HMac hMac = new HMac(HmacAlgorithm.HmacSHA256, CREDENTIAL_HMAC_KEY);
+        return hMac.digestHex(username + '\0' + password + '\0' + hashPassword);
     }
 
     @Override
@@ -16,6 +16,9 @@
  */
 package com.jmal.clouddisk.webdav;
 
+import com.jmal.clouddisk.util.CaffeineUtil;
+import com.jmal.clouddisk.webdav.resource.FileResourceSet;
+import com.jmal.clouddisk.webdav.resource.LocalFileResource;
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletContext;
@@ -23,6 +26,7 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceSet;
 import org.apache.catalina.connector.RequestFacade;
 import org.apache.catalina.servlets.DefaultServlet;
 import org.apache.catalina.util.DOMWriter;
@@ -43,10 +47,20 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -151,6 +165,11 @@ public class WebdavServlet extends DefaultServlet {
      */
     private static final int FIND_PROPERTY_NAMES = 2;
 
+    /**
+     * 流式输出 PROPFIND 子项时, 每输出多少个子项写出一次
+     */
+    private static final int PROPFIND_FLUSH_SIZE = 200;
+
 
     /**
      * Create a new lock.
@@ -461,70 +480,18 @@ public class WebdavServlet extends DefaultServlet {
             };
         }
 
-        Node propNode = null;
-
         if (req.getContentLengthLong() > 0) {
-            DocumentBuilder documentBuilder = getDocumentBuilder();
-
             try {
-                Document document = documentBuilder.parse(new InputSource(req.getInputStream()));
-
-                // Get the root element of the document
-                Element rootElement = document.getDocumentElement();
-                NodeList childList = rootElement.getChildNodes();
-
-                for (int i = 0; i < childList.getLength(); i++) {
-                    Node currentNode = childList.item(i);
-                    switch (currentNode.getNodeType()) {
-                        case Node.TEXT_NODE:
-                            break;
-                        case Node.ELEMENT_NODE:
-                            if (currentNode.getNodeName().endsWith("prop")) {
-                                type = FIND_BY_PROPERTY;
-                                propNode = currentNode;
-                            }
-                            if (currentNode.getNodeName().endsWith("propname")) {
-                                type = FIND_PROPERTY_NAMES;
-                            }
-                            if (currentNode.getNodeName().endsWith("allprop")) {
-                                type = FIND_ALL_PROP;
-                            }
-                            break;
-                    }
-                }
-            } catch (SAXException | IOException e) {
+                PropfindRequest propfindRequest = parsePropfindRequest(req.getInputStream());
+                type = propfindRequest.type();
+                properties = propfindRequest.properties();
+            } catch (XMLStreamException | IOException e) {
                 // Something went wrong - bad request
                 resp.sendError(WebdavStatus.SC_BAD_REQUEST);
                 return;
             }
         }
 
-        if (type == FIND_BY_PROPERTY) {
-            properties = new ArrayList<>();
-            // propNode must be non-null if type == FIND_BY_PROPERTY
-            @SuppressWarnings("null")
-            NodeList childList = propNode.getChildNodes();
-
-            for (int i = 0; i < childList.getLength(); i++) {
-                Node currentNode = childList.item(i);
-                switch (currentNode.getNodeType()) {
-                    case Node.TEXT_NODE:
-                        break;
-                    case Node.ELEMENT_NODE:
-                        String nodeName = currentNode.getNodeName();
-                        String propertyName = null;
-                        if (nodeName.indexOf(':') != -1) {
-                            propertyName = nodeName.substring(nodeName.indexOf(':') + 1);
-                        } else {
-                            propertyName = nodeName;
-                        }
-                        // href is a live property which is handled differently
-                        properties.add(propertyName);
-                        break;
-                }
-            }
-        }
-
         WebResource resource = resources.getResource(path);
 
         if (!resource.exists()) {
@@ -585,28 +552,22 @@ public class WebdavServlet extends DefaultServlet {
 
                 if (resource.isDirectory() && (depth > 0)) {
 
-                    String[] entries = resources.list(currentPath);
-                    for (String entry : entries) {
-                        String newPath = currentPath;
-                        if (!(newPath.endsWith("/"))) {
-                            newPath += "/";
+                    // 下一层不再展开时, 本地目录的子项直接流式写入响应
+                    if (depth > 1 || !streamChildrenProperties(req, generatedXML, currentPath, resource, type, properties)) {
+                        String[] entries = resources.list(currentPath);
+                        for (String entry : entries) {
+                            String newPath = currentPath;
+                            if (!(newPath.endsWith("/"))) {
+                                newPath += "/";
+                            }
+                            newPath += entry;
+                            stackBelow.addFirst(newPath);
                         }
-                        newPath += entry;
-                        stackBelow.addFirst(newPath);
                     }
 
                     // Displaying the lock-null resources present in that
                     // collection
-                    String lockPath = currentPath;
-                    if (lockPath.endsWith("/")) {
-                        lockPath = lockPath.substring(0, lockPath.length() - 1);
-                    }
-                    List<String> currentLockNullResources = lockNullResources.get(lockPath);
-                    if (currentLockNullResources != null) {
-                        for (String lockNullPath : currentLockNullResources) {
-                            parseLockNullProperties(req, generatedXML, lockNullPath, type, properties);
-                        }
-                    }
+                    appendLockNullProperties(req, generatedXML, currentPath, type, properties);
                 }
 
                 if (stack.isEmpty()) {
@@ -1628,6 +1589,9 @@ public class WebdavServlet extends DefaultServlet {
                 // to file (without trailing '/')
                 dest = dest.substring(0, dest.length() - 1);
             }
+            if (cloneLocalFile(sourceResource, source, dest)) {
+                return true;
+            }
             try (InputStream is = sourceResource.getInputStream()) {
                 if (!resources.write(dest, is, false)) {
                     errorList.put(source, WebdavStatus.SC_INTERNAL_SERVER_ERROR);
@@ -1644,6 +1608,29 @@ public class WebdavServlet extends DefaultServlet {
     }
 
 
+    /**
+     * 源文件和目标位置都在本地时使用 FileCloneUtil 复制, 支持时为 reflink, 不需要读写文件内容
+     * 目标通过 {@link FileResourceSet#cloneFrom} 写入, 与 resources.write 做相同的只读和路径检查
+     *
+     * @return 是否已复制, false 表示不是本地文件或目标已存在, 需要走原来的逻辑
+     */
+    private boolean cloneLocalFile(WebResource sourceResource, String source, String dest) {
+        if (!(sourceResource instanceof LocalFileResource) || CaffeineUtil.getOssPath(Paths.get(source)) != null) {
+            return false;
+        }
+        String sourcePath = sourceResource.getCanonicalPath();
+        if (sourcePath == null) {
+            return false;
+        }
+        for (WebResourceSet resourceSet : resources.getPreResources()) {
+            if (resourceSet instanceof FileResourceSet fileResourceSet) {
+                return fileResourceSet.cloneFrom(dest, new File(sourcePath));
+            }
+        }
+        return false;
+    }
+
+
     /**
      * Delete a resource.
      *
@@ -1823,6 +1810,171 @@ public class WebdavServlet extends DefaultServlet {
     }
 
 
+    /**
+     * PROPFIND 请求体解析结果
+     *
+     * @param type       Propfind type
+     * @param properties 按属性名查询时的属性列表
+     */
+    private record PropfindRequest(int type, List<String> properties) {
+    }
+
+
+    /**
+     * 使用 StAX 流式解析 PROPFIND 请求体, 只读取根元素下的 prop / propname / allprop
+     *
+     * @param inputStream 请求体
+     *
+     * @return 解析结果
+     *
+     * @throws XMLStreamException 请求体不是合法的XML
+     */
+    private PropfindRequest parsePropfindRequest(InputStream inputStream) throws XMLStreamException {
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(inputStream);
+        int type = FIND_ALL_PROP;
+        List<String> properties = null;
+        try {
+            // 0: 根元素之外, 1: 根元素, 2: 根元素的子元素, 3: prop 的子元素
+            int level = 0;
+            boolean inProp = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    level++;
+                    String localName = reader.getLocalName();
+                    if (level == 2) {
+                        switch (localName) {
+                            case "prop" -> {
+                                type = FIND_BY_PROPERTY;
+                                properties = new ArrayList<>();
+                                inProp = true;
+                            }
+                            case "propname" -> type = FIND_PROPERTY_NAMES;
+                            case "allprop" -> type = FIND_ALL_PROP;
+                            default -> {
+                                // ignore
+                            }
+                        }
+                    } else if (level == 3 && inProp) {
+                        // href is a live property which is handled differently
+                        properties.add(localName);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (level == 2) {
+                        inProp = false;
+                    }
+                    level--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (type == FIND_BY_PROPERTY && properties == null) {
+            properties = new ArrayList<>();
+        }
+        return new PropfindRequest(type, properties);
+    }
+
+
+    /**
+     * Propfind helper method. 以流的方式输出本地目录的子项
+     * 只遍历一次目录(DirectoryStream), 每个子项读取一次 BasicFileAttributes, 不再为每个子项创建 WebResource,
+     * 并且每输出 {@link #PROPFIND_FLUSH_SIZE} 个子项就写出一次, 内存占用与目录大小无关。
+     * 与 FileResourceSet 一致, 不允许链接(allowLinking=false)时不列出符号链接
+     *
+     * @param req          The servlet request
+     * @param generatedXML XML response to the Propfind request
+     * @param path         Path of the current resource
+     * @param resource     Current resource
+     * @param type         Propfind type
+     * @param properties   If the propfind type is find properties by name, then this List contains those properties
+     *
+     * @return 是否已输出子项, false 表示不是本地目录, 需要走原来的逻辑
+     */
+    private boolean streamChildrenProperties(HttpServletRequest req, XMLWriter generatedXML, String path,
+                                             WebResource resource, int type, List<String> properties) {
+        if (!(resource instanceof LocalFileResource) || CaffeineUtil.getOssPath(Paths.get(path)) != null) {
+            return false;
+        }
+        String canonicalPath = resource.getCanonicalPath();
+        if (canonicalPath == null) {
+            return false;
+        }
+        String parentPath = path.endsWith("/") ? path : path + "/";
+        String hrefPrefix = req.getContextPath() + req.getServletPath();
+        if (hrefPrefix.endsWith("/") && parentPath.startsWith("/")) {
+            hrefPrefix += parentPath.substring(1);
+        } else {
+            hrefPrefix += parentPath;
+        }
+        boolean allowLinking = resources.getAllowLinking();
+        int count = 0;
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(Paths.get(canonicalPath))) {
+            for (Path child : directoryStream) {
+                String name = child.getFileName().toString();
+                String childPath = parentPath + name;
+                if (isSpecialPath(childPath)) {
+                    continue;
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isSymbolicLink()) {
+                        if (!allowLinking) {
+                            continue;
+                        }
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                    }
+                } catch (IOException e) {
+                    // Broken symlink or odd permission settings?
+                    continue;
+                }
+                boolean isFile = attrs.isRegularFile();
+                String href = hrefPrefix + name;
+                if (attrs.isDirectory()) {
+                    href += "/";
+                }
+                long lastModified = attrs.lastModifiedTime().toMillis();
+                long contentLength = isFile ? attrs.size() : -1;
+                generatePropFindResponse(generatedXML, rewriteUrl(href), childPath, type, properties, isFile, false,
+                        attrs.creationTime().toMillis(), lastModified, contentLength,
+                        getServletContext().getMimeType(name), "W/\"" + contentLength + "-" + lastModified + "\"");
+                if (++count % PROPFIND_FLUSH_SIZE == 0) {
+                    generatedXML.sendData();
+                }
+            }
+        } catch (IOException e) {
+            if (count == 0) {
+                return false;
+            }
+            log(e.getMessage(), e);
+        }
+        return true;
+    }
+
+
+    /**
+     * Propfind helper method. Displays the lock-null resources present in the collection.
+     */
+    private void appendLockNullProperties(HttpServletRequest req, XMLWriter generatedXML, String currentPath, int type,
+                                          List<String> properties) {
+        String lockPath = currentPath;
+        if (lockPath.endsWith("/")) {
+            lockPath = lockPath.substring(0, lockPath.length() - 1);
+        }
+        List<String> currentLockNullResources = lockNullResources.get(lockPath);
+        if (currentLockNullResources != null) {
+            for (String lockNullPath : currentLockNullResources) {
+                parseLockNullProperties(req, generatedXML, lockNullPath, type, properties);
+            }
+        }
+    }
+
+
     /**
      * Propfind helper method.
      *
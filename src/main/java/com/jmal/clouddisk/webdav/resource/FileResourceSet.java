@@ -4,6 +4,7 @@ import cn.hutool.core.io.IoUtil;
 import com.jmal.clouddisk.oss.FileInfo;
 import com.jmal.clouddisk.oss.OssConfigService;
 import com.jmal.clouddisk.util.CaffeineUtil;
+import com.jmal.clouddisk.util.FileCloneUtil;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.util.ResourceSet;
@@ -166,6 +167,30 @@ public class FileResourceSet extends AbstractFileResourceSet {
         return true;
     }
 
+    /**
+     * 把本地文件克隆到 path, 与 {@link #write} 做相同的检查(只读、路径、不能超出 base), 支持时为 reflink, 不需要读写文件内容
+     *
+     * @param path   目标路径
+     * @param source 本地源文件
+     * @return 是否已克隆, false 表示目标在 OSS 上、已存在或不允许写入, 需要走 {@link #write}
+     */
+    public boolean cloneFrom(String path, File source) {
+        checkPath(path);
+        if (isReadOnly() || path.endsWith("/") || CaffeineUtil.getOssPath(Paths.get(path)) != null) {
+            return false;
+        }
+        File dest = file(path, false);
+        if (dest == null || dest.exists()) {
+            return false;
+        }
+        try {
+            FileCloneUtil.cloneFile(source.toPath(), dest.toPath(), false);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     @Override
     protected void checkType(File file) {
         if (!file.isDirectory()) {
@@ -0,0 +1,188 @@
+package com.jmal.clouddisk;
+
+import com.jmal.clouddisk.service.impl.ChunkAssembly;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分片上传模拟器
+ * 模拟浏览器乱序、并行上传分片, 中途"重启"(关闭后重新打开), 验证:
+ * 1. 重启后从持久化的 BitSet 恢复已写入的分片, 只需要上传剩余的分片
+ * 2. 重复上传同一个分片不影响结果
+ * 3. 组装后的文件与源文件的 SHA-256 一致, 且与上传过程中增量计算的内容摘要一致
+ * 4. 缓存丢失后合并(请求不带分片信息, 只按进度文件头恢复): 未写完时拒绝合并, 写完后摘要一致
+ */
+public class ChunkUploadSimulator extends FileTransferSimulator {
+
+    // --- 可配置的静态变量 ---
+    /** 工作目录 */
+    private static final String WORK_DIR_NAME = System.getProperty("java.io.tmpdir") + "/chunk-upload-simulator";
+    /** 源文件大小, 不是分片大小的整数倍, 最后一个分片大于分片大小(与前端 forceChunkSize=false 一致) */
+    private static final long FILE_SIZE = 256L * 1024 * 1024 + 123_457;
+    /** 分片大小 */
+    private static final int CHUNK_SIZE = 5 * 1024 * 1024;
+    /** 并行上传的分片数 */
+    private static final int PARALLEL_UPLOADS = 8;
+    /** 重启前上传的分片比例 */
+    private static final double UPLOADED_BEFORE_RESTART = 0.6;
+
+    public static void main(String[] args) {
+        try {
+            simulate();
+        } catch (Exception e) {
+            System.err.println("模拟失败: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void simulate() throws Exception {
+        Path workDir = Paths.get(WORK_DIR_NAME);
+        Path sourceFile = workDir.resolve("source.bin");
+        Path chunkDir = workDir.resolve("chunks");
+        Files.createDirectories(workDir);
+        createDummyFile(sourceFile, FILE_SIZE);
+        deleteChunkDir(chunkDir);
+
+        long totalSize = Files.size(sourceFile);
+        int totalChunks = (int) Math.max(1, totalSize / CHUNK_SIZE);
+        System.out.printf("源文件: %s, 分片大小: %s, 分片数: %d%n", formatSize(totalSize), formatSize(CHUNK_SIZE), totalChunks);
+
+        List<Integer> chunks = new ArrayList<>();
+        for (int i = 1; i <= totalChunks; i++) {
+            chunks.add(i);
+        }
+        Collections.shuffle(chunks);
+        int beforeRestart = (int) (totalChunks * UPLOADED_BEFORE_RESTART);
+
+        long start = System.nanoTime();
+        String contentHash;
+        try (ChunkAssembly assembly = ChunkAssembly.open(chunkDir, totalSize, CHUNK_SIZE, totalChunks)) {
+            upload(assembly, sourceFile, totalSize, totalChunks, chunks.subList(0, beforeRestart - 1));
+            // 缓存过期时仍有写入: 关闭推迟到最后一个使用者结束
+            check(assembly.retain(), "未关闭时无法开始写入");
+            assembly.close();
+            int lastChunk = chunks.get(beforeRestart - 1);
+            assembly.write(lastChunk, new ByteArrayInputStream(readChunk(sourceFile, totalSize, totalChunks, lastChunk)));
+            assembly.release();
+            check(!assembly.retain(), "关闭后仍可以开始写入");
+            System.out.printf("重启前已写入 %d/%d 个分片%n", assembly.writtenCount(), totalChunks);
+        }
+        // 缓存已丢失, 未写完所有分片时合并
+        try (ChunkAssembly assembly = ChunkAssembly.reopen(chunkDir)) {
+            check(assembly != null, "按进度文件头恢复失败");
+            check(!assembly.isComplete(), "未写完所有分片却可以合并");
+            check(assembly.getContentHash() == null, "未写完所有分片却有内容摘要");
+        }
+
+        try (ChunkAssembly assembly = ChunkAssembly.open(chunkDir, totalSize, CHUNK_SIZE, totalChunks)) {
+            int resumed = assembly.writtenCount();
+            check(resumed == beforeRestart, "重启后恢复的分片数 " + resumed + " != " + beforeRestart);
+            List<Integer> remaining = new ArrayList<>();
+            for (int chunk : chunks) {
+                if (!assembly.isWritten(chunk)) {
+                    remaining.add(chunk);
+                }
+            }
+            // 模拟网络重试, 重复上传几个已写入的分片
+            remaining.addAll(chunks.subList(0, Math.min(3, beforeRestart)));
+            Collections.shuffle(remaining);
+            upload(assembly, sourceFile, totalSize, totalChunks, remaining);
+            check(assembly.isComplete(), "分片未全部写入: " + assembly.writtenCount() + "/" + totalChunks);
+            contentHash = assembly.getContentHash();
+        }
+        // 检查分片后缓存丢失, 合并请求不带分片信息
+        try (ChunkAssembly assembly = ChunkAssembly.reopen(chunkDir)) {
+            check(assembly != null, "按进度文件头恢复失败");
+            check(assembly.isComplete(), "恢复后分片未全部写入: " + assembly.writtenCount() + "/" + totalChunks);
+            check(contentHash.equals(assembly.getContentHash()), "恢复后内容摘要不一致: " + contentHash + " != " + assembly.getContentHash());
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        String expected = sha256(sourceFile);
+        String actual = sha256(chunkDir.resolve(ChunkAssembly.DATA_FILE));
+        check(expected.equals(actual), "文件内容不一致: " + expected + " != " + actual);
+        check(expected.equals(contentHash), "内容摘要不一致: " + expected + " != " + contentHash);
+        System.out.printf("组装完成, 耗时 %d ms, %.1f MB/s, SHA-256: %s%n",
+                elapsedMs, totalSize / 1024.0 / 1024 / Math.max(1, elapsedMs) * 1000, actual);
+        deleteChunkDir(chunkDir);
+    }
+
+    /**
+     * 并行上传分片
+     */
+    private static void upload(ChunkAssembly assembly, Path sourceFile, long totalSize, int totalChunks, List<Integer> chunks) throws Exception {
+        try (ExecutorService pool = Executors.newFixedThreadPool(PARALLEL_UPLOADS)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int chunk : chunks) {
+                futures.add(pool.submit(() -> {
+                    byte[] data = readChunk(sourceFile, totalSize, totalChunks, chunk);
+                    check(assembly.retain(), "无法开始写入分片 " + chunk);
+                    try {
+                        assembly.write(chunk, new ByteArrayInputStream(data));
+                    } finally {
+                        assembly.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+    }
+
+    private static byte[] readChunk(Path sourceFile, long totalSize, int totalChunks, int chunk) throws IOException {
+        long position = (long) (chunk - 1) * CHUNK_SIZE;
+        long length = chunk == totalChunks ? totalSize - position : CHUNK_SIZE;
+        byte[] data = new byte[(int) length];
+        try (RandomAccessFile file = new RandomAccessFile(sourceFile.toFile(), "r")) {
+            file.seek(position);
+            file.readFully(data);
+        }
+        return data;
+    }
+
+    private static String sha256(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (var in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[1024 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void deleteChunkDir(Path chunkDir) throws IOException {
+        if (!Files.exists(chunkDir)) {
+            return;
+        }
+        try (var files = Files.list(chunkDir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(chunkDir);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
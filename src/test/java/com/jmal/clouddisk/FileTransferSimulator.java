@@ -159,7 +159,7 @@ public class FileTransferSimulator {
     /**
      * 创建指定大小的虚拟文件
      */
-    private static void createDummyFile(Path path, long size) throws IOException {
+    protected static void createDummyFile(Path path, long size) throws IOException {
         if (Files.exists(path)) {
             System.out.println("  - 虚拟文件已存在，跳过创建: " + path.getFileName());
             return;
@@ -181,7 +181,7 @@ public class FileTransferSimulator {
     /**
      * 格式化文件大小为可读字符串
      */
-    private static String formatSize(long bytes) {
+    protected static String formatSize(long bytes) {
         if (bytes < 1024) return bytes + " B";
         int exp = (int) (Math.log(bytes) / Math.log(1024));
         String pre = "KMGTPE".charAt(exp - 1) + "";
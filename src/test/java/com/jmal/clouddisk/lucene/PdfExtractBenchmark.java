@@ -0,0 +1,141 @@
+package com.jmal.clouddisk.lucene;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * PDF 文本提取性能测试
+ * 生成一个多页的纯文本 PDF, 分别用逐页调用 pdftotext + pdfimages 和按页范围批量提取 + 单次 pdfimages -list 两种方式处理,
+ * 对比耗时。需要本机安装 poppler-utils
+ */
+public class PdfExtractBenchmark {
+
+    // --- 可配置的静态变量 ---
+    /** 生成的 PDF 页数 */
+    private static final int PAGES = 500;
+    /** 每页的文字行数 */
+    private static final int LINES_PER_PAGE = 40;
+    /** 重复次数 */
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        Path pdf = Files.createTempFile("pdf-extract-benchmark-", ".pdf");
+        try {
+            Files.write(pdf, generatePdf(PAGES, LINES_PER_PAGE));
+            File file = pdf.toFile();
+            System.out.printf("PDF: %s, 页数: %d, 大小: %d KB%n", pdf, PAGES, Files.size(pdf) / 1024);
+
+            for (int round = 1; round <= ROUNDS; round++) {
+                long start = System.nanoTime();
+                long perPageChars = perPage(file);
+                long perPageMs = (System.nanoTime() - start) / 1_000_000;
+
+                start = System.nanoTime();
+                long rangeChars = byRange(file);
+                long rangeMs = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.printf("第 %d 轮: 逐页 %d ms (%d 字符), 按范围 %d ms (%d 字符), 加速 %.1fx%n",
+                        round, perPageMs, perPageChars, rangeMs, rangeChars, (double) perPageMs / Math.max(rangeMs, 1));
+            }
+        } finally {
+            Files.deleteIfExists(pdf);
+        }
+    }
+
+    /**
+     * 原有方式: 每页一次 pdftotext 和一次 pdfimages
+     */
+    private static long perPage(File file) throws IOException, InterruptedException {
+        long chars = 0;
+        for (int page = 1; page <= PAGES; page++) {
+            String p = String.valueOf(page);
+            chars += PopplerPdfReader.executeCommand("pdftotext", "-f", p, "-l", p, file.getAbsolutePath(), "-").trim().length();
+            PopplerPdfReader.executeCommand("pdfimages", "-f", p, "-l", p, "-list", file.getAbsolutePath());
+        }
+        return chars;
+    }
+
+    /**
+     * 新方式: 单次 pdfimages -list, 按页范围批量 pdftotext
+     */
+    private static long byRange(File file) throws IOException, InterruptedException {
+        long chars = 0;
+        BitSet imagePages = PopplerPdfReader.pagesWithImages(file);
+        if (!imagePages.isEmpty()) {
+            System.out.println("意外的图片页: " + imagePages);
+        }
+        for (int first = 1; first <= PAGES; first += PopplerPdfReader.PAGE_RANGE_SIZE) {
+            int last = Math.min(first + PopplerPdfReader.PAGE_RANGE_SIZE - 1, PAGES);
+            for (String text : PopplerPdfReader.extractTextOfRange(file, first, last)) {
+                chars += text.trim().length();
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * 手工生成一个只包含 Helvetica 文字的 PDF
+     */
+    private static byte[] generatePdf(int pages, int linesPerPage) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Integer> offsets = new ArrayList<>();
+        // 对象编号: 1 catalog, 2 pages, 3 font, 之后每页一个 page 对象和一个 content 对象
+        int objectCount = 3 + pages * 2;
+        write(out, "%PDF-1.4\n");
+
+        offsets.add(out.size());
+        write(out, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+
+        offsets.add(out.size());
+        StringBuilder kids = new StringBuilder();
+        for (int i = 0; i < pages; i++) {
+            kids.append(4 + i * 2).append(" 0 R ");
+        }
+        write(out, "2 0 obj\n<< /Type /Pages /Kids [" + kids + "] /Count " + pages + " >>\nendobj\n");
+
+        offsets.add(out.size());
+        write(out, "3 0 obj\n<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>\nendobj\n");
+
+        for (int i = 0; i < pages; i++) {
+            int pageObj = 4 + i * 2;
+            int contentObj = pageObj + 1;
+            offsets.add(out.size());
+            write(out, pageObj + " 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 612 792] "
+                    + "/Resources << /Font << /F1 3 0 R >> >> /Contents " + contentObj + " 0 R >>\nendobj\n");
+
+            StringBuilder content = new StringBuilder("BT /F1 10 Tf 14 TL 50 760 Td\n");
+            for (int line = 0; line < linesPerPage; line++) {
+                content.append("(Page ").append(i + 1).append(" line ").append(line + 1)
+                        .append(" the quick brown fox jumps over the lazy dog) Tj T*\n");
+            }
+            content.append("ET\n");
+            byte[] stream = content.toString().getBytes(StandardCharsets.US_ASCII);
+            offsets.add(out.size());
+            write(out, contentObj + " 0 obj\n<< /Length " + stream.length + " >>\nstream\n");
+            out.writeBytes(stream);
+            write(out, "endstream\nendobj\n");
+        }
+
+        int xref = out.size();
+        StringBuilder table = new StringBuilder("xref\n0 ").append(objectCount + 1).append('\n');
+        table.append("0000000000 65535 f \n");
+        for (int offset : offsets) {
+            table.append(String.format("%010d 00000 n \n", offset));
+        }
+        table.append("trailer\n<< /Size ").append(objectCount + 1).append(" /Root 1 0 R >>\n");
+        table.append("startxref\n").append(xref).append("\n%%EOF\n");
+        write(out, table.toString());
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, String s) {
+        out.writeBytes(s.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,128 @@
+package com.jmal.clouddisk.util;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息合并性能测试
+ * 模拟大量用户同时产生突发的文件变化事件, 对比每个用户一个 ThrottleExecutor 和共用一个 CoalescingTimerWheel 的
+ * 线程数、内存占用、提交耗时, 以及最终推送的事件数(ThrottleExecutor 每个窗口只保留最后一个事件)
+ */
+public class CoalescingTimerWheelBenchmark {
+
+    // --- 可配置的静态变量 ---
+    /** 用户数 */
+    private static final int USERS = 10_000;
+    /** 每个用户的突发事件数 */
+    private static final int EVENTS_PER_USER = 20;
+    /** 提交事件的线程数 */
+    private static final int THREADS = 8;
+    /** 合并窗口(毫秒) */
+    private static final long WINDOW_MS = 300;
+    /** 是否同时测试 ThrottleExecutor(每个用户一个平台线程) */
+    private static final boolean COMPARE_THROTTLE_EXECUTOR = true;
+
+    public static void main(String[] args) throws Exception {
+        runWheel();
+        if (COMPARE_THROTTLE_EXECUTOR) {
+            System.gc();
+            runThrottleExecutor();
+        }
+    }
+
+    private static void runWheel() throws Exception {
+        AtomicLong delivered = new AtomicLong();
+        AtomicLong messages = new AtomicLong();
+        CoalescingTimerWheel<String, Integer> wheel = new CoalescingTimerWheel<>(WINDOW_MS, 50, 1000, "benchmark-wheel",
+                (String _, List<Integer> events) -> {
+                    messages.incrementAndGet();
+                    delivered.addAndGet(events.size());
+                });
+        long memoryBefore = usedMemory();
+        int threadsBefore = Thread.activeCount();
+        long start = System.nanoTime();
+        submit((user, event) -> wheel.add("user" + user, event));
+        long submitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long memoryPeak = usedMemory();
+        int threadsPeak = Thread.activeCount();
+        while (wheel.pendingKeys() > 0) {
+            Thread.sleep(50);
+        }
+        long drainMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.gc();
+        System.out.printf("CoalescingTimerWheel: 提交 %d ms, 全部推送 %d ms, 新增线程 %d, 峰值内存 +%d MB, 空闲后内存 +%d MB, 推送消息 %d 条, 事件 %d/%d%n",
+                submitMs, drainMs, threadsPeak - threadsBefore, (memoryPeak - memoryBefore) / 1024 / 1024,
+                (usedMemory() - memoryBefore) / 1024 / 1024, messages.get(), delivered.get(), (long) USERS * EVENTS_PER_USER);
+        wheel.shutdown();
+    }
+
+    private static void runThrottleExecutor() throws Exception {
+        AtomicLong delivered = new AtomicLong();
+        ThrottleExecutor[] executors = new ThrottleExecutor[USERS];
+        long memoryBefore = usedMemory();
+        int threadsBefore = Thread.activeCount();
+        long start = System.nanoTime();
+        submit((user, _) -> {
+            ThrottleExecutor executor;
+            synchronized (executors) {
+                if (executors[user] == null) {
+                    executors[user] = new ThrottleExecutor(WINDOW_MS);
+                }
+                executor = executors[user];
+            }
+            synchronized (executor) {
+                // ThrottleExecutor.schedule 不是线程安全的
+                executor.schedule(delivered::incrementAndGet);
+            }
+        });
+        long submitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long memoryPeak = usedMemory();
+        int threadsPeak = Thread.activeCount();
+        Thread.sleep(WINDOW_MS * 3);
+        long drainMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.printf("ThrottleExecutor: 提交 %d ms, 全部推送 %d ms, 新增线程 %d, 峰值内存 +%d MB, 推送事件 %d/%d%n",
+                submitMs, drainMs, threadsPeak - threadsBefore, (memoryPeak - memoryBefore) / 1024 / 1024,
+                delivered.get(), (long) USERS * EVENTS_PER_USER);
+        for (ThrottleExecutor executor : executors) {
+            executor.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface EventSink {
+        void accept(int user, int event);
+    }
+
+    /**
+     * 多个线程按随机顺序为每个用户提交 EVENTS_PER_USER 个事件
+     */
+    private static void submit(EventSink sink) throws Exception {
+        try (ExecutorService pool = Executors.newFixedThreadPool(THREADS)) {
+            Future<?>[] futures = new Future<?>[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures[t] = pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int event = 0; event < EVENTS_PER_USER; event++) {
+                        for (int user = thread; user < USERS; user += THREADS) {
+                            sink.accept(user, random.nextInt());
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
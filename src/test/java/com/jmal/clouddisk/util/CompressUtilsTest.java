@@ -0,0 +1,120 @@
+package com.jmal.clouddisk.util;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressUtilsTest {
+
+    @Test
+    public void testParseSltEntries() throws IOException {
+        List<CompressUtils.ArchiveEntry> entries;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("file/archive/7z-slt.txt")) {
+            assertNotNull(in, "测试文件未找到");
+            entries = CompressUtils.parseSltEntries(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        }
+        // 压缩包本身的信息、__MACOSX、.DS_Store 和包含 .. 的路径不在结果中
+        assertEquals(List.of("docs", "docs/readme.md", "docs/sub", "secret.txt", "中文/照片.jpg"),
+                entries.stream().map(CompressUtils.ArchiveEntry::path).toList());
+
+        CompressUtils.ArchiveEntry folder = entries.get(0);
+        assertTrue(folder.folder());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 10, 20, 30), folder.modified());
+
+        CompressUtils.ArchiveEntry file = entries.get(1);
+        assertFalse(file.folder());
+        assertEquals(1234, file.size());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 10, 20, 31), file.modified());
+        assertFalse(file.encrypted());
+
+        // 以 / 结尾的路径为文件夹
+        assertTrue(entries.get(2).folder());
+
+        CompressUtils.ArchiveEntry encrypted = entries.get(3);
+        assertTrue(encrypted.encrypted());
+        assertEquals(42, encrypted.size());
+        assertNull(encrypted.modified());
+
+        // 最后一个条目后面没有空行, 没有大小, 时间无法解析
+        CompressUtils.ArchiveEntry last = entries.get(4);
+        assertEquals(0, last.size());
+        assertNull(last.modified());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"tar.gz", "tgz", "tar.bz2", "tar.xz"})
+    public void testCompressedTar(String suffix, @TempDir Path tempDir) throws Exception {
+        File archiveFile = tempDir.resolve("sample." + suffix).toFile();
+        try (OutputStream out = compressor(suffix, Files.newOutputStream(archiveFile.toPath()));
+             TarArchiveOutputStream tarOut = new TarArchiveOutputStream(out, StandardCharsets.UTF_8.name())) {
+            tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOut.putArchiveEntry(new TarArchiveEntry("./docs/"));
+            tarOut.closeArchiveEntry();
+            putFile(tarOut, "./docs/readme.md", "hello");
+            TarArchiveEntry link = new TarArchiveEntry("./docs/link", TarArchiveEntry.LF_SYMLINK);
+            link.setLinkName("/etc/passwd");
+            tarOut.putArchiveEntry(link);
+            tarOut.closeArchiveEntry();
+            putFile(tarOut, "./" + "长文件名".repeat(30) + ".txt", "long");
+            putFile(tarOut, "./empty.txt", "");
+        }
+
+        List<CompressUtils.ArchiveEntry> entries = CompressUtils.listEntries(archiveFile);
+        // 符号链接不在结果中
+        assertEquals(List.of("docs", "docs/readme.md", "长文件名".repeat(30) + ".txt", "empty.txt"),
+                entries.stream().map(CompressUtils.ArchiveEntry::path).toList());
+        assertTrue(entries.get(0).folder());
+        assertEquals(5, entries.get(1).size());
+
+        assertEquals("hello", extract(archiveFile, "docs/readme.md"));
+        assertEquals("long", extract(archiveFile, "长文件名".repeat(30) + ".txt"));
+        assertEquals("", extract(archiveFile, "empty.txt"));
+        assertThrows(FileNotFoundException.class, () -> extract(archiveFile, "docs/link"));
+    }
+
+    private static OutputStream compressor(String suffix, OutputStream out) throws IOException {
+        return switch (suffix) {
+            case "tar.gz", "tgz" -> new GzipCompressorOutputStream(out);
+            case "tar.bz2" -> new BZip2CompressorOutputStream(out);
+            case "tar.xz" -> new XZCompressorOutputStream(out);
+            default -> throw new IllegalArgumentException(suffix);
+        };
+    }
+
+    private static void putFile(TarArchiveOutputStream tarOut, String name, String content) throws IOException {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(data.length);
+        tarOut.putArchiveEntry(entry);
+        tarOut.write(data);
+        tarOut.closeArchiveEntry();
+    }
+
+    private static String extract(File archiveFile, String entryPath) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompressUtils.extractEntry(archiveFile, entryPath, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,135 @@
+package com.jmal.clouddisk.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StoredZipArchiveTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path root;
+
+    private Path docs;
+
+    private Path readme;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        root = Files.createDirectory(tempDir.resolve("root"));
+        docs = Files.createDirectory(root.resolve("docs"));
+        Path sub = Files.createDirectory(docs.resolve("sub"));
+        Files.createDirectory(docs.resolve("empty"));
+        Files.writeString(docs.resolve("b.txt"), "hello stored zip", StandardCharsets.UTF_8);
+        Files.writeString(sub.resolve("照片.txt"), "中文文件名", StandardCharsets.UTF_8);
+        // 大于预读大小(1MB), 走流式计算 CRC 的分支
+        byte[] large = new byte[1536 * 1024];
+        new Random(42).nextBytes(large);
+        Files.write(docs.resolve("a.bin"), large);
+        readme = Files.writeString(root.resolve("readme.md"), "# readme", StandardCharsets.UTF_8);
+
+        FileTime mtime = FileTime.from(LocalDateTime.of(2024, 5, 1, 10, 20, 30).atZone(ZoneId.systemDefault()).toInstant());
+        try (var stream = Files.walk(root)) {
+            for (Path path : stream.toList()) {
+                Files.setLastModifiedTime(path, mtime);
+            }
+        }
+    }
+
+    @Test
+    public void testEntriesReadBackWithZipFile() throws IOException {
+        // 传入顺序与名称顺序相反, 布局仍按名称排序
+        StoredZipArchive archive = StoredZipArchive.of(List.of(readme, docs));
+        byte[] bytes = writeAll(archive);
+        assertEquals(archive.getSize(), bytes.length);
+
+        Path zip = tempDir.resolve("archive.zip");
+        Files.write(zip, bytes);
+        try (ZipFile zipFile = new ZipFile(zip.toFile(), StandardCharsets.UTF_8)) {
+            List<String> names = Collections.list(zipFile.entries()).stream().map(ZipEntry::getName).toList();
+            // 与 CompressUtils#compress 一致, 选中的文件夹本身没有条目, 只有它下面的文件夹和文件
+            assertEquals(List.of("docs/a.bin", "docs/b.txt", "docs/empty/", "docs/sub/", "docs/sub/照片.txt", "readme.md"), names);
+
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                assertEquals(ZipEntry.STORED, entry.getMethod(), entry.getName());
+                if (entry.isDirectory()) {
+                    assertEquals(0, entry.getSize(), entry.getName());
+                    continue;
+                }
+                byte[] expected = Files.readAllBytes(root.resolve(entry.getName()));
+                CRC32 crc32 = new CRC32();
+                crc32.update(expected);
+                assertEquals(crc32.getValue(), entry.getCrc(), entry.getName());
+                assertEquals(expected.length, entry.getSize(), entry.getName());
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    // 读取时 ZipFile 会再校验一次 CRC
+                    assertArrayEquals(expected, in.readAllBytes(), entry.getName());
+                }
+            }
+        }
+        assertEquals(Files.size(docs.resolve("a.bin")) + Files.size(docs.resolve("b.txt"))
+                + Files.size(docs.resolve("sub/照片.txt")) + Files.size(readme), archive.getDataSize());
+    }
+
+    @Test
+    public void testDeterministicOutput() throws IOException {
+        StoredZipArchive first = StoredZipArchive.of(List.of(docs, readme));
+        byte[] firstBytes = writeAll(first);
+
+        // 重新生成布局, 输入顺序不同, 输出仍逐字节一致
+        StoredZipArchive second = StoredZipArchive.of(List.of(readme, docs));
+        byte[] secondBytes = writeAll(second);
+
+        assertEquals(first.getSize(), second.getSize());
+        assertEquals(first.getEtag(), second.getEtag());
+        assertArrayEquals(firstBytes, secondBytes);
+    }
+
+    @Test
+    public void testRangeWriteMatchesFullOutput() throws IOException {
+        StoredZipArchive archive = StoredZipArchive.of(List.of(docs, readme));
+        byte[] full = writeAll(archive);
+
+        // 在本地文件头、文件数据和中央目录内部切分, 拼接后与完整输出一致
+        List<Long> cuts = List.of(0L, 10L, 100L, 1024L * 1024, full.length - 100L, full.length - 1L);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(full.length);
+        long start = 0;
+        for (long cut : cuts) {
+            archive.write(out, start, cut);
+            start = cut + 1;
+        }
+        assertArrayEquals(full, out.toByteArray());
+
+        ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        long[] range = StoredZipArchive.parseRange("bytes=-500", archive.getSize());
+        assertNotNull(range);
+        archive.write(tail, range[0], range[1]);
+        assertArrayEquals(Arrays.copyOfRange(full, full.length - 500, full.length), tail.toByteArray());
+    }
+
+    private static byte[] writeAll(StoredZipArchive archive) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) archive.getSize());
+        archive.write(out, 0, archive.getSize() - 1);
+        return out.toByteArray();
+    }
+}
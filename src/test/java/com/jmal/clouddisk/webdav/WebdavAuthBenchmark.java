@@ -0,0 +1,105 @@
+package com.jmal.clouddisk.webdav;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebDAV 认证性能测试
+ * 对运行中的服务循环发送 PROPFIND(Depth: 1) + GET 请求, 每个请求都带 Basic 认证, 统计每秒请求数。
+ * 分别在启用凭据缓存前后的版本上运行, 对比 MyRealm.authenticate 的开销。
+ */
+public class WebdavAuthBenchmark {
+
+    // --- 可配置的静态变量 ---
+    /** WebDAV 地址, 包含 webDavPrefix 和用户名 */
+    private static final String WEBDAV_URL = "http://localhost:8088/webDAV/admin";
+    /** PROPFIND 的文件夹(相对于 WEBDAV_URL) */
+    private static final String FOLDER = "/";
+    /** GET 的文件(相对于 WEBDAV_URL), 最好是一个小文件 */
+    private static final String FILE = "/test.txt";
+    private static final String USERNAME = "admin";
+    private static final String PASSWORD = "jmalcloud";
+    /** 并发数 */
+    private static final int THREADS = 8;
+    /** 预热时间 */
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    /** 测试时间 */
+    private static final Duration DURATION = Duration.ofSeconds(30);
+
+    private static final String PROPFIND_BODY = """
+            <?xml version="1.0" encoding="utf-8"?>
+            <D:propfind xmlns:D="DAV:"><D:prop><D:getlastmodified/><D:getcontentlength/><D:resourcetype/><D:getetag/></D:prop></D:propfind>
+            """;
+
+    public static void main(String[] args) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        String authorization = "Basic " + Base64.getEncoder().encodeToString((USERNAME + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+        HttpRequest propfind = HttpRequest.newBuilder(URI.create(WEBDAV_URL + FOLDER))
+                .header("Authorization", authorization)
+                .header("Depth", "1")
+                .header("Content-Type", "text/xml; charset=utf-8")
+                .method("PROPFIND", HttpRequest.BodyPublishers.ofString(PROPFIND_BODY))
+                .build();
+        HttpRequest get = HttpRequest.newBuilder(URI.create(WEBDAV_URL + FILE))
+                .header("Authorization", authorization)
+                .GET()
+                .build();
+
+        System.out.println("===== WebDAV 认证性能测试 =====");
+        System.out.println("地址: " + WEBDAV_URL + ", 并发: " + THREADS);
+
+        run(client, propfind, get, WARMUP);
+        Result result = run(client, propfind, get, DURATION);
+
+        double seconds = DURATION.toMillis() / 1000.0;
+        System.out.printf("请求总数: %d, 失败: %d, 吞吐: %.1f req/s%n", result.requests(), result.errors(), result.requests() / seconds);
+    }
+
+    private record Result(long requests, long errors) {
+    }
+
+    private static Result run(HttpClient client, HttpRequest propfind, HttpRequest get, Duration duration) throws Exception {
+        AtomicLong requests = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + duration.toNanos();
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        send(client, propfind, requests, errors);
+                        send(client, get, requests, errors);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return new Result(requests.get(), errors.get());
+    }
+
+    private static void send(HttpClient client, HttpRequest request, AtomicLong requests, AtomicLong errors) {
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= 400) {
+                errors.incrementAndGet();
+            }
+        } catch (Exception e) {
+            errors.incrementAndGet();
+        } finally {
+            requests.incrementAndGet();
+        }
+    }
+}